@@ -0,0 +1,70 @@
+package sparkRest.accounting;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * One shared account: debitors block and commit, creditors add and readers
+ * read the balance, all at the same time.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountContentionBenchmark {
+
+	@Param({ "inmemory", "atomic" })
+	public String account;
+
+	private Account shared;
+
+	@State(Scope.Thread)
+	public static class Operation {
+		String id = UUID.randomUUID().toString();
+	}
+
+	@Setup
+	public void setup() {
+		AccountFactory factory = "atomic".equals(account) ? AtomicAccount::new : InMemoryAccount::new;
+		shared = factory.create("shared", 1_000_000_000L);
+	}
+
+	@Benchmark
+	@Group("account")
+	@GroupThreads(2)
+	public boolean debit(Operation operation) {
+		if (!shared.block(1, operation.id)) return false;
+		shared.commitBlockedOperation(operation.id);
+		return true;
+	}
+
+	@Benchmark
+	@Group("account")
+	@GroupThreads(2)
+	public boolean credit() {
+		return shared.add(1);
+	}
+
+	@Benchmark
+	@Group("account")
+	@GroupThreads(1)
+	public long read() {
+		return shared.getBalance();
+	}
+}
@@ -0,0 +1,66 @@
+package sparkRest.accounting;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Single-threaded Balance operations with a given number of other holds
+ * already placed on the balance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceBenchmark {
+
+	@Param({ "0", "16", "1024" })
+	public int holds;
+
+	private Balance balance;
+	private final String operation = "operation";
+
+	@Setup
+	public void setup() {
+		balance = new Balance(100_000_000L + holds);
+		for (int i = 0; i < holds; i++)
+			balance.block(1, "hold-" + i);
+	}
+
+	@Benchmark
+	public long blockAndCommit() {
+		balance.block(1, operation);
+		balance.commitBlockedOperation(operation);
+		balance.add(1);
+		return balance.current();
+	}
+
+	@Benchmark
+	public long blockAndUnblock() {
+		balance.block(1, operation);
+		balance.unblock(operation);
+		return balance.current();
+	}
+
+	@Benchmark
+	public boolean canBlock() {
+		return balance.canBlock(1);
+	}
+
+	@Benchmark
+	public long blockedAmount() {
+		return balance.getBlockedAmount();
+	}
+}
@@ -0,0 +1,97 @@
+package sparkRest.accounting;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Every operation moves the same amount from A to B and back again, so it
+ * covers two transfers. Run with the gc profiler (the jmh task default) and
+ * compare gc.alloc.rate.norm of decimalTransfer with minorUnitsTransfer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+	private static final double transferAmount = 12.34d;
+
+	private BigDecimal decimalA;
+	private BigDecimal decimalB;
+	private BigDecimal decimalAmount;
+
+	private long minorA;
+	private long minorB;
+	private long minorAmount;
+
+	private Account accountA;
+	private Account accountB;
+
+	@Setup
+	public void setup() {
+		decimalA = normalize(new BigDecimal(1000.0d));
+		decimalB = normalize(new BigDecimal(1000.0d));
+		decimalAmount = new BigDecimal(transferAmount);
+
+		minorA = Money.of(1000);
+		minorB = Money.of(1000);
+		minorAmount = Money.of(BigDecimal.valueOf(transferAmount));
+
+		accountA = new InMemoryAccount("A", Money.of(1000));
+		accountB = new InMemoryAccount("B", Money.of(1000));
+	}
+
+	@Benchmark
+	public BigDecimal decimalTransfer() {
+		var amount = normalize(decimalAmount);
+		if (amount.compareTo(BigDecimal.ZERO) > 0 && decimalA.subtract(amount).compareTo(BigDecimal.ZERO) >= 0) {
+			decimalA = decimalA.subtract(amount);
+			decimalB = decimalB.add(normalize(decimalAmount));
+		}
+		amount = normalize(decimalAmount);
+		if (amount.compareTo(BigDecimal.ZERO) > 0 && decimalB.subtract(amount).compareTo(BigDecimal.ZERO) >= 0) {
+			decimalB = decimalB.subtract(amount);
+			decimalA = decimalA.add(normalize(decimalAmount));
+		}
+		return decimalA;
+	}
+
+	@Benchmark
+	public long minorUnitsTransfer() {
+		if (minorAmount > 0 && minorA - minorAmount >= 0) {
+			minorA = Money.subtract(minorA, minorAmount);
+			minorB = Money.add(minorB, minorAmount);
+		}
+		if (minorAmount > 0 && minorB - minorAmount >= 0) {
+			minorB = Money.subtract(minorB, minorAmount);
+			minorA = Money.add(minorA, minorAmount);
+		}
+		return minorA;
+	}
+
+	@Benchmark
+	public long accountTransfer() {
+		if (accountA.block(minorAmount, "ab") && accountB.add(minorAmount))
+			accountA.commitBlockedOperation("ab");
+		if (accountB.block(minorAmount, "ba") && accountA.add(minorAmount))
+			accountB.commitBlockedOperation("ba");
+		return accountA.getBalance();
+	}
+
+	private static BigDecimal normalize(BigDecimal amount) {
+		return amount.setScale(2, RoundingMode.HALF_EVEN);
+	}
+}
@@ -0,0 +1,66 @@
+package sparkRest.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/*
+ * Recording overhead per request: a timed route against the same route
+ * called directly, and a bare histogram record, all from four threads that
+ * share the histogram.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MetricsBenchmark {
+	private final Route route = (req, res) -> "";
+	private final Request request = null;
+	private final Response response = new Response() {
+		@Override
+		public int status() {
+			return 200;
+		}
+	};
+
+	private Route timed;
+	private LatencyHistogram histogram;
+
+	@Setup
+	public void setup() {
+		timed = new Metrics().timed("GET /accounts/:accountId", route);
+		histogram = new LatencyHistogram();
+	}
+
+	@Benchmark
+	public Object plainRoute() throws Exception {
+		return route.handle(request, response);
+	}
+
+	@Benchmark
+	public Object timedRoute() throws Exception {
+		return timed.handle(request, response);
+	}
+
+	@Benchmark
+	public void record() {
+		histogram.record(123_456);
+	}
+}
@@ -0,0 +1,90 @@
+package sparkRest.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.transfers.TransferResult;
+
+/*
+ * A transfer request read and its result written the way the API does it,
+ * either on the benchmark thread, like a pooled request thread that serves
+ * request after request, or each on a new virtual thread, the way
+ * VirtualThreadPool runs every request. Run with -prof gc to compare the
+ * allocation per request; virtual needs a Java 21 runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBufferBenchmark {
+	private static final byte[] REQUEST = "{\"destinationAccount\":\"7c9e6679-7425-40de-944b-e07fc1f90ae7\",\"amount\":12.34}".getBytes(StandardCharsets.UTF_8);
+
+	@Param({ "platform", "virtual" })
+	public String threads;
+
+	private final TransferResult result = TransferResult.success();
+	private final OutputStream sink = OutputStream.nullOutputStream();
+	private VirtualThreadPool pool;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		if ("virtual".equals(threads)) {
+			pool = new VirtualThreadPool("bench-");
+			pool.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (null != pool)
+			pool.stop();
+	}
+
+	@Benchmark
+	public void request() throws Exception {
+		if (null == pool) {
+			serve();
+			return;
+		}
+
+		var done = new CountDownLatch(1);
+		pool.execute(() -> {
+			try {
+				serve();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				done.countDown();
+			}
+		});
+		done.await();
+	}
+
+	private void serve() throws IOException {
+		JsonCodecs.readTransferRequest(JsonInput.from(new ByteArrayInputStream(REQUEST)));
+		var out = JsonOutput.to(sink);
+		JsonCodecs.write(out, result);
+		out.flush();
+	}
+}
@@ -0,0 +1,113 @@
+package sparkRest.rest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sparkRest.metrics.LatencyHistogram;
+
+/*
+ * Closed-loop load against a running server: every connection sends its next
+ * request as soon as the previous one answered, for the given number of
+ * seconds. Half of the requests are transfers between random accounts, the
+ * other half account reads. Start the server once with the default thread
+ * pool and once with -DsparkRest.threads=virtual and compare the output;
+ * blocking on the request path (e.g. waiting for the journal's group commit
+ * with -DsparkRest.journal=...) is where the two differ.
+ *
+ *   gradlew loadTest -Purl=http://localhost:8008 -Pconnections=10000 -Pseconds=30
+ */
+public class LoadTest {
+	private static final int ACCOUNTS = 1000;
+
+	private final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(30))
+			.build();
+	private final String api;
+	private final String[] accounts = new String[ACCOUNTS];
+	private LatencyHistogram latencies = new LatencyHistogram();
+	private final AtomicLong errors = new AtomicLong();
+	private volatile long deadline;
+
+	LoadTest(String url) {
+		this.api = url + "/api/v1";
+	}
+
+	public static void main(String[] args) throws Exception {
+		var url = args.length > 0 ? args[0] : "http://localhost:8008";
+		var connections = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+		var seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		var test = new LoadTest(url);
+		test.createAccounts();
+		test.run(connections, 5);
+		test.latencies = new LatencyHistogram();
+		test.errors.set(0);
+
+		var start = System.nanoTime();
+		test.run(connections, seconds);
+		test.report(connections, System.nanoTime() - start);
+	}
+
+	void createAccounts() throws Exception {
+		for (int i = 0; i < ACCOUNTS; i++) {
+			var response = this.client.send(HttpRequest.newBuilder(URI.create(this.api + "/accounts"))
+					.POST(HttpRequest.BodyPublishers.ofString("{\"amount\":1000000}"))
+					.build(), HttpResponse.BodyHandlers.discarding());
+			var location = response.headers().firstValue("Location").orElseThrow();
+			this.accounts[i] = location.substring(location.lastIndexOf('/') + 1);
+		}
+	}
+
+	void run(int connections, int seconds) {
+		this.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		var loops = new CompletableFuture<?>[connections];
+		for (int i = 0; i < connections; i++)
+			loops[i] = next();
+		CompletableFuture.allOf(loops).join();
+	}
+
+	private CompletableFuture<Void> next() {
+		if (System.nanoTime() > this.deadline)
+			return CompletableFuture.completedFuture(null);
+
+		var start = System.nanoTime();
+		return this.client.sendAsync(request(), HttpResponse.BodyHandlers.discarding())
+				.handle((response, failure) -> {
+					this.latencies.record(System.nanoTime() - start);
+					if (null != failure || response.statusCode() != 200)
+						this.errors.incrementAndGet();
+					return null;
+				})
+				.thenCompose(ignored -> next());
+	}
+
+	private HttpRequest request() {
+		var random = ThreadLocalRandom.current();
+		var source = this.accounts[random.nextInt(ACCOUNTS)];
+		if (random.nextBoolean())
+			return HttpRequest.newBuilder(URI.create(this.api + "/accounts/" + source)).GET().build();
+
+		var destination = this.accounts[random.nextInt(ACCOUNTS)];
+		return HttpRequest.newBuilder(URI.create(this.api + "/accounts/" + source + "/transfers"))
+				.POST(HttpRequest.BodyPublishers.ofString("{\"destinationAccount\":\"" + destination + "\",\"amount\":0.01}"))
+				.build();
+	}
+
+	private void report(int connections, long nanos) {
+		var requests = this.latencies.getCount();
+		System.out.printf("connections  %d%n", connections);
+		System.out.printf("requests     %d (%d errors)%n", requests, this.errors.get());
+		System.out.printf("throughput   %.0f req/s%n", requests / (nanos / 1e9));
+		System.out.printf("p50          %.2f ms%n", this.latencies.valueAtQuantile(0.5) / 1e6);
+		System.out.printf("p99          %.2f ms%n", this.latencies.valueAtQuantile(0.99) / 1e6);
+		System.out.printf("p99.9        %.2f ms%n", this.latencies.valueAtQuantile(0.999) / 1e6);
+		System.out.printf("max          %.2f ms%n", this.latencies.valueAtQuantile(1) / 1e6);
+	}
+}
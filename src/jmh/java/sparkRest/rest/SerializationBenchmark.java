@@ -0,0 +1,105 @@
+package sparkRest.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.transfers.TransferResult;
+
+/*
+ * Cost of the bodies the API writes and reads on every request: the
+ * reflective Gson mapping against the streaming codecs. Run with -prof gc to
+ * compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+	private final Gson gson = new Gson();
+
+	private AccountSummary summary;
+	private TransferResult result;
+	private String transferRequest;
+	private ByteArrayInputStream transferRequestBytes;
+	private OutputStream sink;
+
+	@Setup
+	public void setup() {
+		var account = new InMemoryAccount("0f8fad5b-d9cb-469f-a165-70867728950e", 1_234_567L);
+		account.block(1_000L, "hold");
+		summary = AccountSummary.summary(account);
+		result = TransferResult.success();
+		transferRequest = gson.toJson(new IncomingTransferRequest("7c9e6679-7425-40de-944b-e07fc1f90ae7", 1_234L));
+		transferRequestBytes = new ByteArrayInputStream(transferRequest.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Setup
+	public void sink(Blackhole blackhole) {
+		sink = new OutputStream() {
+			@Override
+			public void write(int b) {
+				blackhole.consume(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				blackhole.consume(b);
+			}
+		};
+	}
+
+	@Benchmark
+	public String writeAccountSummary() {
+		return gson.toJson(summary);
+	}
+
+	@Benchmark
+	public String writeTransferResult() {
+		return gson.toJson(result);
+	}
+
+	@Benchmark
+	public IncomingTransferRequest readTransferRequest() {
+		return gson.fromJson(transferRequest, IncomingTransferRequest.class);
+	}
+
+	@Benchmark
+	public void codecWriteAccountSummary() throws IOException {
+		var out = JsonOutput.to(sink);
+		JsonCodecs.write(out, summary);
+		out.flush();
+	}
+
+	@Benchmark
+	public void codecWriteTransferResult() throws IOException {
+		var out = JsonOutput.to(sink);
+		JsonCodecs.write(out, result);
+		out.flush();
+	}
+
+	@Benchmark
+	public IncomingTransferRequest codecReadTransferRequest() throws IOException {
+		transferRequestBytes.reset();
+		return JsonCodecs.readTransferRequest(JsonInput.from(transferRequestBytes));
+	}
+}
@@ -0,0 +1,130 @@
+package sparkRest.storage;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.rest.NewAccountRequest;
+
+/*
+ * Lookups and inserts on a storage that already holds the given number of
+ * accounts, against the ConcurrentHashMap keyed by id Strings the storage
+ * used to be. restore stands in for put, since newAccount also pays for a
+ * random UUID. Lookups use a fresh copy of an id that is not the stored one,
+ * with no hash cached yet, as a request path parameter is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class InMemoryAccountStorageBenchmark {
+
+	@Param({ "1000000", "5000000" })
+	public int accounts;
+
+	@Param({ "index", "map" })
+	public String layout;
+
+	private AccountStorage storage;
+	private String[] ids;
+
+	@Setup
+	public void setup() {
+		storage = "map".equals(layout) ? new MapStorage() : new InMemoryAccountStorage();
+		ids = new String[accounts];
+		for (int i = 0; i < accounts; i++) {
+			var id = UUID.randomUUID().toString();
+			storage.restore(id, 100);
+			ids[i] = String.valueOf(id.toCharArray());
+		}
+	}
+
+	@Benchmark
+	public Account get() {
+		return storage.get(String.valueOf(ids[ThreadLocalRandom.current().nextInt(accounts)].toCharArray()));
+	}
+
+	@Benchmark
+	public boolean miss() {
+		var random = ThreadLocalRandom.current();
+		return storage.has(new UUID(random.nextLong(), random.nextLong()).toString());
+	}
+
+	@Benchmark
+	public Account put() {
+		return storage.restore(ids[ThreadLocalRandom.current().nextInt(accounts)], 100);
+	}
+
+	static class MapStorage implements AccountStorage {
+		final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+		@Override
+		public Account restore(String id, long balance) {
+			var account = new InMemoryAccount(id, balance);
+			this.accounts.put(id, account);
+			return account;
+		}
+
+		@Override
+		public Account create(String id, long balance) {
+			var account = new InMemoryAccount(id, balance);
+			return null == this.accounts.putIfAbsent(id, account) ? account : null;
+		}
+
+		@Override
+		public Account get(String key) {
+			return this.accounts.get(key);
+		}
+
+		@Override
+		public boolean has(String id) {
+			return this.accounts.containsKey(id);
+		}
+
+		@Override
+		public String newAccount(NewAccountRequest request) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean remove(String id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void forEach(Consumer<Account> action) {
+			this.accounts.values().forEach(action);
+		}
+
+		@Override
+		public long forEach(long cursor, Predicate<Account> action) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long count() {
+			return this.accounts.mappingCount();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package sparkRest.storage;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+
+/*
+ * Heap retained per account, reported as the bytesPerAccount counter, and the
+ * pause of a full collection with all of them live, as gcMillis. The accounts
+ * layout is the accounts themselves, ids included, in a plain array; the map
+ * and index layouts minus that one is what indexing them costs. The offheap
+ * layout keeps them outside the heap altogether. A fill takes
+ * longer than the one second iteration, so every iteration is exactly one
+ * fill (JMH does not report counters of single shot runs).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class StorageFootprintBenchmark {
+
+	@Param({ "10000000" })
+	public int accounts;
+
+	@Param({ "accounts", "map", "index", "offheap" })
+	public String layout;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint {
+		public long bytesPerAccount;
+		public long gcMillis;
+	}
+
+	@Benchmark
+	public Object fill(Footprint footprint) {
+		var before = usedAfterGc();
+		Object filled;
+		if ("accounts".equals(layout)) {
+			var array = new Account[accounts];
+			for (int i = 0; i < accounts; i++)
+				array[i] = new InMemoryAccount(UUID.randomUUID().toString(), 100);
+			filled = array;
+		} else {
+			var storage = storage();
+			for (int i = 0; i < accounts; i++)
+				storage.restore(UUID.randomUUID().toString(), 100);
+			filled = storage;
+		}
+		footprint.bytesPerAccount = (usedAfterGc() - before) / accounts;
+		var start = System.nanoTime();
+		System.gc();
+		footprint.gcMillis = (System.nanoTime() - start) / 1_000_000;
+		return filled;
+	}
+
+	private AccountStorage storage() {
+		switch (layout) {
+		case "map":
+			return new InMemoryAccountStorageBenchmark.MapStorage();
+		case "offheap":
+			return new OffHeapAccountStorage();
+		default:
+			return new InMemoryAccountStorage();
+		}
+	}
+
+	private static long usedAfterGc() {
+		var memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
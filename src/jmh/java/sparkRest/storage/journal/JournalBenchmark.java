@@ -0,0 +1,76 @@
+package sparkRest.storage.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Journals the three events of one transfer (block, add, commit) per
+ * operation under several fsync policies: "every" forces each event,
+ * "N:M" forces every N events or M microseconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class JournalBenchmark {
+
+	@Param({ "every", "64:1000", "1024:1000", "1024:10000" })
+	public String policy;
+
+	private Path directory;
+	private Journal journal;
+	private final String source = UUID.randomUUID().toString();
+	private final String destination = UUID.randomUUID().toString();
+	private final String operation = UUID.randomUUID().toString();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("journal-benchmark");
+		journal = new Journal(directory, 64 * 1024 * 1024, groupCommit(policy));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		journal.close();
+		try (var files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public long transfer() {
+		journal.blocked(source, operation, 1234);
+		journal.added(destination, 1234);
+		return journal.committed(source, operation);
+	}
+
+	private static GroupCommit groupCommit(String policy) {
+		if ("every".equals(policy))
+			return GroupCommit.everyEvent();
+
+		var parts = policy.split(":");
+		return GroupCommit.every(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+	}
+}
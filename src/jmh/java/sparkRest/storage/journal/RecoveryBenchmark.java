@@ -0,0 +1,98 @@
+package sparkRest.storage.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+import sparkRest.rest.NewAccountRequest;
+import sparkRest.storage.InMemoryAccountStorage;
+import sparkRest.transfers.OrderedLockTransfer;
+import sparkRest.transfers.TransferRequest;
+
+/*
+ * Time to restart from a directory holding the given number of accounts, a
+ * history of transfers and a tail of transfers: "journal" replays every event
+ * from the start, "snapshot" loads a snapshot taken after the history and
+ * replays only the tail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class RecoveryBenchmark {
+	private static final int HISTORY_TRANSFERS = 2_000_000;
+	private static final int TAIL_TRANSFERS = 100_000;
+
+	@Param({ "1000000", "10000000" })
+	public int accounts;
+
+	@Param({ "journal", "snapshot" })
+	public String recovery;
+
+	private Path directory;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("recovery-benchmark");
+		try (var journal = journal()) {
+			var storage = storage(journal);
+			var ids = new String[accounts];
+			for (int i = 0; i < accounts; i++)
+				ids[i] = storage.newAccount(new NewAccountRequest(Money.of(100)));
+
+			transfers(storage, ids, HISTORY_TRANSFERS);
+			if ("snapshot".equals(recovery))
+				storage.snapshot();
+			transfers(storage, ids, TAIL_TRANSFERS);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (var files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public Object recover() {
+		try (var journal = journal()) {
+			return storage(journal);
+		}
+	}
+
+	private static void transfers(JournaledAccountStorage storage, String[] ids, int count) {
+		var transfer = new OrderedLockTransfer();
+		for (int i = 0; i < count; i++)
+			transfer.from(storage.get(ids[i % ids.length])).withRequest(new TransferRequest("op-" + i, 1))
+					.execute(storage.get(ids[(i * 31 + 7) % ids.length]));
+	}
+
+	private Journal journal() {
+		return new Journal(directory, 256 * 1024 * 1024, GroupCommit.every(4096, 10_000));
+	}
+
+	private static JournaledAccountStorage storage(Journal journal) {
+		return new JournaledAccountStorage(journal, InMemoryAccount::new, InMemoryAccountStorage::new);
+	}
+}
@@ -0,0 +1,86 @@
+package sparkRest.transfers;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+
+/*
+ * One source paying LEGS destinations: as one payout, as an atomic batch of
+ * transfers and as separate ordered transfers. Scores are legs per
+ * microsecond. Operation ids are made up front, so that generating them does
+ * not weigh on the ways that need one per leg.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayoutBenchmark {
+	private static final int LEGS = 200;
+
+	@Param({ "10000" })
+	public int accounts;
+
+	private final Transfer transfer = new OrderedLockTransfer();
+	private Account source;
+	private Account[] destinations;
+	private String[] operations;
+
+	@Setup
+	public void setup() {
+		source = new InMemoryAccount(UUID.randomUUID().toString(), Long.MAX_VALUE / 2);
+		var all = new Account[accounts];
+		for (int i = 0; i < accounts; i++)
+			all[i] = new InMemoryAccount(UUID.randomUUID().toString(), 0);
+		destinations = new Account[LEGS];
+		for (int i = 0; i < LEGS; i++)
+			destinations[i] = all[i * (accounts / LEGS)];
+		operations = new String[LEGS];
+		for (int i = 0; i < LEGS; i++)
+			operations[i] = UUID.randomUUID().toString();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LEGS)
+	public List<TransferResult> payout() {
+		var payout = new Payout(operations[0]);
+		for (var destination : destinations)
+			payout.add(destination, 1);
+		return transfer.payout(source, payout);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LEGS)
+	public List<TransferResult> atomicBatch() {
+		var batch = new TransferBatch();
+		for (int i = 0; i < LEGS; i++)
+			batch.add(source, new TransferRequest(operations[i], 1), destinations[i]);
+		return transfer.executeAtomically(batch);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LEGS)
+	public TransferResult separate() {
+		TransferResult last = null;
+		for (int i = 0; i < LEGS; i++)
+			last = transfer.from(source).withRequest(new TransferRequest(operations[i], 1)).execute(destinations[i]);
+		return last;
+	}
+}
@@ -0,0 +1,60 @@
+package sparkRest.transfers;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost the idempotency cache adds to a transfer: "repeat" looks up a key that
+ * is already remembered, "fresh" remembers a new key and evicts the oldest one
+ * from a full cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RecentOperationsBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int capacity;
+
+	private RecentOperations<TransferResult> recent;
+	private String[] keys;
+	private final TransferResult result = TransferResult.success();
+
+	@Setup
+	public void setup() {
+		recent = new RecentOperations<>(capacity, 1, TimeUnit.HOURS);
+		keys = new String[capacity];
+		for (int i = 0; i < capacity; i++) {
+			keys[i] = UUID.randomUUID().toString();
+			recent.execute(keys[i], () -> result);
+		}
+	}
+
+	@Benchmark
+	public TransferResult repeat() {
+		return recent.execute(keys[ThreadLocalRandom.current().nextInt(capacity)], () -> result);
+	}
+
+	@Benchmark
+	public TransferResult fresh() {
+		return recent.execute(Long.toString(ThreadLocalRandom.current().nextLong()), () -> result);
+	}
+}
@@ -0,0 +1,90 @@
+package sparkRest.transfers;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.storage.InMemoryAccountStorage;
+
+/*
+ * Transfers between random pairs of accounts. With "uniform" every account is
+ * equally likely; with "hot" nine transfers out of ten touch one of the first
+ * eight accounts, which is where contention shows. With "ledger" every
+ * transfer is also recorded in a TransferLedger keeping its default number of
+ * transfers, whose ring fills up during the warmup, so that the measurement
+ * shows appends that overwrite the oldest transfers. With
+ * "indexed" the accounts live in an InMemoryAccountStorage, whose secondary
+ * indexes follow every change of an available amount.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TransferBenchmark {
+	private static final int HOT_ACCOUNTS = 8;
+
+	@Param({ "uniform", "hot" })
+	public String distribution;
+
+	@Param({ "ordered", "threePhase" })
+	public String engine;
+
+	@Param({ "10000" })
+	public int accounts;
+
+	@Param({ "none", "ledger" })
+	public String history;
+
+	@Param({ "plain", "indexed" })
+	public String store;
+
+	private Account[] all;
+	private Transfer transfer;
+
+	@State(Scope.Thread)
+	public static class Operation {
+		String id = UUID.randomUUID().toString();
+	}
+
+	@Setup
+	public void setup() {
+		all = new Account[accounts];
+		var storage = "indexed".equals(store) ? new InMemoryAccountStorage() : null;
+		for (int i = 0; i < accounts; i++) {
+			var id = UUID.randomUUID().toString();
+			all[i] = null == storage ? new InMemoryAccount(id, 1_000_000_000L) : storage.restore(id, 1_000_000_000L);
+		}
+		var ledger = "ledger".equals(history) ? new TransferLedger() : null;
+		transfer = "ordered".equals(engine) ? new OrderedLockTransfer(ledger) : new Transfer(ledger);
+	}
+
+	@Benchmark
+	public TransferResult transfer(Operation operation) {
+		var random = ThreadLocalRandom.current();
+		return transfer.from(pick(random)).withRequest(new TransferRequest(operation.id, 1)).execute(pick(random));
+	}
+
+	private Account pick(ThreadLocalRandom random) {
+		if ("hot".equals(distribution) && random.nextInt(10) != 0)
+			return all[random.nextInt(HOT_ACCOUNTS)];
+		return all[random.nextInt(accounts)];
+	}
+}
@@ -0,0 +1,80 @@
+package sparkRest.transfers;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+
+/*
+ * A->B / B->A crossfire on a single pair of hot accounts: half of each group's
+ * threads transfer one way, the other half the other way.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferContentionBenchmark {
+	private static final long amount = 1L;
+
+	private final Transfer threePhase = new Transfer();
+	private final Transfer orderedLock = new OrderedLockTransfer();
+
+	private Account a;
+	private Account b;
+
+	@State(Scope.Thread)
+	public static class Operation {
+		String id = UUID.randomUUID().toString();
+	}
+
+	@Setup
+	public void setup() {
+		a = new InMemoryAccount("a", Money.of(1_000_000));
+		b = new InMemoryAccount("b", Money.of(1_000_000));
+	}
+
+	@Benchmark
+	@Group("threePhase")
+	@GroupThreads(2)
+	public TransferResult threePhaseAtoB(Operation operation) {
+		return threePhase.from(a).withRequest(new TransferRequest(operation.id, amount)).execute(b);
+	}
+
+	@Benchmark
+	@Group("threePhase")
+	@GroupThreads(2)
+	public TransferResult threePhaseBtoA(Operation operation) {
+		return threePhase.from(b).withRequest(new TransferRequest(operation.id, amount)).execute(a);
+	}
+
+	@Benchmark
+	@Group("orderedLock")
+	@GroupThreads(2)
+	public TransferResult orderedLockAtoB(Operation operation) {
+		return orderedLock.from(a).withRequest(new TransferRequest(operation.id, amount)).execute(b);
+	}
+
+	@Benchmark
+	@Group("orderedLock")
+	@GroupThreads(2)
+	public TransferResult orderedLockBtoA(Operation operation) {
+		return orderedLock.from(b).withRequest(new TransferRequest(operation.id, amount)).execute(a);
+	}
+}
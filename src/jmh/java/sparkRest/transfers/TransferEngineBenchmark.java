@@ -0,0 +1,77 @@
+package sparkRest.transfers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+
+/*
+ * Transfers between uniformly chosen accounts. Run with -t 1,2,4,8... to see
+ * how each engine scales with the number of submitting threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TransferEngineBenchmark {
+
+	@Param({ "ordered", "partitioned" })
+	public String engine;
+
+	@Param({ "1024" })
+	public int accounts;
+
+	private Transfer transfer;
+	private Account[] pool;
+
+	@State(Scope.Thread)
+	public static class Operation {
+		long sequence;
+		final String prefix = Thread.currentThread().getName() + "-";
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		transfer = "partitioned".equals(engine)
+				? new PartitionedTransfer(Runtime.getRuntime().availableProcessors(), 4096)
+				: new OrderedLockTransfer();
+		pool = new Account[accounts];
+		for (int i = 0; i < accounts; i++)
+			pool[i] = new InMemoryAccount("account-" + i, Money.of(1_000_000));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (transfer instanceof PartitionedTransfer)
+			((PartitionedTransfer) transfer).close();
+	}
+
+	@Benchmark
+	public TransferResult uniform(Operation operation) {
+		var random = ThreadLocalRandom.current();
+		var source = pool[random.nextInt(pool.length)];
+		var destination = pool[random.nextInt(pool.length)];
+		var request = new TransferRequest(operation.prefix + operation.sequence++, 1L);
+		return transfer.from(source).withRequest(request).execute(destination);
+	}
+}
@@ -1,17 +1,201 @@
 package sparkRest;
 
+import static spark.Spark.get;
 import static spark.Spark.path;
 import static spark.Spark.port;
 import static spark.Spark.staticFiles;
+import static spark.Spark.threadPool;
 
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import sparkRest.accounting.AccountFactory;
+import sparkRest.accounting.AtomicAccount;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.feed.ChangeFeed;
+import sparkRest.feed.FeedAccount;
+import sparkRest.feed.FeedAtomicAccount;
+import sparkRest.metrics.Metrics;
 import sparkRest.rest.AccountsController;
+import sparkRest.rest.VirtualThreadPool;
+import sparkRest.storage.AccountStorage;
 import sparkRest.storage.InMemoryAccountStorage;
+import sparkRest.storage.OffHeapAccountStorage;
+import sparkRest.storage.journal.GroupCommit;
+import sparkRest.storage.journal.Journal;
+import sparkRest.storage.journal.JournaledAccountStorage;
+import sparkRest.transfers.Holds;
+import sparkRest.transfers.OrderedLockTransfer;
+import sparkRest.transfers.PartitionedTransfer;
+import sparkRest.transfers.RecentOperations;
+import sparkRest.transfers.ScheduledTransfers;
 import sparkRest.transfers.Transfer;
+import sparkRest.transfers.TransferLedger;
+import sparkRest.transfers.TransferPipeline;
+import sparkRest.transfers.TransferResult;
 
 public class Main {
 	public static void main(String[] args) {
+		threads();
 		port(8008);
 		staticFiles.location("/docs");
-		path("/api/v1", new AccountsController(new InMemoryAccountStorage(), new Transfer()).setupRoutes());
+
+		var feed = feed();
+		var blocked = new LongAdder();
+		var storage = storage(feed, blocked);
+		var metrics = metrics(storage, blocked);
+		var ledger = ledger();
+		var pipeline = pipeline();
+		metrics.gauge("sparkrest_async_queued", "Transfers waiting in the async pipeline", pipeline::queued);
+		var transfer = transfers(ledger);
+		var holds = holds(transfer, storage);
+		metrics.gauge("sparkrest_holds_outstanding", "Holds neither captured, released nor expired yet", holds::outstanding);
+		var schedules = schedules(storage, transfer);
+		metrics.gauge("sparkrest_scheduled_transfers", "Transfers registered to run later", schedules::size);
+		path("/api/v1", new AccountsController(storage, transfer, recentTransfers(), ledger, pipeline, holds, schedules, feed, metrics).setupRoutes());
+		get("/metrics", (req, res) -> {
+			res.type("text/plain; version=0.0.4");
+			return metrics.scrape();
+		});
+	}
+
+	/* Has to run before the first route is mapped, which starts the server. */
+	private static void threads() {
+		if ("virtual".equals(System.getProperty("sparkRest.threads"))) {
+			EmbeddedServers.add(EmbeddedServers.defaultIdentifier(), new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool("http-")));
+			return;
+		}
+
+		var maxThreads = Integer.getInteger("sparkRest.maxThreads");
+		if (null != maxThreads)
+			threadPool(maxThreads);
+	}
+
+	/* blocked is kept by the accounts as they block and release amounts, so a scrape does not walk them */
+	private static Metrics metrics(AccountStorage storage, LongAdder blocked) {
+		var metrics = new Metrics();
+		metrics.gauge("sparkrest_accounts", "Number of accounts", storage::count);
+		metrics.gauge("sparkrest_blocked_amount", "Amount blocked on all accounts, in minor units", blocked::sum);
+		return metrics;
+	}
+
+	private static AccountStorage storage(ChangeFeed feed, LongAdder blocked) {
+		var directory = System.getProperty("sparkRest.journal");
+		if ("offheap".equals(System.getProperty("sparkRest.accounts"))) {
+			if (null != directory)
+				throw new IllegalStateException("offheap accounts are not journaled; keep them in sparkRest.accountsFile");
+
+			return offHeap(blocked);
+		}
+		if (null == directory)
+			return new InMemoryAccountStorage(accounts(feed, blocked));
+
+		var events = Integer.getInteger("sparkRest.journalSyncEvents", 256);
+		var journal = new Journal(
+				Paths.get(directory),
+				Integer.getInteger("sparkRest.journalSegment", 64 * 1024 * 1024),
+				groupCommit(events, Long.getLong("sparkRest.journalSyncMicros", 1000)));
+		Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+		var storage = new JournaledAccountStorage(journal, accounts(feed, blocked), InMemoryAccountStorage::new);
+
+		var period = Long.getLong("sparkRest.snapshotSeconds", 300);
+		if (period > 0) {
+			var snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+				var thread = new Thread(task, "snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshots.scheduleWithFixedDelay(storage::snapshot, period, period, TimeUnit.SECONDS);
+		}
+		return storage;
+	}
+
+	private static GroupCommit groupCommit(int events, long micros) {
+		if (events == 1)
+			return GroupCommit.everyEvent();
+		if ("background".equals(System.getProperty("sparkRest.journalSync")))
+			return GroupCommit.background(events, micros);
+
+		return GroupCommit.every(events, micros);
+	}
+
+	private static AccountStorage offHeap(LongAdder blocked) {
+		var file = System.getProperty("sparkRest.accountsFile");
+		if (null == file)
+			return new OffHeapAccountStorage(blocked);
+
+		var storage = new OffHeapAccountStorage(Paths.get(file), blocked);
+		Runtime.getRuntime().addShutdownHook(new Thread(storage::close));
+		return storage;
+	}
+
+	/* null, so that nothing is published, unless a capacity is configured */
+	private static ChangeFeed feed() {
+		var capacity = Integer.getInteger("sparkRest.feedCapacity", 0);
+		return capacity > 0 ? new ChangeFeed(capacity) : null;
+	}
+
+	/* offheap accounts live outside of any factory and publish no changes */
+	private static AccountFactory accounts(ChangeFeed feed, LongAdder blocked) {
+		var atomic = "atomic".equals(System.getProperty("sparkRest.accounts"));
+		if (null == feed)
+			return atomic ? (id, balance) -> new AtomicAccount(id, balance, blocked) : (id, balance) -> new InMemoryAccount(id, balance, blocked);
+		if (atomic)
+			return FeedAtomicAccount.accounts(blocked, feed);
+
+		return FeedAccount.accounts((id, balance) -> new InMemoryAccount(id, balance, blocked), feed);
+	}
+
+	private static RecentOperations<TransferResult> recentTransfers() {
+		return new RecentOperations<>(
+				Integer.getInteger("sparkRest.idempotencyKeys", 100_000),
+				Long.getLong("sparkRest.idempotencySeconds", 3600),
+				TimeUnit.SECONDS,
+				/* a failed transfer changed nothing, so a retry may as well run again */
+				TransferResult::isSuccess);
+	}
+
+	/* without it transfers record nothing and the history route answers 404 */
+	private static TransferLedger ledger() {
+		var retained = Integer.getInteger("sparkRest.transferHistory", TransferLedger.DEFAULT_RETAINED);
+		return retained > 0 ? new TransferLedger(retained) : null;
+	}
+
+	private static TransferPipeline pipeline() {
+		return new TransferPipeline(
+				Integer.getInteger("sparkRest.asyncThreads", Runtime.getRuntime().availableProcessors()),
+				Integer.getInteger("sparkRest.asyncQueue", 10_000),
+				Integer.getInteger("sparkRest.asyncOperations", 100_000));
+	}
+
+	/* Holds placed before a restart are still blocked on journaled accounts; they get a fresh default ttl. */
+	private static Holds holds(Transfer transfer, AccountStorage storage) {
+		var holds = new Holds(transfer, Long.getLong("sparkRest.holdTickMillis", 100));
+		holds.recover(storage, TimeUnit.SECONDS.toMillis(Long.getLong("sparkRest.recoveredHoldSeconds", 600)));
+		return holds;
+	}
+
+	private static ScheduledTransfers schedules(AccountStorage storage, Transfer transfer) {
+		return new ScheduledTransfers(
+				storage,
+				transfer,
+				Long.getLong("sparkRest.scheduleTickMillis", 1000),
+				Integer.getInteger("sparkRest.scheduleThreads", Runtime.getRuntime().availableProcessors()),
+				Integer.getInteger("sparkRest.scheduleBatch", 1000),
+				Integer.getInteger("sparkRest.schedules", 1_000_000));
+	}
+
+	private static Transfer transfers(TransferLedger ledger) {
+		if ("partitioned".equals(System.getProperty("sparkRest.transfers")))
+			return new PartitionedTransfer(
+					Integer.getInteger("sparkRest.partitions", Runtime.getRuntime().availableProcessors()),
+					Integer.getInteger("sparkRest.partitionRing", 4096),
+					ledger);
+
+		return new OrderedLockTransfer(ledger);
 	}
-}
\ No newline at end of file
+}
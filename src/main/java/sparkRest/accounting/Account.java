@@ -1,18 +1,23 @@
 package sparkRest.accounting;
 
-import java.math.BigDecimal;
+import java.util.concurrent.locks.Lock;
 
 public interface Account {
 
 	String getId();
-	BigDecimal getBalance();
-	boolean block(BigDecimal amount, String operationId);
+	long getBalance();
+	boolean block(long amount, String operationId);
 	void unblock(String operationId);
 	void commitBlockedOperation(String operationId);
-	boolean add(BigDecimal amount);
+	boolean add(long amount);
 	void lock();
 	void unlock();
 	boolean isLocked();
-	BigDecimal getBlockedAmount();
+	long getBlockedAmount();
+	void forEachBlockedOperation(BlockedOperationConsumer consumer);
+	/* Held while several operations on the account have to appear as one; reentrant. Changes from other threads wait for it. */
+	Lock mutex();
 	boolean isEmpty();
+	/* Replaces the listener told about changes of the available amount or the locked state. */
+	void listen(AccountListener listener);
 }
\ No newline at end of file
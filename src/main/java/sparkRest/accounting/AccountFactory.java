@@ -0,0 +1,5 @@
+package sparkRest.accounting;
+
+public interface AccountFactory {
+	Account create(String id, long balance);
+}
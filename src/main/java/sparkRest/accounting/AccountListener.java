@@ -0,0 +1,10 @@
+package sparkRest.accounting;
+
+/*
+ * Told after the available amount or the locked state of an account changed.
+ * It may be told from any thread, with or without the account's mutex held,
+ * and should read the account rather than assume the order of the calls.
+ */
+public interface AccountListener {
+	void changed();
+}
@@ -0,0 +1,341 @@
+package sparkRest.accounting;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Lock-free account. The available amount, the locked flag and a count of
+ * in-flight two-word operations share one state word that is swapped with
+ * CAS; the blocked total lives in a second word. Block and unblock touch both
+ * words and bracket the change with the pending count, so a reader that needs
+ * both values (isEmpty) can tell whether it saw a consistent pair. They raise
+ * the blocked word before taking from available and give back to available
+ * before lowering it, so the sum add bounds by MAX_BALANCE never falls short
+ * of the money in the account. The mutex is never taken on the fast path;
+ * whoever holds it raises the exclusive bit in the state word, and a change
+ * from any other thread that meets the bit waits for the mutex first, so
+ * several operations under the mutex appear as one to every other caller.
+ * Every successful mutation ends with a call to a hook that subclasses may
+ * override, passed the available and blocked amounts the mutation left.
+ *
+ * state layout: | available (48 bits) | epoch (8 bits) | exclusive (1 bit) | pending (6 bits) | locked (1 bit) |
+ */
+public class AtomicAccount implements Account {
+	private static final long LOCKED = 1L;
+	private static final long PENDING_ONE = 1L << 1;
+	private static final long PENDING_MASK = 0x3FL << 1;
+	private static final long EXCLUSIVE = 1L << 7;
+	private static final long EPOCH_ONE = 1L << 8;
+	private static final long EPOCH_MASK = 0xFFL << 8;
+	private static final int AVAILABLE_SHIFT = 16;
+	private static final long FLAGS_MASK = (1L << AVAILABLE_SHIFT) - 1;
+
+	public static final long MAX_BALANCE = -1L >>> AVAILABLE_SHIFT;
+
+	private static final VarHandle STATE;
+	private static final VarHandle BLOCKED;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			STATE = lookup.findVarHandle(AtomicAccount.class, "state", long.class);
+			BLOCKED = lookup.findVarHandle(AtomicAccount.class, "blocked", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final String id;
+	private final ConcurrentHashMap<String, Long> holds = new ConcurrentHashMap<>();
+	private final Mutex mutex = new Mutex();
+	private volatile long state;
+	private volatile long blocked;
+	private final LongAdder blockedTotal;
+	private volatile AccountListener listener;
+
+	public AtomicAccount(String id, long balance) {
+		this(id, balance, null);
+	}
+
+	/* Keeps blockedTotal, unless it is null, in step with the amounts the account blocks. */
+	public AtomicAccount(String id, long balance, LongAdder blockedTotal) {
+		if (balance < 0 || balance > MAX_BALANCE)
+			throw new IllegalArgumentException("balance");
+
+		this.id = id;
+		this.state = balance << AVAILABLE_SHIFT;
+		this.blockedTotal = blockedTotal;
+	}
+
+	@Override
+	public String getId() {
+		return this.id;
+	}
+
+	@Override
+	public long getBalance() {
+		return available(this.state);
+	}
+
+	@Override
+	public boolean block(long amount, String operationId) {
+		if (amount <= 0 || amount > MAX_BALANCE) return false;
+		if (this.holds.containsKey(operationId)) return false;
+
+		var blocked = (long) BLOCKED.getAndAdd(this, amount) + amount;
+		if (!begin(-amount)) {
+			BLOCKED.getAndAdd(this, -amount);
+			return false;
+		}
+
+		if (this.holds.putIfAbsent(operationId, amount) != null) {
+			end(amount);
+			BLOCKED.getAndAdd(this, -amount);
+			return false;
+		}
+
+		var available = end(0);
+		blocked(amount);
+		changed();
+		afterBlock(amount, available, blocked);
+		return true;
+	}
+
+	@Override
+	public void unblock(String operationId) {
+		var amount = this.holds.remove(operationId);
+		if (null == amount) return;
+
+		begin(0);
+		var available = end(amount);
+		var blocked = (long) BLOCKED.getAndAdd(this, -amount) - amount;
+		blocked(-amount);
+		changed();
+		afterUnblock(amount, available, blocked);
+	}
+
+	@Override
+	public void commitBlockedOperation(String operationId) {
+		excluded(this.state);
+		var amount = this.holds.remove(operationId);
+		if (null == amount) return;
+
+		var blocked = (long) BLOCKED.getAndAdd(this, -amount) - amount;
+		blocked(-amount);
+		afterCommit(amount, available(this.state), blocked);
+	}
+
+	@Override
+	public boolean add(long amount) {
+		if (amount < 0) return false;
+
+		long available;
+		long blocked;
+		while (true) {
+			var current = this.state;
+			if (excluded(current)) continue;
+			if ((current & LOCKED) != 0) return false;
+			blocked = this.blocked;
+			if (amount > MAX_BALANCE - available(current) - blocked) return false;
+			available = available(current) + amount;
+			if (STATE.weakCompareAndSet(this, current, withAvailable(current, available))) break;
+		}
+		changed();
+		afterAdd(amount, available, blocked);
+		return true;
+	}
+
+	@Override
+	public void lock() {
+		long current;
+		do {
+			current = this.state;
+		} while (excluded(current) || !STATE.weakCompareAndSet(this, current, current | LOCKED));
+		changed();
+		afterLock(available(current), this.blocked);
+	}
+
+	@Override
+	public void unlock() {
+		long current;
+		do {
+			current = this.state;
+		} while (excluded(current) || !STATE.weakCompareAndSet(this, current, current & ~LOCKED));
+		changed();
+		afterUnlock(available(current), this.blocked);
+	}
+
+	@Override
+	public boolean isLocked() {
+		return (this.state & LOCKED) != 0;
+	}
+
+	@Override
+	public long getBlockedAmount() {
+		return this.blocked;
+	}
+
+	@Override
+	public void forEachBlockedOperation(BlockedOperationConsumer consumer) {
+		this.holds.forEach(consumer::accept);
+	}
+
+	@Override
+	public Lock mutex() {
+		return this.mutex;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		while (true) {
+			var before = this.state;
+			// a block or unblock in flight means the account holds money
+			if ((before & PENDING_MASK) != 0) return false;
+
+			var blocked = this.blocked;
+			if (before == this.state)
+				return available(before) + blocked == 0;
+		}
+	}
+
+	@Override
+	public void listen(AccountListener listener) {
+		this.listener = listener;
+	}
+
+	/*
+	 * Hooks run by the thread that made a mutation, right after it and
+	 * without the mutex, so those of concurrent mutations may run in another
+	 * order than the mutations took effect.
+	 */
+	protected void afterAdd(long amount, long available, long blocked) {
+	}
+
+	protected void afterBlock(long amount, long available, long blocked) {
+	}
+
+	protected void afterUnblock(long amount, long available, long blocked) {
+	}
+
+	protected void afterCommit(long amount, long available, long blocked) {
+	}
+
+	protected void afterLock(long available, long blocked) {
+	}
+
+	protected void afterUnlock(long available, long blocked) {
+	}
+
+	private void blocked(long amount) {
+		if (null != this.blockedTotal)
+			this.blockedTotal.add(amount);
+	}
+
+	private void changed() {
+		var listener = this.listener;
+		if (null != listener)
+			listener.changed();
+	}
+
+	private boolean begin(long delta) {
+		long current;
+		long next;
+		do {
+			current = this.state;
+			if (excluded(current)) continue;
+			if ((current & PENDING_MASK) == PENDING_MASK) {
+				Thread.onSpinWait();
+				continue;
+			}
+
+			var available = available(current) + delta;
+			if (available < 0) return false;
+
+			var epoch = ((current & EPOCH_MASK) + EPOCH_ONE) & EPOCH_MASK;
+			next = withAvailable((current & ~EPOCH_MASK) | epoch, available) + PENDING_ONE;
+			if (STATE.weakCompareAndSet(this, current, next)) return true;
+		} while (true);
+	}
+
+	/* Waits out another thread's hold of the mutex; true when the caller has to read the state again. */
+	private boolean excluded(long state) {
+		if ((state & EXCLUSIVE) == 0 || this.mutex.lock.isHeldByCurrentThread()) return false;
+
+		this.mutex.lock.lock();
+		this.mutex.lock.unlock();
+		return true;
+	}
+
+	/* Completes an operation begun before any exclusive bit was raised, so it never waits; returns the available amount it left. */
+	private long end(long delta) {
+		long current;
+		long available;
+		do {
+			current = this.state;
+			available = available(current) + delta;
+		} while (!STATE.weakCompareAndSet(this, current, withAvailable(current, available) - PENDING_ONE));
+		return available;
+	}
+
+	private static long available(long state) {
+		return state >>> AVAILABLE_SHIFT;
+	}
+
+	private static long withAvailable(long state, long available) {
+		return (available << AVAILABLE_SHIFT) | (state & FLAGS_MASK);
+	}
+
+	/* Raises the exclusive bit for as long as the outermost hold lasts. */
+	private final class Mutex implements Lock {
+		private final ReentrantLock lock = new ReentrantLock();
+
+		@Override
+		public void lock() {
+			this.lock.lock();
+			entered();
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			this.lock.lockInterruptibly();
+			entered();
+		}
+
+		@Override
+		public boolean tryLock() {
+			if (!this.lock.tryLock()) return false;
+			entered();
+			return true;
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			if (!this.lock.tryLock(time, unit)) return false;
+			entered();
+			return true;
+		}
+
+		@Override
+		public void unlock() {
+			if (this.lock.getHoldCount() == 1)
+				STATE.getAndBitwiseAnd(AtomicAccount.this, ~EXCLUSIVE);
+			this.lock.unlock();
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("newCondition");
+		}
+
+		private void entered() {
+			if (this.lock.getHoldCount() == 1)
+				STATE.getAndBitwiseOr(AtomicAccount.this, EXCLUSIVE);
+		}
+	}
+}
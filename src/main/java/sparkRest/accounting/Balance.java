@@ -1,76 +1,63 @@
 package sparkRest.accounting;
 
-import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
-
 public class Balance {
-	private BigDecimal available;
-	private Map<String, BigDecimal> blockedOperations;
-
-	public Balance(BigDecimal available) {
-		this(available, new HashMap<String, BigDecimal>());
-	}
+	private long available;
+	private final HoldTable blockedOperations;
 
-	private Balance(BigDecimal available, Map<String, BigDecimal> blockedOperations) {
+	public Balance(long available) {
 		this.available = available;
-		this.blockedOperations = blockedOperations;
+		this.blockedOperations = new HoldTable();
 	}
 	
-	public boolean canBlock(BigDecimal amount) {
-		return amount.compareTo(BigDecimal.ZERO) > 0 &&
-			this.available.subtract(amount).compareTo(BigDecimal.ZERO) >= 0;
+	public boolean canBlock(long amount) {
+		return amount > 0 && this.available - amount >= 0;
+	}
+
+	public boolean canAdd(long amount) {
+		return amount <= Long.MAX_VALUE - this.available - this.getBlockedAmount();
 	}
 
-	public Balance block(BigDecimal amount, String operationId) {
-		var newBlockedOperations = new HashMap<String, BigDecimal>(this.blockedOperations);
-		newBlockedOperations.put(operationId, amount);
-		return new Balance(
-				this.available.subtract(amount),
-				newBlockedOperations
-			);
+	public void block(long amount, String operationId) {
+		this.blockedOperations.put(operationId, amount);
+		this.available = Money.subtract(this.available, amount);
 	}
 
-	public BigDecimal current() {
+	public long current() {
 		return this.available;
 	}
 
 	public boolean hasBlockedOperation(String operationId) {
-		return this.blockedOperations.containsKey(operationId);
+		return this.blockedOperations.contains(operationId);
+	}
+
+	/* Returns the amount given back, 0 when nothing was blocked under id. */
+	public long unblock(String id) {
+		var amount = this.blockedOperations.remove(id);
+		if (amount == HoldTable.NOT_FOUND) return 0;
+
+		this.available = Money.add(this.available, amount);
+		return amount;
 	}
 
-	public Balance unblock(String id) {
-		var newBlockedOperations = new HashMap<String, BigDecimal>(this.blockedOperations);
-		var amount = newBlockedOperations.remove(id);
-		return new Balance(
-				this.available.add(amount),
-				newBlockedOperations);
+	public void add(long amount) {
+		this.available = Money.add(this.available, amount);
 	}
 
-	public Balance add(BigDecimal amount) {
-		var newBlockedOperations = new HashMap<String, BigDecimal>(this.blockedOperations);
-		return new Balance(
-				this.available.add(amount),
-				newBlockedOperations);
+	/* Returns the amount committed, 0 when nothing was blocked under operationId. */
+	public long commitBlockedOperation(String operationId) {
+		var amount = this.blockedOperations.remove(operationId);
+		return amount == HoldTable.NOT_FOUND ? 0 : amount;
 	}
 
-	public Balance commitBlockedOperation(String operationId) {
-		var newBlockedOperations = new HashMap<String, BigDecimal>(this.blockedOperations);
-		newBlockedOperations.remove(operationId);
-		return new Balance(
-				this.available,
-				newBlockedOperations);
+	public long getBlockedAmount() {
+		return this.blockedOperations.total();
 	}
 
-	public BigDecimal getBlockedAmount() {
-		var result = this.blockedOperations.values().stream().reduce((c1, c2) -> c1.add(c2));
-		
-		if (result.isPresent()) return result.get();
-		
-		return BigDecimal.ZERO;
+	public void forEachBlockedOperation(BlockedOperationConsumer consumer) {
+		this.blockedOperations.forEach(consumer);
 	}
 
 	public boolean isEmpty() {
-		return this.available.add(this.getBlockedAmount()).compareTo(BigDecimal.ZERO) == 0;
+		return Money.add(this.available, this.getBlockedAmount()) == 0;
 	}
 }
@@ -0,0 +1,5 @@
+package sparkRest.accounting;
+
+public interface BlockedOperationConsumer {
+	void accept(String operationId, long amount);
+}
@@ -0,0 +1,113 @@
+package sparkRest.accounting;
+
+/*
+ * Open-addressing (linear probing) map of operation id -> blocked amount with
+ * a running total. Removal shifts the following entries back, so there are no
+ * tombstones and lookups stay O(1) no matter how many holds came and went.
+ * Not thread safe - it is guarded by the owning account.
+ */
+class HoldTable {
+	private static final int MIN_CAPACITY = 4;
+	static final long NOT_FOUND = -1L;
+
+	private String[] operations;
+	private long[] amounts;
+	private int size;
+	private long total;
+
+	HoldTable() {
+		this.operations = new String[MIN_CAPACITY];
+		this.amounts = new long[MIN_CAPACITY];
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	long total() {
+		return this.total;
+	}
+
+	boolean contains(String operationId) {
+		return this.operations[indexOf(operationId)] != null;
+	}
+
+	void put(String operationId, long amount) {
+		var index = indexOf(operationId);
+		if (this.operations[index] != null) {
+			this.total = Money.add(Money.subtract(this.total, this.amounts[index]), amount);
+			this.amounts[index] = amount;
+			return;
+		}
+
+		this.total = Money.add(this.total, amount);
+		this.operations[index] = operationId;
+		this.amounts[index] = amount;
+		if (++this.size * 4 > this.operations.length * 3)
+			resize(this.operations.length * 2);
+	}
+
+	long remove(String operationId) {
+		var index = indexOf(operationId);
+		if (this.operations[index] == null) return NOT_FOUND;
+
+		var amount = this.amounts[index];
+		this.total = Money.subtract(this.total, amount);
+		this.size--;
+		shiftBack(index);
+		return amount;
+	}
+
+	void forEach(BlockedOperationConsumer consumer) {
+		for (int i = 0; i < this.operations.length; i++)
+			if (this.operations[i] != null)
+				consumer.accept(this.operations[i], this.amounts[i]);
+	}
+
+	private int indexOf(String operationId) {
+		var mask = this.operations.length - 1;
+		var index = slot(operationId, mask);
+		while (this.operations[index] != null && !this.operations[index].equals(operationId))
+			index = (index + 1) & mask;
+		return index;
+	}
+
+	private void shiftBack(int free) {
+		var mask = this.operations.length - 1;
+		var index = free;
+		while (true) {
+			index = (index + 1) & mask;
+			var operation = this.operations[index];
+			if (operation == null) break;
+
+			var home = slot(operation, mask);
+			// the entry may move back only if its home slot is not between the hole and itself
+			if (((index - home) & mask) >= ((index - free) & mask)) {
+				this.operations[free] = operation;
+				this.amounts[free] = this.amounts[index];
+				free = index;
+			}
+		}
+		this.operations[free] = null;
+		this.amounts[free] = 0L;
+	}
+
+	private void resize(int capacity) {
+		var oldOperations = this.operations;
+		var oldAmounts = this.amounts;
+		this.operations = new String[capacity];
+		this.amounts = new long[capacity];
+		for (int i = 0; i < oldOperations.length; i++) {
+			if (oldOperations[i] == null) continue;
+
+			var index = indexOf(oldOperations[i]);
+			this.operations[index] = oldOperations[i];
+			this.amounts[index] = oldAmounts[i];
+		}
+	}
+
+	private static int slot(String operationId, int mask) {
+		var hash = operationId.hashCode() * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+}
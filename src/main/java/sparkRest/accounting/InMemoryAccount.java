@@ -1,16 +1,26 @@
 package sparkRest.accounting;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class InMemoryAccount implements Account {
 	private String id;
-	private Balance balance;
-	private boolean locked = false;
+	private final Balance balance;
+	private volatile boolean locked = false;
+	private final ReentrantLock mutex = new ReentrantLock();
+	private final LongAdder blockedTotal;
+	private volatile AccountListener listener;
 	
-	public InMemoryAccount(String id, double balance) {
+	public InMemoryAccount(String id, long balance) {
+		this(id, balance, null);
+	}
+
+	/* Keeps blockedTotal, unless it is null, in step with the amounts the account blocks. */
+	public InMemoryAccount(String id, long balance, LongAdder blockedTotal) {
 		this.id = id;
-		this.balance = new Balance(normalize(new BigDecimal(balance)));
+		this.balance = new Balance(balance);
+		this.blockedTotal = blockedTotal;
 	}
 	
 	@Override
@@ -19,51 +29,81 @@ public class InMemoryAccount implements Account {
 	}
 
 	@Override
-	public synchronized void unblock(String operationId) {
-		if (!balance.hasBlockedOperation(operationId)) return;
-		
-		this.balance = this.balance.unblock(operationId);
+	public void unblock(String operationId) {
+		long amount;
+		this.mutex.lock();
+		try {
+			amount = this.balance.unblock(operationId);
+		} finally {
+			this.mutex.unlock();
+		}
+		blocked(-amount);
+		changed();
 	}
 
 	@Override
-	public synchronized boolean block(BigDecimal amount, String operationId) {
-		var newAmount = normalize(amount);
-		if(!this.balance.canBlock(newAmount)) return false;
-	
-		this.balance = this.balance.block(newAmount, operationId);
+	public boolean block(long amount, String operationId) {
+		this.mutex.lock();
+		try {
+			if(!this.balance.canBlock(amount)) return false;
+			if(this.balance.hasBlockedOperation(operationId)) return false;
+
+			this.balance.block(amount, operationId);
+		} finally {
+			this.mutex.unlock();
+		}
+		blocked(amount);
+		changed();
 		return true;
 	}
 	
 	@Override
-	public BigDecimal getBalance() {
-		return this.balance.current();
+	public long getBalance() {
+		this.mutex.lock();
+		try {
+			return this.balance.current();
+		} finally {
+			this.mutex.unlock();
+		}
 	}
 
 	@Override
-	public synchronized boolean add(BigDecimal amount) {
-		if (this.locked) return false;
-		
-		this.balance = this.balance.add(normalize(amount));
+	public boolean add(long amount) {
+		this.mutex.lock();
+		try {
+			if (this.locked) return false;
+			if (!this.balance.canAdd(amount)) return false;
+
+			this.balance.add(amount);
+		} finally {
+			this.mutex.unlock();
+		}
+		changed();
 		return true;
 	}
 
 	@Override
-	public synchronized void commitBlockedOperation(String operationId) {
-		this.balance = this.balance.commitBlockedOperation(operationId);
+	public void commitBlockedOperation(String operationId) {
+		long amount;
+		this.mutex.lock();
+		try {
+			amount = this.balance.commitBlockedOperation(operationId);
+		} finally {
+			this.mutex.unlock();
+		}
+		blocked(-amount);
 	}		
 	
 	@Override
 	public void lock() {
 		this.locked = true;
+		changed();
 	}
 
 	@Override
 	public void unlock() {
 		this.locked = false;
-	}
-
-	private BigDecimal normalize(BigDecimal amount) {
-		return amount.setScale(2, RoundingMode.HALF_EVEN);
+		changed();
 	}
 
 	@Override
@@ -72,13 +112,55 @@ public class InMemoryAccount implements Account {
 	}
 
 	@Override
-	public BigDecimal getBlockedAmount() {
-		return this.balance.getBlockedAmount();
+	public long getBlockedAmount() {
+		this.mutex.lock();
+		try {
+			return this.balance.getBlockedAmount();
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void forEachBlockedOperation(BlockedOperationConsumer consumer) {
+		this.mutex.lock();
+		try {
+			this.balance.forEachBlockedOperation(consumer);
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public Lock mutex() {
+		return this.mutex;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return this.balance.isEmpty();
+		this.mutex.lock();
+		try {
+			return this.balance.isEmpty();
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void listen(AccountListener listener) {
+		this.listener = listener;
+	}
+
+	private void blocked(long amount) {
+		if (null != this.blockedTotal && amount != 0)
+			this.blockedTotal.add(amount);
+	}
+
+	/* outside the mutex, so the listener can read other accounts without lock cycles */
+	private void changed() {
+		var listener = this.listener;
+		if (null != listener)
+			listener.changed();
 	}
 
 	public Object getSummary() {
@@ -0,0 +1,40 @@
+package sparkRest.accounting;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money is carried through the accounting layer as a primitive {@code long}
+ * number of minor units (cents). Conversions from and to {@link BigDecimal}
+ * happen only at the JSON boundary.
+ */
+public final class Money {
+	public static final int SCALE = 2;
+	/* minor units in one unit */
+	public static final long UNIT = 100L;
+	public static final long ZERO = 0L;
+
+	private Money() {
+	}
+
+	public static long of(BigDecimal amount) {
+		return amount.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+	}
+
+	/* Whole units, such as 10 for 10.00. */
+	public static long of(long units) {
+		return Math.multiplyExact(units, UNIT);
+	}
+
+	public static BigDecimal toDecimal(long amount) {
+		return BigDecimal.valueOf(amount, SCALE);
+	}
+
+	public static long add(long amount, long other) {
+		return Math.addExact(amount, other);
+	}
+
+	public static long subtract(long amount, long other) {
+		return Math.subtractExact(amount, other);
+	}
+}
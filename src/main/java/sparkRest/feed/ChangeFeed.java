@@ -0,0 +1,134 @@
+package sparkRest.feed;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Ring of the latest changes to accounts, every one numbered by a sequence
+ * that grows by one per change. Writers claim a sequence with one atomic
+ * increment and overwrite the oldest slot; they never wait for readers, so a
+ * reader that falls more than the capacity behind loses changes and is told
+ * which.
+ *
+ * A slot carries the sequence of the change in it. A writer turns it BUSY,
+ * stores the fields and then publishes its own sequence; a reader takes the
+ * fields only when it sees the sequence it wants both before and after
+ * reading them. A writer only waits on the writer of the same slot one turn
+ * earlier, which has claimed it a whole ring ago.
+ */
+public final class ChangeFeed {
+	public enum Type {
+		ADDED, BLOCKED, UNBLOCKED, COMMITTED, LOCKED, UNLOCKED
+	}
+
+	private static final Type[] TYPES = Type.values();
+	private static final long BUSY = Long.MIN_VALUE;
+	private static final int SPINS = 100;
+	private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final int mask;
+	private final long[] sequences;
+	private final byte[] types;
+	private final String[] accounts;
+	private final long[] amounts;
+	private final long[] available;
+	private final long[] blocked;
+	/* the sequence of the next change */
+	private final AtomicLong next = new AtomicLong();
+
+	/* capacity is rounded up to a power of two */
+	public ChangeFeed(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("capacity");
+
+		var size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = size - 1;
+		this.sequences = new long[size];
+		this.types = new byte[size];
+		this.accounts = new String[size];
+		this.amounts = new long[size];
+		this.available = new long[size];
+		this.blocked = new long[size];
+		/* as if the slots had been written one turn before the first */
+		for (int i = 0; i < size; i++)
+			this.sequences[i] = i - size;
+	}
+
+	/* Records a change of the account that left it with available and blocked; returns its sequence. */
+	public long publish(Type type, String accountId, long amount, long available, long blocked) {
+		var sequence = this.next.getAndIncrement();
+		var slot = (int) sequence & this.mask;
+		var previous = sequence - this.sequences.length;
+		/* the writer a turn ahead is short of a few stores, unless it was descheduled */
+		for (int spins = 0; !SEQUENCES.compareAndSet(this.sequences, slot, previous, BUSY); spins++)
+			if (spins < SPINS)
+				Thread.onSpinWait();
+			else
+				Thread.yield();
+		VarHandle.storeStoreFence();
+
+		this.types[slot] = (byte) type.ordinal();
+		this.accounts[slot] = accountId;
+		this.amounts[slot] = amount;
+		this.available[slot] = available;
+		this.blocked[slot] = blocked;
+		SEQUENCES.setRelease(this.sequences, slot, sequence);
+		return sequence;
+	}
+
+	/* The sequence the next change will get. */
+	public long next() {
+		return this.next.get();
+	}
+
+	/*
+	 * Visits the changes from the sequence from on, oldest first, until there
+	 * are no more or visitor returns false, and returns the sequence to go on
+	 * from. Changes overwritten before they were read are reported to visitor
+	 * as lost, once per gap. A change still being written ends the visit, to
+	 * be read by the next one.
+	 */
+	public long read(long from, Visitor visitor) {
+		if (from < 0)
+			throw new IllegalArgumentException("from");
+
+		var sequence = from;
+		while (true) {
+			var end = this.next.get();
+			if (sequence >= end) return sequence;
+
+			var oldest = end - this.sequences.length;
+			if (sequence < oldest) {
+				visitor.lost(sequence, oldest);
+				sequence = oldest;
+				continue;
+			}
+
+			var slot = (int) sequence & this.mask;
+			var before = (long) SEQUENCES.getAcquire(this.sequences, slot);
+			if (before == sequence) {
+				var type = TYPES[this.types[slot]];
+				var account = this.accounts[slot];
+				var amount = this.amounts[slot];
+				var available = this.available[slot];
+				var blocked = this.blocked[slot];
+				VarHandle.loadLoadFence();
+				if ((long) SEQUENCES.getOpaque(this.sequences, slot) == sequence) {
+					if (!visitor.visit(sequence, type, account, amount, available, blocked)) return sequence + 1;
+					sequence++;
+					continue;
+				}
+			}
+			/* not written yet when still in the ring; overwritten meanwhile otherwise, which the next round tells */
+			if (sequence >= this.next.get() - this.sequences.length) return sequence;
+		}
+	}
+
+	public interface Visitor {
+		boolean visit(long sequence, Type type, String accountId, long amount, long available, long blocked);
+
+		/* The changes from up to, but not including, to were overwritten before they were read. */
+		void lost(long from, long to);
+	}
+}
@@ -0,0 +1,153 @@
+package sparkRest.feed;
+
+import java.util.concurrent.locks.Lock;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.AccountFactory;
+import sparkRest.accounting.AccountListener;
+import sparkRest.accounting.BlockedOperationConsumer;
+import sparkRest.feed.ChangeFeed.Type;
+
+/*
+ * Publishes every successful mutation of the wrapped account to a change
+ * feed, together with the available and blocked amounts it left. The mutation
+ * and its publication happen under the account's mutex, so the changes of one
+ * account are in the feed in the order they were applied. Lock-free accounts
+ * publish through FeedAtomicAccount instead, which takes no mutex.
+ */
+public class FeedAccount implements Account {
+	private final Account account;
+	private final ChangeFeed feed;
+	private final Lock mutex;
+
+	public FeedAccount(Account account, ChangeFeed feed) {
+		this.account = account;
+		this.feed = feed;
+		this.mutex = account.mutex();
+	}
+
+	/* Makes the accounts of factory publish to feed. */
+	public static AccountFactory accounts(AccountFactory factory, ChangeFeed feed) {
+		return (id, balance) -> new FeedAccount(factory.create(id, balance), feed);
+	}
+
+	@Override
+	public String getId() {
+		return this.account.getId();
+	}
+
+	@Override
+	public long getBalance() {
+		return this.account.getBalance();
+	}
+
+	@Override
+	public boolean block(long amount, String operationId) {
+		this.mutex.lock();
+		try {
+			if (!this.account.block(amount, operationId)) return false;
+
+			publish(Type.BLOCKED, amount);
+			return true;
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unblock(String operationId) {
+		this.mutex.lock();
+		try {
+			var blocked = this.account.getBlockedAmount();
+			this.account.unblock(operationId);
+			if (blocked == this.account.getBlockedAmount()) return;
+
+			publish(Type.UNBLOCKED, blocked - this.account.getBlockedAmount());
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void commitBlockedOperation(String operationId) {
+		this.mutex.lock();
+		try {
+			var blocked = this.account.getBlockedAmount();
+			this.account.commitBlockedOperation(operationId);
+			if (blocked == this.account.getBlockedAmount()) return;
+
+			publish(Type.COMMITTED, blocked - this.account.getBlockedAmount());
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public boolean add(long amount) {
+		this.mutex.lock();
+		try {
+			if (!this.account.add(amount)) return false;
+
+			publish(Type.ADDED, amount);
+			return true;
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lock() {
+		this.mutex.lock();
+		try {
+			this.account.lock();
+			publish(Type.LOCKED, 0);
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unlock() {
+		this.mutex.lock();
+		try {
+			this.account.unlock();
+			publish(Type.UNLOCKED, 0);
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public boolean isLocked() {
+		return this.account.isLocked();
+	}
+
+	@Override
+	public long getBlockedAmount() {
+		return this.account.getBlockedAmount();
+	}
+
+	@Override
+	public void forEachBlockedOperation(BlockedOperationConsumer consumer) {
+		this.account.forEachBlockedOperation(consumer);
+	}
+
+	@Override
+	public Lock mutex() {
+		return this.mutex;
+	}
+
+	@Override
+	public void listen(AccountListener listener) {
+		this.account.listen(listener);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.account.isEmpty();
+	}
+
+	private void publish(Type type, long amount) {
+		this.feed.publish(type, getId(), amount, this.account.getBalance(), this.account.getBlockedAmount());
+	}
+}
@@ -0,0 +1,58 @@
+package sparkRest.feed;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import sparkRest.accounting.AccountFactory;
+import sparkRest.accounting.AtomicAccount;
+import sparkRest.feed.ChangeFeed.Type;
+
+/*
+ * Lock-free account that publishes every successful mutation to a change
+ * feed, with the available and blocked amounts the mutation itself computed.
+ * Unlike FeedAccount it never takes the mutex, so concurrent changes of one
+ * account may reach the feed in another order than they were applied; each
+ * still carries the amounts its own mutation left.
+ */
+public class FeedAtomicAccount extends AtomicAccount {
+	private final ChangeFeed feed;
+
+	public FeedAtomicAccount(String id, long balance, LongAdder blockedTotal, ChangeFeed feed) {
+		super(id, balance, blockedTotal);
+		this.feed = feed;
+	}
+
+	/* Atomic accounts that keep blockedTotal in step and publish to feed. */
+	public static AccountFactory accounts(LongAdder blockedTotal, ChangeFeed feed) {
+		return (id, balance) -> new FeedAtomicAccount(id, balance, blockedTotal, feed);
+	}
+
+	@Override
+	protected void afterAdd(long amount, long available, long blocked) {
+		this.feed.publish(Type.ADDED, getId(), amount, available, blocked);
+	}
+
+	@Override
+	protected void afterBlock(long amount, long available, long blocked) {
+		this.feed.publish(Type.BLOCKED, getId(), amount, available, blocked);
+	}
+
+	@Override
+	protected void afterUnblock(long amount, long available, long blocked) {
+		this.feed.publish(Type.UNBLOCKED, getId(), amount, available, blocked);
+	}
+
+	@Override
+	protected void afterCommit(long amount, long available, long blocked) {
+		this.feed.publish(Type.COMMITTED, getId(), amount, available, blocked);
+	}
+
+	@Override
+	protected void afterLock(long available, long blocked) {
+		this.feed.publish(Type.LOCKED, getId(), 0, available, blocked);
+	}
+
+	@Override
+	protected void afterUnlock(long available, long blocked) {
+		this.feed.publish(Type.UNLOCKED, getId(), 0, available, blocked);
+	}
+}
@@ -0,0 +1,81 @@
+package sparkRest.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Lock-free log-linear histogram of nanosecond latencies, in the spirit of
+ * HdrHistogram: every power of two is split into 8 linear sub-buckets, so a
+ * recorded value is off by at most 12.5%. Recording is one index computation
+ * and three atomic adds; values beyond 2^41 ns (about 36 minutes) share the
+ * last bucket.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+
+		this.counts.getAndIncrement(index(nanos));
+		this.count.increment();
+		this.sum.add(nanos);
+	}
+
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	public long getSum() {
+		return this.sum.sum();
+	}
+
+	/* Number of recorded values that are at most the given number of nanoseconds, rounded down to a bucket. */
+	public long countAtMost(long nanos) {
+		var total = 0L;
+		for (int i = 0; i < BUCKETS && upperBound(i) <= nanos; i++)
+			total += this.counts.get(i);
+		return total;
+	}
+
+	public long valueAtQuantile(double quantile) {
+		var total = 0L;
+		for (int i = 0; i < BUCKETS; i++)
+			total += this.counts.get(i);
+		if (total == 0) return 0;
+
+		var rank = Math.max(1, (long) Math.ceil(quantile * total));
+		var seen = 0L;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) return upperBound(i);
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+
+		var exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+
+		var shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/* The largest value that falls into the bucket. */
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+
+		var shift = index / SUB_BUCKETS - 1;
+		var subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1L) << shift) - 1;
+	}
+}
@@ -0,0 +1,140 @@
+package sparkRest.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import spark.Route;
+import sparkRest.transfers.TransferResult;
+import sparkRest.transfers.TransferResultCodes;
+
+/*
+ * Request latencies per route and status, transfer outcomes and gauges,
+ * rendered in the Prometheus text format. Everything on the request path is
+ * resolved when the routes are set up, so recording does not allocate.
+ */
+public class Metrics {
+	private static final double[] BUCKETS_SECONDS = {
+			0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01,
+			0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+	private static final String[] OUTCOMES = {
+			"success", "not_enough_resources", "destination_locked", "destination_not_found",
+			"amount_not_positive", "source_not_found", "rolled_back", "unavailable" };
+
+	private final Map<String, RouteMetrics> routes = new ConcurrentSkipListMap<>();
+	private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+	private final LongAdder[] transfers = new LongAdder[OUTCOMES.length];
+
+	public Metrics() {
+		for (int i = 0; i < this.transfers.length; i++)
+			this.transfers[i] = new LongAdder();
+	}
+
+	/* Wraps a route so every call is recorded under the route's name and the status it responded with. */
+	public Route timed(String name, Route route) {
+		var metrics = this.routes.computeIfAbsent(name, key -> new RouteMetrics());
+		return (req, res) -> {
+			var start = System.nanoTime();
+			try {
+				var body = route.handle(req, res);
+				metrics.histogram(res.status()).record(System.nanoTime() - start);
+				return body;
+			} catch (Exception | Error e) {
+				metrics.histogram(500).record(System.nanoTime() - start);
+				throw e;
+			}
+		};
+	}
+
+	public void transferred(TransferResult result) {
+		if (null == result) return;
+
+		var code = result.getCode();
+		if (code >= TransferResultCodes.Success && code < this.transfers.length)
+			this.transfers[code].increment();
+	}
+
+	public long transfers(int code) {
+		return this.transfers[code].sum();
+	}
+
+	public void gauge(String name, String help, LongSupplier value) {
+		this.gauges.put(name, new Gauge(help, value));
+	}
+
+	public LatencyHistogram histogram(String route, int status) {
+		var metrics = this.routes.get(route);
+		return null == metrics ? null : metrics.statuses.get(RouteMetrics.slot(status));
+	}
+
+	public String scrape() {
+		var out = new StringBuilder(4096);
+
+		out.append("# HELP sparkrest_http_request_duration_seconds Time spent in a route, by route and response status\n");
+		out.append("# TYPE sparkrest_http_request_duration_seconds histogram\n");
+		for (var route : this.routes.entrySet()) {
+			var statuses = route.getValue().statuses;
+			for (int slot = 0; slot < statuses.length(); slot++) {
+				var histogram = statuses.get(slot);
+				if (null == histogram) continue;
+
+				var labels = "route=\"" + route.getKey() + "\",status=\"" + (slot + RouteMetrics.FIRST_STATUS) + "\"";
+				for (var le : BUCKETS_SECONDS)
+					sample(out, "sparkrest_http_request_duration_seconds_bucket", labels + ",le=\"" + le + "\"", histogram.countAtMost((long) (le * 1e9)));
+				var count = histogram.getCount();
+				sample(out, "sparkrest_http_request_duration_seconds_bucket", labels + ",le=\"+Inf\"", count);
+				out.append("sparkrest_http_request_duration_seconds_sum{").append(labels).append("} ").append(histogram.getSum() / 1e9).append('\n');
+				sample(out, "sparkrest_http_request_duration_seconds_count", labels, count);
+			}
+		}
+
+		out.append("# HELP sparkrest_transfers_total Executed transfers by outcome\n");
+		out.append("# TYPE sparkrest_transfers_total counter\n");
+		for (int i = 0; i < OUTCOMES.length; i++)
+			sample(out, "sparkrest_transfers_total", "result=\"" + OUTCOMES[i] + "\"", this.transfers[i].sum());
+
+		for (var gauge : this.gauges.entrySet()) {
+			out.append("# HELP ").append(gauge.getKey()).append(' ').append(gauge.getValue().help).append('\n');
+			out.append("# TYPE ").append(gauge.getKey()).append(" gauge\n");
+			out.append(gauge.getKey()).append(' ').append(gauge.getValue().value.getAsLong()).append('\n');
+		}
+		return out.toString();
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, long value) {
+		out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+	}
+
+	private static class RouteMetrics {
+		static final int FIRST_STATUS = 100;
+		static final int LAST_STATUS = 599;
+
+		final AtomicReferenceArray<LatencyHistogram> statuses = new AtomicReferenceArray<>(LAST_STATUS - FIRST_STATUS + 1);
+
+		LatencyHistogram histogram(int status) {
+			var slot = slot(status);
+			var histogram = this.statuses.get(slot);
+			if (null != histogram) return histogram;
+
+			this.statuses.compareAndSet(slot, null, new LatencyHistogram());
+			return this.statuses.get(slot);
+		}
+
+		static int slot(int status) {
+			if (status < FIRST_STATUS || status > LAST_STATUS) status = 500;
+			return status - FIRST_STATUS;
+		}
+	}
+
+	private static class Gauge {
+		final String help;
+		final LongSupplier value;
+
+		Gauge(String help, LongSupplier value) {
+			this.help = help;
+			this.value = value;
+		}
+	}
+}
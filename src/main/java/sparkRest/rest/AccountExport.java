@@ -0,0 +1,63 @@
+package sparkRest.rest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import sparkRest.accounting.Money;
+import sparkRest.storage.AccountStorage;
+
+/*
+ * Streams every account of a storage as one line each, NDJSON in the members
+ * of AccountSummary or CSV with an id,available,blocked,locked header, both
+ * of which an import reads back. Accounts are written while the storage is
+ * walked, so an export holds nothing but the output buffer; it is weakly
+ * consistent, like the walk.
+ */
+final class AccountExport {
+
+	private AccountExport() {
+	}
+
+	static void ndjson(AccountStorage storage, OutputStream stream) throws IOException {
+		var out = JsonOutput.to(stream);
+		try {
+			storage.forEach(account -> {
+				try {
+					JsonCodecs.write(out, AccountSummary.summary(account));
+					out.newline();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		out.flush();
+	}
+
+	static void csv(AccountStorage storage, OutputStream stream) throws IOException {
+		var out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.US_ASCII), 8 * 1024);
+		out.write("id,available,blocked,locked\n");
+		try {
+			storage.forEach(account -> {
+				try {
+					out.write(account.getId());
+					out.write(',');
+					out.write(Money.toDecimal(account.getBalance()).toPlainString());
+					out.write(',');
+					out.write(Money.toDecimal(account.getBlockedAmount()).toPlainString());
+					out.write(account.isLocked() ? ",true\n" : ",false\n");
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		out.flush();
+	}
+}
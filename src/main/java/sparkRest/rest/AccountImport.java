@@ -0,0 +1,314 @@
+package sparkRest.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.Money;
+import sparkRest.storage.AccountIds;
+import sparkRest.storage.AccountStorage;
+
+/*
+ * Creates the accounts of a bulk import, one per line of NDJSON or CSV. The
+ * body is read in blocks cut at line ends, and every block is parsed and
+ * stored by one of a fixed set of workers while the next ones are read. At
+ * most two blocks per worker are in flight, so however long the body, an
+ * import holds a few blocks and a bounded number of the rejections it reports.
+ *
+ * Every line stands alone: a line that does not parse, names an id that
+ * exists already or holds a negative amount is rejected and the others are
+ * still created. An account's blocked amount is imported as available, since
+ * the holds it stood for do not come along.
+ */
+final class AccountImport {
+	enum Format {
+		NDJSON, CSV
+	}
+
+	static final int BLOCK = 64 * 1024;
+	static final int MAX_REJECTIONS = 100;
+	private static final byte[] CSV_HEADER = "id,".getBytes(StandardCharsets.US_ASCII);
+
+	private final ExecutorService workers;
+	private final int threads;
+
+	AccountImport(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads");
+
+		var started = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(threads, task -> {
+			var thread = new Thread(task, "account-import-" + started.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.threads = threads;
+	}
+
+	/* Lets the workers go once the runs in progress are done. */
+	void close() {
+		this.workers.shutdown();
+	}
+
+	Result run(InputStream in, Format format, AccountStorage storage) throws IOException {
+		var run = new Run(format, storage);
+		var inFlight = new Semaphore(2 * this.threads);
+		var buffer = new byte[BLOCK];
+		var filled = 0;
+		var line = 1L;
+		var skipping = false;
+		try {
+			while (true) {
+				var read = in.read(buffer, filled, buffer.length - filled);
+				if (read < 0) break;
+
+				filled += read;
+				var cut = lastLineEnd(buffer, filled);
+				if (cut < 0) {
+					if (filled < buffer.length) continue;
+
+					/* a line longer than a block: rejected, and skipped up to its end */
+					if (!skipping) run.reject(line, "line too long");
+					skipping = true;
+					filled = 0;
+					continue;
+				}
+
+				var start = 0;
+				if (skipping) {
+					start = nextLineEnd(buffer, 0) + 1;
+					line++;
+					skipping = false;
+				}
+				if (start < cut)
+					submit(run, inFlight, Arrays.copyOfRange(buffer, start, cut), line);
+				line += lines(buffer, start, cut);
+				filled -= cut;
+				System.arraycopy(buffer, cut, buffer, 0, filled);
+			}
+			if (filled > 0 && !skipping)
+				submit(run, inFlight, Arrays.copyOf(buffer, filled), line);
+		} finally {
+			/* every block is done once all permits are back */
+			inFlight.acquireUninterruptibly(2 * this.threads);
+		}
+		return run.result();
+	}
+
+	private void submit(Run run, Semaphore inFlight, byte[] block, long firstLine) {
+		inFlight.acquireUninterruptibly();
+		try {
+			this.workers.execute(() -> {
+				try {
+					run.block(block, firstLine);
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	/* The index just behind the last '\n', or -1 when there is none. */
+	private static int lastLineEnd(byte[] bytes, int length) {
+		for (int i = length - 1; i >= 0; i--)
+			if (bytes[i] == '\n') return i + 1;
+		return -1;
+	}
+
+	private static int nextLineEnd(byte[] bytes, int from) {
+		var i = from;
+		while (bytes[i] != '\n')
+			i++;
+		return i;
+	}
+
+	private static long lines(byte[] bytes, int from, int to) {
+		var lines = 0L;
+		for (int i = from; i < to; i++)
+			if (bytes[i] == '\n') lines++;
+		return lines;
+	}
+
+	/* The state of one import, shared by the workers of its blocks. */
+	private static final class Run {
+		private final Format format;
+		private final AccountStorage storage;
+		private final LongAdder imported = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final ConcurrentLinkedQueue<Rejection> rejections = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger reported = new AtomicInteger();
+
+		Run(Format format, AccountStorage storage) {
+			this.format = format;
+			this.storage = storage;
+		}
+
+		void block(byte[] block, long firstLine) {
+			var line = firstLine;
+			for (int start = 0; start < block.length; line++) {
+				var end = start;
+				while (end < block.length && block[end] != '\n')
+					end++;
+				var next = end + 1;
+				if (end > start && block[end - 1] == '\r') end--;
+				if (end > start && !(this.format == Format.CSV && line == 1 && startsWith(block, start, end, CSV_HEADER)))
+					line(block, start, end, line);
+				start = next;
+			}
+		}
+
+		void reject(long line, String reason) {
+			this.rejected.increment();
+			if (this.reported.getAndIncrement() < MAX_REJECTIONS)
+				this.rejections.add(new Rejection(line, reason));
+		}
+
+		Result result() {
+			var rejections = new ArrayList<>(this.rejections);
+			rejections.sort(Comparator.comparingLong(Rejection::getLine));
+			return new Result(this.imported.sum(), this.rejected.sum(), rejections);
+		}
+
+		private void line(byte[] block, int start, int end, long line) {
+			AccountRow row;
+			try {
+				row = this.format == Format.CSV ? csv(block, start, end) : json(block, start, end);
+			} catch (IOException | RuntimeException e) {
+				row = null;
+			}
+			if (null == row) {
+				reject(line, "malformed");
+				return;
+			}
+
+			String reason;
+			try {
+				reason = create(row);
+			} catch (IllegalArgumentException e) {
+				/* a balance the storage's accounts cannot hold */
+				reason = "amount out of range";
+			}
+			if (null == reason)
+				this.imported.increment();
+			else
+				reject(line, reason);
+		}
+
+		/* Null once the account is there, or why it is not. */
+		private String create(AccountRow row) {
+			if (row.getAvailable() < 0 || row.getBlocked() < 0) return "negative amount";
+
+			var balance = row.getAvailable() + row.getBlocked();
+			if (balance < 0) return "amount out of range";
+
+			var id = row.getId();
+			Account account;
+			if (null == id) {
+				account = this.storage.get(this.storage.newAccount(new NewAccountRequest(balance)));
+			} else {
+				if (!AccountIds.isValid(id)) return "invalid id";
+
+				/* not restore, which would replace an account of the id another line created meanwhile */
+				account = this.storage.create(id, balance);
+				if (null == account) return "account exists";
+			}
+			if (row.isLocked())
+				account.lock();
+			return null;
+		}
+
+		private static AccountRow json(byte[] block, int start, int end) throws IOException {
+			return JsonCodecs.readAccountRow(JsonInput.from(new ByteArrayInputStream(block, start, end - start)));
+		}
+
+		/* id,available[,blocked[,locked]], with an empty id for a new one */
+		private static AccountRow csv(byte[] block, int start, int end) {
+			var fields = new String(block, start, end - start, StandardCharsets.UTF_8).split(",", -1);
+			if (fields.length < 2 || fields.length > 4) return null;
+
+			var row = new AccountRow();
+			var id = fields[0].trim();
+			row.setId(id.isEmpty() ? null : id);
+			row.setAvailable(amount(fields[1]));
+			if (fields.length > 2)
+				row.setBlocked(amount(fields[2]));
+			if (fields.length > 3) {
+				var locked = fields[3].trim();
+				if (!"true".equals(locked) && !"false".equals(locked)) return null;
+				row.setLocked("true".equals(locked));
+			}
+			return row;
+		}
+
+		/* Exact at the money scale, or an ArithmeticException. */
+		private static long amount(String field) {
+			return new BigDecimal(field.trim()).setScale(Money.SCALE).unscaledValue().longValueExact();
+		}
+
+		private static boolean startsWith(byte[] block, int start, int end, byte[] prefix) {
+			if (end - start < prefix.length) return false;
+			for (int i = 0; i < prefix.length; i++)
+				if (block[start + i] != prefix[i]) return false;
+			return true;
+		}
+	}
+
+	public static final class Result {
+		private final long imported;
+		private final long rejected;
+		private final List<Rejection> rejections;
+
+		Result(long imported, long rejected, List<Rejection> rejections) {
+			this.imported = imported;
+			this.rejected = rejected;
+			this.rejections = rejections;
+		}
+
+		public long getImported() {
+			return imported;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		/* Up to MAX_REJECTIONS of the rejected lines, by line; with more, not necessarily the earliest. */
+		public List<Rejection> getRejections() {
+			return rejections;
+		}
+	}
+
+	public static final class Rejection {
+		private final long line;
+		private final String reason;
+
+		Rejection(long line, String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package sparkRest.rest;
+
+import static sparkRest.rest.AccountSummary.summary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Predicate;
+
+import sparkRest.accounting.Account;
+
+/*
+ * Writes the accounts of a page as they are visited, and only starts the
+ * response with the first of them or the end, so a walk that fails before
+ * that can still answer with an error status.
+ */
+final class AccountPage implements Predicate<Account> {
+	private final JsonOutput out;
+	private final int limit;
+	private final Runnable start;
+	private boolean started;
+	private int listed;
+
+	AccountPage(JsonOutput out, int limit, Runnable start) {
+		this.out = out;
+		this.limit = limit;
+		this.start = start;
+	}
+
+	/* Lists the account; false once the page is full. */
+	@Override
+	public boolean test(Account account) {
+		try {
+			begin();
+			JsonCodecs.write(this.out, summary(account));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return ++this.listed < this.limit;
+	}
+
+	void end(String next) throws IOException {
+		begin();
+		this.out.endArray();
+		if (null != next)
+			this.out.name(JsonCodecs.NEXT).value(next);
+		this.out.endObject();
+		this.out.flush();
+	}
+
+	private void begin() throws IOException {
+		if (this.started) return;
+
+		this.started = true;
+		this.start.run();
+		this.out.beginObject();
+		this.out.name(JsonCodecs.ACCOUNTS).beginArray();
+	}
+}
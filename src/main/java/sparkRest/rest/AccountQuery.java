@@ -0,0 +1,111 @@
+package sparkRest.rest;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.function.Predicate;
+
+import spark.Request;
+import sparkRest.accounting.Account;
+import sparkRest.accounting.Money;
+import sparkRest.storage.AccountStorage;
+
+/*
+ * Parameters of GET /accounts: the page starts at cursor and holds up to limit
+ * accounts that pass the locked and balance filters. Balances are compared to
+ * the available amount and, like amounts in bodies, read exactly.
+ *
+ * The storage is walked through the index that suits the filters best: the
+ * locked accounts, which are few, through the locked bitmap; accounts in a
+ * balance range through the amount index, by amount; all others in storage
+ * order. The cursor belongs to the walk that made it.
+ */
+final class AccountQuery implements Predicate<Account> {
+	static final int DEFAULT_LIMIT = 100;
+	static final int MAX_LIMIT = 1_000;
+
+	final int limit;
+	private final String cursor;
+	private final long position;
+	private final Boolean locked;
+	private final long minBalance;
+	private final long maxBalance;
+
+	private AccountQuery(String cursor, long position, int limit, Boolean locked, long minBalance, long maxBalance) {
+		this.cursor = cursor;
+		this.position = position;
+		this.limit = limit;
+		this.locked = locked;
+		this.minBalance = minBalance;
+		this.maxBalance = maxBalance;
+	}
+
+	/* Null when a parameter is malformed or out of range; a balance cursor is left for the storage to check. */
+	static AccountQuery parse(Request req) {
+		try {
+			var cursor = req.queryParams("cursor");
+			var limit = Integer.parseInt(param(req, "limit", String.valueOf(DEFAULT_LIMIT)));
+			var locked = flag(req.queryParams("locked"));
+			var minBalance = amount(req.queryParams("minBalance"), Long.MIN_VALUE);
+			var maxBalance = amount(req.queryParams("maxBalance"), Long.MAX_VALUE);
+			if (limit < 1 || limit > MAX_LIMIT || minBalance > maxBalance)
+				return null;
+			if (null == locked && null != req.queryParams("locked"))
+				return null;
+
+			var query = new AccountQuery(cursor, 0, limit, locked, minBalance, maxBalance);
+			if (query.byBalance() || null == cursor) return query;
+
+			var position = Long.parseLong(cursor);
+			return position < 0 ? null : new AccountQuery(cursor, position, limit, locked, minBalance, maxBalance);
+		} catch (NumberFormatException | ArithmeticException e) {
+			return null;
+		}
+	}
+
+	/* Visits the accounts that pass the filters until action returns false; returns the next cursor or null. */
+	String walk(AccountStorage storage, Predicate<Account> action) {
+		Predicate<Account> filtered = account -> !test(account) || action.test(account);
+		if (Boolean.TRUE.equals(this.locked))
+			return next(storage.forEachLocked(this.position, filtered));
+		if (byBalance())
+			return storage.forEachByBalance(this.cursor, this.minBalance, this.maxBalance, filtered);
+		return next(storage.forEach(this.position, filtered));
+	}
+
+	@Override
+	public boolean test(Account account) {
+		if (null != this.locked && account.isLocked() != this.locked) return false;
+
+		var balance = account.getBalance();
+		return balance >= this.minBalance && balance <= this.maxBalance;
+	}
+
+	private boolean byBalance() {
+		return !Boolean.TRUE.equals(this.locked) && (this.minBalance != Long.MIN_VALUE || this.maxBalance != Long.MAX_VALUE);
+	}
+
+	private static String next(long cursor) {
+		return cursor == AccountStorage.END ? null : Long.toString(cursor);
+	}
+
+	private static String param(Request req, String name, String missing) {
+		var value = req.queryParams(name);
+		return null == value ? missing : value;
+	}
+
+	private static Boolean flag(String value) {
+		if ("true".equals(value)) return Boolean.TRUE;
+		if ("false".equals(value)) return Boolean.FALSE;
+		return null;
+	}
+
+	private static long amount(String value, long missing) {
+		if (null == value) return missing;
+
+		var amount = new BigDecimal(value);
+		/* no long has more integer digits; keeps 1e999999999 from being scaled */
+		if (amount.precision() - amount.scale() > 19)
+			throw new ArithmeticException("amount");
+		return amount.setScale(Money.SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+	}
+}
@@ -0,0 +1,42 @@
+package sparkRest.rest;
+
+/* One account of a bulk import or export, in the columns of AccountSummary. */
+public class AccountRow {
+	/* null for an account to be given a new id */
+	private String id;
+	private long available;
+	private long blocked;
+	private boolean locked;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public long getAvailable() {
+		return available;
+	}
+
+	public void setAvailable(long available) {
+		this.available = available;
+	}
+
+	public long getBlocked() {
+		return blocked;
+	}
+
+	public void setBlocked(long blocked) {
+		this.blocked = blocked;
+	}
+
+	public boolean isLocked() {
+		return locked;
+	}
+
+	public void setLocked(boolean locked) {
+		this.locked = locked;
+	}
+}
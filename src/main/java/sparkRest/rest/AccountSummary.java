@@ -1,13 +1,15 @@
 package sparkRest.rest;
 
-import java.math.BigDecimal;
+import com.google.gson.annotations.JsonAdapter;
 
 import sparkRest.accounting.Account;
 
 public class AccountSummary {
 	String id;
-	BigDecimal available;
-	BigDecimal blocked;
+	@JsonAdapter(MoneyAdapter.class)
+	long available;
+	@JsonAdapter(MoneyAdapter.class)
+	long blocked;
 	boolean isLocked;
 	
 	private AccountSummary(Account account) {
@@ -20,10 +22,10 @@ public class AccountSummary {
 	public String getId() {
 		return id;
 	}
-	public BigDecimal getAvailable() {
+	public long getAvailable() {
 		return available;
 	}
-	public BigDecimal getBlocked() {
+	public long getBlocked() {
 		return blocked;
 	}
 	public boolean isLocked() {
@@ -38,8 +40,8 @@ public class AccountSummary {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((available == null) ? 0 : available.hashCode());
-		result = prime * result + ((blocked == null) ? 0 : blocked.hashCode());
+		result = prime * result + (int) (available ^ (available >>> 32));
+		result = prime * result + (int) (blocked ^ (blocked >>> 32));
 		result = prime * result + ((id == null) ? 0 : id.hashCode());
 		result = prime * result + (isLocked ? 1231 : 1237);
 		return result;
@@ -54,15 +56,9 @@ public class AccountSummary {
 		if (getClass() != obj.getClass())
 			return false;
 		AccountSummary other = (AccountSummary) obj;
-		if (available == null) {
-			if (other.available != null)
-				return false;
-		} else if (!available.equals(other.available))
+		if (available != other.available)
 			return false;
-		if (blocked == null) {
-			if (other.blocked != null)
-				return false;
-		} else if (!blocked.equals(other.blocked))
+		if (blocked != other.blocked)
 			return false;
 		if (id == null) {
 			if (other.id != null)
@@ -8,50 +8,136 @@ import static spark.Spark.post;
 import static spark.Spark.put;
 import static sparkRest.rest.AccountSummary.summary;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
-
-import com.google.gson.Gson;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import spark.Request;
 import spark.Response;
+import spark.Route;
 import spark.RouteGroup;
 import sparkRest.accounting.Account;
+import sparkRest.feed.ChangeFeed;
+import sparkRest.metrics.Metrics;
 import sparkRest.storage.AccountStorage;
+import sparkRest.transfers.Holds;
+import sparkRest.transfers.Payout;
+import sparkRest.transfers.RecentOperations;
+import sparkRest.transfers.ReusedKeyException;
+import sparkRest.transfers.ScheduledTransfers;
 import sparkRest.transfers.Transfer;
+import sparkRest.transfers.TransferBatch;
+import sparkRest.transfers.TransferLedger;
+import sparkRest.transfers.TransferPipeline;
 import sparkRest.transfers.TransferRequest;
-
-public class AccountsController {
+import sparkRest.transfers.TransferResult;
+
+public class AccountsController implements AutoCloseable {
+	static final int MAX_BATCH = 10_000;
+	static final int MAX_ATOMIC_BATCH = 1_000;
+	static final int MAX_IDEMPOTENCY_KEY = 255;
+	static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	static final long DEFAULT_HOLD_SECONDS = 600;
+	static final long MAX_HOLD_SECONDS = TimeUnit.DAYS.toSeconds(7);
+	static final long MAX_INTERVAL_SECONDS = TimeUnit.DAYS.toSeconds(366);
+	static final int MAX_FEED_SUBSCRIBERS = 100;
+	static final long FEED_POLL_MILLIS = 50;
+	static final long FEED_HEARTBEAT_MILLIS = 15_000;
 
 	private AccountStorage storage;
-	private Gson gson = new Gson();
 	private Transfer transfer;
+	private RecentOperations<TransferResult> recentTransfers;
+	private TransferLedger ledger;
+	private TransferPipeline pipeline;
+	private Holds holds;
+	private ScheduledTransfers schedules;
+	private ChangeFeed feed;
+	private Semaphore subscribers = new Semaphore(MAX_FEED_SUBSCRIBERS);
+	private Metrics metrics;
+	private AccountImport imports = new AccountImport(Runtime.getRuntime().availableProcessors());
 
 	public AccountsController(AccountStorage storage, Transfer transfer) {
+		this(storage, transfer, new RecentOperations<>(100_000, 1, TimeUnit.HOURS, TransferResult::isSuccess), new TransferLedger(), new TransferPipeline(1, 1_000, 100_000), new Holds(transfer, 100), new ScheduledTransfers(storage, transfer, 1_000, 1, 1_000, 100_000), null, new Metrics());
+	}
+
+	/*
+	 * ledger is the one transfer records into; it answers the history of the
+	 * accounts, or 404 when it is null. feed is the one the accounts publish
+	 * to; /feed answers 404 when it is null.
+	 */
+	public AccountsController(AccountStorage storage, Transfer transfer, RecentOperations<TransferResult> recentTransfers, TransferLedger ledger, TransferPipeline pipeline, Holds holds, ScheduledTransfers schedules, ChangeFeed feed, Metrics metrics) {
 		if (null == storage)
 			throw new IllegalArgumentException("storage");
 		if (null == transfer)
 			throw new IllegalArgumentException("transfer");
+		if (null == recentTransfers)
+			throw new IllegalArgumentException("recentTransfers");
+		if (null == pipeline)
+			throw new IllegalArgumentException("pipeline");
+		if (null == holds)
+			throw new IllegalArgumentException("holds");
+		if (null == schedules)
+			throw new IllegalArgumentException("schedules");
+		if (null == metrics)
+			throw new IllegalArgumentException("metrics");
 
 		this.storage = storage;
 		this.transfer = transfer;
+		this.recentTransfers = recentTransfers;
+		this.ledger = ledger;
+		this.pipeline = pipeline;
+		this.holds = holds;
+		this.schedules = schedules;
+		this.feed = feed;
+		this.metrics = metrics;
+	}
+
+	/* Stops the threads of the async pipeline, holds, schedules and imports the routes run on. */
+	@Override
+	public void close() {
+		this.pipeline.close();
+		this.holds.close();
+		this.schedules.close();
+		this.imports.close();
 	}
 
 	public RouteGroup setupRoutes() {
 		return () -> {
+			post("/transfers", metrics.timed("POST /transfers", this::transferBatch));
+			/* not timed: a stream lasts as long as its subscriber */
+			get("/feed", this::feed);
+			get("/operations/:operationId", metrics.timed("GET /operations/:operationId", json(this::getOperation)));
 			path("/accounts", () -> {
 				before((req, res) -> {
 					String path = req.pathInfo();
 					if (path.endsWith("/"))
 						res.redirect(path.substring(0, path.length() - 1));
 				});
-				post("", this::createAccount);
+				get("", metrics.timed("GET /accounts", this::listAccounts));
+				post("", metrics.timed("POST /accounts", durable(this::createAccount)));
+				/* before the account routes, though neither is an account id */
+				post("/import", metrics.timed("POST /accounts/import", json(durable(this::importAccounts))));
+				get("/export", metrics.timed("GET /accounts/export", this::exportAccounts));
 				path("/:accountId", () -> {
-					get("", this::getAccountById, gson::toJson);
-					delete("", this::deleteAccount);
-					get("/state", this::getAccountState, gson::toJson);
-					put("/state", this::setAccountState, gson::toJson);
-					post("/transfers", this::transfer, gson::toJson);
+					get("", metrics.timed("GET /accounts/:accountId", json(this::getAccountById)));
+					delete("", metrics.timed("DELETE /accounts/:accountId", durable(this::deleteAccount)));
+					get("/state", metrics.timed("GET /accounts/:accountId/state", json(this::getAccountState)));
+					put("/state", metrics.timed("PUT /accounts/:accountId/state", json(durable(this::setAccountState))));
+					get("/transfers", metrics.timed("GET /accounts/:accountId/transfers", this::listTransfers));
+					post("/transfers", metrics.timed("POST /accounts/:accountId/transfers", json(this::transfer)));
+					post("/payouts", metrics.timed("POST /accounts/:accountId/payouts", this::payout));
+					post("/holds", metrics.timed("POST /accounts/:accountId/holds", json(durable(this::placeHold))));
+					get("/holds/:holdId", metrics.timed("GET /accounts/:accountId/holds/:holdId", json(this::getHold)));
+					delete("/holds/:holdId", metrics.timed("DELETE /accounts/:accountId/holds/:holdId", durable(this::releaseHold)));
+					post("/schedules", metrics.timed("POST /accounts/:accountId/schedules", json(this::scheduleTransfer)));
+					get("/schedules/:scheduleId", metrics.timed("GET /accounts/:accountId/schedules/:scheduleId", json(this::getSchedule)));
+					delete("/schedules/:scheduleId", metrics.timed("DELETE /accounts/:accountId/schedules/:scheduleId", this::cancelSchedule));
+					post("/holds/:holdId/capture", metrics.timed("POST /accounts/:accountId/holds/:holdId/capture", json(durable(this::captureHold))));
 				});
 			});
 		};
@@ -63,7 +149,63 @@ public class AccountsController {
 		if (null == request)
 			return this.badRequest(res);
 
-		return created(res, req.uri() + "/" + storage.newAccount(request));
+		String id;
+		try {
+			id = storage.newAccount(request);
+		} catch (IllegalArgumentException e) {
+			/* an opening amount out of the range of the storage's accounts */
+			return badRequest(res);
+		}
+		return created(res, req.uri() + "/" + id);
+	}
+
+	/*
+	 * Streams one page of accounts as {"accounts":[...],"next":"..."} while
+	 * walking the storage from the cursor, until limit accounts passed the
+	 * filters; next is left out after the last page.
+	 */
+	public Object listAccounts(Request req, Response res) throws IOException {
+		var query = AccountQuery.parse(req);
+
+		if (null == query) return badRequest(res);
+
+		var page = new AccountPage(JsonOutput.to(res.raw().getOutputStream()), query.limit, () -> ok(res));
+		String next;
+		try {
+			next = query.walk(storage, page);
+		} catch (IllegalArgumentException e) {
+			/* a cursor of another walk; storages check it before the first account */
+			return badRequest(res);
+		}
+		page.end(next);
+		return "";
+	}
+
+	/*
+	 * Creates an account from every line of the body, NDJSON unless it is
+	 * sent as text/csv, and answers how many were imported and which lines
+	 * were rejected why.
+	 */
+	public Object importAccounts(Request req, Response res) throws IOException {
+		var format = isCsv(req.contentType()) ? AccountImport.Format.CSV : AccountImport.Format.NDJSON;
+
+		return this.ok(res, imports.run(req.raw().getInputStream(), format, storage));
+	}
+
+	/* Streams every account as a line of NDJSON, or of CSV when that is what the request accepts. */
+	public Object exportAccounts(Request req, Response res) throws IOException {
+		var csv = isCsv(req.headers("Accept"));
+		res.status(200);
+		res.type(csv ? "text/csv" : "application/x-ndjson");
+		if (csv)
+			AccountExport.csv(storage, res.raw().getOutputStream());
+		else
+			AccountExport.ndjson(storage, res.raw().getOutputStream());
+		return "";
+	}
+
+	private static boolean isCsv(String mediaType) {
+		return null != mediaType && mediaType.contains("text/csv");
 	}
 
 	public Object getAccountById(Request req, Response res) {
@@ -81,9 +223,36 @@ public class AccountsController {
 		
 		if (!storage.remove(id)) return conflict(res);
 
+		if (null != ledger)
+			ledger.forget(id);
 		return ok(res);
 	}
 
+	/* Streams one page of the account's transfer history, newest first, from the cursor. */
+	public Object listTransfers(Request req, Response res) throws IOException {
+		var id = req.params(":accountId");
+
+		if (null == ledger || !storage.has(id)) return notFound(res);
+
+		long cursor;
+		int limit;
+		try {
+			var from = req.queryParams("cursor");
+			var size = req.queryParams("limit");
+			cursor = null == from ? TransferLedger.LATEST : Long.parseLong(from);
+			limit = null == size ? AccountQuery.DEFAULT_LIMIT : Integer.parseInt(size);
+		} catch (NumberFormatException e) {
+			return badRequest(res);
+		}
+
+		if (cursor < 0 || limit < 1 || limit > AccountQuery.MAX_LIMIT) return badRequest(res);
+
+		ok(res);
+		var page = new TransferPage(JsonOutput.to(res.raw().getOutputStream()), limit);
+		page.end(ledger.forEach(id, cursor, page));
+		return "";
+	}
+
 	public Object getAccountState(Request req, Response res) {
 		var account = storage.get(req.params(":accountId"));
 
@@ -120,36 +289,385 @@ public class AccountsController {
 		
 		if(null == body) return badRequest(res);
 
-		return this.ok(res, this.transfer
-				.from(storage.get(id))
-				.withRequest(new TransferRequest(UUID.randomUUID().toString(), new BigDecimal(body.getAmount())))
-				.execute(storage.get(body.getDestinationAccount())));
+		var key = req.headers(IDEMPOTENCY_KEY);
+
+		if ("true".equals(req.queryParams("async"))) {
+			/* a retried submission would need its first operation's id, which the pipeline does not keep by key */
+			if (null != key) return badRequest(res);
+
+			var operation = this.pipeline.submit(() -> transfer(id, body));
+
+			if (null == operation) return serviceUnavailable(res);
+
+			return accepted(res, operationPath(req, operation), new OperationStatus(operation));
+		}
+
+		if (null == key) return this.ok(res, transfer(id, body));
+
+		if (key.isEmpty() || key.length() > MAX_IDEMPOTENCY_KEY) return badRequest(res);
+
+		/* keys are scoped to the source account, so clients cannot see each other's outcomes */
+		try {
+			return this.ok(res, this.recentTransfers.execute(id + "/" + key, body.getDestinationAccount() + " " + body.getAmount(), () -> transfer(id, body)));
+		} catch (ReusedKeyException e) {
+			return unprocessableEntity(res);
+		}
+	}
+
+	private TransferResult transfer(String id, IncomingTransferRequest body) {
+		/* the account may be gone by now, above all when the transfer was queued */
+		var source = storage.get(id);
+		var result = null == source
+				? TransferResult.sourceAccountNotFound()
+				: this.transfer
+						.from(source)
+						.withRequest(new TransferRequest(UUID.randomUUID().toString(), body.getAmount()))
+						.execute(storage.get(body.getDestinationAccount()));
+		this.metrics.transferred(result);
+		/* before it is answered, whether right away, by idempotency key or by polling */
+		storage.awaitDurable();
+		return result;
+	}
+
+	public Object getOperation(Request req, Response res) {
+		var operation = this.pipeline.get(req.params(":operationId"));
+
+		if (null == operation) return notFound(res);
+
+		return this.ok(res, new OperationStatus(operation));
+	}
+
+	/*
+	 * Streams the changes of every account, or of the account parameter, as
+	 * server-sent events until the subscriber goes away or the timeout
+	 * parameter's seconds are up, after which a long-polling subscriber asks
+	 * again. The changes start behind the Last-Event-ID a subscriber comes
+	 * back with, at the from parameter, or with the next change. An idle
+	 * stream polls the feed, so writers never wake anybody up.
+	 */
+	public Object feed(Request req, Response res) {
+		if (null == this.feed) return notFound(res);
+
+		long next;
+		long timeout;
+		try {
+			var lastEventId = req.headers("Last-Event-ID");
+			var from = req.queryParams("from");
+			var seconds = req.queryParams("timeout");
+			next = null != lastEventId ? Long.parseLong(lastEventId) + 1 : null != from ? Long.parseLong(from) : this.feed.next();
+			timeout = null == seconds ? Long.MAX_VALUE : TimeUnit.SECONDS.toNanos(Long.parseLong(seconds));
+		} catch (NumberFormatException e) {
+			return badRequest(res);
+		}
+
+		if (next < 0 || timeout < 0) return badRequest(res);
+
+		if (!this.subscribers.tryAcquire()) return serviceUnavailable(res);
+
+		try {
+			res.status(200);
+			res.type("text/event-stream");
+			res.header("Cache-Control", "no-cache");
+			var stream = new FeedStream(res.raw().getOutputStream(), req.queryParams("account"));
+			var start = System.nanoTime();
+			var heartbeat = start;
+			while (true) {
+				next = this.feed.read(next, stream);
+				var now = System.nanoTime();
+				if (now - heartbeat >= TimeUnit.MILLISECONDS.toNanos(FEED_HEARTBEAT_MILLIS)) {
+					stream.heartbeat();
+					heartbeat = now;
+				}
+				stream.flush();
+				if (now - start >= timeout || Thread.currentThread().isInterrupted()) break;
+
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FEED_POLL_MILLIS));
+			}
+		} catch (IOException | UncheckedIOException e) {
+			/* the subscriber is gone */
+		} finally {
+			this.subscribers.release();
+		}
+		return "";
+	}
+
+	/* The operation's URL under the same mount as the transfer route the request came through. */
+	private static String operationPath(Request req, TransferPipeline.Operation operation) {
+		var uri = req.uri();
+		var accounts = uri.lastIndexOf("/accounts/");
+		return (accounts < 0 ? "" : uri.substring(0, accounts)) + "/operations/" + operation.getId();
+	}
+
+	/*
+	 * Executes a batch of transfers between any accounts and answers one
+	 * TransferResult per transfer, in request order, as a JSON array.
+	 */
+	public Object transferBatch(Request req, Response res) throws IOException {
+		var body = batchRequest(req);
+
+		if (null == body) return badRequest(res);
+
+		var requests = new TransferRequest[body.getTransfers().size()];
+		for (int i = 0; i < requests.length; i++) {
+			var item = body.getTransfers().get(i);
+			if (null == item || null == item.getSourceAccount()) return badRequest(res);
+			requests[i] = new TransferRequest(UUID.randomUUID().toString(), item.getAmount());
+		}
+
+		List<TransferResult> results;
+		if (body.isAtomic()) {
+			var batch = new TransferBatch();
+			for (int i = 0; i < requests.length; i++) {
+				var item = body.getTransfers().get(i);
+				batch.add(storage.get(item.getSourceAccount()), requests[i], storage.get(item.getDestinationAccount()));
+			}
+			results = this.transfer.executeAtomically(batch);
+			results.forEach(this.metrics::transferred);
+		} else {
+			results = new ArrayList<>(requests.length);
+			for (int i = 0; i < requests.length; i++)
+				results.add(transfer(body.getTransfers().get(i), requests[i]));
+		}
+		return results(res, results);
+	}
+
+	/*
+	 * Pays every destination of the body from the account in one payout that
+	 * is settled as a whole, and answers one TransferResult per leg, in
+	 * request order, as a JSON array. The body is that of a batch whose source
+	 * accounts are ignored.
+	 */
+	public Object payout(Request req, Response res) throws IOException {
+		var source = storage.get(req.params(":accountId"));
+
+		if (null == source) return notFound(res);
+
+		var body = batchRequest(req, MAX_ATOMIC_BATCH);
+
+		if (null == body) return badRequest(res);
+
+		var payout = new Payout(UUID.randomUUID().toString());
+		for (var item : body.getTransfers()) {
+			if (null == item) return badRequest(res);
+			payout.add(storage.get(item.getDestinationAccount()), item.getAmount());
+		}
+
+		var results = this.transfer.payout(source, payout);
+		results.forEach(this.metrics::transferred);
+		return results(res, results);
+	}
+
+	/* Writes the results as a JSON array once the transfers they tell of are durable. */
+	private Object results(Response res, List<TransferResult> results) throws IOException {
+		storage.awaitDurable();
+		ok(res);
+		var out = JsonOutput.to(res.raw().getOutputStream());
+		out.beginArray();
+		for (var result : results)
+			JsonCodecs.write(out, result);
+		out.endArray();
+		out.flush();
+		return "";
+	}
+
+	/* Blocks the amount of the body on the account until the hold is captured, released or its ttlSeconds are up. */
+	public Object placeHold(Request req, Response res) {
+		var account = storage.get(req.params(":accountId"));
+
+		if (null == account) return notFound(res);
+
+		var body = holdRequest(req);
+
+		if (null == body || body.getAmount() <= 0 || body.getTtlSeconds() < 0 || body.getTtlSeconds() > MAX_HOLD_SECONDS)
+			return badRequest(res);
+
+		var seconds = body.getTtlSeconds() == 0 ? DEFAULT_HOLD_SECONDS : body.getTtlSeconds();
+		var hold = this.holds.place(account, body.getAmount(), TimeUnit.SECONDS.toMillis(seconds));
+
+		if (null == hold) return conflict(res);
+
+		return created(res, req.uri() + "/" + hold.getId(), new HoldSummary(hold));
+	}
+
+	public Object getHold(Request req, Response res) {
+		var hold = this.holds.get(req.params(":accountId"), req.params(":holdId"));
+
+		if (null == hold) return notFound(res);
+
+		return this.ok(res, new HoldSummary(hold));
+	}
+
+	/* Returns the held amount to the account. */
+	public Object releaseHold(Request req, Response res) {
+		var hold = this.holds.get(req.params(":accountId"), req.params(":holdId"));
+
+		if (null == hold || !this.holds.release(hold)) return notFound(res);
+
+		return ok(res);
+	}
+
+	/*
+	 * Credits the held amount to the destination account of the body, which is
+	 * that of a transfer whose amount is ignored, and answers a TransferResult.
+	 * A refused capture leaves the hold in place.
+	 */
+	public Object captureHold(Request req, Response res) {
+		var hold = this.holds.get(req.params(":accountId"), req.params(":holdId"));
+
+		if (null == hold) return notFound(res);
+
+		var body = incomingRequest(req);
+
+		if (null == body) return badRequest(res);
+
+		var result = this.holds.capture(hold, storage.get(body.getDestinationAccount()));
+
+		if (null == result) return notFound(res);
+
+		this.metrics.transferred(result);
+		return this.ok(res, result);
+	}
+
+	/*
+	 * Registers a transfer from the account that runs at startAt, or right
+	 * away, and then every intervalSeconds when given. The destination is
+	 * looked up on every run, not now.
+	 */
+	public Object scheduleTransfer(Request req, Response res) {
+		var source = storage.get(req.params(":accountId"));
+
+		if (null == source) return notFound(res);
+
+		var body = scheduleRequest(req);
+
+		if (null == body || null == body.getDestinationAccount() || body.getAmount() <= 0
+				|| body.getIntervalSeconds() < 0 || body.getIntervalSeconds() > MAX_INTERVAL_SECONDS)
+			return badRequest(res);
+
+		var firstRun = null == body.getStartAt() ? System.currentTimeMillis() : body.getStartAt().toEpochMilli();
+		var schedule = this.schedules.schedule(source, body.getDestinationAccount(), body.getAmount(), firstRun, TimeUnit.SECONDS.toMillis(body.getIntervalSeconds()));
+
+		if (null == schedule) return serviceUnavailable(res);
+
+		return created(res, req.uri() + "/" + schedule.getId(), new ScheduleSummary(schedule));
+	}
+
+	public Object getSchedule(Request req, Response res) {
+		var schedule = this.schedules.get(req.params(":accountId"), req.params(":scheduleId"));
+
+		if (null == schedule) return notFound(res);
+
+		return this.ok(res, new ScheduleSummary(schedule));
+	}
+
+	public Object cancelSchedule(Request req, Response res) {
+		var schedule = this.schedules.get(req.params(":accountId"), req.params(":scheduleId"));
+
+		if (null == schedule || !this.schedules.cancel(schedule)) return notFound(res);
+
+		return ok(res);
+	}
+
+	private TransferResult transfer(IncomingTransferRequest item, TransferRequest request) {
+		var source = storage.get(item.getSourceAccount());
+
+		var result = null == source
+				? TransferResult.sourceAccountNotFound()
+				: this.transfer
+						.from(source)
+						.withRequest(request)
+						.execute(storage.get(item.getDestinationAccount()));
+		this.metrics.transferred(result);
+		return result;
+	}
+
+	private IncomingBatchRequest batchRequest(Request req) {
+		var body = batchRequest(req, MAX_BATCH);
+		if (null != body && body.isAtomic() && body.getTransfers().size() > MAX_ATOMIC_BATCH)
+			return null;
+		return body;
+	}
+
+	private IncomingBatchRequest batchRequest(Request req, int limit) {
+		try {
+			var body = JsonCodecs.readBatchRequest(input(req), limit);
+			if (null == body || null == body.getTransfers())
+				return null;
+			return body;
+		} catch (Exception e) {
+			return null;
+		}
 	}
 
 	private IncomingTransferRequest incomingRequest(Request req) {
 		try {
-			return gson.fromJson(req.body(), IncomingTransferRequest.class);
+			return JsonCodecs.readTransferRequest(input(req));
 		} catch (Exception e) {
 			return null;
 		}
 	}
 	
+	private HoldRequest holdRequest(Request req) {
+		try {
+			return JsonCodecs.readHoldRequest(input(req));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private ScheduleRequest scheduleRequest(Request req) {
+		try {
+			return JsonCodecs.readScheduleRequest(input(req));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
 	private NewAccountRequest newAccountRequest(Request req) {
 		try {
-			return gson.fromJson(req.body(), NewAccountRequest.class);
-		} catch (NumberFormatException e) {
+			return JsonCodecs.readNewAccountRequest(input(req));
+		} catch (Exception e) {
 			return null;
 		}
 	}
 
 	private AccountState getLocked(Request req) {
 		try {
-			return gson.fromJson(req.body(), AccountState.class);
+			return JsonCodecs.readAccountState(input(req));
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
+	private static JsonInput input(Request req) throws IOException {
+		return JsonInput.from(req.raw().getInputStream());
+	}
+
+	/* Answers only once the changes the route made are durable. */
+	private Route durable(Route route) {
+		return (req, res) -> {
+			var body = route.handle(req, res);
+			storage.awaitDurable();
+			return body;
+		};
+	}
+
+	/*
+	 * Writes what the route answers straight to the response stream with the
+	 * JSON codecs; an empty String stays the empty body of an error status.
+	 */
+	private static Route json(Route route) {
+		return (req, res) -> {
+			var body = route.handle(req, res);
+			if (body instanceof String) return body;
+
+			var out = JsonOutput.to(res.raw().getOutputStream());
+			JsonCodecs.write(out, body);
+			out.flush();
+			return "";
+		};
+	}
+
 	private AccountState locked(Account account) {
 		return new AccountState(account.isLocked());
 	}
@@ -170,6 +688,26 @@ public class AccountsController {
 		return "";
 	}
 
+	private Object created(Response res, String path, Object data) {
+		res.status(201);
+		res.header("Location", path);
+		jsonType(res);
+		return data;
+	}
+
+	private Object accepted(Response res, String path, Object data) {
+		res.status(202);
+		res.header("Location", path);
+		jsonType(res);
+		return data;
+	}
+
+	private String serviceUnavailable(Response res) {
+		res.status(503);
+		res.header("Retry-After", "1");
+		return "";
+	}
+
 	private String badRequest(Response res) {
 		res.status(400);
 		return "";
@@ -180,6 +718,11 @@ public class AccountsController {
 		return "";
 	}
 
+	private String unprocessableEntity(Response res) {
+		res.status(422);
+		return "";
+	}
+
 	private String notFound(Response res) {
 		res.status(404);
 		return "";
@@ -0,0 +1,60 @@
+package sparkRest.rest;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Bounded lock-free pool of byte buffers of one size, shared by all threads,
+ * so that request threads which live for one request, virtual ones above all,
+ * reuse buffers instead of allocating their own. Each buffer sits in a slot
+ * of its own that is taken and given back with CAS; threads start looking at
+ * a slot picked by their id so they rarely meet. A take from an empty pool
+ * allocates, and a buffer given back to a full pool is left to the collector.
+ */
+final class BufferPool {
+	/* the buffers JsonInput and JsonOutput stream through */
+	static final BufferPool JSON = new BufferPool(Math.max(64, 4 * Runtime.getRuntime().availableProcessors()), 8 * 1024);
+
+	private final AtomicReferenceArray<byte[]> slots;
+	private final int mask;
+	private final int size;
+
+	/* capacity is rounded up to a power of two */
+	BufferPool(int capacity, int size) {
+		if (capacity < 1 || capacity > 1 << 16)
+			throw new IllegalArgumentException("capacity");
+		if (size < 1)
+			throw new IllegalArgumentException("size");
+
+		var slots = Integer.highestOneBit(capacity - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(Math.max(slots, 1));
+		this.mask = this.slots.length() - 1;
+		this.size = size;
+	}
+
+	byte[] take() {
+		var start = start();
+		for (int i = 0; i <= this.mask; i++) {
+			var slot = (start + i) & this.mask;
+			var buffer = this.slots.get(slot);
+			if (null != buffer && this.slots.compareAndSet(slot, buffer, null))
+				return buffer;
+		}
+		return new byte[this.size];
+	}
+
+	void give(byte[] buffer) {
+		if (buffer.length != this.size) return;
+
+		var start = start();
+		for (int i = 0; i <= this.mask; i++) {
+			var slot = (start + i) & this.mask;
+			if (null == this.slots.get(slot) && this.slots.compareAndSet(slot, null, buffer))
+				return;
+		}
+	}
+
+	private int start() {
+		var id = Thread.currentThread().getId();
+		return (int) (id ^ id >>> 32) * 0x9E3779B9 >>> 16;
+	}
+}
@@ -0,0 +1,79 @@
+package sparkRest.rest;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import sparkRest.accounting.Money;
+import sparkRest.feed.ChangeFeed;
+
+/*
+ * Writes changes of the feed as server-sent events, one per change of the
+ * account it is filtered by, or of any when it is not:
+ *
+ *   id: <sequence>
+ *   event: added|blocked|unblocked|committed|locked|unlocked
+ *   data: {"account":"...","amount":...,"available":...,"blocked":...}
+ *
+ * Changes the subscriber fell too far behind for are one "lost" event whose
+ * data names the sequences; its id lets a reconnect resume behind them.
+ */
+final class FeedStream implements ChangeFeed.Visitor {
+	/* a subscriber's writes are flushed once per read, so bursts go out in few packets */
+	private static final int BUFFER = 16 * 1024;
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final OutputStream out;
+	private final String accountId;
+	private final StringBuilder event = new StringBuilder(256);
+
+	FeedStream(OutputStream out, String accountId) {
+		this.out = new BufferedOutputStream(out, BUFFER);
+		this.accountId = accountId;
+	}
+
+	@Override
+	public boolean visit(long sequence, ChangeFeed.Type type, String accountId, long amount, long available, long blocked) {
+		if (null != this.accountId && !this.accountId.equals(accountId)) return true;
+
+		this.event.setLength(0);
+		this.event.append("id: ").append(sequence)
+				.append("\nevent: ").append(type.name().toLowerCase())
+				.append("\ndata: {\"account\":\"").append(accountId)
+				.append("\",\"amount\":").append(Money.toDecimal(amount).toPlainString())
+				.append(",\"available\":").append(Money.toDecimal(available).toPlainString())
+				.append(",\"blocked\":").append(Money.toDecimal(blocked).toPlainString())
+				.append("}\n\n");
+		write();
+		return true;
+	}
+
+	@Override
+	public void lost(long from, long to) {
+		this.event.setLength(0);
+		this.event.append("id: ").append(to - 1)
+				.append("\nevent: lost")
+				.append("\ndata: {\"from\":").append(from).append(",\"to\":").append(to)
+				.append("}\n\n");
+		write();
+	}
+
+	/* A comment line, which keeps proxies from timing the stream out and finds subscribers that are gone. */
+	void heartbeat() throws IOException {
+		this.out.write(HEARTBEAT);
+	}
+
+	void flush() throws IOException {
+		this.out.flush();
+	}
+
+	private void write() {
+		try {
+			this.out.write(this.event.toString().getBytes(StandardCharsets.US_ASCII));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package sparkRest.rest;
+
+public class HoldRequest {
+	private long amount;
+	/* 0 when the client left it to the default */
+	private long ttlSeconds;
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public void setAmount(long amount) {
+		this.amount = amount;
+	}
+
+	public long getTtlSeconds() {
+		return ttlSeconds;
+	}
+
+	public void setTtlSeconds(long ttlSeconds) {
+		this.ttlSeconds = ttlSeconds;
+	}
+}
@@ -0,0 +1,35 @@
+package sparkRest.rest;
+
+import java.time.Instant;
+
+import sparkRest.transfers.Holds;
+
+public class HoldSummary {
+	private String id;
+	private String accountId;
+	private long amount;
+	private String expiresAt;
+
+	public HoldSummary(Holds.Hold hold) {
+		this.id = hold.getId();
+		this.accountId = hold.getAccountId();
+		this.amount = hold.getAmount();
+		this.expiresAt = Instant.ofEpochMilli(hold.getExpiresAt()).toString();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public String getExpiresAt() {
+		return expiresAt;
+	}
+}
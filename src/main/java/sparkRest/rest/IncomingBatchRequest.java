@@ -0,0 +1,29 @@
+package sparkRest.rest;
+
+import java.util.List;
+
+public class IncomingBatchRequest {
+	private boolean atomic;
+	private List<IncomingTransferRequest> transfers;
+
+	public IncomingBatchRequest(boolean atomic, List<IncomingTransferRequest> transfers) {
+		this.atomic = atomic;
+		this.transfers = transfers;
+	}
+
+	public boolean isAtomic() {
+		return atomic;
+	}
+
+	public List<IncomingTransferRequest> getTransfers() {
+		return transfers;
+	}
+
+	public void setAtomic(boolean atomic) {
+		this.atomic = atomic;
+	}
+
+	public void setTransfers(List<IncomingTransferRequest> transfers) {
+		this.transfers = transfers;
+	}
+}
@@ -1,28 +1,45 @@
 package sparkRest.rest;
 
+import com.google.gson.annotations.JsonAdapter;
+
 public class IncomingTransferRequest {
+	private String sourceAccount;
 	private String destinationAccount;
-	private double amount;
+	@JsonAdapter(MoneyAdapter.class)
+	private long amount;
 	
-	public IncomingTransferRequest(String destinationAccount, double amount) {
+	public IncomingTransferRequest(String destinationAccount, long amount) {
 		super();
 		this.destinationAccount = destinationAccount;
 		this.amount = amount;
 	}
 
+	public IncomingTransferRequest(String sourceAccount, String destinationAccount, long amount) {
+		this(destinationAccount, amount);
+		this.sourceAccount = sourceAccount;
+	}
+
+	public String getSourceAccount() {
+		return sourceAccount;
+	}
+
 	public String getDestinationAccount() {
 		return destinationAccount;
 	}
 
-	public double getAmount() {
+	public long getAmount() {
 		return amount;
 	}
 
+	public void setSourceAccount(String sourceAccount) {
+		this.sourceAccount = sourceAccount;
+	}
+
 	public void setDestinationAccount(String destinationAccount) {
 		this.destinationAccount = destinationAccount;
 	}
 
-	public void setAmount(double amount) {
+	public void setAmount(long amount) {
 		this.amount = amount;
 	}
 	
@@ -0,0 +1,326 @@
+package sparkRest.rest;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+
+import sparkRest.accounting.Money;
+import sparkRest.transfers.TransferResult;
+
+/*
+ * Hand-written codecs for the bodies of the API. They produce and accept the
+ * same JSON the reflective Gson mapping did: members are matched by name in
+ * any order, unknown members are skipped, null members keep their defaults
+ * and an empty body or a literal null reads as null.
+ */
+public final class JsonCodecs {
+	private static final byte[][] NEW_ACCOUNT = JsonInput.names("amount");
+	private static final byte[][] TRANSFER = JsonInput.names("sourceAccount", "destinationAccount", "amount");
+	private static final byte[][] BATCH = JsonInput.names("atomic", "transfers");
+	private static final byte[][] STATE = JsonInput.names("locked");
+	private static final byte[][] HOLD = JsonInput.names("amount", "ttlSeconds");
+	private static final byte[][] ROW = JsonInput.names("id", "available", "blocked", "isLocked");
+	private static final byte[][] SCHEDULE = JsonInput.names("destinationAccount", "amount", "startAt", "intervalSeconds");
+
+	private static final byte[] ID = JsonOutput.name("id");
+	private static final byte[] AVAILABLE = JsonOutput.name("available");
+	private static final byte[] BLOCKED = JsonOutput.name("blocked");
+	private static final byte[] IS_LOCKED = JsonOutput.name("isLocked");
+	private static final byte[] LOCKED = JsonOutput.name("locked");
+	private static final byte[] SUCCESS = JsonOutput.name("success");
+	private static final byte[] CODE = JsonOutput.name("code");
+	private static final byte[] MESSAGE = JsonOutput.name("message");
+	static final byte[] ACCOUNTS = JsonOutput.name("accounts");
+	static final byte[] NEXT = JsonOutput.name("next");
+	private static final byte[] STATUS = JsonOutput.name("status");
+	private static final byte[] RESULT = JsonOutput.name("result");
+	static final byte[] TRANSFERS = JsonOutput.name("transfers");
+	static final byte[] TIME = JsonOutput.name("time");
+	static final byte[] AMOUNT = JsonOutput.name("amount");
+	static final byte[] COUNTERPART = JsonOutput.name("counterpart");
+	private static final byte[] ACCOUNT = JsonOutput.name("account");
+	private static final byte[] EXPIRES_AT = JsonOutput.name("expiresAt");
+	private static final byte[] SOURCE_ACCOUNT = JsonOutput.name("sourceAccount");
+	private static final byte[] DESTINATION_ACCOUNT = JsonOutput.name("destinationAccount");
+	private static final byte[] NEXT_RUN = JsonOutput.name("nextRun");
+	private static final byte[] INTERVAL_SECONDS = JsonOutput.name("intervalSeconds");
+	private static final byte[] RUNS = JsonOutput.name("runs");
+	private static final byte[] LAST_RESULT = JsonOutput.name("lastResult");
+	private static final byte[] IMPORTED = JsonOutput.name("imported");
+	private static final byte[] REJECTED = JsonOutput.name("rejected");
+	private static final byte[] REJECTIONS = JsonOutput.name("rejections");
+	private static final byte[] LINE = JsonOutput.name("line");
+	private static final byte[] REASON = JsonOutput.name("reason");
+
+	private JsonCodecs() {
+	}
+
+	public static NewAccountRequest readNewAccountRequest(JsonInput in) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var request = new NewAccountRequest();
+		in.beginObject();
+		while (in.hasNext()) {
+			if (in.nextName(NEW_ACCOUNT) < 0) {
+				in.skipValue();
+			} else if (!in.nextNull()) {
+				request.setAmount(in.nextDecimal(Money.SCALE));
+			}
+		}
+		in.endObject();
+		in.endDocument();
+		return request;
+	}
+
+	public static IncomingTransferRequest readTransferRequest(JsonInput in) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var request = transferRequest(in);
+		in.endDocument();
+		return request;
+	}
+
+	/* Null when there are more than limit transfers; the rest of the body is not read. */
+	public static IncomingBatchRequest readBatchRequest(JsonInput in, int limit) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var request = new IncomingBatchRequest(false, null);
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName(BATCH)) {
+			case 0:
+				if (!in.nextNull()) request.setAtomic(in.nextBoolean());
+				break;
+			case 1:
+				if (in.nextNull()) break;
+
+				var transfers = new ArrayList<IncomingTransferRequest>();
+				in.beginArray();
+				while (in.hasNext()) {
+					if (transfers.size() == limit) return null;
+					transfers.add(in.nextNull() ? null : transferRequest(in));
+				}
+				in.endArray();
+				request.setTransfers(transfers);
+				break;
+			default:
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		in.endDocument();
+		return request;
+	}
+
+	public static AccountState readAccountState(JsonInput in) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var state = new AccountState();
+		in.beginObject();
+		while (in.hasNext()) {
+			if (in.nextName(STATE) < 0) {
+				in.skipValue();
+			} else if (!in.nextNull()) {
+				state.setLocked(in.nextBoolean());
+			}
+		}
+		in.endObject();
+		in.endDocument();
+		return state;
+	}
+
+	public static HoldRequest readHoldRequest(JsonInput in) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var request = new HoldRequest();
+		in.beginObject();
+		while (in.hasNext()) {
+			var name = in.nextName(HOLD);
+			if (name < 0) {
+				in.skipValue();
+			} else if (in.nextNull()) {
+				continue;
+			} else if (name == 0) {
+				request.setAmount(in.nextDecimal(Money.SCALE));
+			} else {
+				request.setTtlSeconds(in.nextDecimal(0));
+			}
+		}
+		in.endObject();
+		in.endDocument();
+		return request;
+	}
+
+	/* A line of an NDJSON import, in the members an AccountSummary is written with. */
+	public static AccountRow readAccountRow(JsonInput in) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var row = new AccountRow();
+		in.beginObject();
+		while (in.hasNext()) {
+			var name = in.nextName(ROW);
+			if (name < 0) {
+				in.skipValue();
+			} else if (in.nextNull()) {
+				continue;
+			} else if (name == 0) {
+				row.setId(in.nextString());
+			} else if (name == 1) {
+				row.setAvailable(in.nextDecimal(Money.SCALE));
+			} else if (name == 2) {
+				row.setBlocked(in.nextDecimal(Money.SCALE));
+			} else {
+				row.setLocked(in.nextBoolean());
+			}
+		}
+		in.endObject();
+		in.endDocument();
+		return row;
+	}
+
+	/* startAt is an ISO-8601 instant; one that does not parse throws a DateTimeParseException. */
+	public static ScheduleRequest readScheduleRequest(JsonInput in) throws IOException {
+		if (!in.beginDocument()) return null;
+
+		var request = new ScheduleRequest();
+		in.beginObject();
+		while (in.hasNext()) {
+			var name = in.nextName(SCHEDULE);
+			if (name < 0) {
+				in.skipValue();
+			} else if (in.nextNull()) {
+				continue;
+			} else if (name == 0) {
+				request.setDestinationAccount(in.nextString());
+			} else if (name == 1) {
+				request.setAmount(in.nextDecimal(Money.SCALE));
+			} else if (name == 2) {
+				request.setStartAt(Instant.parse(in.nextString()));
+			} else {
+				request.setIntervalSeconds(in.nextDecimal(0));
+			}
+		}
+		in.endObject();
+		in.endDocument();
+		return request;
+	}
+
+	/* Writes a response body; the types are those the controller answers with. */
+	public static void write(JsonOutput out, Object body) throws IOException {
+		if (null == body) {
+			out.nullValue();
+		} else if (body instanceof AccountSummary) {
+			write(out, (AccountSummary) body);
+		} else if (body instanceof TransferResult) {
+			write(out, (TransferResult) body);
+		} else if (body instanceof AccountState) {
+			write(out, (AccountState) body);
+		} else if (body instanceof OperationStatus) {
+			write(out, (OperationStatus) body);
+		} else if (body instanceof HoldSummary) {
+			write(out, (HoldSummary) body);
+		} else if (body instanceof ScheduleSummary) {
+			write(out, (ScheduleSummary) body);
+		} else if (body instanceof AccountImport.Result) {
+			write(out, (AccountImport.Result) body);
+		} else {
+			throw new IllegalArgumentException("body");
+		}
+	}
+
+	public static void write(JsonOutput out, AccountSummary summary) throws IOException {
+		out.beginObject();
+		if (null != summary.getId())
+			out.name(ID).value(summary.getId());
+		out.name(AVAILABLE).value(summary.getAvailable(), Money.SCALE);
+		out.name(BLOCKED).value(summary.getBlocked(), Money.SCALE);
+		out.name(IS_LOCKED).value(summary.isLocked());
+		out.endObject();
+	}
+
+	public static void write(JsonOutput out, TransferResult result) throws IOException {
+		out.beginObject();
+		out.name(SUCCESS).value(result.isSuccess());
+		out.name(CODE).value(result.getCode());
+		if (null != result.getMessage())
+			out.name(MESSAGE).value(result.getMessage());
+		out.endObject();
+	}
+
+	public static void write(JsonOutput out, AccountState state) throws IOException {
+		out.beginObject();
+		out.name(LOCKED).value(state.isLocked());
+		out.endObject();
+	}
+
+	public static void write(JsonOutput out, OperationStatus status) throws IOException {
+		out.beginObject();
+		out.name(ID).value(status.getId());
+		out.name(STATUS).value(status.getStatus());
+		if (null != status.getResult()) {
+			out.name(RESULT);
+			write(out, status.getResult());
+		}
+		out.endObject();
+	}
+
+	public static void write(JsonOutput out, HoldSummary hold) throws IOException {
+		out.beginObject();
+		out.name(ID).value(hold.getId());
+		out.name(ACCOUNT).value(hold.getAccountId());
+		out.name(AMOUNT).value(hold.getAmount(), Money.SCALE);
+		out.name(EXPIRES_AT).value(hold.getExpiresAt());
+		out.endObject();
+	}
+
+	public static void write(JsonOutput out, ScheduleSummary schedule) throws IOException {
+		out.beginObject();
+		out.name(ID).value(schedule.getId());
+		out.name(SOURCE_ACCOUNT).value(schedule.getSourceAccount());
+		out.name(DESTINATION_ACCOUNT).value(schedule.getDestinationAccount());
+		out.name(AMOUNT).value(schedule.getAmount(), Money.SCALE);
+		out.name(NEXT_RUN).value(schedule.getNextRun());
+		if (schedule.getIntervalSeconds() > 0)
+			out.name(INTERVAL_SECONDS).value(schedule.getIntervalSeconds());
+		out.name(RUNS).value(schedule.getRuns());
+		if (null != schedule.getLastResult()) {
+			out.name(LAST_RESULT);
+			write(out, schedule.getLastResult());
+		}
+		out.endObject();
+	}
+
+	public static void write(JsonOutput out, AccountImport.Result result) throws IOException {
+		out.beginObject();
+		out.name(IMPORTED).value(result.getImported());
+		out.name(REJECTED).value(result.getRejected());
+		out.name(REJECTIONS).beginArray();
+		for (var rejection : result.getRejections()) {
+			out.beginObject();
+			out.name(LINE).value(rejection.getLine());
+			out.name(REASON).value(rejection.getReason());
+			out.endObject();
+		}
+		out.endArray();
+		out.endObject();
+	}
+
+	private static IncomingTransferRequest transferRequest(JsonInput in) throws IOException {
+		var request = new IncomingTransferRequest(null, 0);
+		in.beginObject();
+		while (in.hasNext()) {
+			var name = in.nextName(TRANSFER);
+			if (name < 0) {
+				in.skipValue();
+			} else if (name == 0) {
+				request.setSourceAccount(in.nextString());
+			} else if (name == 1) {
+				request.setDestinationAccount(in.nextString());
+			} else if (!in.nextNull()) {
+				request.setAmount(in.nextDecimal(Money.SCALE));
+			}
+		}
+		in.endObject();
+		return request;
+	}
+}
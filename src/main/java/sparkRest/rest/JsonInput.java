@@ -0,0 +1,420 @@
+package sparkRest.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Strict streaming JSON reader working on UTF-8 bytes. It pulls the body from
+ * the request stream through a buffer taken from a pool shared by all threads
+ * and given back once the document is read, and member names are matched
+ * against pre-encoded names, so reading a request body allocates little more
+ * than the String values it returns.
+ *
+ * An instance is not thread safe; every from() returns a new one.
+ */
+public final class JsonInput {
+	private static final int MAX_DEPTH = 64;
+	private static final byte[] TRUE = bytes("true");
+	private static final byte[] FALSE = bytes("false");
+	private static final byte[] NULL = bytes("null");
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private byte[] buffer = EMPTY;
+	private byte[] scratch = new byte[64];
+	private InputStream in;
+	private int position;
+	private int limit;
+	private int depth;
+	/* one bit per nesting level: set once the container has its first element */
+	private long elements;
+
+	private JsonInput() {
+	}
+
+	public static JsonInput from(InputStream in) {
+		if (null == in)
+			throw new IllegalArgumentException("in");
+
+		var input = new JsonInput();
+		input.in = in;
+		return input;
+	}
+
+	/* Pre-encodes member names for nextName(byte[][]). */
+	public static byte[][] names(String... names) {
+		var encoded = new byte[names.length][];
+		for (int i = 0; i < names.length; i++)
+			encoded[i] = bytes(names[i]);
+		return encoded;
+	}
+
+	/* False for an empty body or a literal null, which both read as no document. */
+	public boolean beginDocument() throws IOException {
+		if (peek() < 0) {
+			release();
+			return false;
+		}
+		if (!nextNull()) return true;
+
+		endDocument();
+		return false;
+	}
+
+	public void endDocument() throws IOException {
+		if (peek() >= 0)
+			throw new MalformedJsonException("the document continues after its value");
+		release();
+	}
+
+	public void beginObject() throws IOException {
+		begin('{');
+	}
+
+	public void endObject() throws IOException {
+		end('}');
+	}
+
+	public void beginArray() throws IOException {
+		begin('[');
+	}
+
+	public void endArray() throws IOException {
+		end(']');
+	}
+
+	/* Whether the current object or array has another element; consumes the comma before it. */
+	public boolean hasNext() throws IOException {
+		var c = peek();
+		if (c == '}' || c == ']') return false;
+
+		var bit = 1L << (this.depth - 1);
+		if ((this.elements & bit) != 0) {
+			expect(',');
+		} else {
+			this.elements |= bit;
+		}
+		return true;
+	}
+
+	/* The index of the member name in names, or -1 for a member the caller does not know. */
+	public int nextName(byte[][] names) throws IOException {
+		var length = readString();
+		expect(':');
+		for (int i = 0; i < names.length; i++) {
+			if (Arrays.equals(this.scratch, 0, length, names[i], 0, names[i].length))
+				return i;
+		}
+		return -1;
+	}
+
+	public String nextString() throws IOException {
+		if (nextNull()) return null;
+
+		var length = readString();
+		return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	public boolean nextBoolean() throws IOException {
+		if (peek() == 't') {
+			literal(TRUE);
+			return true;
+		}
+		literal(FALSE);
+		return false;
+	}
+
+	/*
+	 * A decimal number as an exact count of 10^-scale units, read digit by digit
+	 * from the body. Trailing zeros and exponents are fine as long as the value
+	 * is exact at that scale; anything finer or outside the long range throws
+	 * an ArithmeticException. Also accepted in quotes as the reflective reader
+	 * did.
+	 */
+	public long nextDecimal(int scale) throws IOException {
+		if (peek() != '"') return decimal(scale);
+
+		this.position++;
+		var value = decimal(scale);
+		if (read() != '"')
+			throw new MalformedJsonException("expected a number");
+		return value;
+	}
+
+	public boolean nextNull() throws IOException {
+		if (peek() != 'n') return false;
+
+		literal(NULL);
+		return true;
+	}
+
+	public void skipValue() throws IOException {
+		var c = peek();
+		if (c == '{') {
+			beginObject();
+			while (hasNext()) {
+				readString();
+				expect(':');
+				skipValue();
+			}
+			endObject();
+		} else if (c == '[') {
+			beginArray();
+			while (hasNext())
+				skipValue();
+			endArray();
+		} else if (c == '"') {
+			readString();
+		} else if (c == 't' || c == 'f') {
+			nextBoolean();
+		} else if (c == 'n') {
+			nextNull();
+		} else {
+			readNumber();
+		}
+	}
+
+	private void begin(char open) throws IOException {
+		expect(open);
+		if (this.depth == MAX_DEPTH)
+			throw new MalformedJsonException("nested too deeply");
+
+		this.elements &= ~(1L << this.depth);
+		this.depth++;
+	}
+
+	private void end(char close) throws IOException {
+		if (this.depth == 0)
+			throw new MalformedJsonException("unexpected " + close);
+
+		expect(close);
+		this.depth--;
+	}
+
+	/* Reads a quoted string into scratch as UTF-8 and returns its length. */
+	private int readString() throws IOException {
+		expect('"');
+		var length = 0;
+		while (true) {
+			var c = read();
+			if (c == '"') return length;
+			if (c < 0x20)
+				throw new MalformedJsonException(c < 0 ? "unterminated string" : "control character in string");
+
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case '"': case '\\': case '/': break;
+				case 'b': c = '\b'; break;
+				case 'f': c = '\f'; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				case 't': c = '\t'; break;
+				case 'u':
+					length = escaped(length);
+					continue;
+				default:
+					throw new MalformedJsonException("bad escape");
+				}
+			}
+			length = append(length, c);
+		}
+	}
+
+	private int escaped(int length) throws IOException {
+		var unit = hex();
+		var codePoint = unit;
+		if (Character.isHighSurrogate((char) unit) && peekRaw() == '\\') {
+			read();
+			if (read() != 'u')
+				throw new MalformedJsonException("bad escape");
+			var low = hex();
+			codePoint = Character.isLowSurrogate((char) low)
+					? Character.toCodePoint((char) unit, (char) low)
+					: '?';
+		} else if (Character.isSurrogate((char) unit)) {
+			codePoint = '?';
+		}
+
+		if (codePoint < 0x80) return append(length, codePoint);
+		if (codePoint < 0x800) {
+			length = append(length, 0xC0 | codePoint >> 6);
+		} else {
+			if (codePoint < 0x10000) {
+				length = append(length, 0xE0 | codePoint >> 12);
+			} else {
+				length = append(length, 0xF0 | codePoint >> 18);
+				length = append(length, 0x80 | (codePoint >> 12 & 0x3F));
+			}
+			length = append(length, 0x80 | (codePoint >> 6 & 0x3F));
+		}
+		return append(length, 0x80 | (codePoint & 0x3F));
+	}
+
+	private int hex() throws IOException {
+		var value = 0;
+		for (int i = 0; i < 4; i++) {
+			var digit = Character.digit(read(), 16);
+			if (digit < 0)
+				throw new MalformedJsonException("bad escape");
+			value = value << 4 | digit;
+		}
+		return value;
+	}
+
+	private long decimal(int scale) throws IOException {
+		var negative = peekRaw() == '-';
+		if (negative) this.position++;
+
+		/* zeros are only multiplied in once a non-zero digit follows, so the significand never ends in one */
+		long significand = 0;
+		var zeros = 0;
+		var exponent = 0;
+		var digits = 0;
+		var fraction = false;
+		int c;
+		while ((c = peekRaw()) >= '0' && c <= '9' || c == '.' && !fraction) {
+			this.position++;
+			if (c == '.') {
+				if (digits == 0)
+					throw new MalformedJsonException("expected a number");
+				fraction = true;
+				continue;
+			}
+			if (fraction) {
+				exponent--;
+			} else if (digits == 1 && significand == 0) {
+				throw new MalformedJsonException("leading zero");
+			}
+			digits++;
+
+			if (c == '0') {
+				zeros++;
+			} else {
+				significand = Math.addExact(scaled(significand, zeros + 1), c - '0');
+				zeros = 0;
+			}
+		}
+		if (digits == 0 || fraction && exponent == 0)
+			throw new MalformedJsonException("expected a number");
+
+		if (c == 'e' || c == 'E') {
+			this.position++;
+			exponent += exponent();
+		}
+
+		var shift = zeros + exponent + scale;
+		if (significand != 0 && shift < 0)
+			throw new ArithmeticException("more than " + scale + " decimal places");
+
+		var value = significand == 0 ? 0 : scaled(significand, shift);
+		return negative ? -value : value;
+	}
+
+	/* value * 10^power, failing when it leaves the long range */
+	private static long scaled(long value, int power) {
+		for (int i = 0; i < power && value != 0; i++)
+			value = Math.multiplyExact(value, 10L);
+		return value;
+	}
+
+	private int exponent() throws IOException {
+		var negative = false;
+		var c = peekRaw();
+		if (c == '+' || c == '-') {
+			negative = c == '-';
+			this.position++;
+		}
+
+		var exponent = 0;
+		var digits = 0;
+		while ((c = peekRaw()) >= '0' && c <= '9') {
+			this.position++;
+			digits++;
+			/* beyond this any non-zero significand is out of range or too fine either way */
+			exponent = Math.min(exponent * 10 + c - '0', 10_000);
+		}
+		if (digits == 0)
+			throw new MalformedJsonException("expected a number");
+		return negative ? -exponent : exponent;
+	}
+
+	/* Reads a JSON number token into scratch and returns its length. */
+	private int readNumber() throws IOException {
+		var length = 0;
+		int c;
+		while ((c = peekRaw()) >= 0 && (c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'))
+			length = append(length, read());
+		if (length == 0)
+			throw new MalformedJsonException("unexpected character");
+		return length;
+	}
+
+	private int append(int length, int c) {
+		if (length == this.scratch.length)
+			this.scratch = Arrays.copyOf(this.scratch, length * 2);
+		this.scratch[length] = (byte) c;
+		return length + 1;
+	}
+
+	private void literal(byte[] literal) throws IOException {
+		peek();
+		for (var expected : literal) {
+			if (read() != expected)
+				throw new MalformedJsonException("unexpected character");
+		}
+	}
+
+	private void expect(char expected) throws IOException {
+		if (peek() != expected)
+			throw new MalformedJsonException("expected " + expected);
+		this.position++;
+	}
+
+	/* The next byte that is not whitespace, without consuming it; -1 at the end of the body. */
+	private int peek() throws IOException {
+		while (true) {
+			var c = peekRaw();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+			this.position++;
+		}
+	}
+
+	private int peekRaw() throws IOException {
+		if (this.position == this.limit && !fill()) return -1;
+		return this.buffer[this.position] & 0xFF;
+	}
+
+	private int read() throws IOException {
+		if (this.position == this.limit && !fill()) return -1;
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	private boolean fill() throws IOException {
+		if (this.buffer == EMPTY)
+			this.buffer = BufferPool.JSON.take();
+
+		var read = this.in.read(this.buffer, 0, this.buffer.length);
+		if (read <= 0) return false;
+
+		this.position = 0;
+		this.limit = read;
+		return true;
+	}
+
+	/* A body that is not read to its end keeps its buffer, which is then left to the collector. */
+	private void release() {
+		if (this.buffer == EMPTY) return;
+
+		BufferPool.JSON.give(this.buffer);
+		this.buffer = EMPTY;
+		this.position = 0;
+		this.limit = 0;
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
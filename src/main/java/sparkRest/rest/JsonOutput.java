@@ -0,0 +1,260 @@
+package sparkRest.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Streaming JSON writer producing UTF-8 bytes into a buffer taken from a pool
+ * shared by all threads; the buffer goes to the response stream whenever it
+ * fills up, and on flush(), which also gives it back until the next write.
+ * Member names are written from pre-encoded bytes and numbers are formatted
+ * in place, so writing a response allocates nothing but the writer.
+ *
+ * Strings are escaped the way Gson does by default (HTML-safe), so the bytes
+ * on the wire are the same as those of the reflective serializer.
+ *
+ * An instance is not thread safe; every to() returns a new one.
+ */
+public final class JsonOutput {
+	private static final int MAX_DEPTH = 64;
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+	/* the escape of every ASCII character, or null when it is written as it is */
+	private static final byte[][] ESCAPES = new byte[128][];
+
+	static {
+		for (int c = 0; c < 0x20; c++)
+			ESCAPES[c] = unicodeEscape(c);
+		for (var c : new char[] { '<', '>', '&', '=', '\'' })
+			ESCAPES[c] = unicodeEscape(c);
+		ESCAPES['"'] = "\\\"".getBytes(StandardCharsets.US_ASCII);
+		ESCAPES['\\'] = "\\\\".getBytes(StandardCharsets.US_ASCII);
+		ESCAPES['\t'] = "\\t".getBytes(StandardCharsets.US_ASCII);
+		ESCAPES['\b'] = "\\b".getBytes(StandardCharsets.US_ASCII);
+		ESCAPES['\n'] = "\\n".getBytes(StandardCharsets.US_ASCII);
+		ESCAPES['\r'] = "\\r".getBytes(StandardCharsets.US_ASCII);
+		ESCAPES['\f'] = "\\f".getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private byte[] buffer = EMPTY;
+	private OutputStream out;
+	private int position;
+	private int depth;
+	/* one bit per nesting level: set once the container has its first element */
+	private long elements;
+	private boolean afterName;
+
+	private JsonOutput() {
+	}
+
+	public static JsonOutput to(OutputStream out) {
+		if (null == out)
+			throw new IllegalArgumentException("out");
+
+		var output = new JsonOutput();
+		output.out = out;
+		return output;
+	}
+
+	/* Pre-encodes a member name, with its quotes and colon, for name(byte[]); the name must not need escaping. */
+	public static byte[] name(String name) {
+		return ('"' + name + "\":").getBytes(StandardCharsets.UTF_8);
+	}
+
+	public JsonOutput beginObject() throws IOException {
+		return open('{');
+	}
+
+	public JsonOutput endObject() throws IOException {
+		return close('}');
+	}
+
+	public JsonOutput beginArray() throws IOException {
+		return open('[');
+	}
+
+	public JsonOutput endArray() throws IOException {
+		return close(']');
+	}
+
+	public JsonOutput name(byte[] name) throws IOException {
+		separate();
+		raw(name);
+		this.afterName = true;
+		return this;
+	}
+
+	public JsonOutput value(String value) throws IOException {
+		if (null == value) return nullValue();
+
+		separate();
+		string(value);
+		return this;
+	}
+
+	public JsonOutput value(boolean value) throws IOException {
+		separate();
+		raw(value ? TRUE : FALSE);
+		return this;
+	}
+
+	public JsonOutput value(long value) throws IOException {
+		return value(value, 0);
+	}
+
+	/* unscaled * 10^-scale in plain notation with exactly scale fraction digits, as BigDecimal prints it */
+	public JsonOutput value(long unscaled, int scale) throws IOException {
+		separate();
+		ensure(21 + scale);
+		if (unscaled < 0) this.buffer[this.position++] = '-';
+
+		/* digits are produced from the negative value so that Long.MIN_VALUE needs no special case */
+		var negative = unscaled < 0 ? unscaled : -unscaled;
+		var digits = 1;
+		for (var rest = negative / 10; rest != 0; rest /= 10)
+			digits++;
+		digits = Math.max(digits, scale + 1);
+
+		var end = this.position + digits + (scale > 0 ? 1 : 0);
+		var at = end;
+		for (int i = 0; i < digits; i++) {
+			if (i == scale && scale > 0) this.buffer[--at] = '.';
+			this.buffer[--at] = (byte) ('0' - negative % 10);
+			negative /= 10;
+		}
+		this.position = end;
+		return this;
+	}
+
+	public JsonOutput nullValue() throws IOException {
+		separate();
+		raw(NULL);
+		return this;
+	}
+
+	/* Ends a line after a complete document, so that documents follow each other as NDJSON. */
+	public JsonOutput newline() throws IOException {
+		if (this.depth != 0)
+			throw new IllegalStateException("document not complete");
+
+		raw('\n');
+		return this;
+	}
+
+	/* Hands everything written so far to the stream and flushes it; the stream stays open. */
+	public void flush() throws IOException {
+		drain();
+		BufferPool.JSON.give(this.buffer);
+		this.buffer = EMPTY;
+		this.out.flush();
+	}
+
+	private JsonOutput open(char c) throws IOException {
+		separate();
+		if (this.depth == MAX_DEPTH)
+			throw new IllegalStateException("nested too deeply");
+
+		this.elements &= ~(1L << this.depth);
+		this.depth++;
+		raw(c);
+		return this;
+	}
+
+	private JsonOutput close(char c) throws IOException {
+		if (this.depth == 0)
+			throw new IllegalStateException("nothing to close");
+
+		this.depth--;
+		raw(c);
+		return this;
+	}
+
+	/* Writes the comma in front of every element but the first of its container. */
+	private void separate() throws IOException {
+		if (this.afterName) {
+			this.afterName = false;
+			return;
+		}
+		if (this.depth == 0) return;
+
+		var bit = 1L << (this.depth - 1);
+		if ((this.elements & bit) != 0)
+			raw(',');
+		this.elements |= bit;
+	}
+
+	private void string(String value) throws IOException {
+		ensure(2);
+		this.buffer[this.position++] = '"';
+		for (int i = 0, length = value.length(); i < length; i++) {
+			var c = value.charAt(i);
+			if (c < 0x80) {
+				var escape = ESCAPES[c];
+				if (null == escape) {
+					ensure(1);
+					this.buffer[this.position++] = (byte) c;
+				} else {
+					raw(escape);
+				}
+			} else if (c == 0x2028 || c == 0x2029) {
+				raw(unicodeEscape(c));
+			} else if (c < 0x800) {
+				ensure(2);
+				this.buffer[this.position++] = (byte) (0xC0 | c >> 6);
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				var codePoint = Character.toCodePoint(c, value.charAt(++i));
+				ensure(4);
+				this.buffer[this.position++] = (byte) (0xF0 | codePoint >> 18);
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint >> 12 & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				ensure(1);
+				this.buffer[this.position++] = '?';
+			} else {
+				ensure(3);
+				this.buffer[this.position++] = (byte) (0xE0 | c >> 12);
+				this.buffer[this.position++] = (byte) (0x80 | (c >> 6 & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		ensure(1);
+		this.buffer[this.position++] = '"';
+	}
+
+	private void raw(char c) throws IOException {
+		ensure(1);
+		this.buffer[this.position++] = (byte) c;
+	}
+
+	private void raw(byte[] bytes) throws IOException {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+		this.position += bytes.length;
+	}
+
+	/* Makes room for a write of at most a few dozen bytes, taking a buffer when there is none. */
+	private void ensure(int bytes) throws IOException {
+		if (this.buffer.length - this.position < bytes) {
+			drain();
+			if (this.buffer == EMPTY)
+				this.buffer = BufferPool.JSON.take();
+		}
+	}
+
+	private void drain() throws IOException {
+		if (this.position > 0)
+			this.out.write(this.buffer, 0, this.position);
+		this.position = 0;
+	}
+
+	private static byte[] unicodeEscape(int c) {
+		return new byte[] { '\\', 'u', HEX[c >> 12 & 0xF], HEX[c >> 8 & 0xF], HEX[c >> 4 & 0xF], HEX[c & 0xF] };
+	}
+}
@@ -0,0 +1,11 @@
+package sparkRest.rest;
+
+import java.io.IOException;
+
+public class MalformedJsonException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public MalformedJsonException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,27 @@
+package sparkRest.rest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import sparkRest.accounting.Money;
+
+public class MoneyAdapter extends TypeAdapter<Long> {
+
+	@Override
+	public void write(JsonWriter out, Long value) throws IOException {
+		if (null == value) {
+			out.nullValue();
+			return;
+		}
+		out.value(Money.toDecimal(value));
+	}
+
+	@Override
+	public Long read(JsonReader in) throws IOException {
+		return Money.of(new BigDecimal(in.nextString()));
+	}
+}
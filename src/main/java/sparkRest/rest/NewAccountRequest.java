@@ -1,21 +1,24 @@
 package sparkRest.rest;
 
+import com.google.gson.annotations.JsonAdapter;
+
 public class NewAccountRequest {
-	private double amount;
+	@JsonAdapter(MoneyAdapter.class)
+	private long amount;
 
 	public NewAccountRequest() {
-		this(0.0d);
+		this(0L);
 	}
 	
-	public NewAccountRequest(double amount) {
+	public NewAccountRequest(long amount) {
 		this.amount = amount;
 	}
 
-	public double getAmount() {
+	public long getAmount() {
 		return amount;
 	}
 
-	public void setAmount(double amount) {
+	public void setAmount(long amount) {
 		this.amount = amount;
 	}
 }
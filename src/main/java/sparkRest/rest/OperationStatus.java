@@ -0,0 +1,28 @@
+package sparkRest.rest;
+
+import sparkRest.transfers.TransferPipeline;
+import sparkRest.transfers.TransferResult;
+
+public class OperationStatus {
+	private String id;
+	private String status;
+	private TransferResult result;
+
+	public OperationStatus(TransferPipeline.Operation operation) {
+		this.id = operation.getId();
+		this.status = operation.getStatus().name().toLowerCase();
+		this.result = operation.getResult();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public TransferResult getResult() {
+		return result;
+	}
+}
@@ -0,0 +1,44 @@
+package sparkRest.rest;
+
+import java.time.Instant;
+
+public class ScheduleRequest {
+	private String destinationAccount;
+	private long amount;
+	/* null for right away */
+	private Instant startAt;
+	/* 0 for a transfer that runs once */
+	private long intervalSeconds;
+
+	public String getDestinationAccount() {
+		return destinationAccount;
+	}
+
+	public void setDestinationAccount(String destinationAccount) {
+		this.destinationAccount = destinationAccount;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public void setAmount(long amount) {
+		this.amount = amount;
+	}
+
+	public Instant getStartAt() {
+		return startAt;
+	}
+
+	public void setStartAt(Instant startAt) {
+		this.startAt = startAt;
+	}
+
+	public long getIntervalSeconds() {
+		return intervalSeconds;
+	}
+
+	public void setIntervalSeconds(long intervalSeconds) {
+		this.intervalSeconds = intervalSeconds;
+	}
+}
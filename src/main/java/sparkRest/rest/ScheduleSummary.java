@@ -0,0 +1,61 @@
+package sparkRest.rest;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import sparkRest.transfers.ScheduledTransfers;
+import sparkRest.transfers.TransferResult;
+
+public class ScheduleSummary {
+	private String id;
+	private String sourceAccount;
+	private String destinationAccount;
+	private long amount;
+	private String nextRun;
+	private long intervalSeconds;
+	private int runs;
+	private TransferResult lastResult;
+
+	public ScheduleSummary(ScheduledTransfers.Schedule schedule) {
+		this.id = schedule.getId();
+		this.sourceAccount = schedule.getSourceId();
+		this.destinationAccount = schedule.getDestinationId();
+		this.amount = schedule.getAmount();
+		this.nextRun = Instant.ofEpochMilli(schedule.getNextRun()).toString();
+		this.intervalSeconds = TimeUnit.MILLISECONDS.toSeconds(schedule.getIntervalMillis());
+		this.runs = schedule.getRuns();
+		this.lastResult = schedule.getLastResult();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getSourceAccount() {
+		return sourceAccount;
+	}
+
+	public String getDestinationAccount() {
+		return destinationAccount;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public String getNextRun() {
+		return nextRun;
+	}
+
+	public long getIntervalSeconds() {
+		return intervalSeconds;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public TransferResult getLastResult() {
+		return lastResult;
+	}
+}
@@ -0,0 +1,49 @@
+package sparkRest.rest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+import sparkRest.accounting.Money;
+import sparkRest.transfers.TransferLedger;
+
+/*
+ * Writes one page of an account's transfer history as
+ * {"transfers":[{"time":...,"amount":...,"counterpart":...}],"next":"..."},
+ * entries newest first, with the amount negative for the ones it paid.
+ */
+final class TransferPage implements TransferLedger.Visitor {
+	private final JsonOutput out;
+	private final int limit;
+	private int listed;
+
+	TransferPage(JsonOutput out, int limit) throws IOException {
+		this.out = out;
+		this.limit = limit;
+		out.beginObject();
+		out.name(JsonCodecs.TRANSFERS).beginArray();
+	}
+
+	/* Lists the entry; false once the page is full. */
+	@Override
+	public boolean visit(long time, long amount, String counterpart) {
+		try {
+			this.out.beginObject();
+			this.out.name(JsonCodecs.TIME).value(Instant.ofEpochMilli(time).toString());
+			this.out.name(JsonCodecs.AMOUNT).value(amount, Money.SCALE);
+			this.out.name(JsonCodecs.COUNTERPART).value(counterpart);
+			this.out.endObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return ++this.listed < this.limit;
+	}
+
+	void end(long next) throws IOException {
+		this.out.endArray();
+		if (next != TransferLedger.END)
+			this.out.name(JsonCodecs.NEXT).value(Long.toString(next));
+		this.out.endObject();
+		this.out.flush();
+	}
+}
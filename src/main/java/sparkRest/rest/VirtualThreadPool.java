@@ -0,0 +1,82 @@
+package sparkRest.rest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/*
+ * Jetty thread pool that runs every task, and so every request, on a new
+ * virtual thread. Blocking on the request path then parks a virtual thread
+ * instead of holding one of a fixed number of pool threads. Virtual threads
+ * are looked up reflectively so the project still builds on Java 11; creating
+ * the pool on an older runtime fails.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+	private final ThreadFactory threads;
+	private final AtomicInteger running = new AtomicInteger();
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	public VirtualThreadPool(String name) {
+		this.threads = factory(name);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		this.running.incrementAndGet();
+		this.threads.newThread(() -> {
+			try {
+				task.run();
+			} finally {
+				this.running.decrementAndGet();
+			}
+		}).start();
+	}
+
+	@Override
+	public void join() throws InterruptedException {
+		this.stopped.await();
+	}
+
+	@Override
+	public int getThreads() {
+		return this.running.get();
+	}
+
+	@Override
+	public int getIdleThreads() {
+		return 0;
+	}
+
+	@Override
+	public boolean isLowOnThreads() {
+		return false;
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		this.stopped.countDown();
+	}
+
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static ThreadFactory factory(String name) {
+		try {
+			var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			var builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("virtual threads need Java 21 or later", e);
+		}
+	}
+}
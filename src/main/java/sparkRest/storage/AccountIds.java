@@ -0,0 +1,79 @@
+package sparkRest.storage;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+
+/*
+ * Account ids are UUIDs in their canonical 36 character form. Storage keys
+ * them as the two longs of the UUID, parsed here straight from the characters
+ * without creating a UUID or any intermediate String. Hex digits are accepted
+ * in either case, so an id finds its account however it is written, but an
+ * account only ever carries the lowercase form.
+ */
+public final class AccountIds {
+	public static final int LENGTH = 36;
+
+	private static final byte[] DIGITS = new byte[128];
+
+	static {
+		Arrays.fill(DIGITS, (byte) -1);
+		for (int i = 0; i < 10; i++)
+			DIGITS['0' + i] = (byte) i;
+		for (int i = 0; i < 6; i++) {
+			DIGITS['a' + i] = (byte) (10 + i);
+			DIGITS['A' + i] = (byte) (10 + i);
+		}
+	}
+
+	private AccountIds() {
+	}
+
+	public static boolean isValid(CharSequence id) {
+		if (null == id || id.length() != LENGTH) return false;
+		if (id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-' || id.charAt(23) != '-') return false;
+
+		return (digits(id, 0, 8) | digits(id, 9, 13) | digits(id, 14, 18) | digits(id, 19, 23) | digits(id, 24, 36)) >= 0;
+	}
+
+	/* A valid id with its hex digits in lowercase; the id itself when they are already. */
+	public static String canonical(String id) {
+		for (int i = 0; i < LENGTH; i++) {
+			var c = id.charAt(i);
+			if (c >= 'A' && c <= 'F')
+				return id.toLowerCase(Locale.ROOT);
+		}
+		return id;
+	}
+
+	/* The most significant long of a valid id. */
+	public static long high(CharSequence id) {
+		return hex(id, 0, 8) << 32 | hex(id, 9, 13) << 16 | hex(id, 14, 18);
+	}
+
+	/* The least significant long of a valid id. */
+	public static long low(CharSequence id) {
+		return hex(id, 19, 23) << 48 | hex(id, 24, 36);
+	}
+
+	public static String format(long high, long low) {
+		return new UUID(high, low).toString();
+	}
+
+	/* Negative when a character in the range is not a hex digit. */
+	private static int digits(CharSequence id, int from, int to) {
+		var digits = 0;
+		for (int i = from; i < to; i++) {
+			var c = id.charAt(i);
+			digits |= c < DIGITS.length ? DIGITS[c] : -1;
+		}
+		return digits;
+	}
+
+	private static long hex(CharSequence id, int from, int to) {
+		long value = 0;
+		for (int i = from; i < to; i++)
+			value = value << 4 | DIGITS[id.charAt(i)];
+		return value;
+	}
+}
@@ -0,0 +1,266 @@
+package sparkRest.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * Concurrent hash index from account ids, held as the two longs of their UUID
+ * (see AccountIds), to int ordinals. Every segment is an open-addressing table
+ * of single longs, each the upper half of the id's hash, which also picks the
+ * slot, next to the ordinal. Probing is linear and deletion shifts entries
+ * back, so there are no entry objects and no tombstones. The ids themselves
+ * are kept once, densely, by ordinal (see Keys), and only compared when the
+ * hashes match.
+ *
+ * Writers take the write lock of their segment; readers probe without locking
+ * under an optimistic stamp and only fall back to the read lock when a writer
+ * got in between.
+ *
+ * An ordinal must not be put for more than one id over the life of the index.
+ */
+public final class AccountIndex {
+	public static final int ABSENT = -1;
+
+	private static final int SEGMENT_BITS = 8;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	/* a segment doubles when it is three quarters full */
+	private static final int LOAD_SHIFT = 2;
+	
+	private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+	private final Keys keys;
+
+	public AccountIndex() {
+		this(new HeapKeys());
+	}
+
+	/* Indexes ids whose keys are kept by the caller, for one that stores them by ordinal anyway. */
+	public AccountIndex(Keys keys) {
+		if (null == keys)
+			throw new IllegalArgumentException("keys");
+
+		this.keys = keys;
+		for (int i = 0; i < this.segments.length; i++)
+			this.segments[i] = new Segment(INITIAL_CAPACITY);
+	}
+
+	/* The ordinal of the id, or ABSENT. */
+	public int get(long high, long low) {
+		var hash = hash(high, low);
+		return segment(hash).get(this.keys, hash, high, low);
+	}
+
+	/* Maps the id to ordinal unless it is mapped already; returns the ordinal it had, or ABSENT. */
+	public int putIfAbsent(long high, long low, int ordinal) {
+		if (ordinal < 0)
+			throw new IllegalArgumentException("ordinal");
+
+		var hash = hash(high, low);
+		return segment(hash).putIfAbsent(this.keys, hash, high, low, ordinal);
+	}
+
+	/* Removes the id and returns the ordinal it had, or ABSENT. */
+	public int remove(long high, long low) {
+		var hash = hash(high, low);
+		return segment(hash).remove(this.keys, hash, high, low);
+	}
+
+	public long size() {
+		long size = 0;
+		for (var segment : this.segments)
+			size += segment.size;
+		return size;
+	}
+
+	private Segment segment(long hash) {
+		return this.segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+	}
+
+	/* UUIDs are mostly random, but restored or hand-made ids need not be */
+	private static long hash(long high, long low) {
+		var hash = high * 0x9E3779B97F4A7C15L ^ low;
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	/* An empty slot is 0; ordinals are stored plus one so that no entry is. */
+	private static long entry(long hash, int ordinal) {
+		return (hash & 0xFFFFFFFF00000000L) | (ordinal + 1L);
+	}
+
+	private static int ordinal(long entry) {
+		return (int) entry - 1;
+	}
+
+	/* The top bits pick the segment, the ones below them the slot. */
+	private static int home(long hash) {
+		return (int) (hash >>> 32);
+	}
+
+	/*
+	 * The id of every ordinal. set is called under the lock of a segment before
+	 * the ordinal is indexed; matches is also called by optimistic readers,
+	 * which may follow an entry that is being written, whose ordinal has no
+	 * keys yet.
+	 */
+	public interface Keys {
+		boolean matches(int ordinal, long high, long low);
+
+		void set(int ordinal, long high, long low);
+	}
+
+	/* high and low of every ordinal side by side, in chunks */
+	private static final class HeapKeys implements Keys {
+		private static final int CHUNK_BITS = 16;
+		private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+		private volatile long[][] chunks = new long[0][];
+
+		@Override
+		public boolean matches(int ordinal, long high, long low) {
+			var chunks = this.chunks;
+			var chunk = ordinal >>> CHUNK_BITS;
+			if (chunk >= chunks.length) return false;
+
+			var offset = (ordinal & CHUNK_MASK) * 2;
+			return chunks[chunk][offset] == high && chunks[chunk][offset + 1] == low;
+		}
+
+		@Override
+		public void set(int ordinal, long high, long low) {
+			var chunk = ordinal >>> CHUNK_BITS;
+			var chunks = chunk < this.chunks.length ? this.chunks : grow(chunk);
+			var offset = (ordinal & CHUNK_MASK) * 2;
+			chunks[chunk][offset] = high;
+			chunks[chunk][offset + 1] = low;
+		}
+
+		private synchronized long[][] grow(int chunk) {
+			var chunks = this.chunks;
+			if (chunk >= chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunk + 1);
+				for (int i = this.chunks.length; i < chunks.length; i++)
+					chunks[i] = new long[2 << CHUNK_BITS];
+				this.chunks = chunks;
+			}
+			return chunks;
+		}
+	}
+
+	private static final class Segment extends StampedLock {
+		private static final long serialVersionUID = 1L;
+
+		private volatile long[] table;
+		private volatile int size;
+
+		Segment(int capacity) {
+			this.table = new long[capacity];
+		}
+
+		int get(Keys keys, long hash, long high, long low) {
+			var stamp = tryOptimisticRead();
+			if (stamp != 0) {
+				var ordinal = find(keys, this.table, hash, high, low);
+				if (validate(stamp)) return ordinal;
+			}
+
+			stamp = readLock();
+			try {
+				return find(keys, this.table, hash, high, low);
+			} finally {
+				unlockRead(stamp);
+			}
+		}
+
+		int putIfAbsent(Keys keys, long hash, long high, long low, int ordinal) {
+			var stamp = writeLock();
+			try {
+				var table = this.table;
+				var mask = table.length - 1;
+				var slot = home(hash) & mask;
+				for (long entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+					if (sameHash(entry, hash) && keys.matches(ordinal(entry), high, low))
+						return ordinal(entry);
+				}
+
+				keys.set(ordinal, high, low);
+				table[slot] = entry(hash, ordinal);
+				this.size++;
+				if (this.size > table.length - (table.length >> LOAD_SHIFT))
+					this.table = resize(table);
+				return ABSENT;
+			} finally {
+				unlockWrite(stamp);
+			}
+		}
+
+		int remove(Keys keys, long hash, long high, long low) {
+			var stamp = writeLock();
+			try {
+				var table = this.table;
+				var mask = table.length - 1;
+				var slot = home(hash) & mask;
+				for (long entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+					if (sameHash(entry, hash) && keys.matches(ordinal(entry), high, low)) {
+						shiftBack(table, slot);
+						this.size--;
+						return ordinal(entry);
+					}
+				}
+				return ABSENT;
+			} finally {
+				unlockWrite(stamp);
+			}
+		}
+
+		/* Bounded by the capacity: an optimistic reader may probe a table that is being changed. */
+		private static int find(Keys keys, long[] table, long hash, long high, long low) {
+			var mask = table.length - 1;
+			var slot = home(hash) & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				var entry = table[slot];
+				if (entry == 0) return ABSENT;
+				if (sameHash(entry, hash) && keys.matches(ordinal(entry), high, low)) return ordinal(entry);
+				slot = (slot + 1) & mask;
+			}
+			return ABSENT;
+		}
+
+		/* Moves later entries of the probe run into the freed slot so that no lookup stops early. */
+		private static void shiftBack(long[] table, int free) {
+			var mask = table.length - 1;
+			var slot = free;
+			while (true) {
+				slot = (slot + 1) & mask;
+				var entry = table[slot];
+				if (entry == 0) break;
+
+				var home = home(entry) & mask;
+				/* the entry may move if its home is not cyclically within (free, slot] */
+				if (((slot - home) & mask) >= ((slot - free) & mask)) {
+					table[free] = entry;
+					free = slot;
+				}
+			}
+			table[free] = 0;
+		}
+
+		private static long[] resize(long[] table) {
+			var resized = new long[table.length * 2];
+			var mask = resized.length - 1;
+			for (var entry : table) {
+				if (entry == 0) continue;
+
+				var slot = home(entry) & mask;
+				while (resized[slot] != 0)
+					slot = (slot + 1) & mask;
+				resized[slot] = entry;
+			}
+			return resized;
+		}
+
+		private static boolean sameHash(long entry, long hash) {
+			return ((entry ^ hash) & 0xFFFFFFFF00000000L) == 0;
+		}
+	}
+}
@@ -1,16 +1,61 @@
 package sparkRest.storage;
 
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
 import sparkRest.accounting.Account;
 import sparkRest.rest.NewAccountRequest;
 
 public interface AccountStorage {
+	long END = -1;
 
+	/* Throws IllegalArgumentException("balance") when its accounts cannot hold the opening amount. */
 	String newAccount(NewAccountRequest request);
 
+	Account restore(String id, long balance);
+
+	/* Like restore, but only when no account of the id is stored, in one step; null when there is one. */
+	Account create(String id, long balance);
+
 	Account get(String key);
 
 	boolean remove(String id);
 
 	boolean has(String id);
 
+	void forEach(Consumer<Account> action);
+
+	/*
+	 * Weakly consistent walk over the accounts from cursor on, in an order that
+	 * accounts coming and going does not change; cursor 0 is the start. Stops
+	 * after the first account action returns false for and returns the cursor
+	 * that continues behind it, or END once every account was visited.
+	 */
+	long forEach(long cursor, Predicate<Account> action);
+
+	/* Like forEach(cursor, action), over the locked accounts only. */
+	default long forEachLocked(long cursor, Predicate<Account> action) {
+		return forEach(cursor, account -> !account.isLocked() || action.test(account));
+	}
+
+	/*
+	 * Like forEach(cursor, action), over the accounts whose available amount is
+	 * within [min, max], with a cursor of the storage's own making; null is the
+	 * start and the end. Storages that index amounts walk them by amount, the
+	 * others in the order of forEach.
+	 */
+	default String forEachByBalance(String cursor, long min, long max, Predicate<Account> action) {
+		var next = forEach(null == cursor ? 0 : Long.parseLong(cursor), account -> {
+			var balance = account.getBalance();
+			return balance < min || balance > max || action.test(account);
+		});
+		return next == END ? null : Long.toString(next);
+	}
+
+	long count();
+
+	/* Returns once every change made so far survives a crash, as far as the storage keeps changes at all. */
+	default void awaitDurable() {
+	}
+
 }
\ No newline at end of file
@@ -1,54 +1,216 @@
 package sparkRest.storage;
 
+import java.util.Arrays;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import sparkRest.accounting.Account;
+import sparkRest.accounting.AccountFactory;
 import sparkRest.accounting.InMemoryAccount;
 import sparkRest.rest.NewAccountRequest;
 
+/*
+ * Accounts live in chunks of an array by ordinal; an AccountIndex maps the id
+ * of every account, as two longs, to its ordinal. An account is stored in its
+ * chunk before its id is indexed, so whoever finds the ordinal finds the
+ * account. Ordinals are handed out in creation order and never reused, which
+ * keeps a removed account's ordinal from ever leading to another account.
+ * SecondaryIndexes follow the available amount and the locked state of every
+ * account through its AccountListener.
+ */
 public class InMemoryAccountStorage implements AccountStorage {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
 	private static AccountStorage instance = null;
-	
+
 	public static AccountStorage create() {
 		if (null == instance)
 			instance = new InMemoryAccountStorage();
-		
+
 		return instance;
-	}	
-	
-	ConcurrentHashMap<String, Account> accounts;	
-	
+	}
+
+	private final AccountIndex index = new AccountIndex();
+	private final AtomicInteger ordinals = new AtomicInteger();
+	private final SecondaryIndexes indexes = new SecondaryIndexes(this::account);
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private volatile AtomicReferenceArray<Account>[] chunks = new AtomicReferenceArray[0];
+	private AccountFactory factory;
+
 	public InMemoryAccountStorage() {
-		this.accounts = new ConcurrentHashMap<String, Account>();
+		this(InMemoryAccount::new);
+	}
+
+	public InMemoryAccountStorage(AccountFactory factory) {
+		if (null == factory)
+			throw new IllegalArgumentException("factory");
+
+		this.factory = factory;
 	}
 
 	@Override
 	public String newAccount(NewAccountRequest request) {
-		var key = UUID.randomUUID().toString();
-		this.accounts.put(key, new InMemoryAccount(key, request.getAmount()));
-		return key;
+		var uuid = UUID.randomUUID();
+		var id = AccountIds.format(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		insert(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), this.factory.create(id, request.getAmount()), true);
+		return id;
 	}
-	
+
+	@Override
+	public Account restore(String id, long balance) {
+		if (!AccountIds.isValid(id))
+			throw new IllegalArgumentException("id");
+
+		var account = this.factory.create(AccountIds.canonical(id), balance);
+		insert(AccountIds.high(id), AccountIds.low(id), account, true);
+		return account;
+	}
+
+	@Override
+	public Account create(String id, long balance) {
+		if (!AccountIds.isValid(id))
+			throw new IllegalArgumentException("id");
+
+		var account = this.factory.create(AccountIds.canonical(id), balance);
+		return insert(AccountIds.high(id), AccountIds.low(id), account, false) ? account : null;
+	}
+
 	@Override
 	public Account get(String key) {
-		return this.accounts.get(key);
+		if (!AccountIds.isValid(key)) return null;
+
+		var ordinal = this.index.get(AccountIds.high(key), AccountIds.low(key));
+		return ordinal == AccountIndex.ABSENT ? null : account(ordinal);
 	}
 
 	@Override
 	public boolean remove(String id) {
-		var account = this.accounts.get(id);
-		
-		if(!account.isLocked()) return false;
-		
+		var account = get(id);
+
+		if (null == account) return false;
+
+		if (!account.isLocked()) return false;
+
 		if (!account.isEmpty()) return false;
-			
-		accounts.remove(id);
+
+		var ordinal = this.index.remove(AccountIds.high(id), AccountIds.low(id));
+		if (ordinal != AccountIndex.ABSENT) {
+			chunk(ordinal).set(ordinal & CHUNK_MASK, null);
+			this.indexes.changed(ordinal);
+		}
 		return true;
 	}
 
 	@Override
 	public boolean has(String id) {
-		return this.accounts.containsKey(id);
+		return AccountIds.isValid(id) && this.index.get(AccountIds.high(id), AccountIds.low(id)) != AccountIndex.ABSENT;
+	}
+
+	/* Weakly consistent: walks the ordinals handed out when it starts. */
+	@Override
+	public void forEach(Consumer<Account> action) {
+		var end = this.ordinals.get();
+		for (int ordinal = 0; ordinal < end; ordinal++) {
+			var account = chunk(ordinal).get(ordinal & CHUNK_MASK);
+			if (null != account)
+				action.accept(account);
+		}
+	}
+
+	/* The cursor is an ordinal. */
+	@Override
+	public long forEach(long cursor, Predicate<Account> action) {
+		if (cursor < 0)
+			throw new IllegalArgumentException("cursor");
+
+		var end = this.ordinals.get();
+		for (var ordinal = cursor; ordinal < end; ordinal++) {
+			var account = chunk((int) ordinal).get((int) ordinal & CHUNK_MASK);
+			if (null != account && !action.test(account))
+				return ordinal + 1;
+		}
+		return END;
+	}
+
+	/* Walks the locked bitmap, skipping 64 unlocked ordinals a word. */
+	@Override
+	public long forEachLocked(long cursor, Predicate<Account> action) {
+		return this.indexes.forEachLocked(cursor, this.ordinals.get(), action);
+	}
+
+	/* Walks the amount index, in O(log n) to the first account and then by amount. */
+	@Override
+	public String forEachByBalance(String cursor, long min, long max, Predicate<Account> action) {
+		return this.indexes.forEachByBalance(cursor, min, max, action);
+	}
+
+	@Override
+	public long count() {
+		return this.index.size();
+	}
+
+	/* Replaces the account of an id that is stored already, as a put would, or leaves it and returns false. */
+	private boolean insert(long high, long low, Account account, boolean replace) {
+		var existing = this.index.get(high, low);
+		if (existing != AccountIndex.ABSENT) {
+			if (!replace) return false;
+
+			set(existing, account);
+			return true;
+		}
+
+		var ordinal = this.ordinals.getAndIncrement();
+		if (ordinal < 0)
+			throw new IllegalStateException("out of account ordinals");
+
+		var chunk = chunk(ordinal);
+		chunk.set(ordinal & CHUNK_MASK, account);
+		existing = this.index.putIfAbsent(high, low, ordinal);
+		if (existing == AccountIndex.ABSENT) {
+			listen(ordinal, account);
+			return true;
+		}
+
+		/* lost a race for the same id: the ordinal stays unused */
+		chunk.set(ordinal & CHUNK_MASK, null);
+		if (!replace) return false;
+
+		set(existing, account);
+		return true;
+	}
+
+	private void set(int ordinal, Account account) {
+		chunk(ordinal).set(ordinal & CHUNK_MASK, account);
+		listen(ordinal, account);
+	}
+
+	private void listen(int ordinal, Account account) {
+		account.listen(() -> this.indexes.changed(ordinal));
+		this.indexes.changed(ordinal);
+	}
+
+	private Account account(int ordinal) {
+		return chunk(ordinal).get(ordinal & CHUNK_MASK);
+	}
+
+	private AtomicReferenceArray<Account> chunk(int ordinal) {
+		var chunks = this.chunks;
+		var chunk = ordinal >>> CHUNK_BITS;
+		return chunk < chunks.length ? chunks[chunk] : grow(chunk);
+	}
+
+	private synchronized AtomicReferenceArray<Account> grow(int chunk) {
+		var chunks = this.chunks;
+		if (chunk >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = this.chunks.length; i < chunks.length; i++)
+				chunks[i] = new AtomicReferenceArray<>(1 << CHUNK_BITS);
+			this.chunks = chunks;
+		}
+		return chunks[chunk];
 	}
 }
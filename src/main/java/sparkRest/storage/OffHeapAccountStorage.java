@@ -0,0 +1,613 @@
+package sparkRest.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.AccountListener;
+import sparkRest.accounting.BlockedOperationConsumer;
+import sparkRest.rest.NewAccountRequest;
+
+/*
+ * Keeps every account in a fixed 48 byte record outside the heap, in chunks
+ * of direct memory by ordinal or, when a file is given, in chunks of that file
+ * mapped into memory. Accounts are handed out as flyweight views of their
+ * record, so neither the heap nor the work of the collector grows with the
+ * number of accounts; the AccountIndex reads the ids from the records and only
+ * keeps its table of longs on the heap.
+ *
+ *   | id high (8) | id low (8) | available (8) | blocked (8) | state (8) | mutex (8) |
+ *
+ * state is | version (56 bits) | flags (8 bits) |. Every change of a record
+ * sets its BUSY flag with CAS and clears it with the version incremented, so
+ * a reader of both amounts retries until it saw one version. mutex is the
+ * reentrant Account.mutex(): | owning thread id (48 bits) | holds (16 bits) |.
+ * A change from a thread that does not own a held mutex waits for it, so the
+ * operations made under the mutex appear as one to everybody else.
+ *
+ * Holds of blocked operations only exist while a transfer is in flight, so
+ * they are kept on the heap, in one map for all accounts. A mapped file
+ * outlives the process but its holds do not: opening it again returns the
+ * blocked amounts to the available ones. Records are written in native byte
+ * order, and the ordinal of a removed account is not reused.
+ */
+public class OffHeapAccountStorage implements AccountStorage, AutoCloseable {
+	private static final int RECORD = 48;
+	private static final int HIGH = 0;
+	private static final int LOW = 8;
+	private static final int AVAILABLE = 16;
+	private static final int BLOCKED = 24;
+	private static final int STATE = 32;
+	private static final int MUTEX = 40;
+
+	private static final long PRESENT = 1L;
+	private static final long LOCKED = 1L << 1;
+	private static final long BUSY = 1L << 2;
+	private static final long VERSION_ONE = 1L << 8;
+
+	private static final int HOLDS_BITS = 16;
+	private static final long HOLDS_MASK = (1L << HOLDS_BITS) - 1;
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+	private static final int CHUNK_BYTES = RECORD << CHUNK_BITS;
+	private static final int SPINS = 64;
+
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private final AccountIndex index = new AccountIndex(new RecordKeys());
+	private final AtomicInteger ordinals = new AtomicInteger();
+	private final ConcurrentHashMap<Hold, Long> holds = new ConcurrentHashMap<>();
+	private final FileChannel file;
+	private final LongAdder blockedTotal;
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+	public OffHeapAccountStorage() {
+		this(new LongAdder());
+	}
+
+	/* Keeps blockedTotal in step with the amounts its accounts block. */
+	public OffHeapAccountStorage(LongAdder blockedTotal) {
+		this.file = null;
+		this.blockedTotal = blockedTotal;
+	}
+
+	public OffHeapAccountStorage(Path file) {
+		this(file, new LongAdder());
+	}
+
+	/* Keeps the records in the file, and first indexes the accounts it holds already. */
+	public OffHeapAccountStorage(Path file, LongAdder blockedTotal) {
+		this.blockedTotal = blockedTotal;
+		try {
+			this.file = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			var chunks = (int) (this.file.size() / CHUNK_BYTES);
+			if (chunks > 0)
+				grow(chunks - 1);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		recover();
+	}
+
+	@Override
+	public String newAccount(NewAccountRequest request) {
+		var uuid = UUID.randomUUID();
+		insert(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), request.getAmount(), true);
+		return AccountIds.format(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+
+	@Override
+	public Account restore(String id, long balance) {
+		if (!AccountIds.isValid(id))
+			throw new IllegalArgumentException("id");
+		if (balance < 0)
+			throw new IllegalArgumentException("balance");
+
+		return new View(insert(AccountIds.high(id), AccountIds.low(id), balance, true));
+	}
+
+	@Override
+	public Account create(String id, long balance) {
+		if (!AccountIds.isValid(id))
+			throw new IllegalArgumentException("id");
+		if (balance < 0)
+			throw new IllegalArgumentException("balance");
+
+		var ordinal = insert(AccountIds.high(id), AccountIds.low(id), balance, false);
+		return ordinal == AccountIndex.ABSENT ? null : new View(ordinal);
+	}
+
+	@Override
+	public Account get(String key) {
+		var ordinal = ordinal(key);
+		return ordinal == AccountIndex.ABSENT ? null : new View(ordinal);
+	}
+
+	@Override
+	public boolean remove(String id) {
+		var ordinal = ordinal(id);
+		if (ordinal == AccountIndex.ABSENT) return false;
+
+		var chunk = chunk(ordinal);
+		var offset = offset(ordinal);
+		var state = acquire(chunk, offset);
+		if ((state & LOCKED) == 0 || available(chunk, offset) + blocked(chunk, offset) != 0) {
+			release(chunk, offset, state);
+			return false;
+		}
+
+		this.index.remove(AccountIds.high(id), AccountIds.low(id));
+		release(chunk, offset, state & ~PRESENT);
+		return true;
+	}
+
+	@Override
+	public boolean has(String id) {
+		return ordinal(id) != AccountIndex.ABSENT;
+	}
+
+	/* Weakly consistent: walks the ordinals handed out when it starts. */
+	@Override
+	public void forEach(Consumer<Account> action) {
+		var end = this.ordinals.get();
+		for (int ordinal = 0; ordinal < end; ordinal++) {
+			if ((state(chunk(ordinal), offset(ordinal)) & PRESENT) != 0)
+				action.accept(new View(ordinal));
+		}
+	}
+
+	/* The cursor is an ordinal. */
+	@Override
+	public long forEach(long cursor, Predicate<Account> action) {
+		if (cursor < 0)
+			throw new IllegalArgumentException("cursor");
+
+		var end = this.ordinals.get();
+		for (var ordinal = cursor; ordinal < end; ordinal++) {
+			if ((state(chunk((int) ordinal), offset((int) ordinal)) & PRESENT) != 0 && !action.test(new View((int) ordinal)))
+				return ordinal + 1;
+		}
+		return END;
+	}
+
+	@Override
+	public long count() {
+		return this.index.size();
+	}
+
+	/* Writes the mapped records back to the file; they are not forced before. */
+	@Override
+	public void close() {
+		if (null == this.file) return;
+
+		try {
+			for (var chunk : this.chunks)
+				((MappedByteBuffer) chunk).force();
+			this.file.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int ordinal(String id) {
+		if (!AccountIds.isValid(id)) return AccountIndex.ABSENT;
+
+		return this.index.get(AccountIds.high(id), AccountIds.low(id));
+	}
+
+	/* Replaces the account of an id that is stored already, as a put would, or leaves it and returns ABSENT. */
+	private int insert(long high, long low, long balance, boolean replace) {
+		var existing = this.index.get(high, low);
+		if (existing != AccountIndex.ABSENT) {
+			if (!replace) return AccountIndex.ABSENT;
+
+			reset(existing, balance);
+			return existing;
+		}
+
+		var ordinal = this.ordinals.getAndIncrement();
+		if (ordinal < 0)
+			throw new IllegalStateException("out of account ordinals");
+
+		var chunk = chunk(ordinal);
+		var offset = offset(ordinal);
+		LONGS.set(chunk, offset + HIGH, high);
+		LONGS.set(chunk, offset + LOW, low);
+		LONGS.set(chunk, offset + AVAILABLE, balance);
+		LONGS.set(chunk, offset + BLOCKED, 0L);
+		LONGS.set(chunk, offset + MUTEX, 0L);
+		LONGS.setVolatile(chunk, offset + STATE, PRESENT);
+		existing = this.index.putIfAbsent(high, low, ordinal);
+		if (existing == AccountIndex.ABSENT) return ordinal;
+
+		/* lost a race for the same id: the ordinal stays unused */
+		LONGS.setVolatile(chunk, offset + STATE, 0L);
+		if (!replace) return AccountIndex.ABSENT;
+
+		reset(existing, balance);
+		return existing;
+	}
+
+	private void reset(int ordinal, long balance) {
+		this.holds.keySet().removeIf(hold -> hold.ordinal == ordinal);
+		var chunk = chunk(ordinal);
+		var offset = offset(ordinal);
+		var state = acquire(chunk, offset);
+		LONGS.set(chunk, offset + AVAILABLE, balance);
+		LONGS.set(chunk, offset + BLOCKED, 0L);
+		release(chunk, offset, (state & ~LOCKED) | PRESENT);
+	}
+
+	/* Indexes the records of a reopened file; holds did not survive, so blocked amounts are available again. */
+	private void recover() {
+		var chunks = this.chunks;
+		var end = 0;
+		for (int ordinal = 0; ordinal < chunks.length << CHUNK_BITS; ordinal++) {
+			var chunk = chunks[ordinal >>> CHUNK_BITS];
+			var offset = offset(ordinal);
+			var state = state(chunk, offset);
+			if ((state & PRESENT) == 0) continue;
+
+			LONGS.set(chunk, offset + AVAILABLE, available(chunk, offset) + blocked(chunk, offset));
+			LONGS.set(chunk, offset + BLOCKED, 0L);
+			LONGS.set(chunk, offset + MUTEX, 0L);
+			LONGS.set(chunk, offset + STATE, state & ~BUSY);
+			this.index.putIfAbsent((long) LONGS.get(chunk, offset + HIGH), (long) LONGS.get(chunk, offset + LOW), ordinal);
+			end = ordinal + 1;
+		}
+		this.ordinals.set(end);
+	}
+
+	/* Sets BUSY and returns the state it replaced. */
+	private static long acquire(ByteBuffer chunk, int offset) {
+		var spins = 0;
+		while (true) {
+			var state = state(chunk, offset);
+			if ((state & BUSY) == 0 && LONGS.weakCompareAndSet(chunk, offset + STATE, state, state | BUSY))
+				return state;
+			backOff(++spins);
+		}
+	}
+
+	/* acquire, once no other thread holds the mutex of the record, so changes wait for whoever holds it */
+	private static long enter(ByteBuffer chunk, int offset) {
+		var owner = Thread.currentThread().getId() << HOLDS_BITS;
+		while (true) {
+			var state = acquire(chunk, offset);
+			var mutex = (long) LONGS.getVolatile(chunk, offset + MUTEX);
+			if (mutex == 0 || (mutex & ~HOLDS_MASK) == owner) return state;
+
+			LONGS.setVolatile(chunk, offset + STATE, state);
+			var spins = 0;
+			while ((long) LONGS.getVolatile(chunk, offset + MUTEX) != 0)
+				backOff(++spins);
+		}
+	}
+
+	private static void release(ByteBuffer chunk, int offset, long state) {
+		LONGS.setVolatile(chunk, offset + STATE, (state & ~BUSY) + VERSION_ONE);
+	}
+
+	private static long state(ByteBuffer chunk, int offset) {
+		return (long) LONGS.getVolatile(chunk, offset + STATE);
+	}
+
+	private static long available(ByteBuffer chunk, int offset) {
+		return (long) LONGS.getVolatile(chunk, offset + AVAILABLE);
+	}
+
+	private static long blocked(ByteBuffer chunk, int offset) {
+		return (long) LONGS.getVolatile(chunk, offset + BLOCKED);
+	}
+
+	private static void backOff(int spins) {
+		if (spins < SPINS)
+			Thread.onSpinWait();
+		else
+			LockSupport.parkNanos(1_000);
+	}
+
+	private static int offset(int ordinal) {
+		return (ordinal & CHUNK_MASK) * RECORD;
+	}
+
+	private ByteBuffer chunk(int ordinal) {
+		var chunks = this.chunks;
+		var chunk = ordinal >>> CHUNK_BITS;
+		return chunk < chunks.length ? chunks[chunk] : grow(chunk)[chunk];
+	}
+
+	private synchronized ByteBuffer[] grow(int chunk) {
+		var chunks = this.chunks;
+		if (chunk >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = this.chunks.length; i < chunks.length; i++)
+				chunks[i] = allocate(i);
+			this.chunks = chunks;
+		}
+		return chunks;
+	}
+
+	private ByteBuffer allocate(int chunk) {
+		if (null == this.file)
+			return ByteBuffer.allocateDirect(CHUNK_BYTES);
+
+		try {
+			return this.file.map(FileChannel.MapMode.READ_WRITE, (long) chunk * CHUNK_BYTES, CHUNK_BYTES);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private final class RecordKeys implements AccountIndex.Keys {
+		@Override
+		public boolean matches(int ordinal, long high, long low) {
+			var chunks = OffHeapAccountStorage.this.chunks;
+			var chunk = ordinal >>> CHUNK_BITS;
+			if (chunk >= chunks.length) return false;
+
+			var offset = offset(ordinal);
+			return (long) LONGS.get(chunks[chunk], offset + HIGH) == high && (long) LONGS.get(chunks[chunk], offset + LOW) == low;
+		}
+
+		/* insert writes the id with the rest of the record */
+		@Override
+		public void set(int ordinal, long high, long low) {
+		}
+	}
+
+	private static final class Hold {
+		final int ordinal;
+		final String operationId;
+
+		Hold(int ordinal, String operationId) {
+			this.ordinal = ordinal;
+			this.operationId = operationId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Hold)) return false;
+
+			var hold = (Hold) other;
+			return this.ordinal == hold.ordinal && Objects.equals(this.operationId, hold.operationId);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.ordinal + Objects.hashCode(this.operationId);
+		}
+	}
+
+	/* A flyweight over the record of one account; any number of views of the same account may exist. */
+	private final class View implements Account {
+		private final int ordinal;
+		private final ByteBuffer chunk;
+		private final int offset;
+		private String id;
+
+		View(int ordinal) {
+			this.ordinal = ordinal;
+			this.chunk = chunk(ordinal);
+			this.offset = offset(ordinal);
+		}
+
+		@Override
+		public String getId() {
+			if (null == this.id)
+				this.id = AccountIds.format((long) LONGS.get(this.chunk, this.offset + HIGH), (long) LONGS.get(this.chunk, this.offset + LOW));
+			return this.id;
+		}
+
+		@Override
+		public long getBalance() {
+			return available(this.chunk, this.offset);
+		}
+
+		@Override
+		public boolean block(long amount, String operationId) {
+			if (amount <= 0) return false;
+
+			var hold = new Hold(this.ordinal, operationId);
+			if (holds.containsKey(hold)) return false;
+
+			var state = enter(this.chunk, this.offset);
+			var available = available(this.chunk, this.offset);
+			if (available < amount || holds.putIfAbsent(hold, amount) != null) {
+				release(this.chunk, this.offset, state);
+				return false;
+			}
+
+			LONGS.set(this.chunk, this.offset + AVAILABLE, available - amount);
+			LONGS.set(this.chunk, this.offset + BLOCKED, blocked(this.chunk, this.offset) + amount);
+			release(this.chunk, this.offset, state);
+			blockedTotal.add(amount);
+			return true;
+		}
+
+		@Override
+		public void unblock(String operationId) {
+			var amount = holds.remove(new Hold(this.ordinal, operationId));
+			if (null == amount) return;
+
+			var state = enter(this.chunk, this.offset);
+			LONGS.set(this.chunk, this.offset + AVAILABLE, available(this.chunk, this.offset) + amount);
+			LONGS.set(this.chunk, this.offset + BLOCKED, blocked(this.chunk, this.offset) - amount);
+			release(this.chunk, this.offset, state);
+			blockedTotal.add(-amount);
+		}
+
+		@Override
+		public void commitBlockedOperation(String operationId) {
+			var amount = holds.remove(new Hold(this.ordinal, operationId));
+			if (null == amount) return;
+
+			var state = enter(this.chunk, this.offset);
+			LONGS.set(this.chunk, this.offset + BLOCKED, blocked(this.chunk, this.offset) - amount);
+			release(this.chunk, this.offset, state);
+			blockedTotal.add(-amount);
+		}
+
+		@Override
+		public boolean add(long amount) {
+			if (amount < 0) return false;
+
+			var state = enter(this.chunk, this.offset);
+			var available = available(this.chunk, this.offset);
+			var added = (state & LOCKED) == 0 && amount <= Long.MAX_VALUE - available - blocked(this.chunk, this.offset);
+			if (added)
+				LONGS.set(this.chunk, this.offset + AVAILABLE, available + amount);
+			release(this.chunk, this.offset, state);
+			return added;
+		}
+
+		@Override
+		public void lock() {
+			release(this.chunk, this.offset, enter(this.chunk, this.offset) | LOCKED);
+		}
+
+		@Override
+		public void unlock() {
+			release(this.chunk, this.offset, enter(this.chunk, this.offset) & ~LOCKED);
+		}
+
+		@Override
+		public boolean isLocked() {
+			return (state(this.chunk, this.offset) & LOCKED) != 0;
+		}
+
+		@Override
+		public long getBlockedAmount() {
+			return blocked(this.chunk, this.offset);
+		}
+
+		@Override
+		public void forEachBlockedOperation(BlockedOperationConsumer consumer) {
+			if (blocked(this.chunk, this.offset) == 0) return;
+
+			holds.forEach((hold, amount) -> {
+				if (hold.ordinal == this.ordinal)
+					consumer.accept(hold.operationId, amount);
+			});
+		}
+
+		@Override
+		public Lock mutex() {
+			return new Mutex(this.chunk, this.offset);
+		}
+
+		/* A no-op: this storage keeps no secondary indexes, so nothing needs to be told, and a record has no room for a listener. */
+		@Override
+		public void listen(AccountListener listener) {
+		}
+
+		@Override
+		public boolean isEmpty() {
+			while (true) {
+				var before = state(this.chunk, this.offset);
+				if ((before & BUSY) != 0) {
+					Thread.onSpinWait();
+					continue;
+				}
+
+				var total = available(this.chunk, this.offset) + blocked(this.chunk, this.offset);
+				if (before == state(this.chunk, this.offset))
+					return total == 0;
+			}
+		}
+	}
+
+	/*
+	 * Reentrant lock in the mutex word of a record. It spins and then parks for
+	 * short whiles instead of queueing, which suits the few statements a
+	 * transfer holds it for; it supports no conditions.
+	 */
+	private static final class Mutex implements Lock {
+		private final ByteBuffer chunk;
+		private final int offset;
+
+		Mutex(ByteBuffer chunk, int offset) {
+			this.chunk = chunk;
+			this.offset = offset;
+		}
+
+		@Override
+		public void lock() {
+			var spins = 0;
+			while (!tryLock())
+				backOff(++spins);
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			var spins = 0;
+			while (!tryLock()) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				backOff(++spins);
+			}
+		}
+
+		@Override
+		public boolean tryLock() {
+			var owner = Thread.currentThread().getId() << HOLDS_BITS;
+			var mutex = (long) LONGS.getVolatile(this.chunk, this.offset + MUTEX);
+			if (mutex == 0)
+				return LONGS.compareAndSet(this.chunk, this.offset + MUTEX, 0L, owner | 1);
+			if ((mutex & ~HOLDS_MASK) != owner) return false;
+			if ((mutex & HOLDS_MASK) == HOLDS_MASK)
+				throw new IllegalMonitorStateException("too many holds");
+
+			LONGS.setVolatile(this.chunk, this.offset + MUTEX, mutex + 1);
+			return true;
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			var deadline = System.nanoTime() + unit.toNanos(time);
+			var spins = 0;
+			while (!tryLock()) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				if (System.nanoTime() - deadline >= 0) return false;
+				backOff(++spins);
+			}
+			return true;
+		}
+
+		@Override
+		public void unlock() {
+			var mutex = (long) LONGS.getVolatile(this.chunk, this.offset + MUTEX);
+			if ((mutex & ~HOLDS_MASK) != Thread.currentThread().getId() << HOLDS_BITS || (mutex & HOLDS_MASK) == 0)
+				throw new IllegalMonitorStateException();
+
+			LONGS.setVolatile(this.chunk, this.offset + MUTEX, (mutex & HOLDS_MASK) == 1 ? 0L : mutex - 1);
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package sparkRest.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import sparkRest.accounting.Account;
+
+/*
+ * Indexes of the accounts of a storage by ordinal: a skip list ordered by
+ * available amount and a bitmap of the locked ones. They are kept up to date
+ * lazily: a change of an account only sets the DIRTY bit of its ordinal, which
+ * costs a read once the bit is set already, and a walk first reads every dirty
+ * account as it is now and moves its entries. So transfers do not pay for the
+ * skip list, and a walk sees every change made before it started. Catching up
+ * reads the accounts without their mutexes, so it cannot close a cycle with
+ * them. Walks check the account itself, so an entry that lags behind a change
+ * made during the walk never lets a wrong account through.
+ */
+final class SecondaryIndexes {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	private final IntFunction<Account> accounts;
+	private final ConcurrentSkipListSet<Entry> balances = new ConcurrentSkipListSet<>();
+	private volatile Chunk[] chunks = new Chunk[0];
+
+	SecondaryIndexes(IntFunction<Account> accounts) {
+		this.accounts = accounts;
+	}
+
+	/* Called after the account of the ordinal changed, was set or was cleared. */
+	void changed(int ordinal) {
+		var dirty = chunk(ordinal).dirty;
+		var word = (ordinal & CHUNK_MASK) >>> 6;
+		var bit = 1L << (ordinal & 63);
+		while (true) {
+			var current = dirty.get(word);
+			if ((current & bit) != 0 || dirty.compareAndSet(word, current, current | bit)) return;
+		}
+	}
+
+	/* Like AccountStorage.forEach(cursor, action) over the locked accounts; the cursor is an ordinal. */
+	long forEachLocked(long cursor, int end, Predicate<Account> action) {
+		if (cursor < 0)
+			throw new IllegalArgumentException("cursor");
+
+		catchUp();
+		var chunks = this.chunks;
+		for (var ordinal = cursor; ordinal < end; ordinal++) {
+			var chunk = (int) (ordinal >>> CHUNK_BITS);
+			if (chunk >= chunks.length) break;
+
+			var word = chunks[chunk].locked.get(((int) ordinal & CHUNK_MASK) >>> 6) >>> (ordinal & 63);
+			if (word == 0) {
+				/* nothing locked in the rest of the word */
+				ordinal |= 63;
+				continue;
+			}
+			ordinal += Long.numberOfTrailingZeros(word);
+			if (ordinal >= end) break;
+
+			var account = this.accounts.apply((int) ordinal);
+			if (null != account && account.isLocked() && !action.test(account))
+				return ordinal + 1;
+		}
+		return AccountStorage.END;
+	}
+
+	/*
+	 * Walks the accounts whose available amount is within [min, max] by amount,
+	 * and by ordinal among equal amounts. The cursor is the amount and the
+	 * ordinal of the last account visited, as "amount:ordinal"; null starts at
+	 * min. Returns the cursor of the account action returned false for, or null.
+	 */
+	String forEachByBalance(String cursor, long min, long max, Predicate<Account> action) {
+		var from = null == cursor ? new Entry(min, -1) : Entry.parse(cursor);
+		catchUp();
+		for (var entry : this.balances.tailSet(from, false)) {
+			if (entry.balance > max) break;
+
+			var account = this.accounts.apply(entry.ordinal);
+			if (null == account) continue;
+
+			var balance = account.getBalance();
+			if (balance >= min && balance <= max && !action.test(account))
+				return entry.toString();
+		}
+		return null;
+	}
+
+	/* Reindexes the dirty ordinals; the bit is cleared first, so a change made meanwhile stays dirty. */
+	private synchronized void catchUp() {
+		var chunks = this.chunks;
+		for (int c = 0; c < chunks.length; c++) {
+			var dirty = chunks[c].dirty;
+			for (int word = 0; word < dirty.length(); word++) {
+				if (dirty.get(word) == 0) continue;
+
+				for (var bits = dirty.getAndSet(word, 0); bits != 0; bits &= bits - 1)
+					reindex(chunks[c], c << CHUNK_BITS | word << 6 | Long.numberOfTrailingZeros(bits));
+			}
+		}
+	}
+
+	private void reindex(Chunk chunk, int ordinal) {
+		var account = this.accounts.apply(ordinal);
+		var slot = ordinal & CHUNK_MASK;
+		var indexed = chunk.entries[slot];
+		var entry = null == account ? null : indexed;
+		if (null != account) {
+			var balance = account.getBalance();
+			if (null == indexed || indexed.balance != balance)
+				entry = new Entry(balance, ordinal);
+		}
+		if (entry != indexed) {
+			if (null != indexed) this.balances.remove(indexed);
+			if (null != entry) this.balances.add(entry);
+			chunk.entries[slot] = entry;
+		}
+
+		var bit = 1L << (slot & 63);
+		if (null != account && account.isLocked())
+			chunk.locked.getAndUpdate(slot >>> 6, word -> word | bit);
+		else
+			chunk.locked.getAndUpdate(slot >>> 6, word -> word & ~bit);
+	}
+
+	private Chunk chunk(int ordinal) {
+		var chunks = this.chunks;
+		var chunk = ordinal >>> CHUNK_BITS;
+		return chunk < chunks.length ? chunks[chunk] : grow(chunk);
+	}
+
+	private synchronized Chunk grow(int chunk) {
+		var chunks = this.chunks;
+		if (chunk >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = this.chunks.length; i < chunks.length; i++)
+				chunks[i] = new Chunk();
+			this.chunks = chunks;
+		}
+		return chunks[chunk];
+	}
+
+	/* entries is only touched while catching up */
+	private static final class Chunk {
+		final AtomicLongArray dirty = new AtomicLongArray(1 << (CHUNK_BITS - 6));
+		final Entry[] entries = new Entry[1 << CHUNK_BITS];
+		final AtomicLongArray locked = new AtomicLongArray(1 << (CHUNK_BITS - 6));
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+		final long balance;
+		final int ordinal;
+
+		Entry(long balance, int ordinal) {
+			this.balance = balance;
+			this.ordinal = ordinal;
+		}
+
+		static Entry parse(String cursor) {
+			var separator = cursor.indexOf(':');
+			if (separator < 0)
+				throw new IllegalArgumentException("cursor");
+
+			return new Entry(Long.parseLong(cursor.substring(0, separator)), Integer.parseInt(cursor.substring(separator + 1)));
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			var byBalance = Long.compare(this.balance, other.balance);
+			return byBalance != 0 ? byBalance : Integer.compare(this.ordinal, other.ordinal);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Entry && compareTo((Entry) other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(this.balance) * 31 + this.ordinal;
+		}
+
+		@Override
+		public String toString() {
+			return this.balance + ":" + this.ordinal;
+		}
+	}
+}
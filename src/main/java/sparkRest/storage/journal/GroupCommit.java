@@ -0,0 +1,60 @@
+package sparkRest.storage.journal;
+
+/*
+ * When the journal forces its appends to disk. Under every, callers wait in
+ * Journal.awaitDurable until the group holding their events is forced before
+ * they acknowledge them; background acknowledges right away and may lose the
+ * events of the last group on power failure.
+ */
+public class GroupCommit {
+	private final int maxEvents;
+	private final long maxDelayMicros;
+	private final boolean awaited;
+
+	private GroupCommit(int maxEvents, long maxDelayMicros, boolean awaited) {
+		if (maxEvents < 1)
+			throw new IllegalArgumentException("maxEvents");
+		if (maxDelayMicros < 1)
+			throw new IllegalArgumentException("maxDelayMicros");
+
+		this.maxEvents = maxEvents;
+		this.maxDelayMicros = maxDelayMicros;
+		this.awaited = awaited;
+	}
+
+	public static GroupCommit everyEvent() {
+		return new GroupCommit(1, 1, true);
+	}
+
+	public static GroupCommit every(int events, long micros) {
+		return new GroupCommit(events, micros, true);
+	}
+
+	public static GroupCommit background(int events, long micros) {
+		return new GroupCommit(events, micros, false);
+	}
+
+	public int getMaxEvents() {
+		return maxEvents;
+	}
+
+	public long getMaxDelayMicros() {
+		return maxDelayMicros;
+	}
+
+	public boolean isEveryEvent() {
+		return maxEvents == 1;
+	}
+
+	/* Whether callers wait for their events to be forced. */
+	public boolean isAwaited() {
+		return awaited;
+	}
+
+	@Override
+	public String toString() {
+		if (isEveryEvent()) return "every event";
+
+		return maxEvents + " events / " + maxDelayMicros + "us" + (awaited ? "" : " in the background");
+	}
+}
@@ -0,0 +1,527 @@
+package sparkRest.storage.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only journal of account events, written into memory-mapped segment
+ * files of a fixed size. Every record is
+ *
+ *   | length (4) | crc32 (4) | sequence (8) | type (1) | payload |
+ *
+ * where the crc covers everything after itself and the length is written last,
+ * so a reader stops at the first record that is zero, torn or out of sequence.
+ *
+ * Appends only copy bytes into the mapping; forcing them to disk is batched by
+ * the GroupCommit policy on a background thread. A caller about to acknowledge
+ * its events waits in awaitDurable until the group holding them is forced, so
+ * many callers share one force, unless the policy forces in the background
+ * only, which loses at most the events of one group on power failure.
+ */
+public class Journal implements AutoCloseable {
+	static final byte CREATED = 1;
+	static final byte LOCKED = 2;
+	static final byte UNLOCKED = 3;
+	static final byte ADDED = 4;
+	static final byte BLOCKED = 5;
+	static final byte UNBLOCKED = 6;
+	static final byte COMMITTED = 7;
+	static final byte REMOVED = 8;
+
+	private static final int HEADER = 4 + 4 + 8 + 1;
+	private static final int MAX_STRING = 0xFFFF;
+	private static final String PREFIX = "journal-";
+	private static final String SUFFIX = ".log";
+
+	private final Path directory;
+	private final int segmentSize;
+	private final GroupCommit policy;
+	private final ReentrantLock appendLock = new ReentrantLock();
+	private final ReentrantLock durableLock = new ReentrantLock();
+	private final Condition forced = this.durableLock.newCondition();
+	private final CRC32 crc = new CRC32();
+	private final Thread syncer;
+
+	private MappedByteBuffer segment;
+	private long nextSequence;
+	private int unsynced;
+	/* the last sequence forced to disk */
+	private volatile long durable;
+	private volatile boolean open = true;
+
+	public Journal(Path directory, int segmentSize, GroupCommit policy) {
+		if (segmentSize < 1024)
+			throw new IllegalArgumentException("segmentSize");
+		if (null == policy)
+			throw new IllegalArgumentException("policy");
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.policy = policy;
+
+		try {
+			Files.createDirectories(directory);
+			var segments = segments();
+			if (segments.isEmpty())
+				this.segment = map(segmentPath(0));
+			else
+				recoverTail(segments.get(segments.size() - 1));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.durable = this.nextSequence - 1;
+
+		this.syncer = new Thread(this::syncLoop, "journal-sync");
+		this.syncer.setDaemon(true);
+		if (!policy.isEveryEvent())
+			this.syncer.start();
+	}
+
+	public long nextSequence() {
+		this.appendLock.lock();
+		try {
+			return this.nextSequence;
+		} finally {
+			this.appendLock.unlock();
+		}
+	}
+
+	public long created(String account, long balance) {
+		return append(CREATED, account, null, balance);
+	}
+
+	public long locked(String account) {
+		return append(LOCKED, account, null, 0);
+	}
+
+	public long unlocked(String account) {
+		return append(UNLOCKED, account, null, 0);
+	}
+
+	public long added(String account, long amount) {
+		return append(ADDED, account, null, amount);
+	}
+
+	public long blocked(String account, String operation, long amount) {
+		return append(BLOCKED, account, operation, amount);
+	}
+
+	public long unblocked(String account, String operation) {
+		return append(UNBLOCKED, account, operation, 0);
+	}
+
+	public long committed(String account, String operation) {
+		return append(COMMITTED, account, operation, 0);
+	}
+
+	public long removed(String account) {
+		return append(REMOVED, account, null, 0);
+	}
+
+	public void sync() {
+		MappedByteBuffer buffer;
+		long last;
+		this.appendLock.lock();
+		try {
+			if (this.unsynced == 0) return;
+			buffer = this.segment;
+			last = this.nextSequence - 1;
+			this.unsynced = 0;
+		} finally {
+			this.appendLock.unlock();
+		}
+		buffer.force();
+		forced(last);
+	}
+
+	/*
+	 * Returns once every event appended so far is forced to disk, which the
+	 * next group commit does; right away when the policy does not make
+	 * callers wait.
+	 */
+	public void awaitDurable() {
+		if (!this.policy.isAwaited()) return;
+
+		awaitDurable(nextSequence() - 1);
+	}
+
+	/* Returns once the event of the sequence, and every one before it, is forced to disk. */
+	public void awaitDurable(long sequence) {
+		if (this.durable >= sequence) return;
+
+		this.durableLock.lock();
+		try {
+			while (this.durable < sequence) {
+				if (!this.open)
+					throw new IllegalStateException("journal is closed");
+				this.forced.awaitUninterruptibly();
+			}
+		} finally {
+			this.durableLock.unlock();
+		}
+	}
+
+	long durableSequence() {
+		return this.durable;
+	}
+
+	public void replay(JournalHandler handler) {
+		replay(handler, 0);
+	}
+
+	/* Replays the events from the given sequence on, skipping whole segments before it. */
+	public void replay(JournalHandler handler, long fromSequence) {
+		try {
+			var segments = segments();
+			var first = 0;
+			while (first + 1 < segments.size() && firstSequence(segments.get(first + 1)) <= fromSequence)
+				first++;
+
+			for (var path : segments.subList(first, segments.size())) {
+				try (var channel = FileChannel.open(path)) {
+					var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					/* a segment starts at the sequence in its name, which skipTo may have put past the one before */
+					var reader = new RecordReader(buffer, firstSequence(path));
+					while (reader.next()) {
+						if (reader.sequence >= fromSequence)
+							reader.dispatch(handler);
+					}
+					if (reader.torn) return;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Makes the next event get at least the sequence, in a segment of its
+	 * own. Recovery calls it when a snapshot holds events the journal lost,
+	 * so that new events never reuse their sequences.
+	 */
+	public void skipTo(long sequence) {
+		this.appendLock.lock();
+		try {
+			if (sequence <= this.nextSequence) return;
+
+			this.nextSequence = sequence;
+			roll();
+		} finally {
+			this.appendLock.unlock();
+		}
+	}
+
+	/* The first sequence still held by the journal. */
+	public long firstSequence() {
+		try {
+			var segments = segments();
+			return segments.isEmpty() ? 0 : firstSequence(segments.get(0));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Deletes the segments that only hold events before the given sequence. The
+	 * segment being written to is never deleted.
+	 */
+	public void truncateBefore(long sequence) {
+		try {
+			var segments = segments();
+			for (int i = 0; i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= sequence; i++)
+				Files.delete(segments.get(i));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	Path directory() {
+		return this.directory;
+	}
+
+	@Override
+	public void close() {
+		if (!this.open) return;
+
+		this.open = false;
+		LockSupport.unpark(this.syncer);
+		try {
+			this.syncer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		this.appendLock.lock();
+		try {
+			this.segment.force();
+			forced(this.nextSequence - 1);
+		} finally {
+			this.appendLock.unlock();
+		}
+	}
+
+	private long append(byte type, String account, String operation, long amount) {
+		var accountLength = encodedLength(account);
+		var operationLength = hasOperation(type) ? encodedLength(operation) : 0;
+		var size = HEADER + 2 + accountLength
+				+ (hasOperation(type) ? 2 + operationLength : 0)
+				+ (hasAmount(type) ? 8 : 0);
+		if (size > this.segmentSize)
+			throw new IllegalArgumentException("record does not fit in a segment");
+
+		this.appendLock.lock();
+		try {
+			if (!this.open)
+				throw new IllegalStateException("journal is closed");
+			if (this.segment.remaining() < size)
+				roll();
+
+			var buffer = this.segment;
+			var start = buffer.position();
+			var sequence = this.nextSequence++;
+
+			buffer.position(start + 8);
+			buffer.putLong(sequence);
+			buffer.put(type);
+			putString(buffer, account, accountLength);
+			if (hasOperation(type))
+				putString(buffer, operation, operationLength);
+			if (hasAmount(type))
+				buffer.putLong(amount);
+
+			var end = buffer.position();
+			buffer.putInt(start + 4, checksum(buffer, start + 8, end));
+			buffer.putInt(start, end - start - 8);
+			buffer.position(end);
+
+			if (this.policy.isEveryEvent()) {
+				buffer.force();
+				this.durable = sequence;
+			} else if (++this.unsynced >= this.policy.getMaxEvents())
+				LockSupport.unpark(this.syncer);
+
+			return sequence;
+		} finally {
+			this.appendLock.unlock();
+		}
+	}
+
+	private int checksum(ByteBuffer buffer, int from, int to) {
+		var position = buffer.position();
+		var limit = buffer.limit();
+		buffer.limit(to).position(from);
+		this.crc.reset();
+		this.crc.update(buffer);
+		buffer.limit(limit).position(position);
+		return (int) this.crc.getValue();
+	}
+
+	private void roll() {
+		try {
+			this.segment.force();
+			forced(this.nextSequence - 1);
+			this.segment = map(segmentPath(this.nextSequence));
+			this.unsynced = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/* Wakes the callers waiting for events up to last. */
+	private void forced(long last) {
+		this.durableLock.lock();
+		try {
+			if (last > this.durable)
+				this.durable = last;
+			this.forced.signalAll();
+		} finally {
+			this.durableLock.unlock();
+		}
+	}
+
+	private void syncLoop() {
+		var delay = this.policy.getMaxDelayMicros() * 1000;
+		while (this.open) {
+			LockSupport.parkNanos(this, delay);
+			sync();
+		}
+	}
+
+	private void recoverTail(Path path) throws IOException {
+		this.segment = map(path);
+		var reader = new RecordReader(this.segment, -1);
+		var last = firstSequence(path) - 1;
+		while (reader.next())
+			last = reader.sequence;
+
+		this.nextSequence = last + 1;
+		var end = reader.end;
+		if (reader.torn) {
+			for (int i = end; i < this.segment.capacity(); i++)
+				this.segment.put(i, (byte) 0);
+		}
+		this.segment.position(end);
+	}
+
+	List<Path> segments() throws IOException {
+		try (var files = Files.list(this.directory)) {
+			return files
+					.filter(p -> p.getFileName().toString().startsWith(PREFIX) && p.getFileName().toString().endsWith(SUFFIX))
+					.sorted()
+					.collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	static long firstSequence(Path segment) {
+		var name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+
+	private Path segmentPath(long firstSequence) {
+		return this.directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+	}
+
+	private MappedByteBuffer map(Path path) throws IOException {
+		try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+			if (file.length() < this.segmentSize)
+				file.setLength(this.segmentSize);
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+		}
+	}
+
+	private static boolean hasOperation(byte type) {
+		return type == BLOCKED || type == UNBLOCKED || type == COMMITTED;
+	}
+
+	private static boolean hasAmount(byte type) {
+		return type == CREATED || type == ADDED || type == BLOCKED;
+	}
+
+	private static int encodedLength(String value) {
+		var length = value.length();
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) >= 0x80) {
+				length = value.getBytes(StandardCharsets.UTF_8).length;
+				break;
+			}
+		}
+		if (length > MAX_STRING)
+			throw new IllegalArgumentException("value too long");
+		return length;
+	}
+
+	private static void putString(ByteBuffer buffer, String value, int encodedLength) {
+		buffer.putShort((short) encodedLength);
+		if (encodedLength == value.length()) {
+			for (int i = 0; i < encodedLength; i++)
+				buffer.put((byte) value.charAt(i));
+		} else {
+			buffer.put(value.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static class RecordReader {
+		final ByteBuffer buffer;
+		final CRC32 crc = new CRC32();
+		byte[] scratch = new byte[64];
+		long expected;
+		int end;
+		boolean torn;
+
+		long sequence;
+		byte type;
+		int payload;
+
+		RecordReader(ByteBuffer buffer, long expected) {
+			this.buffer = buffer;
+			this.expected = expected;
+		}
+
+		boolean next() {
+			var start = this.end;
+			if (start + HEADER > this.buffer.capacity()) return false;
+
+			var length = this.buffer.getInt(start);
+			if (length == 0) return false;
+			if (length < 9 || start + 8 + length > this.buffer.capacity()) return tear();
+
+			var view = this.buffer.duplicate();
+			view.limit(start + 8 + length).position(start + 8);
+			this.crc.reset();
+			this.crc.update(view);
+			if ((int) this.crc.getValue() != this.buffer.getInt(start + 4)) return tear();
+
+			var sequence = this.buffer.getLong(start + 8);
+			if (this.expected >= 0 && sequence != this.expected) return tear();
+
+			this.sequence = sequence;
+			this.expected = sequence + 1;
+			this.type = this.buffer.get(start + 16);
+			this.payload = start + HEADER;
+			this.end = start + 8 + length;
+			return true;
+		}
+
+		private boolean tear() {
+			this.torn = true;
+			return false;
+		}
+
+		void dispatch(JournalHandler handler) {
+			var view = this.buffer.duplicate();
+			view.position(this.payload);
+			var account = getString(view);
+			switch (this.type) {
+			case CREATED:
+				handler.created(this.sequence, account, view.getLong());
+				break;
+			case LOCKED:
+				handler.locked(this.sequence, account);
+				break;
+			case UNLOCKED:
+				handler.unlocked(this.sequence, account);
+				break;
+			case ADDED:
+				handler.added(this.sequence, account, view.getLong());
+				break;
+			case BLOCKED:
+				var operation = getString(view);
+				handler.blocked(this.sequence, account, operation, view.getLong());
+				break;
+			case UNBLOCKED:
+				handler.unblocked(this.sequence, account, getString(view));
+				break;
+			case COMMITTED:
+				handler.committed(this.sequence, account, getString(view));
+				break;
+			case REMOVED:
+				handler.removed(this.sequence, account);
+				break;
+			default:
+				throw new IllegalStateException("unknown journal record type " + this.type);
+			}
+		}
+
+		private String getString(ByteBuffer view) {
+			var length = view.getShort() & 0xFFFF;
+			if (this.scratch.length < length)
+				this.scratch = new byte[length];
+			view.get(this.scratch, 0, length);
+			return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package sparkRest.storage.journal;
+
+public interface JournalHandler {
+	void created(long sequence, String account, long balance);
+	void locked(long sequence, String account);
+	void unlocked(long sequence, String account);
+	void added(long sequence, String account, long amount);
+	void blocked(long sequence, String account, String operation, long amount);
+	void unblocked(long sequence, String account, String operation);
+	void committed(long sequence, String account, String operation);
+	void removed(long sequence, String account);
+}
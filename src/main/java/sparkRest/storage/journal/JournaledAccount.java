@@ -0,0 +1,187 @@
+package sparkRest.storage.journal;
+
+import java.util.concurrent.locks.Lock;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.AccountListener;
+import sparkRest.accounting.BlockedOperationConsumer;
+
+/*
+ * Journals every successful mutation of the wrapped account. The mutation and
+ * its journal record happen under the account's mutex, so the journal holds
+ * the events of one account in the order they were applied. The sequence of
+ * the last journaled event is kept with the account so a snapshot can tell
+ * which events of the journal tail it already contains.
+ */
+public class JournaledAccount implements Account {
+	private final Account account;
+	private final Journal journal;
+	private final Lock mutex;
+	private long sequence = -1;
+
+	JournaledAccount(Account account, Journal journal) {
+		this.account = account;
+		this.journal = journal;
+		this.mutex = account.mutex();
+	}
+
+	Account unwrap() {
+		return this.account;
+	}
+
+	long sequence() {
+		return this.sequence;
+	}
+
+	void replayed(long sequence) {
+		this.sequence = sequence;
+	}
+
+	void writeTo(SnapshotWriter writer) {
+		this.mutex.lock();
+		try {
+			writer.account(getId(), this.account.getBalance(), this.account.isLocked(), this.sequence);
+			this.account.forEachBlockedOperation(writer::hold);
+			writer.endAccount();
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public String getId() {
+		return this.account.getId();
+	}
+
+	@Override
+	public long getBalance() {
+		this.mutex.lock();
+		try {
+			return this.account.getBalance();
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public boolean block(long amount, String operationId) {
+		this.mutex.lock();
+		try {
+			if (!this.account.block(amount, operationId)) return false;
+
+			this.sequence = this.journal.blocked(getId(), operationId, amount);
+			return true;
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unblock(String operationId) {
+		this.mutex.lock();
+		try {
+			var blocked = this.account.getBlockedAmount();
+			this.account.unblock(operationId);
+			if (blocked == this.account.getBlockedAmount()) return;
+
+			this.sequence = this.journal.unblocked(getId(), operationId);
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void commitBlockedOperation(String operationId) {
+		this.mutex.lock();
+		try {
+			var blocked = this.account.getBlockedAmount();
+			this.account.commitBlockedOperation(operationId);
+			if (blocked == this.account.getBlockedAmount()) return;
+
+			this.sequence = this.journal.committed(getId(), operationId);
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public boolean add(long amount) {
+		this.mutex.lock();
+		try {
+			if (!this.account.add(amount)) return false;
+
+			this.sequence = this.journal.added(getId(), amount);
+			return true;
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lock() {
+		this.mutex.lock();
+		try {
+			this.account.lock();
+			this.sequence = this.journal.locked(getId());
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unlock() {
+		this.mutex.lock();
+		try {
+			this.account.unlock();
+			this.sequence = this.journal.unlocked(getId());
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public boolean isLocked() {
+		return this.account.isLocked();
+	}
+
+	@Override
+	public long getBlockedAmount() {
+		this.mutex.lock();
+		try {
+			return this.account.getBlockedAmount();
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public void forEachBlockedOperation(BlockedOperationConsumer consumer) {
+		this.mutex.lock();
+		try {
+			this.account.forEachBlockedOperation(consumer);
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+
+	@Override
+	public Lock mutex() {
+		return this.mutex;
+	}
+
+	/* Replayed mutations go to the wrapped account, so it is the one that tells. */
+	@Override
+	public void listen(AccountListener listener) {
+		this.account.listen(listener);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		this.mutex.lock();
+		try {
+			return this.account.isEmpty();
+		} finally {
+			this.mutex.unlock();
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package sparkRest.storage.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.AccountFactory;
+import sparkRest.rest.NewAccountRequest;
+import sparkRest.storage.AccountStorage;
+
+/*
+ * Durable AccountStorage: account creation and removal are journaled here, and
+ * every account handed out is a JournaledAccount that journals its own
+ * mutations. On construction the newest valid snapshot is loaded and only the
+ * journal from the snapshot's start sequence on is replayed.
+ *
+ * A snapshot is fuzzy: it records the journal's next sequence first and then
+ * copies the accounts one at a time while transfers keep running. Every
+ * account is copied together with the sequence of its last event, so replay
+ * skips the events an account already contains and applies the rest. The
+ * journal is forced before a snapshot is committed, so a snapshot never holds
+ * events the journal could still lose; should it anyway, recovery moves the
+ * journal past them so that new events do not reuse their sequences.
+ */
+public class JournaledAccountStorage implements AccountStorage {
+	private static final int KEPT_SNAPSHOTS = 2;
+
+	private final AccountStorage storage;
+	private final Journal journal;
+
+	public JournaledAccountStorage(Journal journal, AccountFactory accounts, Function<AccountFactory, AccountStorage> storage) {
+		if (null == journal)
+			throw new IllegalArgumentException("journal");
+
+		this.journal = journal;
+		this.storage = storage.apply((id, balance) -> new JournaledAccount(accounts.create(id, balance), journal));
+		journal.replay(new Replay(), load());
+	}
+
+	@Override
+	public String newAccount(NewAccountRequest request) {
+		var id = this.storage.newAccount(request);
+		this.journal.created(id, this.storage.get(id).getBalance());
+		return id;
+	}
+
+	@Override
+	public Account restore(String id, long balance) {
+		var account = this.storage.restore(id, balance);
+		this.journal.created(account.getId(), balance);
+		return account;
+	}
+
+	@Override
+	public Account create(String id, long balance) {
+		var account = this.storage.create(id, balance);
+		if (null != account)
+			this.journal.created(account.getId(), balance);
+		return account;
+	}
+
+	@Override
+	public Account get(String key) {
+		return this.storage.get(key);
+	}
+
+	@Override
+	public boolean remove(String id) {
+		if (!this.storage.remove(id)) return false;
+
+		this.journal.removed(id);
+		return true;
+	}
+
+	@Override
+	public boolean has(String id) {
+		return this.storage.has(id);
+	}
+
+	@Override
+	public void forEach(Consumer<Account> action) {
+		this.storage.forEach(action);
+	}
+
+	@Override
+	public long forEach(long cursor, Predicate<Account> action) {
+		return this.storage.forEach(cursor, action);
+	}
+
+	@Override
+	public long forEachLocked(long cursor, Predicate<Account> action) {
+		return this.storage.forEachLocked(cursor, action);
+	}
+
+	@Override
+	public String forEachByBalance(String cursor, long min, long max, Predicate<Account> action) {
+		return this.storage.forEachByBalance(cursor, min, max, action);
+	}
+
+	@Override
+	public long count() {
+		return this.storage.count();
+	}
+
+	@Override
+	public void awaitDurable() {
+		this.journal.awaitDurable();
+	}
+
+	/*
+	 * Writes a snapshot of all accounts and deletes the journal segments that
+	 * are no longer needed. The journal is only truncated up to the oldest kept
+	 * snapshot, so a damaged newest snapshot can still fall back to the one
+	 * before it.
+	 */
+	public synchronized Path snapshot() {
+		var directory = this.journal.directory();
+		var start = this.journal.nextSequence();
+		var target = Snapshots.path(directory, start);
+		try {
+			try (var writer = new SnapshotWriter(directory.resolve(target.getFileName() + ".tmp"), start)) {
+				this.storage.forEach(account -> ((JournaledAccount) account).writeTo(writer));
+				/* every event the snapshot holds is on disk before it replaces the journal */
+				this.journal.sync();
+				writer.commit(target);
+			}
+
+			var snapshots = Snapshots.list(directory);
+			for (int i = 0; i < snapshots.size() - KEPT_SNAPSHOTS; i++)
+				Files.delete(snapshots.get(i));
+			if (snapshots.size() >= KEPT_SNAPSHOTS)
+				this.journal.truncateBefore(Snapshots.startSequence(snapshots.get(snapshots.size() - KEPT_SNAPSHOTS)));
+			return target;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/* Loads the newest valid snapshot and returns the sequence replay starts at. */
+	private long load() {
+		try {
+			var snapshots = Snapshots.list(this.journal.directory());
+			Collections.reverse(snapshots);
+			for (var path : snapshots) {
+				if (!SnapshotReader.isValid(path)) continue;
+
+				try (var reader = new SnapshotReader(path)) {
+					var next = reader.startSequence;
+					while (reader.next()) {
+						restore(reader);
+						next = Math.max(next, reader.sequence + 1);
+					}
+					this.journal.skipTo(next);
+					return reader.startSequence;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		if (this.journal.firstSequence() > 0)
+			throw new IllegalStateException("the journal was truncated and there is no valid snapshot to start from");
+		return 0;
+	}
+
+	private void restore(SnapshotReader reader) {
+		var total = reader.available;
+		for (int i = 0; i < reader.holds; i++)
+			total += reader.amounts[i];
+
+		var account = (JournaledAccount) this.storage.restore(reader.id, total);
+		var target = account.unwrap();
+		for (int i = 0; i < reader.holds; i++)
+			target.block(reader.amounts[i], reader.operations[i]);
+		if (reader.locked)
+			target.lock();
+		account.replayed(reader.sequence);
+	}
+
+	/* The account an event applies to, or null when the account already contains it. */
+	private Account replayed(long sequence, String id) {
+		var account = (JournaledAccount) this.storage.get(id);
+		if (null == account || sequence <= account.sequence()) return null;
+
+		account.replayed(sequence);
+		return account.unwrap();
+	}
+
+	private class Replay implements JournalHandler {
+		@Override
+		public void created(long sequence, String account, long balance) {
+			if (!storage.has(account))
+				storage.restore(account, balance);
+		}
+
+		@Override
+		public void locked(long sequence, String account) {
+			var target = replayed(sequence, account);
+			if (null != target) target.lock();
+		}
+
+		@Override
+		public void unlocked(long sequence, String account) {
+			var target = replayed(sequence, account);
+			if (null != target) target.unlock();
+		}
+
+		@Override
+		public void added(long sequence, String account, long amount) {
+			var target = replayed(sequence, account);
+			if (null != target) target.add(amount);
+		}
+
+		@Override
+		public void blocked(long sequence, String account, String operation, long amount) {
+			var target = replayed(sequence, account);
+			if (null != target) target.block(amount, operation);
+		}
+
+		@Override
+		public void unblocked(long sequence, String account, String operation) {
+			var target = replayed(sequence, account);
+			if (null != target) target.unblock(operation);
+		}
+
+		@Override
+		public void committed(long sequence, String account, String operation) {
+			var target = replayed(sequence, account);
+			if (null != target) target.commitBlockedOperation(operation);
+		}
+
+		@Override
+		public void removed(long sequence, String account) {
+			if (null != replayed(sequence, account))
+				storage.remove(account);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package sparkRest.storage.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ * Reads a snapshot through a read-only mapping that slides over the file, so
+ * snapshots larger than one mapping can be loaded without copying them onto
+ * the heap first.
+ */
+class SnapshotReader implements AutoCloseable {
+	private static final long WINDOW = 256L << 20;
+
+	private final FileChannel channel;
+	private final long size;
+	private MappedByteBuffer window;
+	private long windowStart;
+	private byte[] scratch = new byte[64];
+
+	final long startSequence;
+	String id;
+	long available;
+	boolean locked;
+	long sequence;
+	int holds;
+	String[] operations = new String[4];
+	long[] amounts = new long[4];
+
+	SnapshotReader(Path path) throws IOException {
+		this.channel = FileChannel.open(path);
+		this.size = this.channel.size();
+		map(0);
+		if (this.size < Snapshots.HEADER + Snapshots.TRAILER || getInt() != Snapshots.MAGIC || getInt() != Snapshots.VERSION) {
+			close();
+			throw new IOException("not a snapshot: " + path);
+		}
+		this.startSequence = getLong();
+	}
+
+	/* Checks the trailing crc against the whole file before anything is loaded from it. */
+	static boolean isValid(Path path) {
+		try (var channel = FileChannel.open(path)) {
+			var size = channel.size();
+			if (size < Snapshots.HEADER + Snapshots.TRAILER) return false;
+
+			var crc = new CRC32();
+			var end = size - 4;
+			for (long position = 0; position < end; position += WINDOW)
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, end - position)));
+
+			var trailer = channel.map(FileChannel.MapMode.READ_ONLY, end, 4);
+			return trailer.getInt() == (int) crc.getValue();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	boolean next() throws IOException {
+		if (get() == 0) return false;
+
+		this.id = getString();
+		this.available = getLong();
+		this.locked = get() != 0;
+		this.sequence = getLong();
+		this.holds = 0;
+		while (get() != 0) {
+			if (this.holds == this.operations.length) {
+				this.operations = Arrays.copyOf(this.operations, this.holds * 2);
+				this.amounts = Arrays.copyOf(this.amounts, this.holds * 2);
+			}
+			this.operations[this.holds] = getString();
+			this.amounts[this.holds] = getLong();
+			this.holds++;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private byte get() throws IOException {
+		ensure(1);
+		return this.window.get();
+	}
+
+	private int getInt() throws IOException {
+		ensure(4);
+		return this.window.getInt();
+	}
+
+	private long getLong() throws IOException {
+		ensure(8);
+		return this.window.getLong();
+	}
+
+	private String getString() throws IOException {
+		ensure(2);
+		var length = this.window.getShort() & 0xFFFF;
+		if (this.scratch.length < length)
+			this.scratch = new byte[length];
+		ensure(length);
+		this.window.get(this.scratch, 0, length);
+		return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (this.window.remaining() >= bytes) return;
+
+		var position = this.windowStart + this.window.position();
+		if (position + bytes > this.size)
+			throw new IOException("snapshot is truncated");
+		map(position);
+	}
+
+	private void map(long position) throws IOException {
+		this.windowStart = position;
+		this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, this.size - position));
+	}
+}
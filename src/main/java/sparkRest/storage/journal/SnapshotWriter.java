@@ -0,0 +1,97 @@
+package sparkRest.storage.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+class SnapshotWriter implements AutoCloseable {
+	private static final int BUFFER = 1 << 20;
+
+	private final Path temporary;
+	private final FileOutputStream file;
+	private final BufferedOutputStream buffered;
+	private final CheckedOutputStream checked;
+	private final DataOutputStream out;
+	private long accounts;
+
+	SnapshotWriter(Path temporary, long startSequence) throws IOException {
+		this.temporary = temporary;
+		this.file = new FileOutputStream(temporary.toFile());
+		this.buffered = new BufferedOutputStream(this.file, BUFFER);
+		this.checked = new CheckedOutputStream(this.buffered, new CRC32());
+		this.out = new DataOutputStream(this.checked);
+
+		this.out.writeInt(Snapshots.MAGIC);
+		this.out.writeInt(Snapshots.VERSION);
+		this.out.writeLong(startSequence);
+	}
+
+	void account(String id, long available, boolean locked, long sequence) {
+		try {
+			this.out.writeByte(1);
+			writeString(id);
+			this.out.writeLong(available);
+			this.out.writeBoolean(locked);
+			this.out.writeLong(sequence);
+			this.accounts++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void hold(String operation, long amount) {
+		try {
+			this.out.writeByte(1);
+			writeString(operation);
+			this.out.writeLong(amount);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void endAccount() {
+		try {
+			this.out.writeByte(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/* Finishes the file, syncs it and moves it to its final name. */
+	void commit(Path target) throws IOException {
+		this.out.writeByte(0);
+		this.out.writeLong(this.accounts);
+		this.out.flush();
+		new DataOutputStream(this.buffered).writeInt((int) this.checked.getChecksum().getValue());
+		this.buffered.flush();
+		this.file.getChannel().force(true);
+		this.file.close();
+		Files.move(this.temporary, target, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	long accounts() {
+		return this.accounts;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+		Files.deleteIfExists(this.temporary);
+	}
+
+	private void writeString(String value) throws IOException {
+		var bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF)
+			throw new IllegalArgumentException("value too long");
+		this.out.writeShort(bytes.length);
+		this.out.write(bytes);
+	}
+}
@@ -0,0 +1,51 @@
+package sparkRest.storage.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+ * Snapshot files live next to the journal segments and are named after the
+ * journal sequence the snapshot was started at. A snapshot file is
+ *
+ *   | magic (4) | version (4) | start sequence (8) |
+ *   { 1 | id | available (8) | locked (1) | sequence (8) | { 1 | operation | amount (8) }* | 0 }*
+ *   | 0 | accounts (8) | crc32 (4) |
+ *
+ * with strings written as in the journal, and the crc covering everything
+ * before it. It is written to a temporary file and renamed once it is synced,
+ * so a snapshot that is listed here is either complete or fails its crc.
+ */
+final class Snapshots {
+	static final int MAGIC = 0x534E4150;
+	static final int VERSION = 1;
+	static final int HEADER = 4 + 4 + 8;
+	static final int TRAILER = 1 + 8 + 4;
+
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".bin";
+
+	private Snapshots() {
+	}
+
+	static List<Path> list(Path directory) throws IOException {
+		try (var files = Files.list(directory)) {
+			return files
+					.filter(p -> p.getFileName().toString().startsWith(PREFIX) && p.getFileName().toString().endsWith(SUFFIX))
+					.sorted()
+					.collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	static Path path(Path directory, long startSequence) {
+		return directory.resolve(String.format("%s%020d%s", PREFIX, startSequence, SUFFIX));
+	}
+
+	static long startSequence(Path snapshot) {
+		var name = snapshot.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+}
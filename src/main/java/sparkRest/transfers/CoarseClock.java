@@ -0,0 +1,31 @@
+package sparkRest.transfers;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Wall-clock milliseconds read from a field that one daemon thread refreshes
+ * every millisecond, for callers that take the time on every transfer and can
+ * live with it being up to a tick late; reading the system clock costs tens of
+ * nanoseconds every time. The thread starts with the first read.
+ */
+final class CoarseClock {
+	private static volatile long now = System.currentTimeMillis();
+
+	static {
+		var ticker = new Thread(() -> {
+			while (true) {
+				now = System.currentTimeMillis();
+				LockSupport.parkNanos(1_000_000);
+			}
+		}, "coarse-clock");
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	private CoarseClock() {
+	}
+
+	static long millis() {
+		return now;
+	}
+}
@@ -0,0 +1,185 @@
+package sparkRest.transfers;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import sparkRest.accounting.Account;
+import sparkRest.storage.AccountStorage;
+
+/*
+ * Holds placed on accounts on behalf of clients: an amount blocked under the
+ * hold's id until it is captured to another account, released, or its time is
+ * up. Every outstanding hold waits in one timing wheel that a single thread
+ * advances every tick, so expiry costs O(1) per hold however many there are,
+ * and neither scans accounts nor keeps a timer per hold.
+ *
+ * A hold is settled once: capture, release and expiry each first claim it,
+ * and only the one that did goes on. A capture the destination refused hands
+ * the hold back, or expires it right away when its time ran out meanwhile.
+ * Holds are placed and released through the transfer engine, so they change
+ * accounts under the same exclusion as transfers do.
+ */
+public class Holds implements AutoCloseable {
+	/* hold ids are blocked operations with this prefix, so those in a recovered journal can be told apart */
+	public static final String PREFIX = "hold-";
+
+	private final ConcurrentHashMap<String, Hold> holds = new ConcurrentHashMap<>();
+	private final TimingWheel<Hold> wheel;
+	private final Transfer transfer;
+	private final LongSupplier clock;
+	private final ScheduledExecutorService ticker;
+
+	/* Expires holds every tickMillis on a thread of its own. */
+	public Holds(Transfer transfer, long tickMillis) {
+		this(transfer, tickMillis, System::currentTimeMillis);
+		this.ticker.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/* Expires holds only when expire is called. */
+	Holds(Transfer transfer, long tickMillis, LongSupplier clock) {
+		if (null == transfer)
+			throw new IllegalArgumentException("transfer");
+
+		this.transfer = transfer;
+		this.clock = clock;
+		this.wheel = new TimingWheel<>(tickMillis, clock.getAsLong());
+		this.ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "hold-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/* Blocks amount on the account for ttlMillis; null when the account cannot cover it or is gone. */
+	public Hold place(Account account, long amount, long ttlMillis) {
+		if (amount <= 0)
+			throw new IllegalArgumentException("amount");
+		if (ttlMillis <= 0)
+			throw new IllegalArgumentException("ttlMillis");
+
+		var hold = new Hold(PREFIX + UUID.randomUUID(), account, amount, this.clock.getAsLong() + ttlMillis);
+		if (!this.transfer.block(account, amount, hold.id)) return null;
+
+		track(hold);
+		return hold;
+	}
+
+	/*
+	 * Takes over the holds blocked on the accounts of a recovered storage,
+	 * which were placed before a restart and forgotten with it, and gives
+	 * each ttlMillis from now.
+	 */
+	public void recover(AccountStorage storage, long ttlMillis) {
+		var expiresAt = this.clock.getAsLong() + ttlMillis;
+		storage.forEach(account -> account.forEachBlockedOperation((operationId, amount) -> {
+			if (operationId.startsWith(PREFIX) && !this.holds.containsKey(operationId))
+				track(new Hold(operationId, account, amount, expiresAt));
+		}));
+	}
+
+	/* The outstanding hold of the id on the account, or null. */
+	public Hold get(String accountId, String holdId) {
+		var hold = null == holdId ? null : this.holds.get(holdId);
+		return null == hold || !hold.account.getId().equals(accountId) ? null : hold;
+	}
+
+	/* Credits the hold's amount to destination; null when the hold was settled meanwhile. */
+	public TransferResult capture(Hold hold, Account destination) {
+		if (!hold.claim()) return null;
+
+		var result = this.transfer.capture(hold.account, hold.id, hold.amount, destination);
+		if (result.isSuccess()) {
+			this.wheel.cancel(hold);
+			this.holds.remove(hold.id);
+		} else {
+			hold.reopen();
+			/* the wheel skipped it while it was claimed */
+			if (!this.wheel.isScheduled(hold)) expired(hold);
+		}
+		return result;
+	}
+
+	/* Returns the hold's amount to its account; false when the hold was settled meanwhile. */
+	public boolean release(Hold hold) {
+		if (!hold.claim()) return false;
+
+		this.wheel.cancel(hold);
+		settle(hold);
+		return true;
+	}
+
+	public long outstanding() {
+		return this.wheel.size();
+	}
+
+	/* Releases the holds whose time is up. */
+	void expire() {
+		this.wheel.advance(this.clock.getAsLong(), this::expired);
+	}
+
+	@Override
+	public void close() {
+		this.ticker.shutdownNow();
+	}
+
+	private void track(Hold hold) {
+		this.holds.put(hold.id, hold);
+		this.wheel.schedule(hold, hold.expiresAt);
+	}
+
+	private void expired(Hold hold) {
+		if (hold.claim()) settle(hold);
+	}
+
+	private void settle(Hold hold) {
+		this.transfer.unblock(hold.account, hold.id);
+		this.holds.remove(hold.id);
+	}
+
+	public static final class Hold extends TimingWheel.Entry {
+		private static final int HELD = 0;
+		private static final int CLAIMED = 1;
+
+		private final String id;
+		private final Account account;
+		private final long amount;
+		private final long expiresAt;
+		private final AtomicInteger state = new AtomicInteger(HELD);
+
+		Hold(String id, Account account, long amount, long expiresAt) {
+			this.id = id;
+			this.account = account;
+			this.amount = amount;
+			this.expiresAt = expiresAt;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getAccountId() {
+			return account.getId();
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+
+		public long getExpiresAt() {
+			return expiresAt;
+		}
+
+		private boolean claim() {
+			return this.state.compareAndSet(HELD, CLAIMED);
+		}
+
+		private void reopen() {
+			this.state.set(HELD);
+		}
+	}
+}
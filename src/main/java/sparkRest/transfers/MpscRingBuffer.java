@@ -0,0 +1,61 @@
+package sparkRest.transfers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Bounded lock-free multi-producer / single-consumer ring. Producers claim a
+ * slot by CAS on the tail and publish it by writing the slot sequence; the
+ * single consumer reads slots in order and hands them back by advancing the
+ * slot sequence by one lap.
+ */
+class MpscRingBuffer<E> {
+	private final Object[] elements;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+
+	MpscRingBuffer(int capacity) {
+		if (capacity < 2 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("capacity");
+
+		this.elements = new Object[capacity];
+		this.sequences = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+		for (int i = 0; i < capacity; i++)
+			this.sequences.set(i, i);
+	}
+
+	boolean offer(E element) {
+		while (true) {
+			var position = this.tail.get();
+			var index = (int) position & this.mask;
+			var difference = this.sequences.get(index) - position;
+
+			if (difference < 0) return false;
+
+			if (difference == 0 && this.tail.compareAndSet(position, position + 1)) {
+				this.elements[index] = element;
+				this.sequences.set(index, position + 1);
+				return true;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	E poll() {
+		var index = (int) this.head & this.mask;
+		if (this.sequences.get(index) != this.head + 1) return null;
+
+		var element = (E) this.elements[index];
+		this.elements[index] = null;
+		this.sequences.set(index, this.head + this.mask + 1);
+		this.head++;
+		return element;
+	}
+
+	boolean isEmpty() {
+		return this.sequences.get((int) this.head & this.mask) != this.head + 1;
+	}
+}
@@ -0,0 +1,81 @@
+package sparkRest.transfers;
+
+import java.util.function.Supplier;
+
+import sparkRest.accounting.Account;
+
+/*
+ * Runs block, add and commit (or the unblock compensation), and the credit and
+ * commit of a captured hold, while holding the mutexes of both accounts, and
+ * places and releases holds under the mutex of their account. The
+ * mutexes are always taken in account id order, so A->B and B->A transfers
+ * cannot deadlock, and an observer holding either mutex never sees the amount
+ * in flight. They are locks rather than monitors so a virtual thread that
+ * blocks while holding them does not pin its carrier.
+ */
+public class OrderedLockTransfer extends Transfer {
+
+	public OrderedLockTransfer() {
+	}
+
+	public OrderedLockTransfer(TransferLedger ledger) {
+		super(ledger);
+	}
+
+	@Override
+	protected TransferResult execute(Account source, TransferRequest request, Account destination) {
+		if (null == destination)
+			return TransferResult.destinationAccountNotFound();
+
+		return locked(source, destination, () -> super.execute(source, request, destination));
+	}
+
+	@Override
+	public TransferResult capture(Account source, String operationId, long amount, Account destination) {
+		if (null == destination)
+			return TransferResult.destinationAccountNotFound();
+
+		return locked(source, destination, () -> super.capture(source, operationId, amount, destination));
+	}
+
+	@Override
+	public boolean block(Account account, long amount, String operationId) {
+		account.mutex().lock();
+		try {
+			return super.block(account, amount, operationId);
+		} finally {
+			account.mutex().unlock();
+		}
+	}
+
+	@Override
+	public void unblock(Account account, String operationId) {
+		account.mutex().lock();
+		try {
+			super.unblock(account, operationId);
+		} finally {
+			account.mutex().unlock();
+		}
+	}
+
+	private static TransferResult locked(Account source, Account destination, Supplier<TransferResult> transfer) {
+		var first = source;
+		var second = destination;
+		if (source.getId().compareTo(destination.getId()) > 0) {
+			first = destination;
+			second = source;
+		}
+
+		first.mutex().lock();
+		try {
+			second.mutex().lock();
+			try {
+				return transfer.get();
+			} finally {
+				second.mutex().unlock();
+			}
+		} finally {
+			first.mutex().unlock();
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package sparkRest.transfers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import sparkRest.accounting.Account;
+
+/*
+ * Single-writer transfer engine. Accounts are hashed to partitions, and each
+ * partition is owned by one thread that drains its own ring of commands, so
+ * an account is only ever mutated by the thread of its partition.
+ *
+ * A transfer is submitted to the source partition, which blocks the amount.
+ * When the destination lives in another partition the command is handed off
+ * there to be credited and then handed back to settle (commit or unblock) on
+ * the source. The calling thread parks until the command completes.
+ *
+ * Batches, payouts and captures touch more accounts than a command carries,
+ * and holds are placed and released apart from any transfer. They run on the
+ * calling thread while the thread of every partition owning
+ * one of their accounts is paused between two commands, so no account is
+ * ever mutated by two threads at once. Closing lets the commands under way
+ * complete and answers later ones as unavailable.
+ */
+public class PartitionedTransfer extends Transfer implements AutoCloseable {
+	// spinning only pays off when another core can make progress meanwhile
+	private static final int SPINS_BEFORE_PARK = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+	private final Partition[] partitions;
+	/* callers between submitting a command and getting its result */
+	private final LongAdder outstanding = new LongAdder();
+	private volatile boolean closed;
+
+	public PartitionedTransfer(int partitions, int ringCapacity) {
+		this(partitions, ringCapacity, null);
+	}
+
+	public PartitionedTransfer(int partitions, int ringCapacity, TransferLedger ledger) {
+		super(ledger);
+		if (partitions < 1)
+			throw new IllegalArgumentException("partitions");
+
+		this.partitions = new Partition[partitions];
+		for (int i = 0; i < partitions; i++)
+			this.partitions[i] = new Partition(i, ringCapacity);
+		for (var partition : this.partitions)
+			partition.thread.start();
+	}
+
+	@Override
+	protected TransferResult execute(Account source, TransferRequest request, Account destination) {
+		if (null == destination)
+			return TransferResult.destinationAccountNotFound();
+
+		if (request.getAmount() <= 0)
+			return TransferResult.amountMustBeMoreThanZero();
+
+		if (!enter()) return TransferResult.unavailable();
+
+		try {
+			var command = new Command(source, request, destination, Thread.currentThread());
+			partitionOf(source).submit(command);
+			return command.await();
+		} finally {
+			this.outstanding.decrement();
+		}
+	}
+
+	@Override
+	public List<TransferResult> executeAtomically(TransferBatch batch) {
+		return exclusively(batch.accounts(), () -> super.executeAtomically(batch), () -> Collections.nCopies(batch.size(), TransferResult.unavailable()));
+	}
+
+	@Override
+	public List<TransferResult> payout(Account source, Payout payout) {
+		return exclusively(payout.accounts(source), () -> super.payout(source, payout), () -> Collections.nCopies(payout.size(), TransferResult.unavailable()));
+	}
+
+	@Override
+	public TransferResult capture(Account source, String operationId, long amount, Account destination) {
+		var accounts = new ArrayList<Account>(2);
+		accounts.add(source);
+		accounts.add(destination);
+		return exclusively(accounts, () -> super.capture(source, operationId, amount, destination), TransferResult::unavailable);
+	}
+
+	/* Refuses the hold once the engine is shut down. */
+	@Override
+	public boolean block(Account account, long amount, String operationId) {
+		return exclusively(List.of(account), () -> super.block(account, amount, operationId), () -> false);
+	}
+
+	/* Leaves the hold to be recovered once the engine is shut down. */
+	@Override
+	public void unblock(Account account, String operationId) {
+		exclusively(List.of(account), () -> {
+			super.unblock(account, operationId);
+			return null;
+		}, () -> null);
+	}
+
+	/* Stops taking transfers, waits for the ones under way and stops the partitions. */
+	@Override
+	public void close() {
+		this.closed = true;
+		while (this.outstanding.sum() > 0)
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		for (var partition : this.partitions)
+			partition.stop();
+	}
+
+	/* Counts the caller as outstanding unless the engine is closed. */
+	private boolean enter() {
+		this.outstanding.increment();
+		if (!this.closed) return true;
+
+		this.outstanding.decrement();
+		return false;
+	}
+
+	/*
+	 * Runs action once the partitions of all accounts are paused, and resumes
+	 * them afterwards. They are paused one at a time in index order, so two
+	 * callers pausing overlapping partitions never wait for each other.
+	 */
+	private <T> T exclusively(List<Account> accounts, Supplier<T> action, Supplier<T> unavailable) {
+		if (!enter()) return unavailable.get();
+
+		var owners = new boolean[this.partitions.length];
+		for (var account : accounts)
+			if (null != account)
+				owners[Math.floorMod(account.getId().hashCode(), this.partitions.length)] = true;
+		var pauses = new ArrayList<Command>();
+		try {
+			for (int i = 0; i < owners.length; i++) {
+				if (!owners[i]) continue;
+
+				var pause = Command.pause(Thread.currentThread());
+				this.partitions[i].submit(pause);
+				pauses.add(pause);
+				pause.await();
+			}
+			return action.get();
+		} finally {
+			for (var pause : pauses)
+				pause.resume();
+			this.outstanding.decrement();
+		}
+	}
+
+	private Partition partitionOf(Account account) {
+		return this.partitions[Math.floorMod(account.getId().hashCode(), this.partitions.length)];
+	}
+
+	private static final int DEBIT = 0;
+	private static final int CREDIT = 1;
+	private static final int SETTLE = 2;
+	private static final int PAUSE = 3;
+
+	private static class Command {
+		final Account source;
+		final TransferRequest request;
+		final Account destination;
+		final Thread waiter;
+		int stage = DEBIT;
+		boolean credited;
+		volatile TransferResult result;
+		/* the partition thread a pause holds, once it is held */
+		volatile Thread paused;
+		volatile boolean resumed;
+
+		Command(Account source, TransferRequest request, Account destination, Thread waiter) {
+			this.source = source;
+			this.request = request;
+			this.destination = destination;
+			this.waiter = waiter;
+		}
+
+		/* Holds the partition that takes it until resume is called. */
+		static Command pause(Thread waiter) {
+			var command = new Command(null, null, null, waiter);
+			command.stage = PAUSE;
+			return command;
+		}
+
+		void resume() {
+			this.resumed = true;
+			var paused = this.paused;
+			if (null != paused)
+				LockSupport.unpark(paused);
+		}
+
+		void complete(TransferResult result) {
+			this.result = result;
+			LockSupport.unpark(this.waiter);
+		}
+
+		TransferResult await() {
+			for (int i = 0; i < SPINS_BEFORE_PARK && this.result == null; i++)
+				Thread.onSpinWait();
+			while (this.result == null)
+				LockSupport.park(this);
+			return this.result;
+		}
+	}
+
+	private class Partition implements Runnable {
+		final MpscRingBuffer<Command> ring;
+		final ArrayDeque<Command> handoffs = new ArrayDeque<>();
+		final Thread thread;
+		volatile boolean parked;
+		volatile boolean running = true;
+
+		Partition(int index, int ringCapacity) {
+			this.ring = new MpscRingBuffer<>(ringCapacity);
+			this.thread = new Thread(this, "transfer-partition-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		void submit(Command command) {
+			while (!this.ring.offer(command))
+				Thread.yield();
+			if (this.parked)
+				LockSupport.unpark(this.thread);
+		}
+
+		boolean tryHandOff(Command command) {
+			if (!this.ring.offer(command)) return false;
+			if (this.parked)
+				LockSupport.unpark(this.thread);
+			return true;
+		}
+
+		void stop() {
+			this.running = false;
+			LockSupport.unpark(this.thread);
+			try {
+				this.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void run() {
+			var idle = 0;
+			while (this.running) {
+				var command = this.ring.poll();
+				if (command != null) {
+					process(command);
+					idle = 0;
+				} else if (!flushHandoffs() && ++idle > SPINS_BEFORE_PARK) {
+					this.parked = true;
+					if (this.ring.isEmpty() && this.handoffs.isEmpty())
+						LockSupport.park(this);
+					else
+						Thread.yield();
+					this.parked = false;
+					idle = 0;
+				}
+			}
+		}
+
+		private void process(Command command) {
+			if (command.stage == PAUSE) {
+				command.paused = this.thread;
+				command.complete(TransferResult.success());
+				while (!command.resumed)
+					LockSupport.park(this);
+				return;
+			}
+
+			var amount = command.request.getAmount();
+			var operationId = command.request.getOperationId();
+
+			switch (command.stage) {
+			case DEBIT:
+				if (!command.source.block(amount, operationId)) {
+					command.complete(TransferResult.notEnoughResources());
+					return;
+				}
+				var owner = partitionOf(command.destination);
+				if (owner == this) {
+					command.credited = command.destination.add(amount);
+					settle(command);
+					return;
+				}
+				command.stage = CREDIT;
+				handOff(owner, command);
+				return;
+			case CREDIT:
+				command.credited = command.destination.add(amount);
+				command.stage = SETTLE;
+				handOff(partitionOf(command.source), command);
+				return;
+			default:
+				settle(command);
+			}
+		}
+
+		private void settle(Command command) {
+			var operationId = command.request.getOperationId();
+			if (command.credited) {
+				command.source.commitBlockedOperation(operationId);
+				completed(command.source, command.request.getAmount(), command.destination);
+				command.complete(TransferResult.success());
+			} else {
+				command.source.unblock(operationId);
+				command.complete(TransferResult.destinationAccountLocked());
+			}
+		}
+
+		// a full ring on the other side must not stall this partition, or two
+		// partitions handing off to each other could wait forever
+		private void handOff(Partition owner, Command command) {
+			if (!this.handoffs.isEmpty() || !owner.tryHandOff(command))
+				this.handoffs.add(command);
+		}
+
+		private boolean flushHandoffs() {
+			var progress = false;
+			while (!this.handoffs.isEmpty()) {
+				var command = this.handoffs.peek();
+				var owner = command.stage == CREDIT ? partitionOf(command.destination) : partitionOf(command.source);
+				if (!owner.tryHandOff(command)) break;
+				this.handoffs.poll();
+				progress = true;
+			}
+			return progress;
+		}
+	}
+}
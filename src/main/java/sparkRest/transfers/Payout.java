@@ -0,0 +1,54 @@
+package sparkRest.transfers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sparkRest.accounting.Account;
+
+/* Legs of a payout: the destinations one source pays and the amount of each, under one operation id. */
+public class Payout {
+	private final String operationId;
+	private final List<Account> destinations = new ArrayList<>();
+	private long[] amounts = new long[8];
+
+	public Payout(String operationId) {
+		if (null == operationId)
+			throw new IllegalArgumentException("operationId");
+
+		this.operationId = operationId;
+	}
+
+	public Payout add(Account destination, long amount) {
+		if (this.destinations.size() == this.amounts.length)
+			this.amounts = Arrays.copyOf(this.amounts, this.amounts.length * 2);
+
+		this.amounts[this.destinations.size()] = amount;
+		this.destinations.add(destination);
+		return this;
+	}
+
+	public int size() {
+		return this.destinations.size();
+	}
+
+	String getOperationId() {
+		return this.operationId;
+	}
+
+	Account destination(int index) {
+		return this.destinations.get(index);
+	}
+
+	long amount(int index) {
+		return this.amounts[index];
+	}
+
+	/* The source and every destination once, in account id order. */
+	List<Account> accounts(Account source) {
+		var accounts = new ArrayList<Account>(this.destinations.size() + 1);
+		accounts.add(source);
+		accounts.addAll(this.destinations);
+		return TransferBatch.distinctInIdOrder(accounts);
+	}
+}
@@ -0,0 +1,130 @@
+package sparkRest.transfers;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+ * Remembers the outcome of recently executed operations by key, so a repeated
+ * request gets the original outcome instead of running again. A request that
+ * repeats a key still in flight waits for the first one to finish. Each key
+ * keeps the request it was first sent with, and a request that reuses it for
+ * something else is refused rather than answered with another's outcome.
+ *
+ * Entries are kept in insertion order in a queue next to the map; every insert
+ * drops entries from the head of the queue while there are more than capacity
+ * or the head is older than the time to live. An operation that threw, or
+ * whose outcome is not one to be replayed, is forgotten so it can be retried.
+ */
+public class RecentOperations<T> {
+	private final ConcurrentHashMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<Entry<T>> order = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final int capacity;
+	private final long timeToLiveNanos;
+	private final LongSupplier clock;
+	private final Predicate<? super T> replayed;
+
+	public RecentOperations(int capacity, long timeToLive, TimeUnit unit) {
+		this(capacity, timeToLive, unit, outcome -> true);
+	}
+
+	/* Remembers only the outcomes replayed accepts. */
+	public RecentOperations(int capacity, long timeToLive, TimeUnit unit, Predicate<? super T> replayed) {
+		this(capacity, unit.toNanos(timeToLive), System::nanoTime, replayed);
+	}
+
+	RecentOperations(int capacity, long timeToLiveNanos, LongSupplier clock) {
+		this(capacity, timeToLiveNanos, clock, outcome -> true);
+	}
+
+	RecentOperations(int capacity, long timeToLiveNanos, LongSupplier clock, Predicate<? super T> replayed) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity");
+		if (timeToLiveNanos < 1)
+			throw new IllegalArgumentException("timeToLive");
+
+		this.capacity = capacity;
+		this.timeToLiveNanos = timeToLiveNanos;
+		this.clock = clock;
+		this.replayed = replayed;
+	}
+
+	public T execute(String key, Supplier<T> operation) {
+		return execute(key, null, operation);
+	}
+
+	/* Throws ReusedKeyException when the key was sent with a request that is not equal to this one. */
+	public T execute(String key, Object request, Supplier<T> operation) {
+		var now = this.clock.getAsLong();
+		var existing = this.entries.get(key);
+		if (null != existing && !expired(existing, now))
+			return existing.replay(key, request);
+
+		var entry = new Entry<T>(key, request, now);
+		while (null != (existing = this.entries.putIfAbsent(key, entry))) {
+			if (!expired(existing, now))
+				return existing.replay(key, request);
+			this.entries.remove(key, existing);
+		}
+
+		this.order.add(entry);
+		this.size.incrementAndGet();
+		evict(now);
+
+		try {
+			var outcome = operation.get();
+			if (!this.replayed.test(outcome))
+				this.entries.remove(key, entry);
+			entry.outcome.complete(outcome);
+			return outcome;
+		} catch (RuntimeException | Error e) {
+			this.entries.remove(key, entry);
+			entry.outcome.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	public int size() {
+		return this.size.get();
+	}
+
+	private void evict(long now) {
+		Entry<T> head;
+		while (null != (head = this.order.peek()) && (this.size.get() > this.capacity || expired(head, now))) {
+			if (!this.order.remove(head)) continue;
+
+			this.size.decrementAndGet();
+			this.entries.remove(head.key, head);
+		}
+	}
+
+	private boolean expired(Entry<T> entry, long now) {
+		return now - entry.created > this.timeToLiveNanos;
+	}
+
+	private static class Entry<T> {
+		final String key;
+		final Object request;
+		final long created;
+		final CompletableFuture<T> outcome = new CompletableFuture<>();
+
+		Entry(String key, Object request, long created) {
+			this.key = key;
+			this.request = request;
+			this.created = created;
+		}
+
+		T replay(String key, Object request) {
+			if (!Objects.equals(this.request, request))
+				throw new ReusedKeyException(key);
+			return this.outcome.join();
+		}
+	}
+}
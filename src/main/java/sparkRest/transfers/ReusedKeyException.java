@@ -0,0 +1,10 @@
+package sparkRest.transfers;
+
+/* A key of RecentOperations was sent again with a different request. */
+public class ReusedKeyException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public ReusedKeyException(String key) {
+		super("key " + key + " was used for another request");
+	}
+}
@@ -0,0 +1,235 @@
+package sparkRest.transfers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import sparkRest.accounting.Account;
+import sparkRest.storage.AccountStorage;
+
+/*
+ * Transfers registered to run at a future time, once or every interval. They
+ * wait in a timing wheel, bucketed by tick; the scheduler thread advances it
+ * every tick and splits whatever came due into batches that a fixed set of
+ * workers runs in parallel through the Transfer engine. The scheduler waits
+ * for the batches before its next tick and catches up on the ticks it missed
+ * meanwhile, so a spike of due transfers is worked off at the pace of the
+ * workers rather than all at once.
+ *
+ * The accounts are looked up by id whenever a transfer runs, so a removed
+ * account makes its runs fail instead of keeping it alive. A recurring
+ * transfer runs at most once per due time: runs missed while the scheduler
+ * was behind are skipped, not made up.
+ */
+public class ScheduledTransfers implements AutoCloseable {
+	private final ConcurrentHashMap<String, Schedule> schedules = new ConcurrentHashMap<>();
+	private final TimingWheel<Schedule> wheel;
+	private final AccountStorage storage;
+	private final Transfer transfer;
+	private final LongSupplier clock;
+	private final int batchSize;
+	private final int capacity;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService ticker;
+
+	/* Runs due transfers every tickMillis on a thread of its own. */
+	public ScheduledTransfers(AccountStorage storage, Transfer transfer, long tickMillis, int threads, int batchSize, int capacity) {
+		this(storage, transfer, tickMillis, threads, batchSize, capacity, System::currentTimeMillis);
+		this.ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/* Runs due transfers only when tick is called. */
+	ScheduledTransfers(AccountStorage storage, Transfer transfer, long tickMillis, int threads, int batchSize, int capacity, LongSupplier clock) {
+		if (null == storage)
+			throw new IllegalArgumentException("storage");
+		if (null == transfer)
+			throw new IllegalArgumentException("transfer");
+		if (threads < 1)
+			throw new IllegalArgumentException("threads");
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize");
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity");
+
+		this.storage = storage;
+		this.transfer = transfer;
+		this.clock = clock;
+		this.batchSize = batchSize;
+		this.capacity = capacity;
+		this.wheel = new TimingWheel<>(tickMillis, clock.getAsLong());
+		var started = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(threads, task -> {
+			var thread = new Thread(task, "scheduled-transfer-" + started.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "transfer-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Registers amount to go from source to destination at firstRun, in epoch
+	 * milliseconds, and then every intervalMillis unless that is 0. Null when
+	 * as many transfers as the capacity are registered already.
+	 */
+	public Schedule schedule(Account source, String destinationId, long amount, long firstRun, long intervalMillis) {
+		if (amount <= 0)
+			throw new IllegalArgumentException("amount");
+		if (intervalMillis < 0)
+			throw new IllegalArgumentException("intervalMillis");
+
+		if (this.schedules.size() >= this.capacity) return null;
+
+		var schedule = new Schedule(UUID.randomUUID().toString(), source.getId(), destinationId, amount, firstRun, intervalMillis);
+		this.schedules.put(schedule.id, schedule);
+		this.wheel.schedule(schedule, firstRun);
+		return schedule;
+	}
+
+	/* The registered transfer of the id from the account, or null. */
+	public Schedule get(String sourceId, String scheduleId) {
+		var schedule = null == scheduleId ? null : this.schedules.get(scheduleId);
+		return null == schedule || !schedule.sourceId.equals(sourceId) ? null : schedule;
+	}
+
+	/* Stops the transfer from running again; a run already under way completes. */
+	public boolean cancel(Schedule schedule) {
+		if (null == this.schedules.remove(schedule.id)) return false;
+
+		schedule.cancelled = true;
+		this.wheel.cancel(schedule);
+		return true;
+	}
+
+	public int size() {
+		return this.schedules.size();
+	}
+
+	/* Runs the transfers that came due since the last tick, batch by batch on the workers, and waits for them. */
+	void tick() {
+		var due = new ArrayList<Schedule>();
+		this.wheel.advance(this.clock.getAsLong(), due::add);
+		if (due.isEmpty()) return;
+
+		var batches = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < due.size(); from += this.batchSize) {
+			var batch = due.subList(from, Math.min(from + this.batchSize, due.size()));
+			batches.add(() -> {
+				run(batch);
+				return null;
+			});
+		}
+		try {
+			this.workers.invokeAll(batches);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.ticker.shutdownNow();
+		this.workers.shutdown();
+		try {
+			this.workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run(List<Schedule> batch) {
+		for (var schedule : batch) {
+			if (schedule.cancelled) continue;
+
+			var source = this.storage.get(schedule.sourceId);
+			var request = new TransferRequest(schedule.id + ":" + schedule.runs, schedule.amount);
+			schedule.lastResult = null == source
+					? TransferResult.sourceAccountNotFound()
+					: this.transfer.from(source).withRequest(request).execute(this.storage.get(schedule.destinationId));
+			schedule.runs++;
+			next(schedule);
+		}
+	}
+
+	private void next(Schedule schedule) {
+		if (schedule.intervalMillis == 0) {
+			this.schedules.remove(schedule.id, schedule);
+			return;
+		}
+
+		var now = this.clock.getAsLong();
+		var next = schedule.nextRun + schedule.intervalMillis;
+		if (next <= now)
+			next += ((now - next) / schedule.intervalMillis + 1) * schedule.intervalMillis;
+		schedule.nextRun = next;
+		/* a cancel slipping in after this check leaves it in the wheel until it is due once more, and run skips it then */
+		if (!schedule.cancelled)
+			this.wheel.schedule(schedule, next);
+	}
+
+	public static final class Schedule extends TimingWheel.Entry {
+		private final String id;
+		private final String sourceId;
+		private final String destinationId;
+		private final long amount;
+		private final long intervalMillis;
+		private volatile long nextRun;
+		private volatile int runs;
+		private volatile TransferResult lastResult;
+		private volatile boolean cancelled;
+
+		Schedule(String id, String sourceId, String destinationId, long amount, long nextRun, long intervalMillis) {
+			this.id = id;
+			this.sourceId = sourceId;
+			this.destinationId = destinationId;
+			this.amount = amount;
+			this.nextRun = nextRun;
+			this.intervalMillis = intervalMillis;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getSourceId() {
+			return sourceId;
+		}
+
+		public String getDestinationId() {
+			return destinationId;
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+
+		/* 0 when it runs once */
+		public long getIntervalMillis() {
+			return intervalMillis;
+		}
+
+		public long getNextRun() {
+			return nextRun;
+		}
+
+		public int getRuns() {
+			return runs;
+		}
+
+		/* The outcome of the latest run; null before the first. */
+		public TransferResult getLastResult() {
+			return lastResult;
+		}
+	}
+}
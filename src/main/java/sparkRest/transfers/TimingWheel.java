@@ -0,0 +1,156 @@
+package sparkRest.transfers;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/*
+ * Hierarchical timing wheel of entries that expire at a deadline, in
+ * milliseconds of whatever clock the caller advances it by. Every level has
+ * SLOTS slots; a slot of level 0 spans one tick and a slot of every next level
+ * spans a whole turn of the one below it. An entry goes into the lowest level
+ * whose turn still reaches its deadline, and whenever a level turns over, the
+ * slot of the next level that is now due is cascaded: its entries are put
+ * again, each one level lower or more. Deadlines further away than the top
+ * level reaches wait in its furthest slot and are put again from there.
+ *
+ * Scheduling and cancelling are O(1); every tick expires the entries of one
+ * slot and cascades at most one slot per level, so an entry is moved at most
+ * once per level on its way down. Entries are the list nodes themselves, so
+ * there is no allocation per entry. All methods lock the wheel; expired
+ * entries are handed to the caller after it is unlocked.
+ */
+public final class TimingWheel<T extends TimingWheel.Entry> {
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 5;
+
+	private final long tickMillis;
+	private final long origin;
+	/* heads of the slot lists, level by level */
+	private final Entry[] slots = new Entry[LEVELS * SLOTS];
+	/* the next tick to expire */
+	private long current;
+	private long size;
+
+	public TimingWheel(long tickMillis, long now) {
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("tickMillis");
+
+		this.tickMillis = tickMillis;
+		this.origin = now;
+		for (int i = 0; i < this.slots.length; i++) {
+			var head = new Entry();
+			head.previous = head;
+			head.next = head;
+			this.slots[i] = head;
+		}
+	}
+
+	/* Schedules the entry, which must not be scheduled already, to expire at the first tick at or after deadline. */
+	public synchronized void schedule(T entry, long deadline) {
+		Entry node = entry;
+		if (null != node.next)
+			throw new IllegalArgumentException("entry");
+
+		/* ticks round up, so an entry never expires early */
+		node.tick = Math.max(0, Math.floorDiv(deadline - this.origin + this.tickMillis - 1, this.tickMillis));
+		put(node);
+		this.size++;
+	}
+
+	/* False when the entry was not scheduled, or has expired already. */
+	public synchronized boolean cancel(T entry) {
+		if (!isScheduled(entry)) return false;
+
+		unlink(entry);
+		this.size--;
+		return true;
+	}
+
+	public synchronized boolean isScheduled(T entry) {
+		return null != ((Entry) entry).next;
+	}
+
+	/* Expires every tick up to now and hands over the entries that expired, in tick order. */
+	public void advance(long now, Consumer<? super T> expired) {
+		var due = new ArrayList<T>();
+		synchronized (this) {
+			var last = Math.floorDiv(now - this.origin, this.tickMillis);
+			while (this.current <= last) {
+				cascade();
+				drain(this.slots[(int) (this.current & SLOT_MASK)], due);
+				this.current++;
+			}
+			this.size -= due.size();
+		}
+		for (var entry : due)
+			expired.accept(entry);
+	}
+
+	public synchronized long size() {
+		return this.size;
+	}
+
+	/* When level 0 turns over, the due slot of level 1 comes down, and so on up while those turn over too. */
+	private void cascade() {
+		for (int level = 1; level < LEVELS; level++) {
+			if ((this.current & ((1L << (level * SLOT_BITS)) - 1)) != 0) return;
+
+			var head = this.slots[level * SLOTS + (int) ((this.current >>> (level * SLOT_BITS)) & SLOT_MASK)];
+			var entry = head.next;
+			head.next = head;
+			head.previous = head;
+			while (entry != head) {
+				var next = entry.next;
+				put(entry);
+				entry = next;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void drain(Entry head, ArrayList<T> due) {
+		var entry = head.next;
+		head.next = head;
+		head.previous = head;
+		while (entry != head) {
+			var next = entry.next;
+			entry.next = null;
+			entry.previous = null;
+			due.add((T) entry);
+			entry = next;
+		}
+	}
+
+	private void put(Entry entry) {
+		var tick = Math.max(entry.tick, this.current);
+		var delta = tick - this.current;
+		var level = 0;
+		while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS))
+			level++;
+		if (delta >= 1L << (LEVELS * SLOT_BITS))
+			/* beyond the top level's turn: its furthest slot, to be put again when that comes down */
+			tick = this.current + (1L << (LEVELS * SLOT_BITS)) - 1;
+
+		var head = this.slots[level * SLOTS + (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK)];
+		entry.previous = head.previous;
+		entry.next = head;
+		head.previous.next = entry;
+		head.previous = entry;
+	}
+
+	private static void unlink(Entry entry) {
+		entry.previous.next = entry.next;
+		entry.next.previous = entry.previous;
+		entry.next = null;
+		entry.previous = null;
+	}
+
+	/* What the wheel keeps; only touched under the wheel's lock. */
+	public static class Entry {
+		private Entry previous;
+		private Entry next;
+		private long tick;
+	}
+}
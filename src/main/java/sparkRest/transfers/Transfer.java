@@ -1,10 +1,23 @@
 package sparkRest.transfers;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import sparkRest.accounting.Account;
 
 public class Transfer {
+	private final TransferLedger ledger;
+
+	public Transfer() {
+		this(null);
+	}
+
+	/* Records every transfer it completes in ledger, unless it is null. */
+	public Transfer(TransferLedger ledger) {
+		this.ledger = ledger;
+	}
+
 	public RequestTransfer from(Account source) {
 		return new RequestTransfer() {			
 			@Override
@@ -12,25 +25,237 @@ public class Transfer {
 				return new TransferOperation() {					
 					@Override
 					public TransferResult execute(Account destination) {
-						if (null == destination)
-							return TransferResult.destinationAccountNotFound();
-
-						if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0)
-							return TransferResult.amountMustBeMoreThanZero();
-						
-						if (!source.block(request.getAmount(), request.getOperationId()))
-							return TransferResult.notEnoughResources();
-
-						if (!destination.add(request.getAmount())) {
-							source.unblock(request.getOperationId());
-							return TransferResult.destinationAccountLocked();
-						}
-
-						source.commitBlockedOperation(request.getOperationId());
-						return TransferResult.success();
+						return Transfer.this.execute(source, request, destination);
 					}
 				};
 			}
 		};
 	}
-}
\ No newline at end of file
+
+	/*
+	 * Runs every transfer of the batch or none of them. The mutexes of all
+	 * accounts in the batch are held, in account id order, until the batch is
+	 * settled; the transfers run in order, so a later one may spend what an
+	 * earlier one credited. When one fails, the ones before it are undone in
+	 * reverse order and every other transfer reports RolledBack.
+	 */
+	public List<TransferResult> executeAtomically(TransferBatch batch) {
+		var accounts = batch.accounts();
+		var locked = 0;
+		try {
+			for (var account : accounts) {
+				account.mutex().lock();
+				locked++;
+			}
+			return executeAll(batch);
+		} finally {
+			while (locked > 0)
+				accounts.get(--locked).mutex().unlock();
+		}
+	}
+
+	/*
+	 * Pays every leg of the payout from source or none of them. The total is
+	 * blocked on the source once, under one hold, and committed once after
+	 * every destination was credited. The mutexes of the source and of all
+	 * destinations are held until the payout is settled, and debits from
+	 * other threads wait for them, so credits can always be taken back when a
+	 * later destination refuses its own. They are
+	 * taken without sorting, the source's first and the destinations' without
+	 * waiting, which cannot deadlock; only when a destination's is busy are
+	 * they all taken again in account id order. The results are per leg, like
+	 * those of an atomic batch; when the source cannot cover the total, every
+	 * leg reports it.
+	 */
+	public List<TransferResult> payout(Account source, Payout payout) {
+		var size = payout.size();
+		var total = 0L;
+		for (int i = 0; i < size; i++) {
+			if (null == payout.destination(i))
+				return failed(size, i, TransferResult.destinationAccountNotFound());
+			if (payout.amount(i) <= 0)
+				return failed(size, i, TransferResult.amountMustBeMoreThanZero());
+
+			total += payout.amount(i);
+			if (total < 0)
+				return Collections.nCopies(size, TransferResult.notEnoughResources());
+		}
+
+		source.mutex().lock();
+		try {
+			if (tryLockDestinations(payout)) {
+				try {
+					return payAll(source, payout, total);
+				} finally {
+					unlockDestinations(payout, size);
+				}
+			}
+		} finally {
+			source.mutex().unlock();
+		}
+
+		var accounts = payout.accounts(source);
+		var locked = 0;
+		try {
+			for (var account : accounts) {
+				account.mutex().lock();
+				locked++;
+			}
+			return payAll(source, payout, total);
+		} finally {
+			while (locked > 0)
+				accounts.get(--locked).mutex().unlock();
+		}
+	}
+
+	/*
+	 * Settles the hold of amount placed on source under operationId by
+	 * crediting it to destination and committing it. When the destination
+	 * refuses the credit, the hold is left as it was.
+	 */
+	public TransferResult capture(Account source, String operationId, long amount, Account destination) {
+		if (null == destination)
+			return TransferResult.destinationAccountNotFound();
+
+		if (!destination.add(amount))
+			return TransferResult.destinationAccountLocked();
+
+		source.commitBlockedOperation(operationId);
+		completed(source, amount, destination);
+		return TransferResult.success();
+	}
+
+	/* Blocks amount on account under operationId, the way the engine makes every debit; false when it cannot cover it. */
+	public boolean block(Account account, long amount, String operationId) {
+		return account.block(amount, operationId);
+	}
+
+	/* Returns what is blocked on account under operationId, the way the engine makes every change. */
+	public void unblock(Account account, String operationId) {
+		account.unblock(operationId);
+	}
+
+	protected TransferResult execute(Account source, TransferRequest request, Account destination) {
+		var result = hold(source, request, destination);
+		if (result.isSuccess()) {
+			source.commitBlockedOperation(request.getOperationId());
+			completed(source, request.getAmount(), destination);
+		}
+		return result;
+	}
+
+	/* Called once a transfer is committed, whichever thread committed it. */
+	protected void completed(Account source, long amount, Account destination) {
+		if (null != this.ledger)
+			this.ledger.record(source, amount, destination);
+	}
+
+	private List<TransferResult> executeAll(TransferBatch batch) {
+		var size = batch.size();
+		var failed = -1;
+		TransferResult failure = null;
+		for (int i = 0; i < size; i++) {
+			var result = null == batch.source(i)
+					? TransferResult.sourceAccountNotFound()
+					: hold(batch.source(i), batch.request(i), batch.destination(i));
+			if (!result.isSuccess()) {
+				failed = i;
+				failure = result;
+				break;
+			}
+		}
+
+		if (null == failure) {
+			for (int i = 0; i < size; i++) {
+				batch.source(i).commitBlockedOperation(batch.request(i).getOperationId());
+				completed(batch.source(i), batch.request(i).getAmount(), batch.destination(i));
+			}
+			return Collections.nCopies(size, TransferResult.success());
+		}
+
+		for (int i = failed - 1; i >= 0; i--)
+			undo(batch.source(i), batch.request(i), batch.destination(i));
+
+		return failed(size, failed, failure);
+	}
+
+	private List<TransferResult> payAll(Account source, Payout payout, long total) {
+		var size = payout.size();
+		var operationId = payout.getOperationId();
+		if (!source.block(total, operationId))
+			return Collections.nCopies(size, TransferResult.notEnoughResources());
+
+		for (int i = 0; i < size; i++) {
+			if (!payout.destination(i).add(payout.amount(i))) {
+				for (int j = i - 1; j >= 0; j--)
+					takeBack(payout.destination(j), payout.amount(j), operationId);
+				source.unblock(operationId);
+				return failed(size, i, TransferResult.destinationAccountLocked());
+			}
+		}
+
+		source.commitBlockedOperation(operationId);
+		for (int i = 0; i < size; i++)
+			completed(source, payout.amount(i), payout.destination(i));
+		return Collections.nCopies(size, TransferResult.success());
+	}
+
+	/* Takes the mutex of every destination without waiting, or none when one is busy. */
+	private static boolean tryLockDestinations(Payout payout) {
+		for (int i = 0; i < payout.size(); i++) {
+			if (!payout.destination(i).mutex().tryLock()) {
+				unlockDestinations(payout, i);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void unlockDestinations(Payout payout, int locked) {
+		while (locked > 0)
+			payout.destination(--locked).mutex().unlock();
+	}
+
+	private static List<TransferResult> failed(int size, int index, TransferResult failure) {
+		var results = new ArrayList<TransferResult>(Collections.nCopies(size, TransferResult.rolledBack()));
+		results.set(index, failure);
+		return results;
+	}
+
+	private void undo(Account source, TransferRequest request, Account destination) {
+		takeBack(destination, request.getAmount(), request.getOperationId());
+		source.unblock(request.getOperationId());
+	}
+
+	/*
+	 * Debits a credit again. The destination's mutex has been held since, and
+	 * every account makes changes of other threads wait for its mutex, so the
+	 * credit is still there.
+	 */
+	private static void takeBack(Account destination, long amount, String operationId) {
+		var rollback = operationId + ":rollback";
+		if (!destination.block(amount, rollback))
+			throw new IllegalStateException("could not roll back transfer " + operationId);
+
+		destination.commitBlockedOperation(rollback);
+	}
+
+	/* Blocks the amount on the source and credits the destination, leaving the hold to be committed. */
+	private TransferResult hold(Account source, TransferRequest request, Account destination) {
+		if (null == destination)
+			return TransferResult.destinationAccountNotFound();
+
+		if (request.getAmount() <= 0)
+			return TransferResult.amountMustBeMoreThanZero();
+		
+		if (!source.block(request.getAmount(), request.getOperationId()))
+			return TransferResult.notEnoughResources();
+
+		if (!destination.add(request.getAmount())) {
+			source.unblock(request.getOperationId());
+			return TransferResult.destinationAccountLocked();
+		}
+
+		return TransferResult.success();
+	}
+}
@@ -0,0 +1,55 @@
+package sparkRest.transfers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import sparkRest.accounting.Account;
+
+public class TransferBatch {
+	private final List<Account> sources = new ArrayList<>();
+	private final List<TransferRequest> requests = new ArrayList<>();
+	private final List<Account> destinations = new ArrayList<>();
+
+	public TransferBatch add(Account source, TransferRequest request, Account destination) {
+		this.sources.add(source);
+		this.requests.add(request);
+		this.destinations.add(destination);
+		return this;
+	}
+
+	public int size() {
+		return this.requests.size();
+	}
+
+	Account source(int index) {
+		return this.sources.get(index);
+	}
+
+	TransferRequest request(int index) {
+		return this.requests.get(index);
+	}
+
+	Account destination(int index) {
+		return this.destinations.get(index);
+	}
+
+	/* Every account taking part in the batch once, in account id order. */
+	List<Account> accounts() {
+		var accounts = new ArrayList<Account>(this.sources.size() * 2);
+		accounts.addAll(this.sources);
+		accounts.addAll(this.destinations);
+		return distinctInIdOrder(accounts);
+	}
+
+	/* Sorts the accounts by id and drops nulls and repeats; storage may hand out several views of one account. */
+	static List<Account> distinctInIdOrder(List<Account> accounts) {
+		accounts.removeIf(account -> null == account);
+		accounts.sort(Comparator.comparing(Account::getId));
+		var distinct = new ArrayList<Account>(accounts.size());
+		for (var account : accounts)
+			if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).getId().equals(account.getId()))
+				distinct.add(account);
+		return distinct;
+	}
+}
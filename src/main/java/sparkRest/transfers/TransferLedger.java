@@ -0,0 +1,150 @@
+package sparkRest.transfers;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import sparkRest.accounting.Account;
+
+/*
+ * History of the latest completed transfers of all accounts. Every transfer
+ * takes the next sequence number and is written to the slot of a ring that
+ * sequence falls on, overwriting the transfer one lap older: the time, the
+ * amount, the ids of both accounts, which are the accounts' own id Strings and
+ * so cost a reference rather than a copy, and the hashes of those ids. So the
+ * ledger has a fixed size however many transfers and accounts there are, and
+ * appending writes one slot after the other and allocates nothing.
+ *
+ * The history of one account is read from the ring by walking back from the
+ * newest sequence and picking its transfers by hash and then by id; the
+ * sequence is the cursor. Every slot carries the sequence of its transfer as
+ * a stamp. A writer swaps the stamp of the previous lap for BUSY, so writers
+ * of one slot take turns, writes the transfer and stores its sequence with
+ * release; readers take no lock and only visit a transfer whose stamp they
+ * read before and after it.
+ */
+public final class TransferLedger {
+	public static final long END = -1;
+	/* cursor of the newest entry, whichever it is */
+	public static final long LATEST = Long.MAX_VALUE;
+	public static final int DEFAULT_RETAINED = 1 << 18;
+
+	/* slots of a transfer in values */
+	private static final int STAMP = 0;
+	private static final int TIME = 1;
+	private static final int AMOUNT = 2;
+	private static final int HASHES = 3;
+	private static final int WIDTH = 4;
+	private static final long BUSY = Long.MIN_VALUE;
+	private static final int SPINS = 100;
+
+	private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final long[] values;
+	/* source and destination id of every transfer */
+	private final String[] ids;
+	private final int mask;
+	private final AtomicLong next = new AtomicLong();
+	/* the next sequence when an account was forgotten; its transfers before are not its history */
+	private final ConcurrentHashMap<String, Long> forgotten = new ConcurrentHashMap<>();
+	private final LongSupplier clock;
+
+	public TransferLedger() {
+		this(DEFAULT_RETAINED);
+	}
+
+	/* Keeps the latest retained transfers, rounded up to a power of two; times are as coarse as CoarseClock. */
+	public TransferLedger(int retained) {
+		this(retained, CoarseClock::millis);
+	}
+
+	TransferLedger(int retained, LongSupplier clock) {
+		if (retained < 1 || retained > 1 << 28)
+			throw new IllegalArgumentException("retained");
+
+		var slots = retained == 1 ? 1 : Integer.highestOneBit(retained - 1) << 1;
+		this.values = new long[slots * WIDTH];
+		this.ids = new String[slots * 2];
+		this.mask = slots - 1;
+		for (int slot = 0; slot < slots; slot++)
+			this.values[slot * WIDTH + STAMP] = slot - slots;
+		this.clock = clock;
+	}
+
+	/* Records a completed transfer of amount from source to destination. */
+	public void record(Account source, long amount, Account destination) {
+		var time = this.clock.getAsLong();
+		var from = source.getId();
+		var to = destination.getId();
+		var sequence = this.next.getAndIncrement();
+		var slot = (int) sequence & this.mask;
+		var base = slot * WIDTH;
+		var previous = sequence - this.mask - 1;
+		for (var spins = 0; !LONGS.compareAndSet(this.values, base + STAMP, previous, BUSY); spins++) {
+			/* the writer one lap ahead of us has not finished yet */
+			if (spins < SPINS)
+				Thread.onSpinWait();
+			else
+				Thread.yield();
+		}
+		this.values[base + TIME] = time;
+		this.values[base + AMOUNT] = amount;
+		this.values[base + HASHES] = (long) from.hashCode() << 32 | to.hashCode() & 0xFFFF_FFFFL;
+		this.ids[2 * slot] = from;
+		this.ids[2 * slot + 1] = to;
+		LONGS.setRelease(this.values, base + STAMP, sequence);
+	}
+
+	/*
+	 * Visits the history of the account from the entry at cursor towards older
+	 * ones until visitor returns false. Returns the cursor of the entry after
+	 * the one visitor returned false for, or END when there is none; entries
+	 * overwritten meanwhile are not visited. A transfer of an account to
+	 * itself is one entry, of the negative amount.
+	 */
+	public long forEach(String accountId, long cursor, Visitor visitor) {
+		if (cursor < 0)
+			throw new IllegalArgumentException("cursor");
+
+		var hash = accountId.hashCode();
+		var newest = this.next.get() - 1;
+		var since = this.forgotten.get(accountId);
+		var oldest = Math.max(null == since ? 0 : since, newest - this.mask);
+		for (var sequence = Math.min(cursor, newest); sequence >= oldest; sequence--) {
+			var slot = (int) sequence & this.mask;
+			var base = slot * WIDTH;
+			var stamp = (long) LONGS.getAcquire(this.values, base + STAMP);
+			/* a later lap overwrote it, and so the older ones */
+			if (stamp > sequence) return END;
+			/* still being written */
+			if (stamp != sequence) continue;
+
+			var hashes = this.values[base + HASHES];
+			var source = (int) (hashes >>> 32) == hash && accountId.equals(this.ids[2 * slot]);
+			if (!source && ((int) hashes != hash || !accountId.equals(this.ids[2 * slot + 1]))) continue;
+
+			var time = this.values[base + TIME];
+			var amount = this.values[base + AMOUNT];
+			var counterpart = this.ids[2 * slot + (source ? 1 : 0)];
+			VarHandle.loadLoadFence();
+			if ((long) LONGS.getOpaque(this.values, base + STAMP) != sequence) return END;
+
+			if (!visitor.visit(time, source ? -amount : amount, counterpart))
+				return sequence > oldest ? sequence - 1 : END;
+		}
+		return END;
+	}
+
+	/* Drops the history of a removed account; an account restored under its id starts a new one. */
+	public void forget(String accountId) {
+		var next = this.next.get();
+		this.forgotten.values().removeIf(since -> since <= next - this.mask - 1);
+		this.forgotten.put(accountId, next);
+	}
+
+	public interface Visitor {
+		boolean visit(long time, long amount, String counterpart);
+	}
+}
@@ -0,0 +1,130 @@
+package sparkRest.transfers;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Runs transfers submitted by requests that do not wait for them. A fixed set
+ * of workers drains a bounded queue; a submission that finds the queue full
+ * is refused right away rather than waiting, so a burst turns into refusals
+ * the client can retry instead of requests holding threads.
+ *
+ * Every submission is an Operation that can be looked up by id while pending
+ * and after it completed. Operations are remembered in submission order and
+ * the oldest are forgotten beyond the retained count, which should be well
+ * above the queue capacity so that nothing is forgotten while still pending.
+ */
+public class TransferPipeline implements AutoCloseable {
+	public enum Status {
+		PENDING, SUCCEEDED, FAILED
+	}
+
+	private final ThreadPoolExecutor workers;
+	private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<Operation> order = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final int retained;
+
+	public TransferPipeline(int threads, int queueCapacity, int retained) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads");
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("queueCapacity");
+		if (retained < 1)
+			throw new IllegalArgumentException("retained");
+
+		var started = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), task -> {
+			var thread = new Thread(task, "transfer-worker-" + started.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.retained = retained;
+	}
+
+	/* Queues the transfer and returns its pending operation, or null when the queue is full. */
+	public Operation submit(Supplier<TransferResult> transfer) {
+		var operation = new Operation(UUID.randomUUID().toString());
+		/* known before it can run, so a lookup right after submitting finds it */
+		this.operations.put(operation.id, operation);
+		try {
+			this.workers.execute(() -> operation.run(transfer));
+		} catch (RejectedExecutionException e) {
+			this.operations.remove(operation.id);
+			return null;
+		}
+
+		this.order.add(operation);
+		this.size.incrementAndGet();
+		evict();
+		return operation;
+	}
+
+	/* The operation of the id, or null when it is unknown or was forgotten. */
+	public Operation get(String id) {
+		return null == id ? null : this.operations.get(id);
+	}
+
+	public int queued() {
+		return this.workers.getQueue().size();
+	}
+
+	/* Stops taking submissions and waits for the queued ones to run. */
+	@Override
+	public void close() {
+		this.workers.shutdown();
+		try {
+			this.workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void evict() {
+		Operation head;
+		while (this.size.get() > this.retained && null != (head = this.order.poll())) {
+			this.size.decrementAndGet();
+			this.operations.remove(head.id, head);
+		}
+	}
+
+	public static final class Operation {
+		private final String id;
+		private volatile TransferResult result;
+
+		Operation(String id) {
+			this.id = id;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public Status getStatus() {
+			var result = this.result;
+			if (null == result) return Status.PENDING;
+			return result.isSuccess() ? Status.SUCCEEDED : Status.FAILED;
+		}
+
+		/* The outcome once the transfer ran; null while pending. */
+		public TransferResult getResult() {
+			return result;
+		}
+
+		/* A transfer that broke down is the operation's failed outcome; the worker goes on with the next one. */
+		private void run(Supplier<TransferResult> transfer) {
+			try {
+				this.result = transfer.get();
+			} catch (RuntimeException e) {
+				this.result = TransferResult.failed();
+			}
+		}
+	}
+}
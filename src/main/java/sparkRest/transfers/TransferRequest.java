@@ -1,19 +1,17 @@
 package sparkRest.transfers;
 
-import java.math.BigDecimal;
-
 public class TransferRequest {
 	private String operationId;
-	private BigDecimal amount;
+	private long amount;
 	
-	public TransferRequest(String operationId, BigDecimal amount) {
+	public TransferRequest(String operationId, long amount) {
 		this.operationId = operationId;
 		this.amount = amount;
 	}
 	public String getOperationId() {
 		return operationId;
 	}
-	public BigDecimal getAmount() {
+	public long getAmount() {
 		return amount;
 	}	
 }
@@ -56,4 +56,28 @@ public class TransferResult {
 				TransferResultCodes.AmountMustBeMoreThanZero, 
 				"The transfer amount must be bigger than zero");
 	}
+	public static TransferResult sourceAccountNotFound() {
+		return new TransferResult(
+				false,
+				TransferResultCodes.SourceAccountNotFound,
+				"The source account was not found");
+	}
+	public static TransferResult rolledBack() {
+		return new TransferResult(
+				false,
+				TransferResultCodes.RolledBack,
+				"Another transfer of the batch failed and this one was rolled back");
+	}
+	public static TransferResult unavailable() {
+		return new TransferResult(
+				false,
+				TransferResultCodes.Unavailable,
+				"The transfer engine is shut down and takes no more transfers");
+	}
+	public static TransferResult failed() {
+		return new TransferResult(
+				false,
+				TransferResultCodes.Failed,
+				"The transfer broke down before it completed");
+	}
 }
@@ -6,5 +6,9 @@ public class TransferResultCodes {
 	public static final int SourceAccountNotEnoughResouces = 1;
 	public static final int DestinationAccountLocked = 2;
 	public static final int DestinationAccountNotFound = 3;
-	public static final int AmountMustBeMoreThanZero = 4;	
+	public static final int AmountMustBeMoreThanZero = 4;
+	public static final int SourceAccountNotFound = 5;
+	public static final int RolledBack = 6;
+	public static final int Unavailable = 7;
+	public static final int Failed = 8;
 }
\ No newline at end of file
@@ -5,21 +5,54 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
 
-import sparkRest.accounting.InMemoryAccount;
+import sparkRest.storage.OffHeapAccountStorage;
 
+@RunWith(Parameterized.class)
 public class AccountTest {
 	static final double initialBalance = 123.45d;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> implementations() {
+		return Arrays.asList(new Object[][] {
+			{ "InMemoryAccount", (AccountFactory) InMemoryAccount::new,
+				(Function<LongAdder, AccountFactory>) total -> (id, balance) -> new InMemoryAccount(id, balance, total) },
+			{ "AtomicAccount", (AccountFactory) AtomicAccount::new,
+				(Function<LongAdder, AccountFactory>) total -> (id, balance) -> new AtomicAccount(id, balance, total) },
+			/* off-heap ids have to be UUIDs */
+			{ "OffHeapAccount", (AccountFactory) (id, balance) -> new OffHeapAccountStorage().restore(UUID.randomUUID().toString(), balance),
+				(Function<LongAdder, AccountFactory>) total -> (id, balance) -> new OffHeapAccountStorage(total).restore(UUID.randomUUID().toString(), balance) }
+		});
+	}
+
+	@Parameter(0)
+	public String implementation;
+
+	@Parameter(1)
+	public AccountFactory factory;
+
+	@Parameter(2)
+	public Function<LongAdder, AccountFactory> counting;
 	
 	private Account account() {
 		return account(initialBalance);
 	};
 	
 	private Account account(double balance) {
-		return new InMemoryAccount("Account_123", balance);
+		return factory.create("Account_123", Money.of(BigDecimal.valueOf(balance)));
 	}
 
 	@Test
@@ -119,7 +152,81 @@ public class AccountTest {
 		assertThat(account.getBlockedAmount(), is(equalTo(of(6))));
 	}
 	
-	private BigDecimal of(double val) {
-		return new BigDecimal(val).setScale(2, RoundingMode.HALF_EVEN);
+	@Test
+	public void ShouldKeepRunningTotalOfBlockedAmount() {
+		var total = new LongAdder();
+		var account = counting.apply(total).create("Account_123", of(100));
+		account.block(of(30), "a");
+		account.block(of(20), "b");
+		account.block(of(500), "c");
+		account.block(of(1), "a");
+		assertThat(total.sum(), is(equalTo(of(50))));
+
+		account.unblock("a");
+		account.commitBlockedOperation("b");
+		account.unblock("unknown");
+		account.commitBlockedOperation("unknown");
+		assertThat(total.sum(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void ShouldNotBlockTwiceForTheSameOperation() {
+		var account = account();
+		assertThat(account.block(of(1), "a"), is(true));
+		assertThat(account.block(of(2), "a"), is(false));
+		assertThat(account.getBlockedAmount(), is(equalTo(of(1))));
+		assertThat(account.getBalance(), is(equalTo(of(initialBalance - 1))));
+	}
+
+	@Test
+	public void ShouldNotAddWhenBalanceWouldOverflow() {
+		var account = account();
+		assertThat(account.add(Long.MAX_VALUE), is(false));
+		assertThat(account.getBalance(), equalTo(of(initialBalance)));
+	}
+	
+	@Test
+	public void ShouldReportEmptyOnlyWhenNothingIsAvailableOrBlocked() {
+		var account = account(1);
+		assertThat(account.isEmpty(), is(false));
+		account.block(of(1), "a");
+		assertThat(account.isEmpty(), is(false));
+		account.commitBlockedOperation("a");
+		assertThat(account.isEmpty(), is(true));
+	}
+
+	@Test
+	public void ShouldKeepTotalUnderConcurrentOperations() throws InterruptedException {
+		var account = account(1000);
+		var committed = new AtomicLong();
+		var threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			var prefix = "t" + t + "-";
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 20_000; i++) {
+					var operation = prefix + i;
+					if (!account.block(of(1), operation)) continue;
+					if (i % 3 == 0) {
+						account.commitBlockedOperation(operation);
+						committed.addAndGet(of(1));
+					} else if (i % 3 == 1) {
+						account.unblock(operation);
+					} else {
+						account.commitBlockedOperation(operation);
+						account.add(of(1));
+					}
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (var thread : threads)
+			thread.join();
+
+		assertThat(account.getBlockedAmount(), is(equalTo(0L)));
+		assertThat(account.getBalance(), is(equalTo(of(1000) - committed.get())));
+	}
+
+	private long of(double val) {
+		return Money.of(BigDecimal.valueOf(val));
 	}
 }
@@ -0,0 +1,64 @@
+package sparkRest.accounting;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class AtomicAccountTest {
+
+	@Test
+	public void testAddsNeverOverflowWhileBlocksAreReleased() throws InterruptedException {
+		var account = new AtomicAccount("a", AtomicAccount.MAX_BALANCE);
+		var done = new AtomicBoolean();
+		var added = new AtomicLong();
+		var holder = new Thread(() -> {
+			for (int i = 0; i < 2_000_000; i++) {
+				var operation = Integer.toString(i & 1023);
+				account.block(1 + (i & 7), operation);
+				if ((i & 1) == 0)
+					account.unblock(operation);
+				else
+					account.commitBlockedOperation(operation);
+			}
+			done.set(true);
+		});
+		var adder = new Thread(() -> {
+			while (!done.get())
+				if (account.add(1)) added.incrementAndGet();
+		});
+		holder.start();
+		adder.start();
+		holder.join();
+		adder.join();
+
+		/* the adds only ever refill what the commits took */
+		assertThat(account.getBalance() + account.getBlockedAmount() <= AtomicAccount.MAX_BALANCE, is(true));
+		assertThat(account.getBalance() > AtomicAccount.MAX_BALANCE / 2, is(true));
+	}
+
+	@Test
+	public void testChangesOfOtherThreadsWaitWhileTheMutexIsHeld() throws Exception {
+		var account = new AtomicAccount("a", 10);
+		account.mutex().lock();
+		var debit = CompletableFuture.supplyAsync(() -> account.block(10, "other"));
+		var lock = CompletableFuture.runAsync(account::lock);
+		Thread.sleep(50);
+
+		assertThat(debit.isDone(), is(false));
+		assertThat(lock.isDone(), is(false));
+		assertThat(account.add(5), is(true));
+		assertThat(account.block(15, "mine"), is(true));
+		account.unblock("mine");
+		account.mutex().unlock();
+
+		assertThat(debit.get(), is(true));
+		lock.get();
+		assertThat(account.getBalance(), is(5L));
+		assertThat(account.isLocked(), is(true));
+	}
+}
@@ -0,0 +1,69 @@
+package sparkRest.accounting;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BalanceTest {
+
+	@Test
+	public void ShouldTrackBlockedAmountOfManyOperations() {
+		var balance = new Balance(1_000_000);
+		for (int i = 0; i < 1000; i++)
+			balance.block(10, "op-" + i);
+
+		assertThat(balance.current(), is(equalTo(990_000L)));
+		assertThat(balance.getBlockedAmount(), is(equalTo(10_000L)));
+
+		for (int i = 0; i < 1000; i += 2)
+			balance.unblock("op-" + i);
+		for (int i = 1; i < 1000; i += 2)
+			balance.commitBlockedOperation("op-" + i);
+
+		assertThat(balance.current(), is(equalTo(995_000L)));
+		assertThat(balance.getBlockedAmount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void ShouldKeepEveryOperationReachableAfterRemovals() {
+		var random = new Random(42);
+		var balance = new Balance(Long.MAX_VALUE / 2);
+		var expected = new HashMap<String, Long>();
+		var ids = new ArrayList<String>();
+
+		for (int i = 0; i < 20_000; i++) {
+			if (ids.isEmpty() || random.nextInt(3) > 0) {
+				var id = Integer.toString(random.nextInt(5_000));
+				if (expected.containsKey(id)) continue;
+				var amount = 1 + random.nextInt(1000);
+				balance.block(amount, id);
+				expected.put(id, (long) amount);
+				ids.add(id);
+			} else {
+				var id = ids.remove(random.nextInt(ids.size()));
+				balance.commitBlockedOperation(id);
+				expected.remove(id);
+			}
+		}
+
+		for (var id : expected.keySet())
+			assertThat(id, balance.hasBlockedOperation(id), is(true));
+		assertThat(balance.getBlockedAmount(), is(equalTo(expected.values().stream().mapToLong(Long::longValue).sum())));
+	}
+
+	@Test
+	public void ShouldIgnoreUnblockOfUnknownOperation() {
+		var balance = new Balance(100);
+		balance.block(40, "a");
+		balance.unblock("b");
+
+		assertThat(balance.current(), is(equalTo(60L)));
+		assertThat(balance.getBlockedAmount(), is(equalTo(40L)));
+	}
+}
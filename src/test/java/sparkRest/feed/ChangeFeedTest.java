@@ -0,0 +1,145 @@
+package sparkRest.feed;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+import sparkRest.feed.ChangeFeed.Type;
+
+public class ChangeFeedTest {
+
+	@Test
+	public void testAccountMutationsArePublishedInOrder() {
+		var feed = new ChangeFeed(16);
+		var account = new FeedAccount(new InMemoryAccount("a", Money.of(10)), feed);
+
+		account.add(Money.of(5));
+		account.block(Money.of(4), "hold");
+		account.block(Money.of(100), "too much");
+		account.lock();
+		account.unlock();
+		account.commitBlockedOperation("hold");
+		account.unblock("hold");
+
+		var changes = new Changes();
+		assertThat(feed.read(0, changes), is(5L));
+		assertThat(changes.seen, is(List.of(
+				"0 ADDED a 500 1500 0",
+				"1 BLOCKED a 400 1100 400",
+				"2 LOCKED a 0 1100 400",
+				"3 UNLOCKED a 0 1100 400",
+				"4 COMMITTED a 400 1100 0")));
+	}
+
+	@Test
+	public void testAtomicAccountMutationsArePublishedWithTheAmountsTheyLeft() {
+		var feed = new ChangeFeed(16);
+		var blocked = new LongAdder();
+		var account = FeedAtomicAccount.accounts(blocked, feed).create("a", Money.of(10));
+
+		account.add(Money.of(5));
+		account.block(Money.of(4), "hold");
+		account.block(Money.of(100), "too much");
+		account.lock();
+		account.unlock();
+		account.commitBlockedOperation("hold");
+		account.block(Money.of(1), "other");
+		account.unblock("other");
+		account.unblock("other");
+
+		var changes = new Changes();
+		assertThat(feed.read(0, changes), is(7L));
+		assertThat(changes.seen, is(List.of(
+				"0 ADDED a 500 1500 0",
+				"1 BLOCKED a 400 1100 400",
+				"2 LOCKED a 0 1100 400",
+				"3 UNLOCKED a 0 1100 400",
+				"4 COMMITTED a 400 1100 0",
+				"5 BLOCKED a 100 1000 100",
+				"6 UNBLOCKED a 100 1100 0")));
+		assertThat(blocked.sum(), is(0L));
+	}
+
+	@Test
+	public void testReadersTooFarBehindAreToldWhatTheyLost() {
+		var feed = new ChangeFeed(3);
+		for (int i = 0; i < 10; i++)
+			feed.publish(Type.ADDED, "a", i, i, 0);
+
+		var changes = new Changes();
+		assertThat(feed.read(2, changes), is(10L));
+		assertThat(changes.seen, is(List.of(
+				"lost 2 6",
+				"6 ADDED a 6 6 0",
+				"7 ADDED a 7 7 0",
+				"8 ADDED a 8 8 0",
+				"9 ADDED a 9 9 0")));
+	}
+
+	@Test
+	public void testConcurrentReadersNeverSeeTornChanges() throws Exception {
+		var feed = new ChangeFeed(1024);
+		var writers = new ArrayList<Thread>();
+		for (int w = 0; w < 4; w++) {
+			var account = "w" + w;
+			writers.add(new Thread(() -> {
+				for (long i = 1; i <= 200_000; i++)
+					feed.publish(Type.ADDED, account, i, 2 * i, -i);
+			}));
+		}
+		var done = new AtomicBoolean();
+		var last = new HashMap<String, Long>();
+		var torn = new AtomicBoolean();
+		var reader = new Thread(() -> {
+			var visitor = new ChangeFeed.Visitor() {
+				@Override
+				public boolean visit(long sequence, Type type, String accountId, long amount, long available, long blocked) {
+					if (available != 2 * amount || blocked != -amount || last.getOrDefault(accountId, 0L) >= amount)
+						torn.set(true);
+					last.put(accountId, amount);
+					return true;
+				}
+
+				@Override
+				public void lost(long from, long to) {
+				}
+			};
+			var next = 0L;
+			while (!done.get() || next < feed.next())
+				next = feed.read(next, visitor);
+		});
+		reader.start();
+		writers.forEach(Thread::start);
+		for (var writer : writers)
+			writer.join();
+		done.set(true);
+		reader.join();
+
+		assertThat(torn.get(), is(false));
+		assertThat(feed.next(), is(800_000L));
+	}
+
+	private static final class Changes implements ChangeFeed.Visitor {
+		final List<String> seen = new ArrayList<>();
+
+		@Override
+		public boolean visit(long sequence, Type type, String accountId, long amount, long available, long blocked) {
+			seen.add(sequence + " " + type + " " + accountId + " " + amount + " " + available + " " + blocked);
+			return true;
+		}
+
+		@Override
+		public void lost(long from, long to) {
+			seen.add("lost " + from + " " + to);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package sparkRest.metrics;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEveryValueFallsIntoABucketThatContainsIt() {
+		for (long value = 0; value < 1 << 20; value += 7) {
+			var index = LatencyHistogram.index(value);
+			assertThat(value <= LatencyHistogram.upperBound(index), is(true));
+			assertThat(index == 0 || value > LatencyHistogram.upperBound(index - 1), is(true));
+		}
+	}
+
+	@Test
+	public void testBucketsAreWithinAnEighthOfTheValue() {
+		for (long value = 8; value < 1L << 40; value = value * 3 / 2) {
+			var upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+			assertThat((upper - value) <= value / 8, is(true));
+		}
+	}
+
+	@Test
+	public void testHugeValuesShareTheLastBucket() {
+		assertThat(LatencyHistogram.index(Long.MAX_VALUE), is(equalTo(LatencyHistogram.BUCKETS - 1)));
+	}
+
+	@Test
+	public void testQuantilesAndCounts() {
+		var histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+
+		assertThat(histogram.getCount(), is(1000L));
+		assertThat(histogram.getSum(), is(500_500_000L));
+		assertThat(histogram.countAtMost(Long.MAX_VALUE), is(1000L));
+		assertThat(histogram.countAtMost(0), is(0L));
+
+		var median = histogram.valueAtQuantile(0.5);
+		assertThat(median >= 500_000 && median <= 500_000 * 9 / 8, is(true));
+		var p99 = histogram.valueAtQuantile(0.99);
+		assertThat(p99 >= 990_000 && p99 <= 990_000 * 9 / 8, is(true));
+	}
+
+	@Test
+	public void testConcurrentRecordingLosesNothing() throws Exception {
+		var histogram = new LatencyHistogram();
+		var threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 100_000; i++)
+					histogram.record(i % 64);
+			});
+			threads[t].start();
+		}
+		for (var thread : threads)
+			thread.join();
+
+		assertThat(histogram.getCount(), is(400_000L));
+		assertThat(histogram.countAtMost(Long.MAX_VALUE), is(400_000L));
+	}
+}
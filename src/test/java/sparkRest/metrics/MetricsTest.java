@@ -0,0 +1,71 @@
+package sparkRest.metrics;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import spark.Request;
+import spark.Response;
+import sparkRest.transfers.TransferResult;
+import sparkRest.transfers.TransferResultCodes;
+
+public class MetricsTest {
+
+	Metrics metrics = new Metrics();
+	Request request = mock(Request.class);
+	Response response = mock(Response.class);
+
+	@Test
+	public void testTimedRouteIsRecordedByStatus() throws Exception {
+		var route = metrics.timed("GET /things", (req, res) -> "body");
+
+		when(response.status()).thenReturn(200);
+		assertThat(route.handle(request, response), is("body"));
+		route.handle(request, response);
+		when(response.status()).thenReturn(404);
+		route.handle(request, response);
+
+		assertThat(metrics.histogram("GET /things", 200).getCount(), is(2L));
+		assertThat(metrics.histogram("GET /things", 404).getCount(), is(1L));
+		assertThat(metrics.histogram("GET /things", 500), is(nullValue()));
+	}
+
+	@Test
+	public void testFailingRouteIsRecordedAs500() throws Exception {
+		var route = metrics.timed("GET /things", (req, res) -> {
+			throw new IllegalStateException();
+		});
+
+		try {
+			route.handle(request, response);
+		} catch (IllegalStateException expected) {
+		}
+
+		assertThat(metrics.histogram("GET /things", 500).getCount(), is(1L));
+	}
+
+	@Test
+	public void testScrapeRendersPrometheusText() throws Exception {
+		when(response.status()).thenReturn(200);
+		metrics.timed("GET /things", (req, res) -> "").handle(request, response);
+		metrics.transferred(TransferResult.success());
+		metrics.transferred(TransferResult.success());
+		metrics.transferred(TransferResult.rolledBack());
+		metrics.gauge("sparkrest_things", "Number of things", () -> 42);
+
+		var text = metrics.scrape();
+
+		assertThat(metrics.transfers(TransferResultCodes.Success), is(2L));
+		assertThat(text, containsString("# TYPE sparkrest_http_request_duration_seconds histogram\n"));
+		assertThat(text, containsString("sparkrest_http_request_duration_seconds_bucket{route=\"GET /things\",status=\"200\",le=\"+Inf\"} 1\n"));
+		assertThat(text, containsString("sparkrest_http_request_duration_seconds_count{route=\"GET /things\",status=\"200\"} 1\n"));
+		assertThat(text, containsString("sparkrest_transfers_total{result=\"success\"} 2\n"));
+		assertThat(text, containsString("sparkrest_transfers_total{result=\"rolled_back\"} 1\n"));
+		assertThat(text, containsString("# TYPE sparkrest_things gauge\nsparkrest_things 42\n"));
+	}
+}
@@ -0,0 +1,135 @@
+package sparkRest.rest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import sparkRest.accounting.AtomicAccount;
+import sparkRest.accounting.Money;
+import sparkRest.storage.InMemoryAccountStorage;
+
+public class AccountImportTest {
+
+	AccountImport imports = new AccountImport(2);
+	InMemoryAccountStorage storage = new InMemoryAccountStorage();
+
+	@Test
+	public void testEveryValidLineIsCreatedAndTheOthersRejectedByLine() throws Exception {
+		var existing = storage.newAccount(new NewAccountRequest(Money.of(1)));
+		var id = UUID.randomUUID().toString();
+		var body = String.join("\n",
+				"{\"id\":\"" + id + "\",\"available\":1.50,\"blocked\":0.50,\"isLocked\":true}",
+				"{\"available\":3}",
+				"",
+				"{\"id\":\"" + existing + "\",\"available\":9}",
+				"{\"available\":-1}",
+				"{\"available\":0.001}",
+				"not json");
+
+		var result = imports.run(input(body), AccountImport.Format.NDJSON, storage);
+
+		assertThat(result.getImported(), is(2L));
+		assertThat(result.getRejected(), is(4L));
+		assertThat(rejections(result), is(List.of("4:account exists", "5:negative amount", "6:malformed", "7:malformed")));
+		assertThat(storage.get(id).getBalance(), is(Money.of(2)));
+		assertThat(storage.get(id).isLocked(), is(true));
+		assertThat(storage.get(existing).getBalance(), is(Money.of(1)));
+		assertThat(storage.count(), is(3L));
+	}
+
+	@Test
+	public void testCsvExportImportsIntoAnotherStorage() throws Exception {
+		for (int i = 0; i < 5_000; i++)
+			storage.newAccount(new NewAccountRequest(i));
+		storage.forEach(account -> {
+			if (account.getBalance() % 7 == 0) account.lock();
+		});
+		var exported = new ByteArrayOutputStream();
+		AccountExport.csv(storage, exported);
+
+		var copy = new InMemoryAccountStorage();
+		var result = imports.run(new ByteArrayInputStream(exported.toByteArray()), AccountImport.Format.CSV, copy);
+
+		assertThat(result.getImported(), is(5_000L));
+		storage.forEach(account -> {
+			assertThat(copy.get(account.getId()).getBalance(), is(account.getBalance()));
+			assertThat(copy.get(account.getId()).isLocked(), is(account.isLocked()));
+		});
+	}
+
+	@Test
+	public void testLinesAcrossBlocksKeepTheirNumbersAndOverlongOnesAreSkipped() throws Exception {
+		var body = new StringBuilder();
+		for (int i = 0; i < 20_000; i++)
+			body.append(i == 10_000 ? " ".repeat(AccountImport.BLOCK * 2) : "," + i).append('\n');
+
+		var result = imports.run(trickle(input(body.toString())), AccountImport.Format.CSV, storage);
+
+		assertThat(result.getImported(), is(19_999L));
+		assertThat(rejections(result), is(List.of("10001:line too long")));
+	}
+
+	@Test
+	public void testIdsRepeatedAcrossBlocksAreCreatedOnce() throws Exception {
+		var ids = new ArrayList<String>();
+		for (int i = 0; i < 64; i++)
+			ids.add(UUID.randomUUID().toString());
+		var body = new StringBuilder();
+		for (int i = 0; i < 64_000; i++)
+			body.append(ids.get(i % ids.size())).append(',').append(i).append('\n');
+
+		var result = new AccountImport(4).run(input(body.toString()), AccountImport.Format.CSV, storage);
+
+		assertThat(result.getImported(), is(64L));
+		assertThat(result.getRejected(), is(64_000L - 64));
+		assertThat(storage.count(), is(64L));
+		var created = new ArrayList<String>();
+		storage.forEach(account -> created.add(account.getId()));
+		assertThat(created.size(), is(64));
+	}
+
+	@Test
+	public void testLinesBehindABalanceTheAccountsCannotHoldAreStillImported() throws Exception {
+		var storage = new InMemoryAccountStorage(AtomicAccount::new);
+
+		var result = new AccountImport(1).run(input(",1.00\n,99999999999999.00\n,2.00\n,3.00\n"), AccountImport.Format.CSV, storage);
+
+		assertThat(result.getImported(), is(3L));
+		assertThat(result.getRejected(), is(1L));
+		assertThat(result.getRejections().get(0).getLine(), is(2L));
+		assertThat(result.getRejections().get(0).getReason(), is("amount out of range"));
+		assertThat(storage.count(), is(3L));
+	}
+
+	private static InputStream input(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/* Hands out odd-sized pieces, as a network stream would. */
+	private static InputStream trickle(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 1_000 + off % 3_000));
+			}
+		};
+	}
+
+	private static List<String> rejections(AccountImport.Result result) {
+		var rejections = new ArrayList<String>();
+		for (var rejection : result.getRejections())
+			rejections.add(rejection.getLine() + ":" + rejection.getReason());
+		return rejections;
+	}
+}
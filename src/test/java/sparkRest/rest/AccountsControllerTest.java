@@ -6,30 +6,63 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static sparkRest.rest.AccountSummary.summary;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
-
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 import spark.Request;
 import spark.Response;
 import sparkRest.accounting.Account;
+import sparkRest.accounting.AtomicAccount;
 import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+import sparkRest.feed.ChangeFeed;
+import sparkRest.metrics.Metrics;
 import sparkRest.storage.AccountStorage;
+import sparkRest.storage.InMemoryAccountStorage;
+import sparkRest.transfers.Holds;
+import sparkRest.transfers.OrderedLockTransfer;
+import sparkRest.transfers.RecentOperations;
 import sparkRest.transfers.RequestTransfer;
+import sparkRest.transfers.ScheduledTransfers;
 import sparkRest.transfers.Transfer;
+import sparkRest.transfers.TransferBatch;
+import sparkRest.transfers.TransferLedger;
 import sparkRest.transfers.TransferOperation;
+import sparkRest.transfers.TransferPipeline;
 import sparkRest.transfers.TransferRequest;
 import sparkRest.transfers.TransferResult;
+import sparkRest.transfers.TransferResultCodes;
 
 public class AccountsControllerTest {
 
@@ -53,22 +86,26 @@ public class AccountsControllerTest {
 		when(storage.newAccount(any())).thenReturn(newId);
 	}
 
+	@After
+	public void after() {
+		controller.close();
+	}
+
 	@Test
 	public void testCreateAccount() {
-		var requestedAmount = 145.32d;
-		when(sparkRequest.body()).thenReturn("{\"amount\":"+ requestedAmount +"}");
+		body("{\"amount\":145.32}");
 
 		var obj = controller.createAccount(sparkRequest, sparkResponse);
 
 		assertThat(obj, is(""));
 		verify(sparkResponse).status(201);
 		verify(sparkResponse).header("Location", reqPath + "/" + newId);
-		verify(storage).newAccount(argThat(a -> a.getAmount() == requestedAmount));
+		verify(storage).newAccount(argThat(a -> a.getAmount() == 14_532L));
 	}
 
 	@Test
 	public void testCreateAccountReturn400WhenNotParsedBody() {
-		when(sparkRequest.body()).thenReturn("{\"amount\":\"notaNumber\"}");
+		body("{\"amount\":\"notaNumber\"}");
 
 		var obj = controller.createAccount(sparkRequest, sparkResponse);
 
@@ -77,20 +114,42 @@ public class AccountsControllerTest {
 		verify(storage, never()).newAccount(any());
 	}
 
+	@Test
+	public void testCreateAccountReturns400WhenAmountHasMoreThanTwoDecimalPlaces() {
+		body("{\"amount\":0.001}");
+
+		controller.createAccount(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+		verify(storage, never()).newAccount(any());
+	}
+
+	@Test
+	public void testCreateAccountReturns400WhenAtomicAccountsCannotHoldTheAmount() {
+		var storage = new InMemoryAccountStorage(AtomicAccount::new);
+		replace(new AccountsController(storage, transfer));
+		body("{\"amount\":99999999999999.00}");
+
+		controller.createAccount(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+		assertThat(storage.count(), is(0L));
+	}
+
 	@Test
 	public void testCreateAccountWithZeroWhenNoBody() {
-		when(sparkRequest.body()).thenReturn("{}");
+		body("{}");
 
 		var obj = controller.createAccount(sparkRequest, sparkResponse);
 
 		assertThat(obj, is(""));
 		verify(sparkResponse).status(201);
-		verify(storage).newAccount(argThat(a -> a.getAmount() == 0.0d));
+		verify(storage).newAccount(argThat(a -> a.getAmount() == 0L));
 	}
 
 	@Test
 	public void testCreateAccountReturns400WhenBodyIsEmpty() {
-		when(sparkRequest.body()).thenReturn("");
+		body("");
 
 		var obj = controller.createAccount(sparkRequest, sparkResponse);
 
@@ -101,7 +160,7 @@ public class AccountsControllerTest {
 
 	@Test
 	public void testGetAccountById() {
-		var expectedResult = new InMemoryAccount(requestedKey, 123.0);
+		var expectedResult = new InMemoryAccount(requestedKey, Money.of(123));
 		
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
 		when(storage.get(requestedKey)).thenReturn(expectedResult);
@@ -113,6 +172,16 @@ public class AccountsControllerTest {
 		verify(storage).get(requestedKey);		
 	}
 
+	@Test
+	public void testAccountSummaryKeepsTwoDecimalPlacesOnTheWire() {
+		var account = new InMemoryAccount(requestedKey, Money.of(123));
+		account.block(50L, "a");
+
+		var json = new Gson().toJson(summary(account));
+
+		assertThat(json, is("{\"id\":\"1234\",\"available\":122.50,\"blocked\":0.50,\"isLocked\":false}"));
+	}
+
 	@Test
 	public void testGetAccountByIdReturns404WhenNotFound() {
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
@@ -179,7 +248,7 @@ public class AccountsControllerTest {
 	
 	@Test
 	public void testGetAccountStateNotLocked() {
-		var expectedResult = new InMemoryAccount(requestedKey, 123.0);
+		var expectedResult = new InMemoryAccount(requestedKey, Money.of(123));
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
 		when(storage.get(requestedKey)).thenReturn(expectedResult);
 
@@ -194,7 +263,7 @@ public class AccountsControllerTest {
 
 	@Test
 	public void testGetAccountStateLocked() {
-		var expectedResult = new InMemoryAccount(requestedKey, 123.0);
+		var expectedResult = new InMemoryAccount(requestedKey, Money.of(123));
 		expectedResult.lock();
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
 		when(storage.get(requestedKey)).thenReturn(expectedResult);
@@ -210,10 +279,10 @@ public class AccountsControllerTest {
 	
 	@Test
 	public void testUnlockAccount() {
-		var expectedResult = new InMemoryAccount(requestedKey, 0.0);
+		var expectedResult = new InMemoryAccount(requestedKey, Money.ZERO);
 		expectedResult.lock();
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
-		when(sparkRequest.body()).thenReturn(new Gson().toJson(new AccountState()));
+		body(new Gson().toJson(new AccountState()));
 		when(storage.has(requestedKey)).thenReturn(true);
 		when(storage.get(requestedKey)).thenReturn(expectedResult);
 		
@@ -230,9 +299,9 @@ public class AccountsControllerTest {
 
 	@Test
 	public void testLockAccount() {
-		var expectedResult = new InMemoryAccount(requestedKey, 0.0);
+		var expectedResult = new InMemoryAccount(requestedKey, Money.ZERO);
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
-		when(sparkRequest.body()).thenReturn(new Gson().toJson(new AccountState(true)));
+		body(new Gson().toJson(new AccountState(true)));
 		when(storage.has(requestedKey)).thenReturn(true);
 		when(storage.get(requestedKey)).thenReturn(expectedResult);
 		
@@ -250,7 +319,7 @@ public class AccountsControllerTest {
 	@Test
 	public void testLockAccountReturns404IfNotFound() {
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
-		when(sparkRequest.body()).thenReturn(new Gson().toJson(new AccountState(true)));
+		body(new Gson().toJson(new AccountState(true)));
 		when(storage.has(requestedKey)).thenReturn(false);
 		
 		controller.setAccountState(sparkRequest, sparkResponse);
@@ -263,7 +332,7 @@ public class AccountsControllerTest {
 	@Test
 	public void testLockAccountReturns400WhenemptyBody() {
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
-		when(sparkRequest.body()).thenReturn(new Gson().toJson(null));
+		body(new Gson().toJson(null));
 		
 		controller.setAccountState(sparkRequest, sparkResponse);
 		
@@ -275,7 +344,7 @@ public class AccountsControllerTest {
 	@Test
 	public void testLockAccountReturns400WhenBadBody() {
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
-		when(sparkRequest.body()).thenReturn("{\"locked\":\"alamakota}");
+		body("{\"locked\":\"alamakota}");
 		
 		controller.setAccountState(sparkRequest, sparkResponse);
 		
@@ -298,7 +367,7 @@ public class AccountsControllerTest {
 	public void testTransferReturns400WhenRequestIsNotValid() {
 		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
 		when(storage.has(requestedKey)).thenReturn(true);
-		when(sparkRequest.body()).thenReturn("{badBody}");
+		body("{badBody}");
 
 		controller.transfer(sparkRequest, sparkResponse);
 		
@@ -306,6 +375,18 @@ public class AccountsControllerTest {
 		verify(transfer, never()).from(null);
 	}
 	
+	@Test
+	public void testTransferReturns400WhenAmountIsOutOfRange() {
+		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
+		when(storage.has(requestedKey)).thenReturn(true);
+		body("{\"destinationAccount\":\"b\",\"amount\":92233720368547758.08}");
+
+		controller.transfer(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+		verify(transfer, never()).from(any());
+	}
+
 	@Test
 	public void testSuccesfullTransfer() {
 		var destinationId = "123456-abc";
@@ -317,7 +398,7 @@ public class AccountsControllerTest {
 		when(storage.has(requestedKey)).thenReturn(true);
 		when(storage.get(requestedKey)).thenReturn(source);
 		when(storage.get(destinationId)).thenReturn(destination);
-		when(sparkRequest.body()).thenReturn(new Gson().toJson(new IncomingTransferRequest(destinationId, 150.0d)));
+		body(new Gson().toJson(new IncomingTransferRequest(destinationId, Money.of(150))));
 		when(transfer.from(any(Account.class))).thenReturn(requestTransfer);
 		when(requestTransfer.withRequest(any(TransferRequest.class))).thenReturn(transferOperation);
 		when(transferOperation.execute(any(Account.class))).thenReturn(null);
@@ -328,8 +409,553 @@ public class AccountsControllerTest {
 		verify(sparkResponse).status(200);
 		verify(sparkResponse).type("application/json");
 		verify(transfer).from(source);
-		verify(requestTransfer).withRequest(argThat(r -> r.getAmount().equals(new BigDecimal(150)) && !r.getOperationId().isEmpty()));
-		verify(transferOperation).execute(destination);		
+		verify(requestTransfer).withRequest(argThat(r -> r.getAmount() == Money.of(150) && !r.getOperationId().isEmpty()));
+		verify(transferOperation).execute(destination);
+		verify(storage).awaitDurable();
+	}
+
+	@Test
+	public void testTransferWithIdempotencyKeyIsExecutedOnce() {
+		var source = new InMemoryAccount("a", Money.of(10));
+		var destination = new InMemoryAccount("b", 0);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		when(sparkRequest.headers("Idempotency-Key")).thenReturn("retry-me");
+		when(storage.has("a")).thenReturn(true);
+		when(storage.get("a")).thenReturn(source);
+		when(storage.get("b")).thenReturn(destination);
+		body(new Gson().toJson(new IncomingTransferRequest("b", Money.of(6))));
+		replace(new AccountsController(storage, new Transfer()));
+
+		var first = (TransferResult) controller.transfer(sparkRequest, sparkResponse);
+		var retried = (TransferResult) controller.transfer(sparkRequest, sparkResponse);
+
+		assertThat(retried, is(first));
+		assertThat(retried.getCode(), is(TransferResultCodes.Success));
+		assertThat(destination.getBalance(), is(Money.of(6)));
+	}
+
+	@Test
+	public void testFailedTransferWithIdempotencyKeyRunsAgain() {
+		var source = new InMemoryAccount("a", Money.of(5));
+		var destination = new InMemoryAccount("b", 0);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		when(sparkRequest.headers("Idempotency-Key")).thenReturn("retry-me");
+		when(storage.has("a")).thenReturn(true);
+		when(storage.get("a")).thenReturn(source);
+		when(storage.get("b")).thenReturn(destination);
+		body(new Gson().toJson(new IncomingTransferRequest("b", Money.of(6))));
+		replace(new AccountsController(storage, new Transfer()));
+
+		var first = (TransferResult) controller.transfer(sparkRequest, sparkResponse);
+		source.add(Money.of(1));
+		var retried = (TransferResult) controller.transfer(sparkRequest, sparkResponse);
+
+		assertThat(first.getCode(), is(TransferResultCodes.SourceAccountNotEnoughResouces));
+		assertThat(retried.getCode(), is(TransferResultCodes.Success));
+		assertThat(destination.getBalance(), is(Money.of(6)));
+	}
+
+	@Test
+	public void testTransferReturns422WhenIdempotencyKeyIsReusedForAnotherTransfer() {
+		var source = new InMemoryAccount("a", Money.of(10));
+		var destination = new InMemoryAccount("b", 0);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		when(sparkRequest.headers("Idempotency-Key")).thenReturn("retry-me");
+		when(storage.has("a")).thenReturn(true);
+		when(storage.get("a")).thenReturn(source);
+		when(storage.get("b")).thenReturn(destination);
+		replace(new AccountsController(storage, new Transfer()));
+
+		body(new Gson().toJson(new IncomingTransferRequest("b", Money.of(6))));
+		controller.transfer(sparkRequest, sparkResponse);
+		body(new Gson().toJson(new IncomingTransferRequest("b", Money.of(4))));
+		controller.transfer(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(422);
+		assertThat(destination.getBalance(), is(Money.of(6)));
+	}
+
+	@Test
+	public void testTransferReturns400WhenIdempotencyKeyIsTooLong() {
+		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
+		when(sparkRequest.headers("Idempotency-Key")).thenReturn("k".repeat(256));
+		when(storage.has(requestedKey)).thenReturn(true);
+		body(new Gson().toJson(new IncomingTransferRequest("b", Money.of(6))));
+
+		controller.transfer(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+		verify(transfer, never()).from(any());
+	}
+
+	@Test
+	public void testTransferBatchStreamsResultsInOrder() throws Exception {
+		var output = respondInto();
+		var source = new InMemoryAccount("a", Money.of(10));
+		var destination = new InMemoryAccount("b", 0);
+		when(storage.get("a")).thenReturn(source);
+		when(storage.get("b")).thenReturn(destination);
+		body(new Gson().toJson(new IncomingBatchRequest(false, List.of(
+				new IncomingTransferRequest("a", "b", Money.of(6)),
+				new IncomingTransferRequest("a", "b", Money.of(6)),
+				new IncomingTransferRequest("missing", "b", Money.of(1))))));
+
+		replace(new AccountsController(storage, new Transfer()));
+		controller.transferBatch(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(200);
+		var results = new Gson().fromJson(output.toString(StandardCharsets.UTF_8), TransferResult[].class);
+		assertThat(results.length, is(3));
+		assertThat(results[0].getCode(), is(TransferResultCodes.Success));
+		assertThat(results[1].getCode(), is(TransferResultCodes.SourceAccountNotEnoughResouces));
+		assertThat(results[2].getCode(), is(TransferResultCodes.SourceAccountNotFound));
+		assertThat(destination.getBalance(), is(Money.of(6)));
+	}
+
+	@Test
+	public void testAtomicTransferBatchUsesExecuteAtomically() throws Exception {
+		var output = respondInto();
+		body(new Gson().toJson(new IncomingBatchRequest(true, List.of(
+				new IncomingTransferRequest("a", "b", Money.of(6))))));
+		when(transfer.executeAtomically(any(TransferBatch.class))).thenReturn(List.of(TransferResult.rolledBack()));
+
+		controller.transferBatch(sparkRequest, sparkResponse);
+
+		verify(transfer).executeAtomically(argThat(batch -> batch.size() == 1));
+		verify(transfer, never()).from(any());
+		assertThat(output.toString(StandardCharsets.UTF_8), is(new Gson().toJson(List.of(TransferResult.rolledBack()))));
+	}
+
+	@Test
+	public void testTransferBatchReturns400WhenAnItemHasNoSource() throws Exception {
+		body(new Gson().toJson(new IncomingBatchRequest(false, List.of(
+				new IncomingTransferRequest("b", Money.of(6))))));
+
+		controller.transferBatch(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+		verify(transfer, never()).from(any());
+	}
+
+	@Test
+	public void testListAccountsPagesThroughEveryAccount() throws Exception {
+		var storage = new InMemoryAccountStorage();
+		var ids = new HashSet<String>();
+		for (int i = 0; i < 5; i++)
+			ids.add(storage.newAccount(new NewAccountRequest(Money.of(i))));
+		replace(new AccountsController(storage, transfer));
+
+		var listed = new HashSet<String>();
+		String cursor = null;
+		var pages = 0;
+		do {
+			when(sparkRequest.queryParams("cursor")).thenReturn(cursor);
+			when(sparkRequest.queryParams("limit")).thenReturn("2");
+			var page = listAccounts();
+			for (var account : page.getAsJsonArray("accounts"))
+				listed.add(account.getAsJsonObject().get("id").getAsString());
+			cursor = page.has("next") ? page.get("next").getAsString() : null;
+			pages++;
+		} while (null != cursor);
+
+		assertThat(listed, is(ids));
+		assertThat(pages, is(3));
+	}
+
+	@Test
+	public void testListAccountsFiltersByLockedAndBalance() throws Exception {
+		var storage = new InMemoryAccountStorage();
+		var match = storage.newAccount(new NewAccountRequest(150));
+		storage.newAccount(new NewAccountRequest(150));
+		storage.get(storage.newAccount(new NewAccountRequest(300))).lock();
+		storage.get(match).lock();
+		replace(new AccountsController(storage, transfer));
+		when(sparkRequest.queryParams("locked")).thenReturn("true");
+		when(sparkRequest.queryParams("minBalance")).thenReturn("1.5");
+		when(sparkRequest.queryParams("maxBalance")).thenReturn("2");
+
+		var page = listAccounts();
+
+		verify(sparkResponse).status(200);
+		assertThat(page.getAsJsonArray("accounts").size(), is(1));
+		assertThat(page.getAsJsonArray("accounts").get(0).getAsJsonObject().get("id").getAsString(), is(match));
+		assertThat(page.has("next"), is(false));
+	}
+
+	@Test
+	public void testListAccountsInABalanceRangeAreOrderedByAmount() throws Exception {
+		var storage = new InMemoryAccountStorage();
+		var large = storage.newAccount(new NewAccountRequest(900));
+		var small = storage.newAccount(new NewAccountRequest(100));
+		storage.newAccount(new NewAccountRequest(5_000));
+		var medium = storage.newAccount(new NewAccountRequest(500));
+		replace(new AccountsController(storage, transfer));
+		when(sparkRequest.queryParams("minBalance")).thenReturn("1");
+		when(sparkRequest.queryParams("maxBalance")).thenReturn("10");
+		when(sparkRequest.queryParams("limit")).thenReturn("2");
+
+		var first = listAccounts();
+		when(sparkRequest.queryParams("cursor")).thenReturn(first.get("next").getAsString());
+		var second = listAccounts();
+
+		assertThat(ids(first), is(List.of(small, medium)));
+		assertThat(ids(second), is(List.of(large)));
+		assertThat(second.has("next"), is(false));
+	}
+
+	@Test
+	public void testListAccountsReturns400ForACursorOfAnotherWalk() throws Exception {
+		replace(new AccountsController(new InMemoryAccountStorage(), transfer));
+		when(sparkRequest.queryParams("minBalance")).thenReturn("1");
+		when(sparkRequest.queryParams("cursor")).thenReturn("12");
+		var output = respondInto();
+
+		controller.listAccounts(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+		verify(sparkResponse, never()).status(200);
+		assertThat(output.size(), is(0));
+	}
+
+	@Test
+	public void testListAccountsReturns400ForMalformedParameters() throws Exception {
+		for (var param : List.of(new String[] { "cursor", "-1" }, new String[] { "limit", "0" }, new String[] { "limit", "1001" },
+				new String[] { "locked", "yes" }, new String[] { "minBalance", "0.001" }, new String[] { "maxBalance", "1e999999999" })) {
+			before();
+			when(sparkRequest.queryParams(param[0])).thenReturn(param[1]);
+
+			controller.listAccounts(sparkRequest, sparkResponse);
+
+			verify(sparkResponse).status(400);
+			verify(storage, never()).forEach(anyLong(), any());
+		}
+	}
+
+	@Test
+	public void testPayoutStreamsOneResultPerLeg() throws Exception {
+		var output = respondInto();
+		var source = new InMemoryAccount("a", Money.of(10));
+		var b = new InMemoryAccount("b", 0);
+		var c = new InMemoryAccount("c", 0);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		when(storage.get("a")).thenReturn(source);
+		when(storage.get("b")).thenReturn(b);
+		when(storage.get("c")).thenReturn(c);
+		body(new Gson().toJson(new IncomingBatchRequest(false, List.of(
+				new IncomingTransferRequest("b", Money.of(6)),
+				new IncomingTransferRequest("c", Money.of(3))))));
+
+		replace(new AccountsController(storage, new Transfer()));
+		controller.payout(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(200);
+		var results = new Gson().fromJson(output.toString(StandardCharsets.UTF_8), TransferResult[].class);
+		assertThat(results.length, is(2));
+		assertThat(results[0].getCode(), is(TransferResultCodes.Success));
+		assertThat(results[1].getCode(), is(TransferResultCodes.Success));
+		assertThat(source.getBalance(), is(Money.of(1)));
+		assertThat(c.getBalance(), is(Money.of(3)));
+	}
+
+	@Test
+	public void testAsyncTransferIsAcceptedAndCanBePolled() throws Exception {
+		var storage = new InMemoryAccountStorage();
+		var a = storage.newAccount(new NewAccountRequest(Money.of(10)));
+		var b = storage.newAccount(new NewAccountRequest(0));
+		var pipeline = new TransferPipeline(1, 10, 10);
+		replace(new AccountsController(storage, new OrderedLockTransfer(), new RecentOperations<>(10, 1, TimeUnit.HOURS), new TransferLedger(), pipeline, new Holds(new Transfer(), 100), new ScheduledTransfers(storage, new Transfer(), 1_000, 1, 1_000, 10), new ChangeFeed(16), new Metrics()));
+		when(sparkRequest.uri()).thenReturn("/api/v1/accounts/" + a + "/transfers");
+		when(sparkRequest.params(":accountId")).thenReturn(a);
+		when(sparkRequest.queryParams("async")).thenReturn("true");
+		body(new Gson().toJson(new IncomingTransferRequest(b, Money.of(4))));
+
+		var accepted = (OperationStatus) controller.transfer(sparkRequest, sparkResponse);
+		pipeline.close();
+		when(sparkRequest.params(":operationId")).thenReturn(accepted.getId());
+		var polled = (OperationStatus) controller.getOperation(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(202);
+		verify(sparkResponse).header("Location", "/api/v1/operations/" + accepted.getId());
+		assertThat(polled.getStatus(), is("succeeded"));
+		assertThat(polled.getResult().getCode(), is(TransferResultCodes.Success));
+		assertThat(storage.get(b).getBalance(), is(Money.of(4)));
+	}
+
+	@Test
+	public void testAsyncTransferReturns503WhenThePipelineIsFull() {
+		var pipeline = mock(TransferPipeline.class);
+		replace(new AccountsController(storage, transfer, new RecentOperations<>(10, 1, TimeUnit.HOURS), new TransferLedger(), pipeline, new Holds(new Transfer(), 100), new ScheduledTransfers(storage, new Transfer(), 1_000, 1, 1_000, 10), new ChangeFeed(16), new Metrics()));
+		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
+		when(sparkRequest.queryParams("async")).thenReturn("true");
+		when(storage.has(requestedKey)).thenReturn(true);
+		body(new Gson().toJson(new IncomingTransferRequest("b", Money.of(6))));
+
+		controller.transfer(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(503);
+		verify(transfer, never()).from(any());
+	}
+
+	@Test
+	public void testUnknownOperationReturns404() {
+		when(sparkRequest.params(":operationId")).thenReturn("missing");
+
+		controller.getOperation(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(404);
+	}
+
+	@Test
+	public void testListTransfersPagesTheHistoryNewestFirst() throws Exception {
+		var storage = new InMemoryAccountStorage();
+		var ledger = new TransferLedger();
+		var a = storage.newAccount(new NewAccountRequest(Money.of(10)));
+		var b = storage.newAccount(new NewAccountRequest(0));
+		var transfer = new OrderedLockTransfer(ledger);
+		for (int i = 1; i <= 3; i++)
+			transfer.from(storage.get(a)).withRequest(new TransferRequest("op-" + i, Money.of(i))).execute(storage.get(b));
+		replace(new AccountsController(storage, transfer, new RecentOperations<>(10, 1, TimeUnit.HOURS), ledger, new TransferPipeline(1, 10, 10), new Holds(transfer, 100), new ScheduledTransfers(storage, transfer, 1_000, 1, 1_000, 10), new ChangeFeed(16), new Metrics()));
+		when(sparkRequest.params(":accountId")).thenReturn(a);
+		when(sparkRequest.queryParams("limit")).thenReturn("2");
+
+		var first = listTransfers();
+		when(sparkRequest.queryParams("cursor")).thenReturn(first.get("next").getAsString());
+		var second = listTransfers();
+
+		var transfers = first.getAsJsonArray("transfers");
+		assertThat(transfers.size(), is(2));
+		assertThat(transfers.get(0).getAsJsonObject().get("amount").getAsBigDecimal(), is(new BigDecimal("-3.00")));
+		assertThat(transfers.get(0).getAsJsonObject().get("counterpart").getAsString(), is(b));
+		assertThat(transfers.get(1).getAsJsonObject().get("amount").getAsBigDecimal(), is(new BigDecimal("-2.00")));
+		assertThat(second.getAsJsonArray("transfers").get(0).getAsJsonObject().get("amount").getAsBigDecimal(), is(new BigDecimal("-1.00")));
+		assertThat(second.has("next"), is(false));
+	}
+
+	@Test
+	public void testListTransfersOfAMissingAccountReturns404() throws Exception {
+		when(sparkRequest.params(":accountId")).thenReturn(requestedKey);
+
+		controller.listTransfers(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(404);
+	}
+
+	@Test
+	public void testListTransfersReturns404WhenNoHistoryIsKept() throws Exception {
+		var storage = new InMemoryAccountStorage();
+		var a = storage.newAccount(new NewAccountRequest(Money.of(10)));
+		var transfer = new OrderedLockTransfer();
+		replace(new AccountsController(storage, transfer, new RecentOperations<>(10, 1, TimeUnit.HOURS), null, new TransferPipeline(1, 10, 10), new Holds(transfer, 100), new ScheduledTransfers(storage, transfer, 1_000, 1, 1_000, 10), new ChangeFeed(16), new Metrics()));
+		when(sparkRequest.params(":accountId")).thenReturn(a);
+
+		controller.listTransfers(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(404);
+	}
+
+	@Test
+	public void testPlacedHoldCanBeCapturedToAnotherAccount() {
+		var source = new InMemoryAccount("a", Money.of(10));
+		var destination = new InMemoryAccount("b", 0);
+		when(storage.get("a")).thenReturn(source);
+		when(storage.get("b")).thenReturn(destination);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		when(sparkRequest.uri()).thenReturn("/api/v1/accounts/a/holds");
+		replace(new AccountsController(storage, new Transfer()));
+		body("{\"amount\":4,\"ttlSeconds\":60}");
+
+		var hold = (HoldSummary) controller.placeHold(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(201);
+		verify(sparkResponse).header("Location", "/api/v1/accounts/a/holds/" + hold.getId());
+		assertThat(source.getBlockedAmount(), is(Money.of(4)));
+
+		when(sparkRequest.params(":holdId")).thenReturn(hold.getId());
+		body(new Gson().toJson(new IncomingTransferRequest("b", 0)));
+		var result = (TransferResult) controller.captureHold(sparkRequest, sparkResponse);
+
+		assertThat(result.getCode(), is(TransferResultCodes.Success));
+		assertThat(source.getBlockedAmount(), is(0L));
+		assertThat(destination.getBalance(), is(Money.of(4)));
+		controller.captureHold(sparkRequest, sparkResponse);
+		verify(sparkResponse).status(404);
+	}
+
+	@Test
+	public void testReleasedHoldReturnsTheAmount() {
+		var account = new InMemoryAccount("a", Money.of(10));
+		when(storage.get("a")).thenReturn(account);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		replace(new AccountsController(storage, new Transfer()));
+		body("{\"amount\":11}");
+		controller.placeHold(sparkRequest, sparkResponse);
+		verify(sparkResponse).status(409);
+
+		body("{\"amount\":3}");
+		var hold = (HoldSummary) controller.placeHold(sparkRequest, sparkResponse);
+		when(sparkRequest.params(":holdId")).thenReturn(hold.getId());
+		controller.releaseHold(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(200);
+		assertThat(account.getBlockedAmount(), is(0L));
+		assertThat(account.getBalance(), is(Money.of(10)));
+	}
+
+	@Test
+	public void testScheduledTransferCanBeFoundAndCancelled() {
+		var source = new InMemoryAccount("a", Money.of(10));
+		when(storage.get("a")).thenReturn(source);
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		when(sparkRequest.uri()).thenReturn("/api/v1/accounts/a/schedules");
+		body("{\"destinationAccount\":\"b\",\"amount\":2.5,\"startAt\":\"2030-01-01T00:00:00Z\",\"intervalSeconds\":86400}");
+
+		var created = (ScheduleSummary) controller.scheduleTransfer(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(201);
+		verify(sparkResponse).header("Location", "/api/v1/accounts/a/schedules/" + created.getId());
+		assertThat(created.getNextRun(), is("2030-01-01T00:00:00Z"));
+		assertThat(created.getIntervalSeconds(), is(86_400L));
+
+		when(sparkRequest.params(":scheduleId")).thenReturn(created.getId());
+		assertThat(((ScheduleSummary) controller.getSchedule(sparkRequest, sparkResponse)).getAmount(), is(250L));
+		controller.cancelSchedule(sparkRequest, sparkResponse);
+		verify(sparkResponse, times(2)).status(200);
+		controller.getSchedule(sparkRequest, sparkResponse);
+		verify(sparkResponse).status(404);
+	}
+
+	@Test
+	public void testScheduleWithAnInvalidStartReturns400() {
+		when(storage.get("a")).thenReturn(new InMemoryAccount("a", Money.of(10)));
+		when(sparkRequest.params(":accountId")).thenReturn("a");
+		body("{\"destinationAccount\":\"b\",\"amount\":1,\"startAt\":\"tomorrow\"}");
+
+		controller.scheduleTransfer(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+	}
+
+	@Test
+	public void testFeedResumesBehindTheLastEventIdForOneAccount() throws Exception {
+		var feed = new ChangeFeed(16);
+		replace(new AccountsController(storage, transfer, new RecentOperations<>(10, 1, TimeUnit.HOURS), new TransferLedger(), new TransferPipeline(1, 10, 10), new Holds(transfer, 100), new ScheduledTransfers(storage, transfer, 1_000, 1, 1_000, 10), feed, new Metrics()));
+		feed.publish(ChangeFeed.Type.ADDED, "a", Money.of(1), Money.of(1), 0);
+		feed.publish(ChangeFeed.Type.ADDED, "b", Money.of(2), Money.of(2), 0);
+		feed.publish(ChangeFeed.Type.BLOCKED, "a", Money.of(1), 0, Money.of(1));
+		when(sparkRequest.headers("Last-Event-ID")).thenReturn("0");
+		when(sparkRequest.queryParams("account")).thenReturn("a");
+		when(sparkRequest.queryParams("timeout")).thenReturn("0");
+		var output = respondInto();
+
+		controller.feed(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(200);
+		verify(sparkResponse).type("text/event-stream");
+		assertThat(output.toString(StandardCharsets.UTF_8),
+				is("id: 2\nevent: blocked\ndata: {\"account\":\"a\",\"amount\":1.00,\"available\":0.00,\"blocked\":1.00}\n\n"));
+	}
+
+	@Test
+	public void testFeedFromAnInvalidSequenceReturns400() {
+		replace(new AccountsController(storage, transfer, new RecentOperations<>(10, 1, TimeUnit.HOURS), new TransferLedger(), new TransferPipeline(1, 10, 10), new Holds(transfer, 100), new ScheduledTransfers(storage, transfer, 1_000, 1, 1_000, 10), new ChangeFeed(16), new Metrics()));
+		when(sparkRequest.queryParams("from")).thenReturn("-1");
+
+		controller.feed(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(400);
+	}
+
+	@Test
+	public void testFeedReturns404WhenNoChangesArePublished() {
+		replace(new AccountsController(storage, transfer, new RecentOperations<>(10, 1, TimeUnit.HOURS), new TransferLedger(), new TransferPipeline(1, 10, 10), new Holds(transfer, 100), new ScheduledTransfers(storage, transfer, 1_000, 1, 1_000, 10), null, new Metrics()));
+
+		controller.feed(sparkRequest, sparkResponse);
+
+		verify(sparkResponse).status(404);
+	}
+
+	/* Closes the controller of before, so that its threads do not outlive the test. */
+	private void replace(AccountsController controller) {
+		this.controller.close();
+		this.controller = controller;
+	}
+
+	private JsonObject listTransfers() throws Exception {
+		var output = respondInto();
+		controller.listTransfers(sparkRequest, sparkResponse);
+		return JsonParser.parseString(output.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+	}
+
+	private static List<String> ids(JsonObject page) {
+		var ids = new ArrayList<String>();
+		for (var account : page.getAsJsonArray("accounts"))
+			ids.add(account.getAsJsonObject().get("id").getAsString());
+		return ids;
+	}
+
+	private JsonObject listAccounts() throws Exception {
+		var output = respondInto();
+		controller.listAccounts(sparkRequest, sparkResponse);
+		return JsonParser.parseString(output.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+	}
+
+	private void body(String json) {
+		var raw = mock(HttpServletRequest.class);
+		when(sparkRequest.raw()).thenReturn(raw);
+		try {
+			when(raw.getInputStream()).thenAnswer(invocation -> {
+				var bytes = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+				return new ServletInputStream() {
+					@Override
+					public int read() {
+						return bytes.read();
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) {
+						return bytes.read(b, off, len);
+					}
+
+					@Override
+					public boolean isFinished() {
+						return bytes.available() == 0;
+					}
+
+					@Override
+					public boolean isReady() {
+						return true;
+					}
+
+					@Override
+					public void setReadListener(ReadListener listener) {
+					}
+				};
+			});
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private ByteArrayOutputStream respondInto() throws Exception {
+		var output = new ByteArrayOutputStream();
+		var raw = mock(HttpServletResponse.class);
+		when(sparkResponse.raw()).thenReturn(raw);
+		when(raw.getOutputStream()).thenReturn(new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				output.write(b);
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) {
+			}
+		});
+		return output;
 	}
 
 }
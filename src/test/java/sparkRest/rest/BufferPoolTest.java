@@ -0,0 +1,41 @@
+package sparkRest.rest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testBuffersGivenBackAreTakenAgainByAnyThread() throws Exception {
+		var pool = new BufferPool(2, 16);
+		var buffer = pool.take();
+		assertThat(buffer.length, is(16));
+
+		pool.give(buffer);
+		assertThat(CompletableFuture.supplyAsync(pool::take).get(), is(sameInstance(buffer)));
+	}
+
+	@Test
+	public void testFullPoolDropsBuffersAndEmptyPoolAllocates() {
+		var pool = new BufferPool(2, 16);
+		var first = new byte[16];
+		var second = new byte[16];
+		pool.give(first);
+		pool.give(second);
+		pool.give(new byte[16]);
+		pool.give(new byte[8]);
+
+		var taken = pool.take();
+		var other = pool.take();
+		assertThat(taken == first || taken == second, is(true));
+		assertThat(other == first || other == second, is(true));
+		assertThat(other, is(not(sameInstance(taken))));
+		assertThat(pool.take().length, is(16));
+	}
+}
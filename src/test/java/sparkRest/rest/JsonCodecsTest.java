@@ -0,0 +1,138 @@
+package sparkRest.rest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.transfers.TransferResult;
+
+public class JsonCodecsTest {
+	private final Gson gson = new Gson();
+
+	@Test
+	public void testResponsesAreWrittenLikeGson() throws IOException {
+		var account = new InMemoryAccount("0f8fad5b", 1_234_567L);
+		account.block(5L, "a");
+		var empty = new InMemoryAccount("e", 0);
+		empty.lock();
+		var tricky = new TransferResult(false, -7, "<a href='x'>&=\"\\\n\t\u0001\u2028\u00e9\ud83d\ude00</a>");
+
+		for (var body : List.of(AccountSummary.summary(account), AccountSummary.summary(empty),
+				TransferResult.success(), TransferResult.rolledBack(), tricky,
+				new AccountState(true), new AccountState(false))) {
+			assertThat(write(body), is(gson.toJson(body)));
+		}
+	}
+
+	@Test
+	public void testReadsWhatGsonWrites() throws IOException {
+		var transfer = JsonCodecs.readTransferRequest(input(gson.toJson(new IncomingTransferRequest("a", "b\"\u00e9\ud83d\ude00", 1_234L))));
+		var batch = JsonCodecs.readBatchRequest(input(gson.toJson(new IncomingBatchRequest(true, List.of(
+				new IncomingTransferRequest("a", "b", 1), new IncomingTransferRequest("c", "d", 2))))), 10);
+
+		assertThat(transfer.getSourceAccount(), is("a"));
+		assertThat(transfer.getDestinationAccount(), is("b\"\u00e9\ud83d\ude00"));
+		assertThat(transfer.getAmount(), is(1_234L));
+		assertThat(batch.isAtomic(), is(true));
+		assertThat(batch.getTransfers().size(), is(2));
+		assertThat(batch.getTransfers().get(1).getDestinationAccount(), is("d"));
+		assertThat(JsonCodecs.readAccountState(input(gson.toJson(new AccountState(true)))).isLocked(), is(true));
+		assertThat(JsonCodecs.readNewAccountRequest(input(gson.toJson(new NewAccountRequest(550L)))).getAmount(), is(550L));
+	}
+
+	@Test
+	public void testSkipsUnknownMembersAndKeepsDefaultsForNulls() throws IOException {
+		var request = JsonCodecs.readTransferRequest(input(
+				" { \"x\" : {\"y\":[1,{\"z\":null},\"\\u0041\"]}, \"amount\" : null, \"destinationAccount\":\"\\u0062\" } "));
+
+		assertThat(request.getDestinationAccount(), is("b"));
+		assertThat(request.getAmount(), is(0L));
+		assertThat(request.getSourceAccount(), is(nullValue()));
+	}
+
+	@Test
+	public void testAmountsAreReadExactly() throws IOException {
+		var amounts = new String[] { "0.1", "0", "-0", "12", "12.3", "12.30", "\"12.34\"", "1.50000000000000000000",
+				"1e2", "1.5E+1", "1234e-2", "0.00e5", "-7.25", "92233720368547758.07" };
+		var expected = new long[] { 10, 0, 0, 1_200, 1_230, 1_230, 1_234, 150, 10_000, 1_500, 1_234, 0, -725, Long.MAX_VALUE };
+
+		for (int i = 0; i < amounts.length; i++)
+			assertThat(amounts[i], amount(amounts[i]), is(expected[i]));
+	}
+
+	@Test
+	public void testRejectsInexactOrOutOfRangeAmounts() throws IOException {
+		for (var amount : List.of("0.001", "1.005", "1e-3", "92233720368547758.08", "1e17", "1e400", "-1e400")) {
+			try {
+				amount(amount);
+				throw new AssertionError(amount);
+			} catch (ArithmeticException e) {
+				/* expected */
+			}
+		}
+		for (var amount : List.of("01", ".5", "1.", "-", "1e", "\"12\"3", "\"abc\"", "1.2.3")) {
+			try {
+				amount(amount);
+				throw new AssertionError(amount);
+			} catch (MalformedJsonException e) {
+				/* expected */
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyBodyAndNullReadAsNull() throws IOException {
+		assertThat(JsonCodecs.readAccountState(input("")), is(nullValue()));
+		assertThat(JsonCodecs.readAccountState(input(" null ")), is(nullValue()));
+	}
+
+	@Test
+	public void testRejectsMalformedBodies() {
+		for (var body : List.of("{badBody}", "{\"locked\":\"alamakota}", "{\"locked\":true} x",
+				"{\"locked\":true,}", "{\"locked\" true}", "{,\"locked\":true}", "{\"locked\":\"true\"}")) {
+			try {
+				JsonCodecs.readAccountState(input(body));
+				throw new AssertionError(body);
+			} catch (MalformedJsonException e) {
+				/* expected */
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		}
+	}
+
+	@Test
+	public void testBatchOverTheLimitReadsAsNull() throws IOException {
+		var body = gson.toJson(new IncomingBatchRequest(false, List.of(
+				new IncomingTransferRequest("a", "b", 1), new IncomingTransferRequest("a", "b", 1))));
+
+		assertThat(JsonCodecs.readBatchRequest(input(body), 1), is(nullValue()));
+	}
+
+	private static long amount(String amount) throws IOException {
+		return JsonCodecs.readNewAccountRequest(input("{\"amount\":" + amount + "}")).getAmount();
+	}
+
+	private static JsonInput input(String json) {
+		return JsonInput.from(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String write(Object body) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		var out = JsonOutput.to(bytes);
+		JsonCodecs.write(out, body);
+		out.flush();
+		return bytes.toString(StandardCharsets.UTF_8);
+	}
+}
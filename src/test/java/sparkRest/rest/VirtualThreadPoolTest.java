@@ -0,0 +1,45 @@
+package sparkRest.rest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualThreadPoolTest {
+
+	@Before
+	public void before() {
+		assumeTrue(VirtualThreadPool.isSupported());
+	}
+
+	@Test
+	public void testEveryTaskRunsOnItsOwnVirtualThread() throws Exception {
+		var pool = new VirtualThreadPool("test-");
+		var tasks = 10_000;
+		var blocked = new CountDownLatch(1);
+		var done = new CountDownLatch(tasks);
+		for (int i = 0; i < tasks; i++) {
+			pool.execute(() -> {
+				try {
+					if (isVirtual(Thread.currentThread()) && blocked.await(10, TimeUnit.SECONDS))
+						done.countDown();
+				} catch (Exception e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+		assertThat(pool.getThreads(), is(tasks));
+		blocked.countDown();
+		assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+	}
+
+	private static boolean isVirtual(Thread thread) throws Exception {
+		return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+	}
+}
@@ -0,0 +1,122 @@
+package sparkRest.storage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class AccountIndexTest {
+
+	@Test
+	public void testIdsAreParsedLikeUuid() {
+		var uuid = UUID.randomUUID();
+		var id = uuid.toString();
+
+		assertThat(AccountIds.isValid(id), is(true));
+		assertThat(AccountIds.isValid(id.toUpperCase()), is(true));
+		assertThat(AccountIds.high(id), is(uuid.getMostSignificantBits()));
+		assertThat(AccountIds.low(id), is(uuid.getLeastSignificantBits()));
+		assertThat(AccountIds.format(AccountIds.high(id), AccountIds.low(id)), is(id));
+		assertThat(AccountIds.canonical(id.toUpperCase()), is(id));
+		assertThat(AccountIds.canonical(id), is(sameInstance(id)));
+	}
+
+	@Test
+	public void testAccountsRestoredUnderAnUppercaseIdCarryTheLowercaseOne() {
+		var id = UUID.randomUUID().toString();
+		var storage = new InMemoryAccountStorage();
+
+		assertThat(storage.restore(id.toUpperCase(), 1).getId(), is(id));
+		assertThat(storage.get(id).getId(), is(id));
+		assertThat(storage.get(id.toUpperCase()).getId(), is(id));
+	}
+
+	@Test
+	public void testRejectsIdsThatAreNotCanonicalUuids() {
+		var id = UUID.randomUUID().toString();
+
+		for (var invalid : new String[] { null, "", "a", id.substring(1), id + "0", id.replace('-', '0'),
+				"g" + id.substring(1), id.substring(0, 35) + "\u00e9", "1-2-3-4-5" })
+			assertThat(String.valueOf(invalid), AccountIds.isValid(invalid), is(false));
+	}
+
+	@Test
+	public void testBehavesLikeAMapThroughGrowthAndRemovals() {
+		var index = new AccountIndex();
+		var expected = new HashMap<UUID, Integer>();
+		var random = new Random(7);
+		var keys = new ArrayList<UUID>();
+
+		for (int i = 0; i < 200_000; i++) {
+			/* few distinct highs so that probe runs form and removals have to shift entries back */
+			var key = new UUID(random.nextInt(4), random.nextLong());
+			if (random.nextInt(3) == 0 && !keys.isEmpty()) {
+				var removed = keys.remove(random.nextInt(keys.size()));
+				assertThat(index.remove(removed.getMostSignificantBits(), removed.getLeastSignificantBits()), is(expected.remove(removed)));
+			} else {
+				keys.add(key);
+				expected.put(key, i);
+				assertThat(index.putIfAbsent(key.getMostSignificantBits(), key.getLeastSignificantBits(), i), is(AccountIndex.ABSENT));
+			}
+		}
+
+		assertThat(index.size(), is((long) expected.size()));
+		for (var entry : expected.entrySet())
+			assertThat(index.get(entry.getKey().getMostSignificantBits(), entry.getKey().getLeastSignificantBits()), is(entry.getValue()));
+		assertThat(index.get(5, 5), is(AccountIndex.ABSENT));
+	}
+
+	@Test
+	public void testPutIfAbsentKeepsTheFirstOrdinal() {
+		var index = new AccountIndex();
+
+		assertThat(index.putIfAbsent(1, 2, 10), is(AccountIndex.ABSENT));
+		assertThat(index.putIfAbsent(1, 2, 11), is(10));
+		assertThat(index.get(1, 2), is(10));
+		assertThat(index.remove(1, 2), is(10));
+		assertThat(index.remove(1, 2), is(AccountIndex.ABSENT));
+	}
+
+	@Test
+	public void testReadersAlwaysFindStableKeysWhileOthersChange() throws InterruptedException {
+		var index = new AccountIndex();
+		for (int i = 0; i < 10_000; i++)
+			index.putIfAbsent(0, i, i);
+
+		var stop = new AtomicBoolean();
+		var failures = new AtomicBoolean();
+		var started = new CountDownLatch(2);
+		var reader = new Thread(() -> {
+			started.countDown();
+			var random = new Random();
+			while (!stop.get()) {
+				var key = random.nextInt(10_000);
+				if (index.get(0, key) != key) failures.set(true);
+			}
+		});
+		var writer = new Thread(() -> {
+			started.countDown();
+			for (long i = 0; i < 500_000; i++) {
+				index.putIfAbsent(1, i, 10_000 + (int) i);
+				if (i >= 1_000) index.remove(1, i - 1_000);
+			}
+		});
+		reader.start();
+		writer.start();
+		started.await();
+		writer.join();
+		stop.set(true);
+		reader.join();
+
+		assertThat(failures.get(), is(false));
+		assertThat(index.size(), is(11_000L));
+	}
+}
@@ -0,0 +1,164 @@
+package sparkRest.storage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import sparkRest.rest.NewAccountRequest;
+
+public class OffHeapAccountStorageTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testViewsOfOneAccountShareItsRecord() {
+		var storage = new OffHeapAccountStorage();
+		var id = storage.newAccount(new NewAccountRequest(100));
+
+		storage.get(id).block(30, "a");
+		storage.get(id.toUpperCase()).lock();
+
+		var account = storage.get(id);
+		assertThat(account.getId(), is(id));
+		assertThat(account.getBalance(), is(70L));
+		assertThat(account.getBlockedAmount(), is(30L));
+		assertThat(account.isLocked(), is(true));
+		assertThat(storage.get(UUID.randomUUID().toString()), is(nullValue()));
+		assertThat(storage.get("not an id"), is(nullValue()));
+	}
+
+	@Test
+	public void testListenersAreAcceptedButNeverTold() {
+		var storage = new OffHeapAccountStorage();
+		var id = storage.newAccount(new NewAccountRequest(100));
+		var changes = new AtomicInteger();
+		storage.get(id).listen(changes::incrementAndGet);
+
+		storage.get(id).add(5);
+		storage.get(id).block(30, "a");
+		storage.get(id).lock();
+		storage.restore(id, 10);
+
+		assertThat(changes.get(), is(0));
+		assertThat(storage.get(id).getBalance(), is(10L));
+	}
+
+	@Test
+	public void testCreateLeavesAnExistingAccountAlone() {
+		var storage = new OffHeapAccountStorage();
+		var id = UUID.randomUUID().toString();
+
+		assertThat(storage.create(id, 10).getBalance(), is(10L));
+		storage.get(id).lock();
+		assertThat(storage.create(id, 99), is(nullValue()));
+		assertThat(storage.get(id).getBalance(), is(10L));
+		assertThat(storage.get(id).isLocked(), is(true));
+		assertThat(storage.count(), is(1L));
+	}
+
+	@Test
+	public void testRemovesOnlyLockedEmptyAccounts() {
+		var storage = new OffHeapAccountStorage();
+		var id = storage.restore(UUID.randomUUID().toString(), 0).getId();
+		var other = storage.newAccount(new NewAccountRequest(5));
+
+		assertThat(storage.remove(id), is(false));
+		storage.get(id).lock();
+		assertThat(storage.remove(id), is(true));
+		assertThat(storage.has(id), is(false));
+		assertThat(storage.remove(id), is(false));
+
+		var ids = new ArrayList<String>();
+		storage.forEach(account -> ids.add(account.getId()));
+		assertThat(ids, is(List.of(other)));
+		assertThat(storage.count(), is(1L));
+	}
+
+	@Test
+	public void testReopenedFileKeepsAccountsAndReleasesHolds() {
+		var file = folder.getRoot().toPath().resolve("accounts");
+		String a, b, removed;
+		try (var storage = new OffHeapAccountStorage(file)) {
+			a = storage.newAccount(new NewAccountRequest(100));
+			b = storage.newAccount(new NewAccountRequest(7));
+			removed = storage.newAccount(new NewAccountRequest(0));
+			storage.get(a).block(40, "in flight");
+			storage.get(b).lock();
+			storage.get(removed).lock();
+			storage.remove(removed);
+		}
+
+		try (var storage = new OffHeapAccountStorage(file)) {
+			assertThat(storage.count(), is(2L));
+			assertThat(storage.get(a).getBalance(), is(100L));
+			assertThat(storage.get(a).getBlockedAmount(), is(0L));
+			assertThat(storage.get(b).isLocked(), is(true));
+			assertThat(storage.has(removed), is(false));
+
+			var c = storage.newAccount(new NewAccountRequest(1));
+			assertThat(storage.get(c).getBalance(), is(1L));
+		}
+	}
+
+	@Test
+	public void testMutexIsReentrantAndExcludesOtherThreads() throws InterruptedException {
+		var storage = new OffHeapAccountStorage();
+		var id = storage.newAccount(new NewAccountRequest(0));
+		var inside = new AtomicInteger();
+		var overlaps = new AtomicInteger();
+
+		var threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 5_000; i++) {
+					var mutex = storage.get(id).mutex();
+					mutex.lock();
+					storage.get(id).mutex().lock();
+					try {
+						if (inside.incrementAndGet() != 1) overlaps.incrementAndGet();
+						inside.decrementAndGet();
+					} finally {
+						storage.get(id).mutex().unlock();
+						mutex.unlock();
+					}
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (var thread : threads)
+			thread.join();
+
+		assertThat(overlaps.get(), is(0));
+		assertThat(storage.get(id).mutex().tryLock(), is(true));
+	}
+
+	@Test
+	public void testChangesOfOtherThreadsWaitWhileTheMutexIsHeld() throws Exception {
+		var storage = new OffHeapAccountStorage();
+		var id = storage.newAccount(new NewAccountRequest(10));
+		var account = storage.get(id);
+		account.mutex().lock();
+		var debit = CompletableFuture.supplyAsync(() -> storage.get(id).block(10, "other"));
+		Thread.sleep(50);
+
+		assertThat(debit.isDone(), is(false));
+		assertThat(account.add(5), is(true));
+		assertThat(account.block(15, "mine"), is(true));
+		account.unblock("mine");
+		account.mutex().unlock();
+
+		assertThat(debit.get(), is(true));
+		assertThat(account.getBalance(), is(5L));
+	}
+}
@@ -0,0 +1,122 @@
+package sparkRest.storage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.AccountFactory;
+import sparkRest.accounting.AtomicAccount;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.rest.NewAccountRequest;
+import sparkRest.transfers.OrderedLockTransfer;
+import sparkRest.transfers.TransferRequest;
+
+public class SecondaryIndexesTest {
+
+	@Test
+	public void testBalanceIndexFollowsMutationsAndPages() {
+		var storage = new InMemoryAccountStorage();
+		var a = storage.newAccount(new NewAccountRequest(500));
+		var b = storage.newAccount(new NewAccountRequest(100));
+		var c = storage.newAccount(new NewAccountRequest(300));
+		var d = storage.newAccount(new NewAccountRequest(0));
+
+		storage.get(b).add(300);
+		storage.get(a).block(200, "op");
+		storage.get(d).lock();
+		storage.remove(d);
+
+		assertThat(byBalance(storage, 0, Long.MAX_VALUE), is(List.of(a, c, b)));
+		assertThat(byBalance(storage, 301, 400), is(List.of(b)));
+
+		storage.get(a).unblock("op");
+		var first = new ArrayList<String>();
+		var cursor = storage.forEachByBalance(null, 0, Long.MAX_VALUE, account -> first.add(account.getId()) && first.size() < 2);
+		var rest = new ArrayList<String>();
+		assertThat(storage.forEachByBalance(cursor, 0, Long.MAX_VALUE, account -> rest.add(account.getId())), is(nullValue()));
+		assertThat(first, is(List.of(c, b)));
+		assertThat(rest, is(List.of(a)));
+	}
+
+	@Test
+	public void testLockedIndexFollowsLockAndRemoval() {
+		var storage = new InMemoryAccountStorage();
+		var ids = new ArrayList<String>();
+		for (int i = 0; i < 200; i++)
+			ids.add(storage.newAccount(new NewAccountRequest(i % 2)));
+		for (int i = 0; i < 200; i += 3)
+			storage.get(ids.get(i)).lock();
+		storage.get(ids.get(3)).unlock();
+		storage.remove(ids.get(0));
+
+		var locked = new ArrayList<String>();
+		assertThat(storage.forEachLocked(0, account -> locked.add(account.getId())), is(AccountStorage.END));
+
+		var expected = new ArrayList<String>();
+		for (int i = 6; i < 200; i += 3)
+			expected.add(ids.get(i));
+		assertThat(locked, is(expected));
+		assertThat(storage.forEachLocked(0, account -> false), is(7L));
+	}
+
+	@Test
+	public void testIndexesMatchTheAccountsAfterConcurrentTransfers() throws InterruptedException {
+		for (var factory : List.<AccountFactory>of(InMemoryAccount::new, AtomicAccount::new)) {
+			var storage = new InMemoryAccountStorage(factory);
+			var ids = new ArrayList<String>();
+			for (int i = 0; i < 32; i++)
+				ids.add(storage.restore(UUID.randomUUID().toString(), 1_000).getId());
+
+			var threads = new ArrayList<Thread>();
+			for (int t = 0; t < 4; t++) {
+				threads.add(new Thread(() -> {
+					var transfer = new OrderedLockTransfer();
+					var random = ThreadLocalRandom.current();
+					for (int i = 0; i < 20_000; i++) {
+						var source = storage.get(ids.get(random.nextInt(ids.size())));
+						if (i % 1_000 == 0) source.lock();
+						if (i % 1_000 == 500) source.unlock();
+						transfer.from(source)
+								.withRequest(new TransferRequest(UUID.randomUUID().toString(), random.nextInt(1, 50)))
+								.execute(storage.get(ids.get(random.nextInt(ids.size()))));
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			for (var thread : threads)
+				thread.join();
+
+			var previous = -1L;
+			var listed = 0;
+			for (var id : byBalance(storage, 0, Long.MAX_VALUE)) {
+				var balance = storage.get(id).getBalance();
+				assertThat(balance >= previous, is(true));
+				previous = balance;
+				listed++;
+			}
+			assertThat(listed, is(ids.size()));
+
+			var locked = new ArrayList<Account>();
+			storage.forEachLocked(0, locked::add);
+			var expected = new ArrayList<Account>();
+			storage.forEach(account -> {
+				if (account.isLocked()) expected.add(account);
+			});
+			assertThat(locked, is(expected));
+		}
+	}
+
+	private static List<String> byBalance(AccountStorage storage, long min, long max) {
+		var ids = new ArrayList<String>();
+		assertThat(storage.forEachByBalance(null, min, max, account -> ids.add(account.getId())), is(nullValue()));
+		return ids;
+	}
+}
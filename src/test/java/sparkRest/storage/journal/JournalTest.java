@@ -0,0 +1,50 @@
+package sparkRest.storage.journal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = 10_000)
+	public void testWaitersReturnOnceTheirGroupIsForced() throws Exception {
+		try (var journal = new Journal(folder.getRoot().toPath(), 4096, GroupCommit.every(1_000, 20_000))) {
+			var threads = new ArrayList<Thread>();
+			var sequences = new long[8];
+			var durable = new long[8];
+			for (int t = 0; t < sequences.length; t++) {
+				var index = t;
+				threads.add(new Thread(() -> {
+					sequences[index] = journal.added("a", index);
+					journal.awaitDurable();
+					durable[index] = journal.durableSequence();
+				}));
+			}
+			threads.forEach(Thread::start);
+			for (var thread : threads)
+				thread.join();
+
+			for (int t = 0; t < sequences.length; t++)
+				assertThat(durable[t] >= sequences[t], is(true));
+		}
+	}
+
+	@Test
+	public void testBackgroundPolicyDoesNotWait() throws Exception {
+		try (var journal = new Journal(folder.getRoot().toPath(), 4096, GroupCommit.background(1_000, 60_000_000))) {
+			var sequence = journal.added("a", 1);
+
+			journal.awaitDurable();
+
+			assertThat(journal.durableSequence() < sequence, is(true));
+		}
+	}
+}
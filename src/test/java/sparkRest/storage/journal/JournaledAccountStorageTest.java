@@ -0,0 +1,255 @@
+package sparkRest.storage.journal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+import sparkRest.rest.NewAccountRequest;
+import sparkRest.storage.AccountStorage;
+import sparkRest.storage.InMemoryAccountStorage;
+import sparkRest.transfers.OrderedLockTransfer;
+import sparkRest.transfers.TransferRequest;
+
+public class JournaledAccountStorageTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testStateIsRecoveredFromJournal() throws Exception {
+		var directory = folder.getRoot().toPath();
+		String a, b, c;
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			a = storage.newAccount(new NewAccountRequest(Money.of(100)));
+			b = storage.newAccount(new NewAccountRequest(Money.of(0)));
+			c = storage.newAccount(new NewAccountRequest(Money.of(0)));
+
+			var transfer = new OrderedLockTransfer();
+			for (int i = 0; i < 50; i++)
+				transfer.from(storage.get(a)).withRequest(new TransferRequest("op-" + i, Money.of(1))).execute(storage.get(b));
+			storage.get(a).block(Money.of(5), "pending");
+			storage.get(b).lock();
+			storage.get(c).lock();
+			storage.remove(c);
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.get(a).getBalance(), is(equalTo(Money.of(45))));
+			assertThat(storage.get(a).getBlockedAmount(), is(equalTo(Money.of(5))));
+			assertThat(storage.get(b).getBalance(), is(equalTo(Money.of(50))));
+			assertThat(storage.get(b).isLocked(), is(true));
+			assertThat(storage.get(c), is(nullValue()));
+
+			storage.get(a).commitBlockedOperation("pending");
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.get(a).getBalance(), is(equalTo(Money.of(45))));
+			assertThat(storage.get(a).getBlockedAmount(), is(equalTo(0L)));
+		}
+	}
+
+	@Test
+	public void testCreateOfAnExistingIdChangesAndJournalsNothing() throws Exception {
+		var directory = folder.getRoot().toPath();
+		var id = UUID.randomUUID().toString();
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.create(id, Money.of(10)).getBalance(), is(equalTo(Money.of(10))));
+			assertThat(storage.create(id.toUpperCase(), Money.of(99)), is(nullValue()));
+			assertThat(storage.get(id).getBalance(), is(equalTo(Money.of(10))));
+		}
+
+		try (var journal = journal(directory)) {
+			assertThat(storage(journal).get(id).getBalance(), is(equalTo(Money.of(10))));
+		}
+	}
+
+	@Test
+	public void testReplayStopsAtTornRecord() throws Exception {
+		var directory = folder.getRoot().toPath();
+		String a;
+		long torn;
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			a = storage.newAccount(new NewAccountRequest(Money.of(10)));
+			storage.get(a).add(Money.of(1));
+			torn = journal.added(a, Money.of(1000));
+		}
+
+		try (var journal = journal(directory)) {
+			var segments = journal.segments();
+			corruptLastWrittenByte(segments.get(segments.size() - 1));
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.get(a).getBalance(), is(equalTo(Money.of(11))));
+			assertThat(journal.nextSequence(), is(equalTo(torn)));
+		}
+	}
+
+	@Test
+	public void testStateIsRecoveredFromSnapshotAndJournalTail() throws Exception {
+		var directory = folder.getRoot().toPath();
+		String a, b, c;
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			a = storage.newAccount(new NewAccountRequest(Money.of(100)));
+			b = storage.newAccount(new NewAccountRequest(Money.of(0)));
+			c = storage.newAccount(new NewAccountRequest(Money.of(0)));
+			storage.get(a).block(Money.of(5), "held");
+			storage.get(c).lock();
+			transfer(storage, a, b, 20);
+			storage.snapshot();
+
+			transfer(storage, a, b, 20);
+			storage.get(a).commitBlockedOperation("held");
+			storage.remove(c);
+			storage.snapshot();
+
+			transfer(storage, b, a, 10);
+			storage.get(b).lock();
+		}
+
+		try (var journal = journal(directory)) {
+			assertThat(journal.firstSequence() > 0, is(true));
+
+			var storage = storage(journal);
+			assertThat(storage.get(a).getBalance(), is(equalTo(Money.of(65))));
+			assertThat(storage.get(a).getBlockedAmount(), is(equalTo(0L)));
+			assertThat(storage.get(b).getBalance(), is(equalTo(Money.of(30))));
+			assertThat(storage.get(b).isLocked(), is(true));
+			assertThat(storage.get(c), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testEventsAfterACrashDoNotReuseSequencesOfTheSnapshot() throws Exception {
+		var directory = folder.getRoot().toPath();
+		String a, b;
+		try (var journal = new Journal(directory, 4096, GroupCommit.every(1_000, 60_000_000))) {
+			var storage = storage(journal);
+			a = storage.newAccount(new NewAccountRequest(Money.of(100)));
+			b = storage.newAccount(new NewAccountRequest(Money.of(0)));
+			transfer(storage, a, b, 10);
+			storage.snapshot();
+		}
+
+		/* the crash takes everything behind the first event with it */
+		try (var journal = journal(directory)) {
+			var segments = journal.segments();
+			truncateAfterFirstRecord(segments.get(segments.size() - 1));
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.get(b).getBalance(), is(equalTo(Money.of(10))));
+			storage.get(b).add(Money.of(5));
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.get(a).getBalance(), is(equalTo(Money.of(90))));
+			assertThat(storage.get(b).getBalance(), is(equalTo(Money.of(15))));
+		}
+	}
+
+	@Test
+	public void testDamagedSnapshotFallsBackToPreviousOne() throws Exception {
+		var directory = folder.getRoot().toPath();
+		String a;
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			a = storage.newAccount(new NewAccountRequest(Money.of(10)));
+			storage.snapshot();
+			storage.get(a).add(Money.of(1));
+			var newest = storage.snapshot();
+			storage.get(a).add(Money.of(1));
+
+			corruptLastWrittenByte(newest);
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			assertThat(storage.get(a).getBalance(), is(equalTo(Money.of(12))));
+		}
+	}
+
+	@Test
+	public void testSnapshotTakenDuringTransfersIsConsistent() throws Exception {
+		var directory = folder.getRoot().toPath();
+		var ids = new String[8];
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = storage.newAccount(new NewAccountRequest(Money.of(100)));
+
+			var transfer = new OrderedLockTransfer();
+			var worker = new Thread(() -> {
+				for (int i = 0; i < 2000; i++)
+					transfer.from(storage.get(ids[i % ids.length])).withRequest(new TransferRequest("op-" + i, Money.of(1)))
+							.execute(storage.get(ids[(i * 7 + 3) % ids.length]));
+			});
+			worker.start();
+			while (worker.isAlive())
+				storage.snapshot();
+			worker.join();
+		}
+
+		try (var journal = journal(directory)) {
+			var storage = storage(journal);
+			var total = 0L;
+			for (var id : ids)
+				total += storage.get(id).getBalance() + storage.get(id).getBlockedAmount();
+			assertThat(total, is(equalTo(Money.of(800))));
+		}
+	}
+
+	private void transfer(AccountStorage storage, String from, String to, int times) {
+		var transfer = new OrderedLockTransfer();
+		for (int i = 0; i < times; i++)
+			transfer.from(storage.get(from)).withRequest(new TransferRequest("op-" + i, Money.of(1))).execute(storage.get(to));
+	}
+
+	private void corruptLastWrittenByte(Path segment) throws Exception {
+		try (var file = new RandomAccessFile(segment.toFile(), "rw")) {
+			var position = file.length() - 1;
+			file.seek(position);
+			while (file.read() == 0)
+				file.seek(--position);
+			file.seek(position);
+			file.write(0x7F);
+		}
+	}
+
+	private void truncateAfterFirstRecord(Path segment) throws Exception {
+		try (var file = new RandomAccessFile(segment.toFile(), "rw")) {
+			var end = 8 + file.readInt();
+			file.seek(end);
+			file.write(new byte[(int) file.length() - end]);
+		}
+	}
+
+		private Journal journal(Path directory) {
+		return new Journal(directory, 4096, GroupCommit.every(16, 1000));
+	}
+
+	private JournaledAccountStorage storage(Journal journal) {
+		return new JournaledAccountStorage(journal, InMemoryAccount::new, InMemoryAccountStorage::new);
+	}
+}
@@ -0,0 +1,94 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+import sparkRest.rest.NewAccountRequest;
+import sparkRest.storage.InMemoryAccountStorage;
+
+public class HoldsTest {
+
+	AtomicLong now = new AtomicLong();
+
+	@Test
+	public void testExpiredHoldsAreReleased() {
+		var holds = new Holds(new Transfer(), 100, now::get);
+		var account = new InMemoryAccount("a", Money.of(10));
+		var hold = holds.place(account, Money.of(4), 1_000);
+
+		now.set(999);
+		holds.expire();
+		assertThat(account.getBlockedAmount(), is(Money.of(4)));
+
+		now.set(1_000);
+		holds.expire();
+		assertThat(account.getBlockedAmount(), is(0L));
+		assertThat(account.getBalance(), is(Money.of(10)));
+		assertThat(holds.get("a", hold.getId()), is(nullValue()));
+		assertThat(holds.release(hold), is(false));
+	}
+
+	@Test
+	public void testRefusedCaptureKeepsTheHoldUntilItExpires() {
+		var holds = new Holds(new OrderedLockTransfer(), 100, now::get);
+		var source = new InMemoryAccount("a", Money.of(10));
+		var destination = new InMemoryAccount("b", 0);
+		var hold = holds.place(source, Money.of(4), 1_000);
+		destination.lock();
+
+		assertThat(holds.capture(hold, destination).getCode(), is(TransferResultCodes.DestinationAccountLocked));
+		assertThat(holds.get("a", hold.getId()), is(notNullValue()));
+
+		destination.unlock();
+		assertThat(holds.capture(hold, destination).isSuccess(), is(true));
+		assertThat(holds.capture(hold, destination), is(nullValue()));
+		now.set(1_000);
+		holds.expire();
+		assertThat(source.getBalance(), is(Money.of(6)));
+		assertThat(destination.getBalance(), is(Money.of(4)));
+		assertThat(holds.outstanding(), is(0L));
+	}
+
+	@Test
+	public void testHoldsArePlacedAndReleasedThroughTheTransferEngine() {
+		try (var transfer = spy(new PartitionedTransfer(2, 64))) {
+			var holds = new Holds(transfer, 100, now::get);
+			var account = new InMemoryAccount("a", Money.of(10));
+
+			var hold = holds.place(account, Money.of(4), 1_000);
+			assertThat(account.getBalance(), is(Money.of(6)));
+			assertThat(holds.release(hold), is(true));
+
+			verify(transfer).block(account, Money.of(4), hold.getId());
+			verify(transfer).unblock(account, hold.getId());
+			assertThat(account.getBalance(), is(Money.of(10)));
+			assertThat(account.getBlockedAmount(), is(0L));
+		}
+	}
+
+	@Test
+	public void testRecoveredHoldsExpireAgain() {
+		var storage = new InMemoryAccountStorage();
+		var id = storage.newAccount(new NewAccountRequest(Money.of(10)));
+		storage.get(id).block(Money.of(2), Holds.PREFIX + "before-restart");
+		storage.get(id).block(Money.of(3), "transfer");
+		var holds = new Holds(new Transfer(), 100, now::get);
+
+		holds.recover(storage, 500);
+		assertThat(holds.get(id, Holds.PREFIX + "before-restart").getAmount(), is(Money.of(2)));
+
+		now.set(500);
+		holds.expire();
+		assertThat(storage.get(id).getBlockedAmount(), is(Money.of(3)));
+	}
+}
@@ -0,0 +1,89 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+
+public class OrderedLockTransferTest {
+
+	Transfer transfer = new OrderedLockTransfer();
+
+	@Test
+	public void testSuccesfullTransfer() {
+		var source = new InMemoryAccount("a", Money.of(100));
+		var destination = new InMemoryAccount("b", Money.of(0));
+
+		var result = execute(source, destination, Money.of(40));
+
+		assertThat(result.isSuccess(), is(true));
+		assertThat(source.getBalance(), is(equalTo(Money.of(60))));
+		assertThat(source.getBlockedAmount(), is(equalTo(0L)));
+		assertThat(destination.getBalance(), is(equalTo(Money.of(40))));
+	}
+
+	@Test
+	public void testTransferRolledBackWhenDestinationLocked() {
+		var source = new InMemoryAccount("b", Money.of(100));
+		var destination = new InMemoryAccount("a", Money.of(0));
+		destination.lock();
+
+		var result = execute(source, destination, Money.of(40));
+
+		assertThat(result.getCode(), is(equalTo(TransferResultCodes.DestinationAccountLocked)));
+		assertThat(source.getBalance(), is(equalTo(Money.of(100))));
+		assertThat(source.getBlockedAmount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void testTransferFailedWhenDestinationIsNull() {
+		var result = execute(new InMemoryAccount("a", Money.of(100)), null, Money.of(1));
+
+		assertThat(result.getCode(), is(equalTo(TransferResultCodes.DestinationAccountNotFound)));
+	}
+
+	@Test(timeout = 30_000)
+	public void testCrossfireTransfersDoNotDeadlockAndKeepTotal() throws InterruptedException {
+		var a = new InMemoryAccount("a", Money.of(1000));
+		var b = new InMemoryAccount("b", Money.of(1000));
+		var start = new CountDownLatch(1);
+		var operations = new AtomicInteger();
+		var threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			var forward = t % 2 == 0;
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 50_000; i++) {
+					var request = new TransferRequest("op-" + operations.incrementAndGet(), Money.of(1));
+					if (forward)
+						transfer.from(a).withRequest(request).execute(b);
+					else
+						transfer.from(b).withRequest(request).execute(a);
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (var thread : threads)
+			thread.join();
+
+		assertThat(a.getBalance() + b.getBalance(), is(equalTo(Money.of(2000))));
+		assertThat(a.getBlockedAmount() + b.getBlockedAmount(), is(equalTo(0L)));
+	}
+
+	private TransferResult execute(Account source, Account destination, long amount) {
+		return transfer.from(source).withRequest(new TransferRequest("op", amount)).execute(destination);
+	}
+}
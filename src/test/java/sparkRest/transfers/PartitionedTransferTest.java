@@ -0,0 +1,184 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sparkRest.accounting.Account;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+
+public class PartitionedTransferTest {
+
+	PartitionedTransfer transfer;
+
+	@Before
+	public void before() {
+		transfer = new PartitionedTransfer(4, 64);
+	}
+
+	@After
+	public void after() {
+		transfer.close();
+	}
+
+	@Test
+	public void testSuccesfullTransfer() {
+		var source = new InMemoryAccount("a", Money.of(100));
+		var destination = new InMemoryAccount("b", Money.of(0));
+
+		var result = execute(source, destination, Money.of(40));
+
+		assertThat(result.isSuccess(), is(true));
+		assertThat(source.getBalance(), is(equalTo(Money.of(60))));
+		assertThat(source.getBlockedAmount(), is(equalTo(0L)));
+		assertThat(destination.getBalance(), is(equalTo(Money.of(40))));
+	}
+
+	@Test
+	public void testTransferNotMadeWhenBlockFails() {
+		var source = new InMemoryAccount("a", Money.of(10));
+		var destination = new InMemoryAccount("b", Money.of(0));
+
+		var result = execute(source, destination, Money.of(40));
+
+		assertThat(result.getCode(), is(equalTo(TransferResultCodes.SourceAccountNotEnoughResouces)));
+		assertThat(destination.getBalance(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void testTransferRolledBackWhenDestinationLocked() {
+		var source = new InMemoryAccount("a", Money.of(100));
+		var destination = new InMemoryAccount("b", Money.of(0));
+		destination.lock();
+
+		var result = execute(source, destination, Money.of(40));
+
+		assertThat(result.getCode(), is(equalTo(TransferResultCodes.DestinationAccountLocked)));
+		assertThat(source.getBalance(), is(equalTo(Money.of(100))));
+		assertThat(source.getBlockedAmount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void testTransferFailedWhenDestinationIsNull() {
+		var result = execute(new InMemoryAccount("a", Money.of(100)), null, Money.of(1));
+
+		assertThat(result.getCode(), is(equalTo(TransferResultCodes.DestinationAccountNotFound)));
+	}
+
+	@Test(timeout = 30_000)
+	public void testConcurrentTransfersAcrossPartitionsKeepTotal() throws InterruptedException {
+		var accounts = new Account[16];
+		for (int i = 0; i < accounts.length; i++)
+			accounts[i] = new InMemoryAccount("account-" + i, Money.of(100));
+		var operations = new AtomicInteger();
+		var threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			var random = new Random(t);
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 20_000; i++) {
+					var source = accounts[random.nextInt(accounts.length)];
+					var destination = accounts[random.nextInt(accounts.length)];
+					var request = new TransferRequest("op-" + operations.incrementAndGet(), 1 + random.nextInt(500));
+					transfer.from(source).withRequest(request).execute(destination);
+				}
+			});
+			threads[t].start();
+		}
+		for (var thread : threads)
+			thread.join();
+
+		long total = 0;
+		for (var account : accounts) {
+			total += account.getBalance();
+			assertThat(account.getBlockedAmount(), is(equalTo(0L)));
+		}
+		assertThat(total, is(equalTo(Money.of(1600))));
+	}
+
+	@Test(timeout = 30_000)
+	public void testBatchesAndPayoutsExcludeConcurrentTransfers() throws InterruptedException {
+		var accounts = new Account[16];
+		for (int i = 0; i < accounts.length; i++)
+			accounts[i] = new InMemoryAccount("account-" + i, Money.of(100));
+		var operations = new AtomicInteger();
+		var threads = new Thread[6];
+		for (int t = 0; t < threads.length; t++) {
+			var random = new Random(t);
+			var kind = t % 3;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 5_000; i++) {
+					var a = accounts[random.nextInt(accounts.length)];
+					var b = accounts[random.nextInt(accounts.length)];
+					var c = accounts[random.nextInt(accounts.length)];
+					var amount = 1 + random.nextInt(500);
+					var operation = "op-" + operations.incrementAndGet();
+					if (kind == 0)
+						transfer.from(a).withRequest(new TransferRequest(operation, amount)).execute(b);
+					else if (kind == 1)
+						transfer.executeAtomically(new TransferBatch()
+								.add(a, new TransferRequest(operation + "-1", amount), b)
+								.add(b, new TransferRequest(operation + "-2", amount), c));
+					else
+						transfer.payout(a, new Payout(operation).add(b, amount).add(c, amount));
+				}
+			});
+			threads[t].start();
+		}
+		for (var thread : threads)
+			thread.join();
+
+		long total = 0;
+		for (var account : accounts) {
+			total += account.getBalance();
+			assertThat(account.getBlockedAmount(), is(equalTo(0L)));
+		}
+		assertThat(total, is(equalTo(Money.of(1600))));
+	}
+
+	@Test(timeout = 30_000)
+	public void testCloseCompletesTransfersUnderWayAndRefusesLaterOnes() throws InterruptedException {
+		var accounts = new Account[8];
+		for (int i = 0; i < accounts.length; i++)
+			accounts[i] = new InMemoryAccount("account-" + i, Money.of(100));
+		var operations = new AtomicInteger();
+		var threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			var random = new Random(t);
+			var thread = new Thread(() -> {
+				while (true) {
+					var request = new TransferRequest("op-" + operations.incrementAndGet(), 1 + random.nextInt(500));
+					var result = transfer.from(accounts[random.nextInt(accounts.length)]).withRequest(request).execute(accounts[random.nextInt(accounts.length)]);
+					if (result.getCode() == TransferResultCodes.Unavailable) return;
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		Thread.sleep(100);
+
+		transfer.close();
+		for (var thread : threads)
+			thread.join();
+
+		long total = 0;
+		for (var account : accounts) {
+			total += account.getBalance();
+			assertThat(account.getBlockedAmount(), is(equalTo(0L)));
+		}
+		assertThat(total, is(equalTo(Money.of(800))));
+		assertThat(execute(accounts[0], accounts[1], 1).getCode(), is(TransferResultCodes.Unavailable));
+	}
+
+	private TransferResult execute(Account source, Account destination, long amount) {
+		return transfer.from(source).withRequest(new TransferRequest("op", amount)).execute(destination);
+	}
+}
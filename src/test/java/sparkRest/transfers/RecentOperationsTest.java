@@ -0,0 +1,120 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RecentOperationsTest {
+
+	AtomicLong now = new AtomicLong();
+	AtomicInteger executions = new AtomicInteger();
+
+	@Test
+	public void testRepeatedKeyReturnsFirstOutcome() {
+		var recent = new RecentOperations<Integer>(10, 100, now::get);
+
+		assertThat(recent.execute("a", executions::incrementAndGet), is(1));
+		assertThat(recent.execute("a", executions::incrementAndGet), is(1));
+		assertThat(recent.execute("b", executions::incrementAndGet), is(2));
+		assertThat(executions.get(), is(2));
+	}
+
+	@Test
+	public void testOldestKeysAreEvictedOverCapacity() {
+		var recent = new RecentOperations<Integer>(2, 100, now::get);
+
+		recent.execute("a", executions::incrementAndGet);
+		recent.execute("b", executions::incrementAndGet);
+		recent.execute("c", executions::incrementAndGet);
+
+		assertThat(recent.size(), is(2));
+		assertThat(recent.execute("c", executions::incrementAndGet), is(3));
+		assertThat(recent.execute("a", executions::incrementAndGet), is(4));
+	}
+
+	@Test
+	public void testExpiredKeysAreExecutedAgain() {
+		var recent = new RecentOperations<Integer>(10, 100, now::get);
+
+		recent.execute("a", executions::incrementAndGet);
+		now.set(100);
+		assertThat(recent.execute("a", executions::incrementAndGet), is(1));
+		now.set(101);
+		assertThat(recent.execute("a", executions::incrementAndGet), is(2));
+		assertThat(recent.size(), is(1));
+	}
+
+	@Test
+	public void testFailedOperationIsNotRemembered() {
+		var recent = new RecentOperations<Integer>(10, 100, now::get);
+
+		try {
+			recent.execute("a", () -> {
+				throw new IllegalStateException();
+			});
+		} catch (IllegalStateException expected) {
+		}
+
+		assertThat(recent.execute("a", executions::incrementAndGet), is(1));
+	}
+
+	@Test
+	public void testOutcomesThatAreNotReplayedAreExecutedAgain() {
+		var recent = new RecentOperations<Integer>(10, 100, now::get, outcome -> outcome > 1);
+
+		assertThat(recent.execute("a", executions::incrementAndGet), is(1));
+		assertThat(recent.execute("a", executions::incrementAndGet), is(2));
+		assertThat(recent.execute("a", executions::incrementAndGet), is(2));
+		assertThat(executions.get(), is(2));
+	}
+
+	@Test
+	public void testKeyReusedForAnotherRequestIsRefused() {
+		var recent = new RecentOperations<Integer>(10, 100, now::get);
+		recent.execute("a", "first", executions::incrementAndGet);
+
+		try {
+			recent.execute("a", "second", executions::incrementAndGet);
+			fail();
+		} catch (ReusedKeyException expected) {
+		}
+
+		assertThat(recent.execute("a", "first", executions::incrementAndGet), is(1));
+		assertThat(executions.get(), is(1));
+	}
+
+	@Test
+	public void testConcurrentRepeatWaitsForTheFirstExecution() throws Exception {
+		var recent = new RecentOperations<Integer>(10, 100, now::get);
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var first = new Thread(() -> recent.execute("a", () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return executions.incrementAndGet();
+		}));
+		first.start();
+		started.await();
+
+		var repeated = new AtomicInteger();
+		var second = new Thread(() -> repeated.set(recent.execute("a", executions::incrementAndGet)));
+		second.start();
+		release.countDown();
+		first.join();
+		second.join();
+
+		assertThat(repeated.get(), is(equalTo(1)));
+		assertThat(executions.get(), is(1));
+	}
+}
@@ -0,0 +1,80 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import sparkRest.accounting.Money;
+import sparkRest.rest.NewAccountRequest;
+import sparkRest.storage.InMemoryAccountStorage;
+
+public class ScheduledTransfersTest {
+
+	AtomicLong now = new AtomicLong();
+	InMemoryAccountStorage storage = new InMemoryAccountStorage();
+
+	@Test
+	public void testRecurringTransferRunsOnceEveryIntervalAndSkipsMissedRuns() {
+		var a = storage.newAccount(new NewAccountRequest(Money.of(100)));
+		var b = storage.newAccount(new NewAccountRequest(0));
+		try (var scheduled = new ScheduledTransfers(storage, new OrderedLockTransfer(), 10, 2, 4, 10, now::get)) {
+			var schedule = scheduled.schedule(storage.get(a), b, Money.of(1), 1_000, 1_000);
+
+			now.set(999);
+			scheduled.tick();
+			assertThat(schedule.getRuns(), is(0));
+
+			now.set(1_000);
+			scheduled.tick();
+			assertThat(schedule.getLastResult().isSuccess(), is(true));
+			assertThat(schedule.getNextRun(), is(2_000L));
+
+			/* the scheduler was away for the runs due at 2000 and 3000 */
+			now.set(3_500);
+			scheduled.tick();
+			assertThat(schedule.getRuns(), is(2));
+			assertThat(schedule.getNextRun(), is(4_000L));
+			assertThat(storage.get(b).getBalance(), is(Money.of(2)));
+
+			assertThat(scheduled.cancel(schedule), is(true));
+			now.set(10_000);
+			scheduled.tick();
+			assertThat(schedule.getRuns(), is(2));
+		}
+	}
+
+	@Test
+	public void testDueSpikeRunsInBatchesAcrossWorkers() {
+		var count = 10_000;
+		var a = storage.newAccount(new NewAccountRequest(Money.of(count)));
+		var b = storage.newAccount(new NewAccountRequest(0));
+		try (var scheduled = new ScheduledTransfers(storage, new OrderedLockTransfer(), 1_000, 4, 100, count, now::get)) {
+			for (int i = 0; i < count; i++)
+				scheduled.schedule(storage.get(a), b, Money.of(1), 86_400_000, 0);
+			assertThat(scheduled.schedule(storage.get(a), b, Money.of(1), 86_400_000, 0), is(nullValue()));
+
+			now.set(86_400_000);
+			scheduled.tick();
+
+			assertThat(storage.get(b).getBalance(), is(Money.of(count)));
+			assertThat(scheduled.size(), is(0));
+		}
+	}
+
+	@Test
+	public void testRunOfARemovedAccountFails() {
+		var a = storage.newAccount(new NewAccountRequest(Money.of(1)));
+		try (var scheduled = new ScheduledTransfers(storage, new Transfer(), 10, 1, 10, 10, now::get)) {
+			var schedule = scheduled.schedule(storage.get(a), "gone", Money.of(1), 0, 0);
+
+			scheduled.tick();
+
+			assertThat(schedule.getLastResult().getCode(), is(TransferResultCodes.DestinationAccountNotFound));
+			assertThat(scheduled.get(a, schedule.getId()), is(nullValue()));
+		}
+	}
+}
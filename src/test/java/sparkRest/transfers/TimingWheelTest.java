@@ -0,0 +1,84 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+	@Test
+	public void testEntriesExpireAtTheFirstTickAtOrAfterTheirDeadline() {
+		var wheel = new TimingWheel<Timer>(10, 1_000);
+		var early = new Timer(1_025);
+		var late = new Timer(1_031);
+		wheel.schedule(late, late.deadline);
+		wheel.schedule(early, early.deadline);
+
+		assertThat(advance(wheel, 1_029), is(List.of()));
+		assertThat(advance(wheel, 1_030), is(List.of(early)));
+		assertThat(advance(wheel, 1_039), is(List.of()));
+		assertThat(advance(wheel, 1_040), is(List.of(late)));
+		assertThat(wheel.size(), is(0L));
+	}
+
+	@Test
+	public void testDistantEntriesCascadeDownAndExpireOnTime() {
+		var wheel = new TimingWheel<Timer>(1, 0);
+		var random = new Random(42);
+		var timers = new ArrayList<Timer>();
+		for (int i = 0; i < 10_000; i++) {
+			/* spread over every level */
+			var deadline = 1 + (long) Math.pow(2, random.nextDouble() * 26);
+			var timer = new Timer(deadline);
+			timers.add(timer);
+			wheel.schedule(timer, deadline);
+		}
+
+		var now = 0L;
+		var expired = 0;
+		while (expired < timers.size()) {
+			var before = now;
+			now += 1 + random.nextInt(1 << 12);
+			for (var timer : advance(wheel, now)) {
+				assertThat(timer.deadline <= now, is(true));
+				/* not left behind by an earlier advance */
+				assertThat(timer.deadline > before, is(true));
+				expired++;
+			}
+		}
+		assertThat(wheel.size(), is(0L));
+	}
+
+	@Test
+	public void testCancelledEntriesDoNotExpire() {
+		var wheel = new TimingWheel<Timer>(1, 0);
+		var kept = new Timer(5_000);
+		var cancelled = new Timer(5_000);
+		wheel.schedule(kept, kept.deadline);
+		wheel.schedule(cancelled, cancelled.deadline);
+
+		assertThat(wheel.cancel(cancelled), is(true));
+		assertThat(wheel.cancel(cancelled), is(false));
+		assertThat(advance(wheel, 5_000), is(List.of(kept)));
+		assertThat(wheel.cancel(kept), is(false));
+	}
+
+	private static List<Timer> advance(TimingWheel<Timer> wheel, long now) {
+		var expired = new ArrayList<Timer>();
+		wheel.advance(now, expired::add);
+		return expired;
+	}
+
+	private static final class Timer extends TimingWheel.Entry {
+		final long deadline;
+
+		Timer(long deadline) {
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
+
+public class TransferLedgerTest {
+
+	AtomicLong now = new AtomicLong();
+
+	@Test
+	public void testEveryTransferIsInTheHistoryOfBothAccounts() {
+		var ledger = new TransferLedger(TransferLedger.DEFAULT_RETAINED, now::get);
+		var transfer = new OrderedLockTransfer(ledger);
+		var a = new InMemoryAccount("a", Money.of(10));
+		var b = new InMemoryAccount("b", 0);
+
+		now.set(1);
+		transfer.from(a).withRequest(new TransferRequest("op-1", Money.of(3))).execute(b);
+		now.set(2);
+		transfer.from(a).withRequest(new TransferRequest("op-2", Money.of(30))).execute(b);
+		now.set(3);
+		transfer.from(b).withRequest(new TransferRequest("op-3", Money.of(1))).execute(a);
+
+		assertThat(history(ledger, "a"), is(List.of("3:100:b", "1:-300:b")));
+		assertThat(history(ledger, "b"), is(List.of("3:-100:a", "1:300:a")));
+		assertThat(history(ledger, "c"), is(List.of()));
+	}
+
+	@Test
+	public void testPagesWalkFromNewestToOldest() {
+		var ledger = new TransferLedger(20_000, now::get);
+		var a = new InMemoryAccount("a", 0);
+		var b = new InMemoryAccount("b", 0);
+		var count = 20_000;
+		for (int i = 0; i < count; i++) {
+			now.set(i);
+			ledger.record(a, 1, b);
+		}
+
+		var times = new ArrayList<Long>();
+		var cursor = TransferLedger.LATEST;
+		do {
+			var page = new ArrayList<Long>();
+			cursor = ledger.forEach("b", cursor, (time, amount, counterpart) -> {
+				page.add(time);
+				return page.size() < 999;
+			});
+			times.addAll(page);
+		} while (cursor != TransferLedger.END);
+
+		assertThat(times.size(), is(count));
+		for (int i = 0; i < count; i++)
+			assertThat(times.get(i), is((long) (count - 1 - i)));
+	}
+
+	@Test
+	public void testOnlyTheLatestRetainedTransfersAreKept() {
+		var ledger = new TransferLedger(5, now::get);
+		var a = new InMemoryAccount("a", 0);
+		var b = new InMemoryAccount("b", 0);
+		for (int i = 0; i < 20; i++) {
+			now.set(i);
+			ledger.record(a, 1, b);
+		}
+
+		var times = new ArrayList<Long>();
+		var cursor = ledger.forEach("a", TransferLedger.LATEST, (time, amount, counterpart) -> times.add(time) && times.size() < 3);
+		assertThat(times, is(List.of(19L, 18L, 17L)));
+		for (int i = 20; i < 25; i++) {
+			now.set(i);
+			ledger.record(a, 1, b);
+		}
+		/* the rest of the page was overwritten meanwhile */
+		assertThat(ledger.forEach("a", cursor, (time, amount, counterpart) -> times.add(time)), is(TransferLedger.END));
+		assertThat(times, is(List.of(19L, 18L, 17L)));
+		assertThat(history(ledger, "b").size(), is(8));
+		assertThat(history(ledger, "b").get(7), is("17:1:a"));
+	}
+
+	@Test
+	public void testForgottenAccountsStartANewHistory() {
+		var ledger = new TransferLedger(16, now::get);
+		var a = new InMemoryAccount("a", 0);
+		var b = new InMemoryAccount("b", 0);
+		now.set(1);
+		ledger.record(a, 1, b);
+		ledger.forget("a");
+		now.set(2);
+		ledger.record(b, 2, a);
+
+		assertThat(history(ledger, "a"), is(List.of("2:2:b")));
+		assertThat(history(ledger, "b"), is(List.of("2:-2:a", "1:1:a")));
+	}
+
+	@Test
+	public void testReadersNeverSeeOverwrittenEntries() throws InterruptedException {
+		var ledger = new TransferLedger(16, now::get);
+		var a = new InMemoryAccount("a", 0);
+		var b = new InMemoryAccount("b", 0);
+		var writer = new Thread(() -> {
+			for (long i = 1; i <= 500_000; i++) {
+				now.set(i);
+				ledger.record(a, i, b);
+			}
+		});
+		writer.start();
+		var torn = false;
+		while (writer.isAlive()) {
+			var previous = new long[] { Long.MAX_VALUE };
+			var ok = new boolean[] { true };
+			ledger.forEach("b", TransferLedger.LATEST, (time, amount, counterpart) -> {
+				ok[0] &= time == amount && time < previous[0];
+				previous[0] = time;
+				return true;
+			});
+			torn |= !ok[0];
+		}
+		writer.join();
+
+		assertThat(torn, is(false));
+	}
+
+	@Test
+	public void testConcurrentTransfersAreAllRecorded() throws InterruptedException {
+		var ledger = new TransferLedger(20_000);
+		var transfer = new PartitionedTransfer(2, 64, ledger);
+		var a = new InMemoryAccount("a", Money.of(1_000_000));
+		var b = new InMemoryAccount("b", Money.of(1_000_000));
+		try {
+			var threads = new Thread[4];
+			for (int t = 0; t < threads.length; t++) {
+				var forward = t % 2 == 0;
+				var name = "op-" + t + "-";
+				threads[t] = new Thread(() -> {
+					for (int i = 0; i < 5_000; i++)
+						transfer.from(forward ? a : b).withRequest(new TransferRequest(name + i, 1)).execute(forward ? b : a);
+				});
+				threads[t].start();
+			}
+			for (var thread : threads)
+				thread.join();
+		} finally {
+			transfer.close();
+		}
+
+		var sum = new long[2];
+		ledger.forEach("a", TransferLedger.LATEST, (time, amount, counterpart) -> {
+			sum[0]++;
+			sum[1] += amount;
+			return true;
+		});
+		assertThat(sum[0], is(20_000L));
+		assertThat(sum[1], is(a.getBalance() - Money.of(1_000_000)));
+	}
+
+	private static List<String> history(TransferLedger ledger, String id) {
+		var entries = new ArrayList<String>();
+		ledger.forEach(id, TransferLedger.LATEST, (time, amount, counterpart) -> entries.add(time + ":" + amount + ":" + counterpart));
+		return entries;
+	}
+}
@@ -0,0 +1,124 @@
+package sparkRest.transfers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TransferPipelineTest {
+
+	@Test
+	public void testOperationsArePendingUntilTheyRun() throws InterruptedException {
+		var release = new CountDownLatch(1);
+		var pipeline = new TransferPipeline(1, 10, 100);
+		try {
+			var operation = pipeline.submit(() -> {
+				await(release);
+				return TransferResult.notEnoughResources();
+			});
+
+			assertThat(pipeline.get(operation.getId()).getStatus(), is(TransferPipeline.Status.PENDING));
+			assertThat(operation.getResult(), is(nullValue()));
+
+			release.countDown();
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	@Test
+	public void testCompletedOperationsReportTheirResult() {
+		var pipeline = new TransferPipeline(2, 10, 100);
+		TransferPipeline.Operation succeeded;
+		TransferPipeline.Operation failed;
+		TransferPipeline.Operation broken;
+		try {
+			succeeded = pipeline.submit(TransferResult::success);
+			failed = pipeline.submit(TransferResult::destinationAccountLocked);
+			broken = pipeline.submit(() -> {
+				throw new IllegalStateException("expected by the test");
+			});
+		} finally {
+			pipeline.close();
+		}
+
+		assertThat(succeeded.getStatus(), is(TransferPipeline.Status.SUCCEEDED));
+		assertThat(failed.getStatus(), is(TransferPipeline.Status.FAILED));
+		assertThat(failed.getResult().getCode(), is(TransferResultCodes.DestinationAccountLocked));
+		assertThat(broken.getStatus(), is(TransferPipeline.Status.FAILED));
+		assertThat(broken.getResult().getCode(), is(TransferResultCodes.Failed));
+	}
+
+	@Test
+	public void testWorkerGoesOnAfterATransferBrokeDown() {
+		var pipeline = new TransferPipeline(1, 10, 100);
+		var uncaught = new AtomicReference<Throwable>();
+		TransferPipeline.Operation next;
+		try {
+			pipeline.submit(() -> {
+				Thread.currentThread().setUncaughtExceptionHandler((thread, e) -> uncaught.set(e));
+				throw new IllegalStateException("expected by the test");
+			});
+			next = pipeline.submit(TransferResult::success);
+		} finally {
+			pipeline.close();
+		}
+
+		assertThat(next.getStatus(), is(TransferPipeline.Status.SUCCEEDED));
+		assertThat(uncaught.get(), is(nullValue()));
+	}
+
+	@Test
+	public void testSubmissionsAreRefusedWhenTheQueueIsFull() {
+		var release = new CountDownLatch(1);
+		var started = new CountDownLatch(1);
+		var pipeline = new TransferPipeline(1, 2, 100);
+		try {
+			pipeline.submit(() -> {
+				started.countDown();
+				await(release);
+				return TransferResult.success();
+			});
+			await(started);
+
+			assertThat(pipeline.submit(TransferResult::success), is(notNullValue()));
+			assertThat(pipeline.submit(TransferResult::success), is(notNullValue()));
+			assertThat(pipeline.submit(TransferResult::success), is(nullValue()));
+			assertThat(pipeline.queued(), is(2));
+
+			release.countDown();
+		} finally {
+			pipeline.close();
+		}
+		assertThat(pipeline.queued(), is(0));
+	}
+
+	@Test
+	public void testOldestOperationsAreForgottenBeyondRetained() {
+		var pipeline = new TransferPipeline(1, 10, 2);
+		try {
+			var first = pipeline.submit(TransferResult::success);
+			var second = pipeline.submit(TransferResult::success);
+			var third = pipeline.submit(TransferResult::success);
+
+			assertThat(pipeline.get(first.getId()), is(nullValue()));
+			assertThat(pipeline.get(second.getId()), is(second));
+			assertThat(pipeline.get(third.getId()), is(third));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -1,5 +1,11 @@
 package sparkRest.transfers;
 
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -7,10 +13,11 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.mockito.Mockito.*;
 
 import static org.hamcrest.MatcherAssert.*;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 import sparkRest.accounting.Account;
+import sparkRest.accounting.AtomicAccount;
+import sparkRest.accounting.InMemoryAccount;
+import sparkRest.accounting.Money;
 
 public class TransferTest {
 
@@ -31,8 +38,8 @@ public class TransferTest {
 	
 	@Test
 	public void testSuccesfullTransfer() {
-		when(fromMock.block(any(), eq(operationId))).thenReturn(true);
-		when(toMock.add(any())).thenReturn(true);
+		when(fromMock.block(anyLong(), eq(operationId))).thenReturn(true);
+		when(toMock.add(anyLong())).thenReturn(true);
 		var result = transfer.from(fromMock).withRequest(request).execute(toMock);
 		
 		verify(fromMock).block(of(operationAmount), operationId);
@@ -45,7 +52,7 @@ public class TransferTest {
 
 	@Test
 	public void testTransferNotMadeWhenBlockFails() {
-		when(fromMock.block(any(), eq(operationId))).thenReturn(false);
+		when(fromMock.block(anyLong(), eq(operationId))).thenReturn(false);
 		var result = transfer.from(fromMock).withRequest(request).execute(toMock);
 		
 		verify(fromMock).block(of(operationAmount), operationId);
@@ -57,8 +64,8 @@ public class TransferTest {
 
 	@Test
 	public void testTransferRolledBackWhenAddFails() {
-		when(fromMock.block(any(), eq(operationId))).thenReturn(true);
-		when(toMock.add(any())).thenReturn(false);
+		when(fromMock.block(anyLong(), eq(operationId))).thenReturn(true);
+		when(toMock.add(anyLong())).thenReturn(false);
 		var result = transfer.from(fromMock).withRequest(request).execute(toMock);
 		
 		verify(fromMock).block(of(operationAmount), operationId);
@@ -71,7 +78,7 @@ public class TransferTest {
 	
 	@Test 
 	public void testTransferFailedWhenDestinationIsNull() {
-		when(fromMock.block(any(), eq(operationId))).thenReturn(true);
+		when(fromMock.block(anyLong(), eq(operationId))).thenReturn(true);
 		var result = transfer.from(fromMock).withRequest(request).execute(null);
 		
 		verify(fromMock, never()).block(of(operationAmount), operationId);
@@ -83,7 +90,7 @@ public class TransferTest {
 	
 	@Test 
 	public void testTransferFailedWhenAmountIs0() {
-		when(fromMock.block(any(), eq(operationId))).thenReturn(true);
+		when(fromMock.block(anyLong(), eq(operationId))).thenReturn(true);
 		var request = new TransferRequest("abc", of(0));
 		var result = transfer.from(fromMock).withRequest(request).execute(toMock);
 		
@@ -96,7 +103,7 @@ public class TransferTest {
 	
 	@Test 
 	public void testTransferFailedWhenAmountIsLessThan0() {
-		when(fromMock.block(any(), eq(operationId))).thenReturn(true);
+		when(fromMock.block(anyLong(), eq(operationId))).thenReturn(true);
 		var request = new TransferRequest("abc", of(-1));
 		var result = transfer.from(fromMock).withRequest(request).execute(toMock);
 		
@@ -113,8 +120,242 @@ public class TransferTest {
 		assertThat("Result.getMessage", actual.getMessage(), is(equalTo(expected.getMessage())));
 	}
 
-	private BigDecimal of(double amount) {
-		return new BigDecimal(amount).setScale(2, RoundingMode.HALF_EVEN);
+	private long of(double amount) {
+		return Money.of(BigDecimal.valueOf(amount));
 	}
-}
 
+	@Test
+	public void testAtomicBatchCommitsEveryTransfer() {
+		var a = new InMemoryAccount("a", of(100));
+		var b = new InMemoryAccount("b", 0);
+		var c = new InMemoryAccount("c", 0);
+		var batch = new TransferBatch()
+				.add(a, new TransferRequest("op-1", of(60)), b)
+				.add(b, new TransferRequest("op-2", of(50)), c);
+
+		var results = transfer.executeAtomically(batch);
+
+		assertThat(results.size(), is(2));
+		assertResult(TransferResult.success(), results.get(0));
+		assertResult(TransferResult.success(), results.get(1));
+		assertThat(a.getBalance(), is(of(40)));
+		assertThat(b.getBalance(), is(of(10)));
+		assertThat(c.getBalance(), is(of(50)));
+		assertThat(a.getBlockedAmount() + b.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testAtomicBatchIsRolledBackWhenOneTransferFails() {
+		var a = new InMemoryAccount("a", of(100));
+		var b = new InMemoryAccount("b", 0);
+		var c = new InMemoryAccount("c", 0);
+		c.lock();
+		var batch = new TransferBatch()
+				.add(a, new TransferRequest("op-1", of(60)), b)
+				.add(b, new TransferRequest("op-2", of(50)), a)
+				.add(a, new TransferRequest("op-3", of(10)), c)
+				.add(b, new TransferRequest("op-4", of(1)), a);
+
+		var results = transfer.executeAtomically(batch);
+
+		assertResult(TransferResult.rolledBack(), results.get(0));
+		assertResult(TransferResult.rolledBack(), results.get(1));
+		assertResult(TransferResult.destinationAccountLocked(), results.get(2));
+		assertResult(TransferResult.rolledBack(), results.get(3));
+		assertThat(a.getBalance(), is(of(100)));
+		assertThat(b.getBalance(), is(0L));
+		assertThat(a.getBlockedAmount() + b.getBlockedAmount() + c.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testAtomicBatchRollsBackLockFreeAccountsUnderConcurrentDebits() throws InterruptedException {
+		var a = new AtomicAccount("a", of(1_000_000));
+		var b = new AtomicAccount("b", 0);
+		var c = new AtomicAccount("c", 0);
+		c.lock();
+		var done = new AtomicBoolean();
+		var debited = new AtomicLong();
+		var debits = new Thread(() -> {
+			for (long i = 0; !done.get(); i++) {
+				if (b.block(1, "debit-" + i)) {
+					b.commitBlockedOperation("debit-" + i);
+					debited.incrementAndGet();
+				}
+			}
+		});
+		debits.start();
+
+		try {
+			for (int i = 0; i < 100_000; i++) {
+				var batch = new TransferBatch()
+						.add(a, new TransferRequest("op-" + i, 1), b)
+						.add(a, new TransferRequest("op-" + i + "-locked", 1), c);
+				assertResult(TransferResult.destinationAccountLocked(), transfer.executeAtomically(batch).get(1));
+			}
+		} finally {
+			done.set(true);
+			debits.join();
+		}
+
+		assertThat(debited.get(), is(0L));
+		assertThat(a.getBalance(), is(of(1_000_000)));
+		assertThat(b.getBalance() + b.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testAtomicBatchFailsWhenSourceIsMissing() {
+		var a = new InMemoryAccount("a", of(100));
+		var batch = new TransferBatch()
+				.add(a, new TransferRequest("op-1", of(1)), a)
+				.add(null, new TransferRequest("op-2", of(1)), a);
+
+		var results = transfer.executeAtomically(batch);
+
+		assertResult(TransferResult.rolledBack(), results.get(0));
+		assertResult(TransferResult.sourceAccountNotFound(), results.get(1));
+		assertThat(a.getBalance(), is(of(100)));
+		assertThat(a.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testPayoutCreditsEveryDestinationAndBlocksTheSourceOnce() {
+		var source = spy(new InMemoryAccount("s", of(100)));
+		var b = new InMemoryAccount("b", 0);
+		var c = new InMemoryAccount("c", 0);
+		var payout = new Payout("pay-1")
+				.add(b, of(30))
+				.add(c, of(20))
+				.add(b, of(5));
+
+		var results = transfer.payout(source, payout);
+
+		assertThat(results.size(), is(3));
+		for (var result : results)
+			assertResult(TransferResult.success(), result);
+		verify(source).block(of(55), "pay-1");
+		verify(source).commitBlockedOperation("pay-1");
+		assertThat(source.getBalance(), is(of(45)));
+		assertThat(b.getBalance(), is(of(35)));
+		assertThat(c.getBalance(), is(of(20)));
+		assertThat(source.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testPayoutIsRolledBackWhenADestinationIsLocked() {
+		var source = new InMemoryAccount("s", of(100));
+		var b = new InMemoryAccount("b", 0);
+		var c = new InMemoryAccount("c", 0);
+		c.lock();
+		var payout = new Payout("pay-1")
+				.add(b, of(30))
+				.add(c, of(20))
+				.add(b, of(5));
+
+		var results = transfer.payout(source, payout);
+
+		assertResult(TransferResult.rolledBack(), results.get(0));
+		assertResult(TransferResult.destinationAccountLocked(), results.get(1));
+		assertResult(TransferResult.rolledBack(), results.get(2));
+		assertThat(source.getBalance(), is(of(100)));
+		assertThat(b.getBalance(), is(0L));
+		assertThat(source.getBlockedAmount() + b.getBlockedAmount() + c.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testPayoutRollsBackLockFreeDestinationsUnderConcurrentDebits() throws InterruptedException {
+		var source = new AtomicAccount("s", of(1_000_000));
+		var destinations = new AtomicAccount[] { new AtomicAccount("b", 0), new AtomicAccount("c", 0) };
+		var locked = new AtomicAccount("d", 0);
+		locked.lock();
+		var done = new AtomicBoolean();
+		var debited = new AtomicLong();
+		var debits = new Thread(() -> {
+			for (long i = 0; !done.get(); i++) {
+				var destination = destinations[(int) (i & 1)];
+				if (destination.block(1, "debit-" + i)) {
+					destination.commitBlockedOperation("debit-" + i);
+					debited.incrementAndGet();
+				}
+			}
+		});
+		debits.start();
+
+		try {
+			for (int i = 0; i < 100_000; i++) {
+				var payout = new Payout("pay-" + i)
+						.add(destinations[0], 1)
+						.add(destinations[1], 2)
+						.add(locked, 1);
+				assertResult(TransferResult.destinationAccountLocked(), transfer.payout(source, payout).get(2));
+			}
+		} finally {
+			done.set(true);
+			debits.join();
+		}
+
+		assertThat(debited.get(), is(0L));
+		assertThat(source.getBalance(), is(of(1_000_000)));
+		assertThat(source.getBlockedAmount(), is(0L));
+		for (var destination : destinations)
+			assertThat(destination.getBalance() + destination.getBlockedAmount(), is(0L));
+	}
+
+	@Test
+	public void testPayoutFailsBeforeBlockingWhenALegIsInvalid() {
+		var source = mock(Account.class);
+		var b = new InMemoryAccount("b", 0);
+
+		var missing = transfer.payout(source, new Payout("pay-1").add(b, of(1)).add(null, of(1)));
+		var negative = transfer.payout(source, new Payout("pay-2").add(b, -1));
+
+		assertResult(TransferResult.rolledBack(), missing.get(0));
+		assertResult(TransferResult.destinationAccountNotFound(), missing.get(1));
+		assertResult(TransferResult.amountMustBeMoreThanZero(), negative.get(0));
+		verify(source, never()).block(anyLong(), anyString());
+	}
+
+	@Test
+	public void testPayoutFailsForEveryLegWhenTheSourceCannotCoverTheTotal() {
+		var source = new InMemoryAccount("s", of(10));
+		var b = new InMemoryAccount("b", 0);
+
+		var results = transfer.payout(source, new Payout("pay-1").add(b, of(6)).add(b, of(6)));
+
+		assertResult(TransferResult.notEnoughResources(), results.get(0));
+		assertResult(TransferResult.notEnoughResources(), results.get(1));
+		assertThat(source.getBalance(), is(of(10)));
+		assertThat(b.getBalance(), is(0L));
+	}
+
+	@Test
+	public void testPayoutWaitsForABusyDestination() throws Exception {
+		var source = new InMemoryAccount("s", of(100));
+		var b = new InMemoryAccount("b", 0);
+		var c = new InMemoryAccount("c", 0);
+		var held = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var holder = new Thread(() -> {
+			c.mutex().lock();
+			try {
+				held.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				c.mutex().unlock();
+			}
+		});
+		holder.start();
+		held.await();
+
+		var payout = CompletableFuture.supplyAsync(() -> transfer.payout(source, new Payout("pay-1").add(b, of(1)).add(c, of(2))));
+		Thread.sleep(50);
+		assertThat(payout.isDone(), is(false));
+		release.countDown();
+
+		for (var result : payout.get())
+			assertResult(TransferResult.success(), result);
+		assertThat(c.getBalance(), is(of(2)));
+		holder.join();
+	}
+}